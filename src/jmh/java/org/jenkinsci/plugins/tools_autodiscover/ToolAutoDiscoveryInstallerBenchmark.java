@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.JDK;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.DescriptorBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serving and merging of discovery results, with modules which report instantly so that only the descriptor's
+ * own overhead is measured. Half of the homes reported by each module are also reported by the first one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolAutoDiscoveryInstallerBenchmark {
+    @Param({"1", "4", "16"})
+    public int modules;
+
+    @Param({"10", "100"})
+    public int installs;
+
+    private DescriptorBase<?> descriptor;
+
+    @Setup
+    public void setUp() {
+        ToolAutoDiscoveryModule[] array = new ToolAutoDiscoveryModule[modules];
+        for (int m = 0; m < modules; m++) {
+            List<ToolInstallation> found = new ArrayList<ToolInstallation>();
+            for (int i = 0; i < installs; i++) {
+                String home = (m == 0 || i % 2 == 0) ? "/opt/jdk-" + i : "/opt/module-" + m + "/jdk-" + i;
+                found.add(new JDK("JDK " + i, home));
+            }
+            array[m] = new FixedModule(found);
+        }
+        descriptor = new DescriptorBase<ToolAutoDiscoveryInstaller>(JDK.class, array);
+        descriptor.getToolInstallations();
+    }
+
+    /**
+     * Request served from the cache, as when the configuration page is shown.
+     */
+    @Benchmark
+    public List<ToolInstallation> cached() {
+        return descriptor.getToolInstallations();
+    }
+
+    /**
+     * Full discovery: running the modules concurrently and merging their results without duplicate homes.
+     */
+    @Benchmark
+    public List<ToolInstallation> discover() {
+        return descriptor.discover(JDK.class);
+    }
+
+    private static final class FixedModule extends ToolAutoDiscoveryModule {
+        private final List<ToolInstallation> found;
+
+        FixedModule(List<ToolInstallation> found) {
+            super(null);
+            this.found = Collections.unmodifiableList(found);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+            return toolType == JDK.class;
+        }
+
+        @Override
+        public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+            return found;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting of long Windows PATH values and parsing of ant -version output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AntDiscoveryWindowsBenchmark {
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    private final AntDiscoveryWindows module = new AntDiscoveryWindows(new Environment());
+    private String path;
+    private String[] outputLines;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            // empty entries, as left by careless installers, are part of real PATH values
+            sb.append(i % 10 == 5 ? "" : "C:\\Program Files\\Vendor " + i + "\\bin");
+        }
+        path = sb.toString();
+        outputLines = new String[]{
+                "",
+                "Unable to locate tools.jar. Expected to find it in C:\\Program Files\\Java\\jre1.8.0_202\\lib\\tools.jar",
+                "Apache Ant(TM) version 1.10.12 compiled on October 13 2021",
+        };
+    }
+
+    @Benchmark
+    public List<String> parsePath() {
+        return PathIndex.split(path);
+    }
+
+    @Benchmark
+    public void parseVersion(Blackhole bh) {
+        for (String line : outputLines) {
+            bh.consume(module.parseVersion(line));
+        }
+    }
+}
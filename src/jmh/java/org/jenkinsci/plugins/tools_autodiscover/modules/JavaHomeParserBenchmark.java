@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Parsing of /usr/libexec/java_home -X output, for hosts with few to many registered JVMs. Run with
+ * {@code -prof gc} to see the allocation per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaHomeParserBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int jvms;
+
+    private byte[] plist;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" ");
+        sb.append("\"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n");
+        sb.append("<plist version=\"1.0\">\n<array>\n");
+        for (int i = 0; i < jvms; i++) {
+            sb.append("\t<dict>\n");
+            appendString(sb, "JVMArch", "x86_64");
+            appendString(sb, "JVMBundleID", "com.oracle.java." + i + ".jdk");
+            appendBoolean(sb, "JVMEnabled", true);
+            appendString(sb, "JVMHomePath", "/Library/Java/JavaVirtualMachines/jdk-" + i + ".jdk/Contents/Home");
+            appendBoolean(sb, "JVMIsBuiltIn", false);
+            appendString(sb, "JVMName", "Java SE " + i);
+            appendString(sb, "JVMPlatformVersion", "1." + i);
+            appendString(sb, "JVMVendor", "Oracle Corporation");
+            appendString(sb, "JVMVersion", "1." + i + ".0_" + i);
+            sb.append("\t</dict>\n");
+        }
+        sb.append("</array>\n</plist>\n");
+        plist = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendString(StringBuilder sb, String key, String value) {
+        sb.append("\t\t<key>").append(key).append("</key>\n");
+        sb.append("\t\t<string>").append(value).append("</string>\n");
+    }
+
+    private static void appendBoolean(StringBuilder sb, String key, boolean value) {
+        sb.append("\t\t<key>").append(key).append("</key>\n");
+        sb.append("\t\t<").append(value).append("/>\n");
+    }
+
+    @Benchmark
+    public List<JDKDiscoveryOSX.JVMInfo> parse() throws XMLStreamException {
+        return new JDKDiscoveryOSX.JavaHomeParser(new ByteArrayInputStream(plist)).getJVMInfoList();
+    }
+
+    /**
+     * Entries consumed as they are read, without collecting them.
+     */
+    @Benchmark
+    public void parseStreaming(final Blackhole bh) throws XMLStreamException {
+        JDKDiscoveryOSX.JavaHomeParser.parse(new ByteArrayInputStream(plist), new Consumer<JDKDiscoveryOSX.JVMInfo>() {
+            public void accept(JDKDiscoveryOSX.JVMInfo jvm) {
+                bh.consume(jvm);
+            }
+        });
+    }
+}
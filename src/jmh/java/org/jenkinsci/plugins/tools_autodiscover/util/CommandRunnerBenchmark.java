@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion of command output: splitting it into lines, and the whole path from a finished process to a
+ * CommandResult. The process is simulated, so that process creation does not dominate the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandRunnerBenchmark {
+    private static final List<String> COMMAND = Arrays.asList("mvn", "-v");
+
+    @Param({"1", "100", "1000"})
+    public int lines;
+
+    private byte[] output;
+    private final byte[] buffer = new byte[8192];
+    private CommandRunner runner;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("Apache Maven 3.6.").append(i).append(" (cecedd343002696d0abb50b32b541b8a6ba2883f)\r\n");
+        }
+        output = sb.toString().getBytes(StandardCharsets.UTF_8);
+        runner = new CommandRunner(new Environment() {
+            @Override
+            public Process exec(List<String> command, Map<String, String> environment, File dir) {
+                return new FinishedProcess(output);
+            }
+        });
+    }
+
+    /**
+     * Line splitting alone, fed one pipe buffer at a time.
+     */
+    @Benchmark
+    public List<String> lineCollector() {
+        ProcessPump.LineCollector collector = new ProcessPump.LineCollector(
+                CommandRunner.DEFAULT_MAX_OUTPUT_BYTES, CommandRunner.DEFAULT_MAX_OUTPUT_LINES);
+        for (int offset = 0; offset < output.length; offset += buffer.length) {
+            int length = Math.min(buffer.length, output.length - offset);
+            System.arraycopy(output, offset, buffer, 0, length);
+            collector.feed(buffer, length);
+        }
+        return collector.getLines();
+    }
+
+    /**
+     * A whole run of an already finished process, including the hand-off to the shared reader pool.
+     */
+    @Benchmark
+    public CommandResult run() {
+        return runner.run(COMMAND);
+    }
+
+    /**
+     * A process which has exited, leaving its output in the pipe.
+     */
+    private static final class FinishedProcess extends Process {
+        private final InputStream stdout;
+        private final InputStream stderr = new ByteArrayInputStream(new byte[0]);
+
+        FinishedProcess(byte[] output) {
+            stdout = new ByteArrayInputStream(output);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return stderr;
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+    }
+}
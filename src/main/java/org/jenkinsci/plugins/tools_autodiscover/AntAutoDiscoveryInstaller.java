@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.tools_autodiscover;
 
 import hudson.Extension;
 import hudson.tasks.Ant;
+import org.jenkinsci.plugins.tools_autodiscover.modules.AntDiscoveryLinux;
 import org.jenkinsci.plugins.tools_autodiscover.modules.AntDiscoveryOSX;
 import org.jenkinsci.plugins.tools_autodiscover.modules.AntDiscoveryWindows;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -19,7 +20,8 @@ public class AntAutoDiscoveryInstaller extends ToolAutoDiscoveryInstaller {
     @Extension
     public static class DescriptorImpl extends DescriptorBase<AntAutoDiscoveryInstaller> {
         public DescriptorImpl() {
-            super(Ant.AntInstallation.class, new AntDiscoveryOSX(), new AntDiscoveryWindows());
+            super(Ant.AntInstallation.class, new AntDiscoveryOSX(), new AntDiscoveryWindows(),
+                    new AntDiscoveryLinux());
         }
     }
 }
@@ -0,0 +1,48 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Serves {@link DiscoveryMetrics} of the controller in the Prometheus text format at
+ * {@code /tools-autodiscover-metrics/}, for administrators and scrapers with their credentials. Metrics last sent
+ * by each agent follow those of the controller, with a "node" label.
+ * <p/>
+ * The same metrics are available through JMX as {@value DiscoveryMetrics#OBJECT_NAME}.
+ */
+@Extension
+public class DiscoveryMetricsAction implements RootAction {
+    static final String URL_NAME = "tools-autodiscover-metrics";
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Tool Auto-Discovery Metrics";
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Writes every metric as plain text.
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = rsp.getWriter();
+        writer.write(DiscoveryMetrics.get().toText());
+        writer.flush();
+    }
+}
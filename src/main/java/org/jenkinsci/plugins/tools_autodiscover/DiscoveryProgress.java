@@ -0,0 +1,154 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Installations found so far by a discovery in progress, for the configuration page to show them before the
+ * slowest module completes.
+ * <p/>
+ * Installations are appended in the order modules report them, without duplicate homes as told by
+ * {@link PathIdentity}. Readers poll with the cycle of the discovery and the number of installations they already
+ * have, and wait for more until the discovery is done. Once done, readers get the final merged result instead,
+ * which may be ordered differently and omit installations reported earlier, such as the "jre" directory of another
+ * home.
+ * <p/>
+ * Each discovery has its own cycle, so that a position read from an earlier discovery is not taken as a position
+ * in this one.
+ */
+class DiscoveryProgress {
+    private static final AtomicLong CYCLES = new AtomicLong();
+
+    private final long cycle = CYCLES.incrementAndGet();
+    private final List<ToolInstallation> found = new ArrayList<ToolInstallation>();
+    private final Set<PathIdentity> knownPaths = new HashSet<PathIdentity>();
+    private boolean done;
+    // final merged result, or null if discovery failed
+    private List<ToolInstallation> result;
+
+    /**
+     * Append an installation, unless one with the same home is already known.
+     *
+     * @param installation installation found
+     */
+    void add(ToolInstallation installation) {
+        // resolving the path may touch the file system; do it outside the lock
+        PathIdentity identity = installation.getHome() == null ? null : PathIdentity.of(installation.getHome());
+        synchronized (this) {
+            if (done || !knownPaths.add(identity)) {
+                return;
+            }
+            found.add(installation);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Append installations, unless ones with the same home are already known.
+     *
+     * @param installations installations found
+     */
+    void addAll(List<ToolInstallation> installations) {
+        for (ToolInstallation installation : installations) {
+            add(installation);
+        }
+    }
+
+    /**
+     * Mark the discovery as done. Readers get the final result from now on.
+     *
+     * @param result final result of discovery, or null if it failed, in which case the installations reported so
+     *               far are kept
+     */
+    synchronized void finish(List<ToolInstallation> result) {
+        if (done) {
+            return;
+        }
+        if (result != null) {
+            this.result = new ArrayList<ToolInstallation>(result);
+        }
+        done = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the cycle of this discovery, different from that of every other discovery.
+     */
+    long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Returns whether discovery is done.
+     */
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Waits until installations beyond the first {@code since} ones are found, or discovery is done.
+     *
+     * @param cycle   cycle the caller got its position from; if it is not {@link #getCycle()}, the caller starts
+     *                over from the first installation
+     * @param since   number of installations the caller already has
+     * @param timeout maximum time to wait
+     * @param unit    unit of timeout
+     * @return installations found after the first {@code since} ones, possibly none if the wait timed out; all
+     * the installations of the final result once discovery is done
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized Update await(long cycle, int since, long timeout, TimeUnit unit) throws InterruptedException {
+        if (cycle != this.cycle) {
+            since = 0;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining;
+        while (!done && found.size() <= since && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        if (done) {
+            return new Update(this.cycle, result != null ? result : found, 0, true);
+        }
+        return new Update(this.cycle, found, since, false);
+    }
+
+    /**
+     * Installations found after a given position, or the final result.
+     */
+    static final class Update {
+        /**
+         * Cycle of the discovery the position belongs to.
+         */
+        final long cycle;
+        /**
+         * Installations found after the requested position; when done, all the installations of the final result,
+         * which replace whatever the caller has.
+         */
+        final List<ToolInstallation> installations;
+        /**
+         * Position to poll from next: the number of installations found so far.
+         */
+        final int next;
+        /**
+         * Whether discovery is done, so that nothing more will be found.
+         */
+        final boolean done;
+
+        Update(long cycle, List<ToolInstallation> all, int since, boolean done) {
+            int from = Math.max(0, Math.min(since, all.size()));
+            this.cycle = cycle;
+            this.installations = Collections.unmodifiableList(
+                    new ArrayList<ToolInstallation>(all.subList(from, all.size())));
+            this.next = all.size();
+            this.done = done;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.tools_autodiscover;
 
 import hudson.Extension;
 import hudson.model.JDK;
+import org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryLinux;
 import org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryOSX;
 import org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryWindows;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -19,7 +20,7 @@ public class JDKAutoDiscoveryInstaller extends ToolAutoDiscoveryInstaller {
     @Extension
     public static class DescriptorImpl extends DescriptorBase<JDKAutoDiscoveryInstaller> {
         public DescriptorImpl() {
-            super(JDK.class, new JDKDiscoveryOSX(), new JDKDiscoveryWindows());
+            super(JDK.class, new JDKDiscoveryOSX(), new JDKDiscoveryWindows(), new JDKDiscoveryLinux());
         }
     }
 }
@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.tools_autodiscover;
 
 import hudson.Extension;
 import hudson.tasks.Maven;
+import org.jenkinsci.plugins.tools_autodiscover.modules.MavenDiscoveryLinux;
 import org.jenkinsci.plugins.tools_autodiscover.modules.MavenDiscoveryOSX;
 import org.jenkinsci.plugins.tools_autodiscover.modules.MavenDiscoveryWindows;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -19,7 +20,8 @@ public class MavenAutoDiscoveryInstaller extends ToolAutoDiscoveryInstaller {
     @Extension
     public static class DescriptorImpl extends DescriptorBase<MavenAutoDiscoveryInstaller> {
         public DescriptorImpl() {
-            super(Maven.MavenInstallation.class, new MavenDiscoveryOSX(), new MavenDiscoveryWindows());
+            super(Maven.MavenInstallation.class, new MavenDiscoveryOSX(), new MavenDiscoveryWindows(),
+                    new MavenDiscoveryLinux());
         }
     }
 }
@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.tools.ToolInstallation;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs discovery modules and merges what they find.
+ * <p/>
+ * Used by {@link ToolAutoDiscoveryInstaller.DescriptorBase} on the controller, and by
+ * {@link NodeDiscoveryCallable} on agents, where there is no descriptor. Depends on nothing but the modules, so that
+ * loading it on an agent does not load the descriptor and its caches.
+ */
+final class ModuleRunner {
+    private static final Logger LOGGER = Logger.getLogger(ModuleRunner.class.getName());
+
+    /**
+     * Maximum number of discovery modules running at the same time in this JVM. Can be overridden with the system
+     * property {@code org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.moduleThreads}.
+     */
+    static final int MODULE_THREADS = Integer.getInteger(
+            "org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.moduleThreads",
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    // Shared by all descriptors and node discoveries; runs discovery modules concurrently.
+    private static final ExecutorService moduleExecutor = createModuleExecutor();
+
+    private ModuleRunner() {
+    }
+
+    private static ExecutorService createModuleExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MODULE_THREADS, MODULE_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "ToolAutoDiscovery module"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs every applicable module of the given list concurrently, and merges their results.
+     * <p/>
+     * Discovery takes about as long as the slowest module. Results are merged in module order regardless of
+     * completion order: when two modules report the same home, the one listed first wins. Homes are compared by
+     * {@link PathIdentity}, so symbolic links and differently spelled paths to one directory are the same home. The
+     * "jre" directory of another home is dropped as well.
+     *
+     * @param toolType         class type of ToolInstallation to be found
+     * @param discoveryModules modules to run, in order of preference
+     * @param progress         receives the results of each module as soon as it completes, or null
+     * @return List of ToolInstallation found, without duplicate home paths.
+     * @throws IllegalStateException if interrupted while waiting for the modules; the thread stays interrupted
+     */
+    static List<ToolInstallation> run(final Class<? extends ToolInstallation> toolType,
+                                      List<ToolAutoDiscoveryModule> discoveryModules,
+                                      final DiscoveryProgress progress) {
+        List<FutureTask<List<ToolInstallation>>> results = new ArrayList<FutureTask<List<ToolInstallation>>>();
+        for (final ToolAutoDiscoveryModule module : discoveryModules) {
+            if (!module.isApplicable(toolType)) {
+                continue;
+            }
+            results.add(new FutureTask<List<ToolInstallation>>(new Callable<List<ToolInstallation>>() {
+                public List<ToolInstallation> call() {
+                    DiscoveryEvents.Module event = new DiscoveryEvents.Module();
+                    event.begin();
+                    long start = System.nanoTime();
+                    List<ToolInstallation> found = null;
+                    try {
+                        found = module.getToolInstallations(toolType);
+                    } finally {
+                        int count = found == null ? 0 : found.size();
+                        DiscoveryMetrics.get().recordModule(moduleName(module), System.nanoTime() - start, count);
+                        event.finish(module, toolType, count);
+                    }
+                    if (progress != null) {
+                        progress.addAll(found);
+                    }
+                    return found;
+                }
+            }));
+        }
+
+        // Hand every module but the first to the pool, and run the first one in this thread.
+        for (int i = 1; i < results.size(); i++) {
+            moduleExecutor.execute(results.get(i));
+        }
+        if (!results.isEmpty()) {
+            results.get(0).run();
+        }
+
+        List<ToolInstallation> list = new ArrayList<ToolInstallation>();
+        List<PathIdentity> identities = new ArrayList<PathIdentity>();
+        Set<PathIdentity> knownPaths = new HashSet<PathIdentity>();
+        for (int i = 0; i < results.size(); i++) {
+            List<ToolInstallation> foundTools;
+            try {
+                foundTools = results.get(i).get();
+            } catch (InterruptedException e) {
+                for (FutureTask<List<ToolInstallation>> remaining : results.subList(i, results.size())) {
+                    remaining.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                // a partial merge must not be mistaken for, nor cached as, the full result
+                throw new IllegalStateException("Interrupted while discovering " + toolType.getName(), e);
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Discovery module failed for " + toolType.getName(), e.getCause());
+                continue;
+            }
+
+            // Use HashSet to filter already known paths, compared by identity; for example,
+            // "/test", "//test" and a symbolic link to /test are considered the same.
+            DiscoveryEvents.Dedup dedup = new DiscoveryEvents.Dedup();
+            dedup.begin();
+            int before = list.size();
+            for (ToolInstallation tool : foundTools) {
+                PathIdentity identity = tool.getHome() == null ? null : PathIdentity.of(tool.getHome());
+                if (!knownPaths.add(identity)) {
+                    continue;
+                }
+                identities.add(identity);
+                list.add(tool);
+            }
+            dedup.finish("merge", foundTools.size(), list.size() - before);
+        }
+
+        // A JDK 8 home holds a JRE, which some sources report next to the JDK itself.
+        DiscoveryEvents.Dedup dedup = new DiscoveryEvents.Dedup();
+        dedup.begin();
+        List<ToolInstallation> merged = new ArrayList<ToolInstallation>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            if (!isNestedRuntime(identities.get(i), knownPaths)) {
+                merged.add(list.get(i));
+            }
+        }
+        dedup.finish("nested runtime", list.size(), merged.size());
+        return Collections.unmodifiableList(merged);
+    }
+
+    /**
+     * Tests whether the given home is the "jre" directory of one of the given homes.
+     */
+    static boolean isNestedRuntime(PathIdentity home, Set<PathIdentity> homes) {
+        if (home == null || !"jre".equalsIgnoreCase(home.getName())) {
+            return false;
+        }
+        PathIdentity parent = home.getParent();
+        return parent != null && homes.contains(parent);
+    }
+
+    /**
+     * Returns the name a module is counted under in {@link DiscoveryMetrics}, such as "MavenDiscoveryOSX".
+     */
+    static String moduleName(ToolAutoDiscoveryModule module) {
+        String name = module.getClass().getSimpleName();
+        // generated subclasses, such as proxies
+        int generated = name.indexOf("$$");
+        return generated > 0 ? name.substring(0, generated) : name;
+    }
+}
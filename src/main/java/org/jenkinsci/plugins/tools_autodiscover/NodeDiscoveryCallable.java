@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs discovery modules on the node the callable is sent to, and returns the installations found there.
+ * <p/>
+ * Modules are instantiated on the node through their public no-argument constructor, and kept for later calls so
+ * that their state, such as watched install roots, survives between discoveries.
+ * <p/>
+ * Before running the modules, the callable fingerprints the candidates they enumerate, which only takes directory
+ * listings and stats. When the fingerprint equals the one the controller already knows, nothing is run or sent
+ * back. When the node has already found installations for that fingerprint, such as before the controller
+ * restarted, those are returned without running the modules again.
+ */
+final class NodeDiscoveryCallable extends MasterToSlaveCallable<NodeDiscoveryResult, RuntimeException> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(NodeDiscoveryCallable.class.getName());
+
+    // Modules instantiated in this JVM, by class
+    private static final ConcurrentMap<Class<?>, ToolAutoDiscoveryModule> MODULES =
+            new ConcurrentHashMap<Class<?>, ToolAutoDiscoveryModule>();
+    // Last installations found in this JVM, by tool type; reused while the fingerprint is unchanged
+    private static final ConcurrentMap<Class<?>, NodeDiscoveryResult> LAST_RESULTS =
+            new ConcurrentHashMap<Class<?>, NodeDiscoveryResult>();
+
+    private final Class<? extends ToolInstallation> toolType;
+    private final ArrayList<Class<? extends ToolAutoDiscoveryModule>> moduleTypes;
+    private final String knownFingerprint;
+
+    /**
+     * Build a callable running the given modules.
+     *
+     * @param toolType         class type of ToolInstallation to be found
+     * @param moduleTypes      classes of the discovery modules to run, in order of preference
+     * @param knownFingerprint fingerprint of the installations the controller has cached for the node, or null
+     */
+    NodeDiscoveryCallable(Class<? extends ToolInstallation> toolType,
+                          List<Class<? extends ToolAutoDiscoveryModule>> moduleTypes, String knownFingerprint) {
+        this.toolType = toolType;
+        this.moduleTypes = new ArrayList<Class<? extends ToolAutoDiscoveryModule>>(moduleTypes);
+        this.knownFingerprint = knownFingerprint;
+    }
+
+    public NodeDiscoveryResult call() {
+        List<ToolAutoDiscoveryModule> modules = new ArrayList<ToolAutoDiscoveryModule>();
+        for (Class<? extends ToolAutoDiscoveryModule> moduleType : moduleTypes) {
+            ToolAutoDiscoveryModule module = getModule(moduleType);
+            if (module != null) {
+                modules.add(module);
+            }
+        }
+
+        String fingerprint = fingerprint(toolType, modules);
+        if (fingerprint != null) {
+            if (fingerprint.equals(knownFingerprint)) {
+                return withMetrics(new NodeDiscoveryResult(fingerprint, null));
+            }
+            NodeDiscoveryResult last = LAST_RESULTS.get(toolType);
+            if (last != null && fingerprint.equals(last.getFingerprint())) {
+                return withMetrics(last);
+            }
+        }
+
+        NodeDiscoveryResult result = new NodeDiscoveryResult(fingerprint,
+                new ArrayList<ToolInstallation>(ModuleRunner.run(toolType, modules, null)));
+        if (fingerprint != null) {
+            LAST_RESULTS.put(toolType, result);
+        } else {
+            LAST_RESULTS.remove(toolType);
+        }
+        return withMetrics(result);
+    }
+
+    /**
+     * Attach the metrics of this JVM, taken after discovery, so that the controller can show them per node.
+     */
+    private static NodeDiscoveryResult withMetrics(NodeDiscoveryResult result) {
+        return result.withMetrics(DiscoveryMetrics.get().snapshot());
+    }
+
+    /**
+     * Returns the fingerprint sent by the controller.
+     *
+     * @return fingerprint of the cached inventory, or null
+     */
+    String getKnownFingerprint() {
+        return knownFingerprint;
+    }
+
+    /**
+     * Fingerprints the candidates of every applicable module: their locations and modification times, and those of
+     * the files their versions are read from.
+     *
+     * @return hex digest, or null if a module cannot enumerate its candidates
+     */
+    static String fingerprint(Class<? extends ToolInstallation> toolType, List<ToolAutoDiscoveryModule> modules) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        Charset utf8 = Charset.forName("UTF-8");
+        for (ToolAutoDiscoveryModule module : modules) {
+            if (!module.isApplicable(toolType)) {
+                continue;
+            }
+            Iterable<String> candidates = module.getCandidates(toolType);
+            if (candidates == null) {
+                return null;
+            }
+            digest.update(module.getClass().getName().getBytes(utf8));
+            for (String candidate : candidates) {
+                digest.update(("\n" + candidate + '\0' + new File(candidate).lastModified()).getBytes(utf8));
+                // an installation upgraded in place keeps its location, but not its version files
+                for (String file : module.getVersionFiles(candidate)) {
+                    digest.update(("\t" + file + '\0' + new File(file).lastModified()).getBytes(utf8));
+                }
+            }
+            digest.update((byte) 0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Forget the installations remembered in this JVM.
+     */
+    static void clearLastResults() {
+        LAST_RESULTS.clear();
+    }
+
+    private static ToolAutoDiscoveryModule getModule(Class<? extends ToolAutoDiscoveryModule> moduleType) {
+        ToolAutoDiscoveryModule module = MODULES.get(moduleType);
+        if (module != null) {
+            return module;
+        }
+        try {
+            module = moduleType.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Cannot instantiate discovery module " + moduleType.getName(), e);
+            return null;
+        }
+        ToolAutoDiscoveryModule existing = MODULES.putIfAbsent(moduleType, module);
+        return existing != null ? existing : module;
+    }
+}
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.tools.ToolInstaller;
+import hudson.tools.ToolInstallerDescriptor;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.DescriptorBase;
+
+import java.util.Collections;
+
+/**
+ * Discovers tools on agents as they connect, so that builds find the agent inventory already cached.
+ * <p/>
+ * Discoveries are spread and bounded by {@link NodeDiscoveryScheduler}. Can be disabled with the system property
+ * {@code org.jenkinsci.plugins.tools_autodiscover.NodeDiscoveryListener.disabled}.
+ */
+@Extension
+public class NodeDiscoveryListener extends ComputerListener {
+    static final boolean DISABLED = Boolean.getBoolean(NodeDiscoveryListener.class.getName() + ".disabled");
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        if (DISABLED) {
+            return;
+        }
+        final Node node = c.getNode();
+        if (node == null || node instanceof Jenkins) {
+            return;
+        }
+        NodeDiscoveryScheduler.get().schedule(node.getNodeName(), new Runnable() {
+            public void run() {
+                discover(node);
+            }
+        });
+    }
+
+    /**
+     * Run discovery of every tool type on the node.
+     */
+    static void discover(Node node) {
+        for (ToolInstallerDescriptor<?> descriptor : ToolInstaller.all()) {
+            if (!(descriptor instanceof DescriptorBase)) {
+                continue;
+            }
+            try {
+                ((DescriptorBase<?>) descriptor).discoverOnNodes(Collections.singletonList(node));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Answer of {@link NodeDiscoveryCallable}: the installations found on a node, with the fingerprint of the install
+ * locations they were found in, and the discovery metrics of the node.
+ */
+final class NodeDiscoveryResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String fingerprint;
+    private final ArrayList<ToolInstallation> installations;
+    private final DiscoveryMetrics.Snapshot metrics;
+
+    /**
+     * Construct a result without metrics.
+     *
+     * @param fingerprint   fingerprint of the install locations, or null if the modules cannot enumerate them
+     * @param installations installations found, or null if the fingerprint matched the one already known
+     */
+    NodeDiscoveryResult(String fingerprint, ArrayList<ToolInstallation> installations) {
+        this(fingerprint, installations, null);
+    }
+
+    private NodeDiscoveryResult(String fingerprint, ArrayList<ToolInstallation> installations,
+                                DiscoveryMetrics.Snapshot metrics) {
+        this.fingerprint = fingerprint;
+        this.installations = installations;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the same result with the given metrics of the node.
+     *
+     * @param metrics metrics of the node when answering
+     * @return new result
+     */
+    NodeDiscoveryResult withMetrics(DiscoveryMetrics.Snapshot metrics) {
+        return new NodeDiscoveryResult(fingerprint, installations, metrics);
+    }
+
+    /**
+     * Returns the discovery metrics of the node when it answered.
+     *
+     * @return metrics, or null if not sent
+     */
+    DiscoveryMetrics.Snapshot getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the fingerprint of the install locations on the node.
+     *
+     * @return fingerprint, or null if unavailable
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Tests whether the node reported no change since the known fingerprint, without sending installations.
+     */
+    boolean isUnchanged() {
+        return installations == null;
+    }
+
+    /**
+     * Returns the installations found on the node.
+     *
+     * @return installations, or null if {@link #isUnchanged()}
+     */
+    ArrayList<ToolInstallation> getInstallations() {
+        return installations;
+    }
+}
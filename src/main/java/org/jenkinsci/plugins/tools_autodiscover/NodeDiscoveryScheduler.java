@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spreads the discoveries triggered by agents connecting, and bounds how many nodes are inspected at once.
+ * <p/>
+ * When the controller restarts, hundreds of agents may reconnect within seconds. Each discovery is delayed by a
+ * random jitter, and runs on a pool of a fixed number of threads. A node which reconnects while its discovery is
+ * still waiting is not scheduled twice.
+ * <p/>
+ * Every request sent to a node, whether from a connecting agent, a build, a background refresh or a rescan, holds
+ * one of a fixed number of slots until it is answered, so that no more than that many nodes are being inspected at
+ * any time.
+ */
+class NodeDiscoveryScheduler {
+    private static final Logger LOGGER = Logger.getLogger(NodeDiscoveryScheduler.class.getName());
+
+    /**
+     * Maximum delay before discovering tools on an agent which connected, in milliseconds. Can be overridden with
+     * the system property {@code org.jenkinsci.plugins.tools_autodiscover.NodeDiscoveryScheduler.maxJitter}.
+     */
+    static final long DEFAULT_MAX_JITTER = Long.getLong(NodeDiscoveryScheduler.class.getName() + ".maxJitter", 30000);
+
+    /**
+     * Maximum number of agents inspected at the same time. Can be overridden with the system property
+     * {@code org.jenkinsci.plugins.tools_autodiscover.NodeDiscoveryScheduler.maxConcurrent}.
+     */
+    static final int DEFAULT_MAX_CONCURRENT =
+            Integer.getInteger(NodeDiscoveryScheduler.class.getName() + ".maxConcurrent", 4);
+
+    private static final NodeDiscoveryScheduler INSTANCE =
+            new NodeDiscoveryScheduler(DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_JITTER, new Random());
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final long maxJitterMillis;
+    private final Random random;
+    // nodes whose discovery is scheduled but not started yet
+    private final ConcurrentMap<String, Boolean> waiting = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Build a scheduler.
+     *
+     * @param maxConcurrent   maximum number of discoveries running at the same time
+     * @param maxJitterMillis maximum random delay before each discovery, in milliseconds
+     * @param random          source of the delays
+     */
+    NodeDiscoveryScheduler(int maxConcurrent, long maxJitterMillis, Random random) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.executor = new ScheduledThreadPoolExecutor(maxConcurrent,
+                new NamingThreadFactory(new DaemonThreadFactory(), "ToolAutoDiscovery node discovery"));
+        this.executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxJitterMillis = maxJitterMillis;
+        this.random = random;
+    }
+
+    /**
+     * Returns the scheduler shared by all descriptors.
+     */
+    static NodeDiscoveryScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedule discovery on a node after a random delay.
+     *
+     * @param nodeName  name of the node
+     * @param discovery discovery to run
+     * @return true if scheduled; false if a discovery of the node is already waiting
+     */
+    boolean schedule(final String nodeName, final Runnable discovery) {
+        if (waiting.putIfAbsent(nodeName, Boolean.TRUE) != null) {
+            return false;
+        }
+        long delay = maxJitterMillis > 0 ? (long) (random.nextDouble() * maxJitterMillis) : 0;
+        executor.schedule(new Runnable() {
+            public void run() {
+                waiting.remove(nodeName);
+                try {
+                    discovery.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Tool discovery failed on " + nodeName, e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Take a slot for a request to a node, waiting for one to be released if all are held.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of timeout
+     * @return true if a slot was taken, to be given back with {@link #releaseSlot()}; false if none was in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean acquireSlot(long timeout, TimeUnit unit) throws InterruptedException {
+        return slots.tryAcquire(timeout, unit);
+    }
+
+    /**
+     * Take a slot for a request to a node, waiting as long as it takes for one to be released.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquireSlot() throws InterruptedException {
+        slots.acquire();
+    }
+
+    /**
+     * Give back a slot once the request holding it is answered, failed or cancelled.
+     */
+    void releaseSlot() {
+        slots.release();
+    }
+
+    /**
+     * Returns the number of nodes whose discovery is scheduled but not started yet.
+     */
+    int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Stop running discoveries. Used by tests.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
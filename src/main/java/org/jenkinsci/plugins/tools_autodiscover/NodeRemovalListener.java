@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.tools.ToolInstaller;
+import hudson.tools.ToolInstallerDescriptor;
+import jenkins.model.NodeListener;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.DescriptorBase;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+
+/**
+ * Drops the cached inventory and the discovery metrics of agents which are deleted or renamed, so that the per-node
+ * caches do not outgrow the set of agents.
+ */
+@Extension
+public class NodeRemovalListener extends NodeListener {
+    @Override
+    protected void onDeleted(Node node) {
+        forget(node.getNodeName());
+    }
+
+    @Override
+    protected void onUpdated(Node oldOne, Node newOne) {
+        if (!oldOne.getNodeName().equals(newOne.getNodeName())) {
+            forget(oldOne.getNodeName());
+        }
+    }
+
+    /**
+     * Drop the cached inventory of the node from every descriptor, and its metrics.
+     */
+    static void forget(String nodeName) {
+        DiscoveryMetrics.get().forgetNode(nodeName);
+        for (ToolInstallerDescriptor<?> descriptor : ToolInstaller.all()) {
+            if (descriptor instanceof DescriptorBase) {
+                ((DescriptorBase<?>) descriptor).invalidateToolInstallations(nodeName);
+            }
+        }
+    }
+}
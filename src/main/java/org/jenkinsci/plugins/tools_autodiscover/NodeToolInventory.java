@@ -0,0 +1,286 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.Node;
+import hudson.remoting.Future;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tool installations discovered on each agent, cached per node.
+ * <p/>
+ * Discovery runs on the agent itself through {@link NodeDiscoveryCallable}, so reported homes are paths on that
+ * agent. Each node has its own {@link ToolInventoryCache}, so a cached inventory is served without a round trip
+ * and refreshed in the background once stale. {@link #discover(Collection, long, TimeUnit)} fans out to many nodes
+ * at once: requests are sent without awaiting earlier answers, as long as {@link NodeDiscoveryScheduler} has a slot
+ * free.
+ * <p/>
+ * Every request to a node holds a slot of the scheduler until it is answered, so that builds, background refreshes
+ * and rescans are bounded together with the discoveries of connecting agents.
+ * <p/>
+ * Each request carries the fingerprint of the node's cached inventory, so that a node whose install locations are
+ * unchanged answers without running its modules. Each answer carries the discovery metrics of the node, which are
+ * kept in {@link DiscoveryMetrics} of the controller under the node name.
+ */
+class NodeToolInventory {
+    private static final Logger LOGGER = Logger.getLogger(NodeToolInventory.class.getName());
+
+    private final Class<? extends ToolInstallation> toolType;
+    private final List<Class<? extends ToolAutoDiscoveryModule>> moduleTypes;
+    private final Executor refreshExecutor;
+    private final NodeDiscoveryScheduler scheduler;
+    private final ConcurrentMap<String, NodeEntry> entries = new ConcurrentHashMap<String, NodeEntry>();
+    private volatile long ttlNanos;
+
+    /**
+     * Construct an empty inventory.
+     *
+     * @param toolType        class type of ToolInstallation to be found
+     * @param moduleTypes     classes of the discovery modules to run on each node, in order of preference
+     * @param ttl             time-to-live of each node's inventory
+     * @param unit            unit of ttl
+     * @param refreshExecutor executor running background refreshes of stale inventories
+     * @param scheduler       scheduler whose slots bound the requests sent to nodes
+     */
+    NodeToolInventory(Class<? extends ToolInstallation> toolType,
+                      List<Class<? extends ToolAutoDiscoveryModule>> moduleTypes,
+                      long ttl, TimeUnit unit, Executor refreshExecutor, NodeDiscoveryScheduler scheduler) {
+        this.toolType = toolType;
+        this.moduleTypes = new ArrayList<Class<? extends ToolAutoDiscoveryModule>>(moduleTypes);
+        this.refreshExecutor = refreshExecutor;
+        this.scheduler = scheduler;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the installations found on the given node, running discovery there if nothing is cached yet.
+     *
+     * @param node node to look at
+     * @return List of installations, with homes on that node
+     * @throws IllegalStateException if discovery could not be run, such as when the node is offline
+     */
+    List<ToolInstallation> get(Node node) {
+        return getEntry(node).cache.get(toolType);
+    }
+
+    /**
+     * Returns the installations found on the given node without running discovery.
+     *
+     * @param node node to look at
+     * @return cached List of installations, possibly stale, or null if the node has not been inspected yet
+     */
+    List<ToolInstallation> getIfPresent(Node node) {
+        NodeEntry entry = entries.get(node.getNodeName());
+        return entry == null ? null : entry.cache.getIfPresent(toolType);
+    }
+
+    /**
+     * Run discovery on the given nodes at once, and cache what each of them reports. Offline nodes are skipped.
+     *
+     * @param nodes   nodes to inspect
+     * @param timeout maximum time to wait for all the nodes
+     * @param unit    unit of timeout
+     * @return number of nodes which reported their installations in time
+     * @throws InterruptedException if interrupted while waiting; outstanding requests are cancelled
+     */
+    int discover(Collection<? extends Node> nodes, long timeout, TimeUnit unit) throws InterruptedException {
+        // requests in flight, each holding a slot of the scheduler
+        Map<NodeEntry, Future<NodeDiscoveryResult>> requests = new LinkedHashMap<NodeEntry, Future<NodeDiscoveryResult>>();
+        int done = 0;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Node node : nodes) {
+                VirtualChannel channel = node.getChannel();
+                if (channel == null) {
+                    continue;
+                }
+                if (deadline - System.nanoTime() <= 0) {
+                    LOGGER.log(Level.WARNING, "Tool discovery timed out before inspecting {0}", node.getNodeName());
+                    continue;
+                }
+                // with every slot held, the oldest of our own answers is the first one we can free
+                while (!scheduler.acquireSlot(0, TimeUnit.NANOSECONDS)) {
+                    if (!requests.isEmpty()) {
+                        done += await(requests, requests.keySet().iterator().next(), deadline);
+                    } else if (scheduler.acquireSlot(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                        break;
+                    } else {
+                        LOGGER.log(Level.WARNING, "Tool discovery timed out waiting to inspect {0}",
+                                node.getNodeName());
+                        return done;
+                    }
+                }
+                NodeEntry entry = getEntry(node);
+                try {
+                    requests.put(entry, channel.callAsync(newCallable(entry)));
+                } catch (IOException e) {
+                    scheduler.releaseSlot();
+                    LOGGER.log(Level.FINE, "Failed to start tool discovery on " + node.getNodeName(), e);
+                }
+            }
+            while (!requests.isEmpty()) {
+                done += await(requests, requests.keySet().iterator().next(), deadline);
+            }
+            return done;
+        } finally {
+            // interrupted: outstanding requests are cancelled
+            for (Future<NodeDiscoveryResult> future : requests.values()) {
+                future.cancel(true);
+                scheduler.releaseSlot();
+            }
+        }
+    }
+
+    /**
+     * Wait for the answer to one request until the deadline, cache it, and give back its slot.
+     *
+     * @return 1 if the node answered in time, otherwise 0
+     */
+    private int await(Map<NodeEntry, Future<NodeDiscoveryResult>> requests, NodeEntry entry, long deadline)
+            throws InterruptedException {
+        Future<NodeDiscoveryResult> request = requests.get(entry);
+        String nodeName = entry.node.getNodeName();
+        try {
+            NodeDiscoveryResult result = request.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            entry.cache.put(toolType, apply(entry, result));
+            return 1;
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Tool discovery failed on " + nodeName, e.getCause());
+        } catch (TimeoutException e) {
+            LOGGER.log(Level.WARNING, "Tool discovery timed out on {0}", nodeName);
+            request.cancel(true);
+        } finally {
+            // left in place when interrupted, for the caller to cancel
+            if (request.isDone()) {
+                requests.remove(entry);
+                scheduler.releaseSlot();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Drops every cached inventory.
+     */
+    void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * Drops the cached inventory of the given node.
+     *
+     * @param nodeName name of the node
+     */
+    void invalidate(String nodeName) {
+        entries.remove(nodeName);
+    }
+
+    /**
+     * Change the time-to-live of cached inventories.
+     *
+     * @param ttl  time-to-live
+     * @param unit unit of ttl
+     */
+    void setTtl(long ttl, TimeUnit unit) {
+        ttlNanos = unit.toNanos(ttl);
+        for (NodeEntry entry : entries.values()) {
+            entry.cache.setTtl(ttl, unit);
+        }
+    }
+
+    private NodeDiscoveryCallable newCallable(NodeEntry entry) {
+        // only offer the fingerprint when there is something cached to fall back on
+        String known = entry.cache.getIfPresent(toolType) != null ? entry.fingerprint : null;
+        return new NodeDiscoveryCallable(toolType, moduleTypes, known);
+    }
+
+    /**
+     * Record the answer of a node.
+     *
+     * @return installations of the node, which are the cached ones if the node reported no change
+     */
+    private List<ToolInstallation> apply(NodeEntry entry, NodeDiscoveryResult result) {
+        entry.fingerprint = result.getFingerprint();
+        if (result.getMetrics() != null) {
+            DiscoveryMetrics.get().recordNode(entry.node.getNodeName(), result.getMetrics());
+        }
+        if (result.isUnchanged()) {
+            List<ToolInstallation> cached = entry.cache.getIfPresent(toolType);
+            return cached != null ? cached : Collections.<ToolInstallation>emptyList();
+        }
+        return Collections.unmodifiableList(result.getInstallations());
+    }
+
+    private NodeEntry getEntry(Node node) {
+        NodeEntry entry = entries.get(node.getNodeName());
+        if (entry == null) {
+            NodeEntry created = new NodeEntry(node);
+            entry = entries.putIfAbsent(node.getNodeName(), created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        // Node objects are replaced when the agent is reconfigured; talk to the current one
+        entry.node = node;
+        return entry;
+    }
+
+    /**
+     * Cached inventory of a single node.
+     */
+    private final class NodeEntry {
+        private volatile Node node;
+        // fingerprint of the install locations the cached inventory was found in
+        private volatile String fingerprint;
+        private final ToolInventoryCache cache;
+
+        NodeEntry(Node node) {
+            this.node = node;
+            this.cache = new ToolInventoryCache(new ToolInventoryCache.Loader() {
+                public List<ToolInstallation> load(Class<? extends ToolInstallation> type) {
+                    return discover(NodeEntry.this);
+                }
+            }, ttlNanos, TimeUnit.NANOSECONDS, refreshExecutor);
+        }
+    }
+
+    /**
+     * Run discovery on a single node and wait for the answer.
+     */
+    private List<ToolInstallation> discover(NodeEntry entry) {
+        Node node = entry.node;
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            throw new IllegalStateException(node.getNodeName() + " is offline");
+        }
+        try {
+            scheduler.acquireSlot();
+            try {
+                return apply(entry, channel.call(newCallable(entry)));
+            } finally {
+                scheduler.releaseSlot();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to run tool discovery on " + node.getNodeName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running tool discovery on " + node.getNodeName(), e);
+        }
+    }
+}
@@ -1,17 +1,34 @@
 package org.jenkinsci.plugins.tools_autodiscover;
 
+import hudson.AbortException;
 import hudson.FilePath;
 import hudson.model.Node;
 import hudson.model.TaskListener;
 import hudson.tools.ToolInstallation;
 import hudson.tools.ToolInstaller;
 import hudson.tools.ToolInstallerDescriptor;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+import org.jenkinsci.plugins.tools_autodiscover.util.ProbeCache;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Base class for ToolInstaller objects using ToolAutoDiscoveryModule.
@@ -19,6 +36,9 @@ import java.util.*;
  * Rather than actually installing the tool, performInstallation() simply returns
  * the known path of the existing tool. {@link DescriptorBase} is responsible for actual
  * discovery process.
+ * <p/>
+ * On agents, the path is taken from the installations discovered on the agent itself: the one with the same home,
+ * or else the one with the same name as the selected controller installation.
  */
 @SuppressWarnings("unchecked")
 public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
@@ -31,7 +51,7 @@ public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
      */
     @DataBoundConstructor
     public ToolAutoDiscoveryInstaller(String toolHome) {
-        super(""); // only allow master node for installation
+        super(""); // applies to every node; the home is resolved per node
         this.toolHome = toolHome;
     }
 
@@ -44,7 +64,19 @@ public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
 
     @Override
     public FilePath performInstallation(ToolInstallation toolInstallation, Node node, TaskListener taskListener) throws IOException, InterruptedException {
-        return new FilePath(new File(toolHome));
+        if (node == null || node instanceof Jenkins) {
+            return new FilePath(new File(toolHome));
+        }
+        String home = getDescriptor().resolveHome(toolHome, node);
+        if (home == null) {
+            throw new AbortException("No installation matching " + toolHome + " was discovered on "
+                    + node.getNodeName());
+        }
+        FilePath path = node.createPath(home);
+        if (path == null) {
+            throw new AbortException(node.getNodeName() + " is offline");
+        }
+        return path;
     }
 
     // Overridden for better type safety.
@@ -62,8 +94,44 @@ public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
      * then fix it with Jenkins @Extension annotation for automatic discovery.
      */
     public static class DescriptorBase<T extends ToolAutoDiscoveryInstaller> extends ToolInstallerDescriptor<T> {
+        /**
+         * Default time-to-live of discovery results, in seconds. Can be overridden with the
+         * system property {@code org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.cacheTtl}.
+         */
+        public static final long DEFAULT_CACHE_TTL =
+                Long.getLong(ToolAutoDiscoveryInstaller.class.getName() + ".cacheTtl", 300);
+
+        /**
+         * Maximum number of discovery modules running at the same time, across all descriptors. Can be overridden
+         * with the system property
+         * {@code org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.moduleThreads}.
+         */
+        public static final int MODULE_THREADS = ModuleRunner.MODULE_THREADS;
+
+        /**
+         * Maximum time to wait for agents to report their installations, in seconds. Can be overridden with the
+         * system property {@code org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.nodeTimeout}.
+         */
+        public static final long NODE_TIMEOUT =
+                Long.getLong(ToolAutoDiscoveryInstaller.class.getName() + ".nodeTimeout", 60);
+
+        /**
+         * Maximum time a request for discovery progress waits for new installations, in seconds.
+         */
+        static final long POLL_TIMEOUT = 20;
+
+        private static final Logger LOGGER = Logger.getLogger(ToolAutoDiscoveryInstaller.class.getName());
+
+        // Shared by all descriptors; runs background refreshes of stale discovery results.
+        private static final ExecutorService refreshExecutor = Executors.newCachedThreadPool(
+                new NamingThreadFactory(new DaemonThreadFactory(), "ToolAutoDiscovery refresh"));
+
         private List<ToolAutoDiscoveryModule> discoveryModules;
         protected transient Class<? extends ToolInstallation> toolType;
+        private final transient ToolInventoryCache inventory;
+        private final transient NodeToolInventory nodeInventory;
+        // Installations found by the discovery in progress on the controller, or by the last one
+        private transient volatile DiscoveryProgress progress;
 
         /**
          * Construct Descriptor for given tool type and discovery modules.
@@ -75,29 +143,337 @@ public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
                               ToolAutoDiscoveryModule... discoveryModules) {
             this.toolType = toolType;
             this.discoveryModules = new ArrayList<ToolAutoDiscoveryModule>(Arrays.asList(discoveryModules));
+            this.inventory = new ToolInventoryCache(new ToolInventoryCache.Loader() {
+                public List<ToolInstallation> load(Class<? extends ToolInstallation> type) {
+                    return discover(type);
+                }
+            }, DEFAULT_CACHE_TTL, TimeUnit.SECONDS, refreshExecutor);
+            List<Class<? extends ToolAutoDiscoveryModule>> moduleTypes =
+                    new ArrayList<Class<? extends ToolAutoDiscoveryModule>>();
+            for (ToolAutoDiscoveryModule module : this.discoveryModules) {
+                moduleTypes.add(module.getClass());
+            }
+            this.nodeInventory = new NodeToolInventory(toolType, moduleTypes, DEFAULT_CACHE_TTL, TimeUnit.SECONDS,
+                    refreshExecutor, NodeDiscoveryScheduler.get());
+
+            // Modules watching their install roots report changes; discard the stale results right away.
+            ToolAutoDiscoveryModule.ChangeListener listener = new ToolAutoDiscoveryModule.ChangeListener() {
+                public void changed(ToolAutoDiscoveryModule module, Class<? extends ToolInstallation> type) {
+                    inventory.invalidate(type);
+                }
+            };
+            // Modules probing one installation at a time report each of them before they complete.
+            ToolAutoDiscoveryModule.InstallationListener found = new ToolAutoDiscoveryModule.InstallationListener() {
+                public void found(ToolAutoDiscoveryModule module, ToolInstallation installation) {
+                    DiscoveryProgress current = progress;
+                    if (current != null && DescriptorBase.this.toolType.isInstance(installation)) {
+                        current.add(installation);
+                    }
+                }
+            };
+            for (ToolAutoDiscoveryModule module : this.discoveryModules) {
+                module.addChangeListener(listener);
+                module.addInstallationListener(found);
+            }
         }
 
+        /**
+         * Returns ToolInstallation instances of given type, served from the discovery cache.
+         * <p/>
+         * Discovery runs only if nothing is cached for the type yet. Results older than
+         * {@link #getCacheTtl()} seconds are still returned, while fresh results are gathered in the background.
+         *
+         * @param toolType class type of ToolInstallation to be found
+         * @return List of ToolInstallation found.
+         */
         protected List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
-            List<ToolInstallation> list = new ArrayList<ToolInstallation>();
-            Set<String> knownPaths = new HashSet<String>();
-            for (ToolAutoDiscoveryModule module : discoveryModules) {
-                if (!module.isApplicable(toolType)) {
-                    continue;
+            long start = System.nanoTime();
+            boolean cached = inventory.getIfPresent(toolType) != null;
+            try {
+                return inventory.get(toolType);
+            } finally {
+                DiscoveryMetrics.get().recordInstallations(toolType.getSimpleName(), System.nanoTime() - start,
+                        cached);
+            }
+        }
+
+        /**
+         * Runs every applicable discovery module, bypassing the cache.
+         * <p/>
+         * Modules run concurrently, so discovery takes about as long as the slowest module. Results are merged in
+         * module order regardless of completion order: when two modules report the same home, the one registered
+         * first wins. Homes are compared by {@link PathIdentity}, so symbolic links and differently spelled paths to
+         * one directory are the same home. The "jre" directory of another home is dropped as well.
+         * <p/>
+         * While modules run, installations of the tool type of this descriptor are reported to
+         * {@link #doInstallations(StaplerRequest, StaplerResponse)} as each module finds them.
+         *
+         * @param toolType class type of ToolInstallation to be found
+         * @return List of ToolInstallation found, without duplicate home paths.
+         */
+        protected List<ToolInstallation> discover(Class<? extends ToolInstallation> toolType) {
+            if (toolType != this.toolType) {
+                return ModuleRunner.run(toolType, discoveryModules, null);
+            }
+            DiscoveryProgress current = startProgress();
+            List<ToolInstallation> result = null;
+            try {
+                result = ModuleRunner.run(toolType, discoveryModules, current);
+                return result;
+            } finally {
+                current.finish(result);
+            }
+        }
+
+        /**
+         * Returns the progress of the discovery running on the controller, starting to record a new one if the
+         * last one is done.
+         */
+        private synchronized DiscoveryProgress startProgress() {
+            if (progress == null || progress.isDone()) {
+                progress = new DiscoveryProgress();
+            }
+            return progress;
+        }
+
+        /**
+         * Discards cached discovery results. The next request for installations runs discovery again.
+         */
+        public void invalidateToolInstallations() {
+            inventory.invalidate();
+            nodeInventory.invalidate();
+        }
+
+        /**
+         * Discards the cached discovery results of the given agent, such as when it was deleted.
+         *
+         * @param nodeName name of the agent
+         */
+        public void invalidateToolInstallations(String nodeName) {
+            nodeInventory.invalidate(nodeName);
+        }
+
+        /**
+         * Returns ToolInstallation instances found on the given node, with homes on that node.
+         * <p/>
+         * The inventory of an agent is discovered on the agent itself on first request, then served from a cache
+         * like that of the controller.
+         *
+         * @param node node to look at; null or the Jenkins instance denote the controller
+         * @return List of ToolInstallation found.
+         * @throws IllegalStateException if discovery could not be run on the node, such as when it is offline
+         */
+        public List<ToolInstallation> getToolInstallations(Node node) {
+            if (node == null || node instanceof Jenkins) {
+                return getToolInstallations();
+            }
+            return nodeInventory.get(node);
+        }
+
+        /**
+         * Runs discovery on the given agents at once, and caches what each of them reports.
+         *
+         * @param nodes agents to inspect; offline ones are skipped
+         * @return number of agents which reported their installations within {@link #NODE_TIMEOUT} seconds
+         * @throws InterruptedException if interrupted while waiting for the agents
+         */
+        public int discoverOnNodes(Collection<? extends Node> nodes) throws InterruptedException {
+            return nodeInventory.discover(nodes, NODE_TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Finds the home of the installation on the given agent matching an installation of the controller.
+         * <p/>
+         * An installation with the same home is preferred, as on homogeneous agents. Otherwise the installation
+         * with the same name as the controller installation at {@code toolHome} is used, such as the same JDK
+         * version installed elsewhere.
+         *
+         * @param toolHome home of the installation on the controller
+         * @param node     agent the installation is needed on
+         * @return home on the agent, or null if no matching installation was discovered there
+         */
+        String resolveHome(String toolHome, Node node) {
+            List<ToolInstallation> found;
+            try {
+                found = getToolInstallations(node);
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.WARNING, "Cannot discover installations on " + node.getNodeName(), e);
+                return null;
+            }
+            for (ToolInstallation tool : found) {
+                if (toolHome.equals(tool.getHome())) {
+                    return tool.getHome();
+                }
+            }
+
+            String name = null;
+            for (ToolInstallation tool : getToolInstallations()) {
+                if (toolHome.equals(tool.getHome())) {
+                    name = tool.getName();
+                    break;
+                }
+            }
+            if (name == null) {
+                return null;
+            }
+            for (ToolInstallation tool : found) {
+                if (name.equals(tool.getName())) {
+                    return tool.getHome();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the time-to-live of cached discovery results.
+         *
+         * @return time-to-live in seconds
+         */
+        public long getCacheTtl() {
+            return inventory.getTtl(TimeUnit.SECONDS);
+        }
+
+        /**
+         * Sets the time-to-live of cached discovery results.
+         *
+         * @param seconds time-to-live in seconds; 0 refreshes the results in the background on every request
+         */
+        public void setCacheTtl(long seconds) {
+            inventory.setTtl(seconds, TimeUnit.SECONDS);
+            nodeInventory.setTtl(seconds, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Handles the "Rescan" button on the configuration page. Discards cached results, including probe results
+         * persisted across restarts, and starts discovery again on the controller and every online agent.
+         * <p/>
+         * Discovery runs in the background, so that the request does not wait for the slowest agent. The returned
+         * message tells the configuration page to follow the controller discovery through
+         * {@link #doInstallations(StaplerRequest, StaplerResponse)}.
+         *
+         * @return FormValidation reporting that discovery was started
+         */
+        @RequirePOST
+        public FormValidation doRescan() {
+            Jenkins jenkins = Jenkins.getInstance();
+            jenkins.checkPermission(Jenkins.ADMINISTER);
+            ProbeCache.get().clear();
+            invalidateToolInstallations();
+            awaitProgress();
+            final List<Node> nodes = new ArrayList<Node>(jenkins.getNodes());
+            refreshExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        discoverOnNodes(nodes);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
+            });
+            // config.js restarts polling for installations when this element is shown
+            return FormValidation.okWithMarkup("<span class='tools-autodiscover-rescan'>Rescanning "
+                    + nodes.size() + " agent(s) and this controller. The list is updated as installations are found."
+                    + "</span>");
+        }
+
+        /**
+         * Serves the installations found on the controller as JSON, for the configuration page to fill its
+         * dropdown once the page is shown, instead of waiting for discovery while rendering it.
+         * <p/>
+         * The response is an object with an "installations" array of objects with "name" and "home", "cycle",
+         * "next" and "done". The page polls with the "cycle" and "since" parameters set to the last "cycle" and
+         * "next" until "done" is true. Cached results are served at once. Otherwise discovery is started if needed,
+         * and each request waits up to {@link #POLL_TIMEOUT} seconds for installations beyond the first "since"
+         * ones, so that the dropdown grows as modules find them instead of waiting for the slowest one.
+         * <p/>
+         * A "cycle" other than that of the discovery in progress, such as one from before a rescan, starts over from
+         * the first installation; the page then drops what it has. Once "done", "installations" is the whole final
+         * result, which replaces the installations shown while modules were running.
+         */
+        public void doInstallations(StaplerRequest req, StaplerResponse rsp) throws IOException, InterruptedException {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            long cycle = 0;
+            int since = 0;
+            try {
+                String cycleParameter = req.getParameter("cycle");
+                String sinceParameter = req.getParameter("since");
+                if (cycleParameter != null && sinceParameter != null) {
+                    cycle = Long.parseLong(cycleParameter);
+                    since = Integer.parseInt(sinceParameter);
+                }
+            } catch (NumberFormatException e) {
+                // start over
+                cycle = 0;
+                since = 0;
+            }
+
+            DiscoveryProgress.Update update;
+            List<ToolInstallation> cached = inventory.getIfPresent(toolType);
+            if (cached != null) {
+                // refreshes stale results in the background
+                getToolInstallations();
+                update = new DiscoveryProgress.Update(0, cached, 0, true);
+            } else {
+                update = awaitProgress().await(cycle, since, POLL_TIMEOUT, TimeUnit.SECONDS);
+            }
+
+            JSONObject json = toJSON(update.installations);
+            json.element("cycle", update.cycle);
+            json.element("next", update.next);
+            json.element("done", update.done);
+            rsp.setContentType("application/json;charset=UTF-8");
+            rsp.setHeader("Cache-Control", "no-cache");
+            rsp.getWriter().print(json);
+        }
+
+        /**
+         * Returns the progress of the discovery running on the controller, or of the last one.
+         *
+         * @return progress, or null if discovery has never run
+         */
+        DiscoveryProgress getProgress() {
+            return progress;
+        }
 
-                List<ToolInstallation> foundTools = module.getToolInstallations(toolType);
-                // Use HashSet to filter already known paths.
-                // Currently, path identity test is not performed. For example,
-                // "/test" and "//test" are not considered the same.
-                for (ToolInstallation tool : foundTools) {
-                    if (knownPaths.contains(tool.getHome())) {
-                        continue;
+        /**
+         * Returns the progress of the discovery running on the controller, starting discovery in the background
+         * if none is running.
+         */
+        private DiscoveryProgress awaitProgress() {
+            synchronized (this) {
+                if (progress != null && !progress.isDone()) {
+                    return progress;
+                }
+                progress = new DiscoveryProgress();
+            }
+            final DiscoveryProgress started = progress;
+            refreshExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        getToolInstallations();
+                    } finally {
+                        // in case discovery had already been started by another caller
+                        started.finish(inventory.getIfPresent(toolType));
                     }
-                    knownPaths.add(tool.getHome());
-                    list.add(tool);
                 }
+            });
+            return started;
+        }
+
+        /**
+         * Builds the "installations" array of {@link #doInstallations(StaplerRequest, StaplerResponse)}.
+         */
+        static JSONObject toJSON(List<ToolInstallation> installations) {
+            JSONArray array = new JSONArray();
+            for (ToolInstallation tool : installations) {
+                JSONObject item = new JSONObject();
+                item.element("name", tool.getName());
+                item.element("home", tool.getHome());
+                array.element(item);
             }
-            return list;
+            JSONObject json = new JSONObject();
+            json.element("installations", array);
+            return json;
         }
 
         /**
@@ -129,9 +505,25 @@ public abstract class ToolAutoDiscoveryInstaller extends ToolInstaller {
             return Jenkins.getInstance().getDescriptor(toolType).getDisplayName();
         }
 
+        /**
+         * Tests whether any installation of given type can be found.
+         * <p/>
+         * Jenkins calls this for every installer descriptor while building tool configuration forms, so it uses cached
+         * results when available and otherwise the modules' cheap existence probes, never full discovery.
+         */
         @Override
         public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
-            return !getToolInstallations(toolType).isEmpty();
+            List<ToolInstallation> cached = inventory.getIfPresent(toolType);
+            if (cached != null) {
+                return !cached.isEmpty();
+            }
+
+            for (ToolAutoDiscoveryModule module : discoveryModules) {
+                if (module.isApplicable(toolType) && module.hasToolInstallations(toolType)) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         @Override
@@ -3,7 +3,11 @@ package org.jenkinsci.plugins.tools_autodiscover;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Base class for classes that discovers local tool installations.
@@ -15,6 +19,37 @@ public abstract class ToolAutoDiscoveryModule {
      */
     protected final Environment env;
 
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<ChangeListener>();
+    private final List<InstallationListener> installationListeners =
+            new CopyOnWriteArrayList<InstallationListener>();
+
+    /**
+     * Receives notifications that installations found by a module may have changed.
+     */
+    public interface ChangeListener {
+        /**
+         * Called when installations of given type found by the module may have changed.
+         *
+         * @param module   module reporting the change
+         * @param toolType class type of ToolInstallation affected
+         */
+        void changed(ToolAutoDiscoveryModule module, Class<? extends ToolInstallation> toolType);
+    }
+
+    /**
+     * Receives installations as soon as a module finds them, before discovery completes.
+     */
+    public interface InstallationListener {
+        /**
+         * Called when the module has found an installation. The same installation is also part of the result of
+         * {@link ToolAutoDiscoveryModule#getToolInstallations(Class)}.
+         *
+         * @param module       module reporting the installation
+         * @param installation installation found
+         */
+        void found(ToolAutoDiscoveryModule module, ToolInstallation installation);
+    }
+
     /**
      * Constructor. Takes Environment bridge as an argument for dependency injection.
      *
@@ -40,4 +75,125 @@ public abstract class ToolAutoDiscoveryModule {
      * @return List of all ToolInstallation instances of given type found by the module
      */
     public abstract List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType);
+
+    /**
+     * Tests whether the module can find at least one tool installation of given type.
+     * <p/>
+     * Unlike {@link #getToolInstallations(Class)}, this must not run version probes. The default implementation
+     * walks {@link #getCandidates(Class)} and returns as soon as {@link #isCandidate(String)} accepts one. Modules
+     * that do not enumerate candidates fall back to full discovery.
+     *
+     * @param toolType class type of ToolInstallation to be found
+     * @return true if at least one installation is available; false otherwise
+     */
+    public boolean hasToolInstallations(Class<? extends ToolInstallation> toolType) {
+        if (!isApplicable(toolType)) {
+            return false;
+        }
+
+        Iterable<String> candidates = getCandidates(toolType);
+        if (candidates == null) {
+            return !getToolInstallations(toolType).isEmpty();
+        }
+        for (String candidate : candidates) {
+            if (isCandidate(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns locations which may hold a tool installation, such as directories or executable paths.
+     * <p/>
+     * Enumeration must be cheap: list directories or read environment variables, but do not start processes
+     * for each candidate.
+     *
+     * @param toolType class type of ToolInstallation to be found
+     * @return candidate locations, or null if the module cannot enumerate candidates
+     */
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return null;
+    }
+
+    /**
+     * Cheap existence check on a location returned by {@link #getCandidates(Class)}.
+     *
+     * @param candidate candidate location
+     * @return true if the candidate looks like a valid installation; false otherwise
+     */
+    protected boolean isCandidate(String candidate) {
+        return true;
+    }
+
+    /**
+     * Returns the files the version of the installation at a candidate is read from, such as the release file of a
+     * Java home. Agents fingerprint these along with the candidates, so that an installation upgraded in place is
+     * discovered again.
+     * <p/>
+     * Like {@link #getCandidates(Class)}, this must be cheap: build paths or list a directory, but do not read the
+     * files.
+     *
+     * @param candidate candidate location returned by {@link #getCandidates(Class)}
+     * @return paths of the version files, which may not exist; none by default
+     */
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the paths of the given files, for {@link #getVersionFiles(String)}.
+     *
+     * @param files files
+     * @return paths in the same order
+     */
+    protected static List<String> toPaths(List<File> files) {
+        List<String> paths = new ArrayList<String>(files.size());
+        for (File file : files) {
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Register a listener notified when the module notices a change, such as an installation being added.
+     *
+     * @param listener listener to be added
+     */
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Notify listeners that installations of given type may have changed, so that cached results are discarded.
+     *
+     * @param toolType class type of ToolInstallation affected
+     */
+    protected void fireChanged(Class<? extends ToolInstallation> toolType) {
+        for (ChangeListener listener : changeListeners) {
+            listener.changed(this, toolType);
+        }
+    }
+
+    /**
+     * Register a listener notified of each installation as soon as the module finds it.
+     *
+     * @param listener listener to be added
+     */
+    public void addInstallationListener(InstallationListener listener) {
+        installationListeners.add(listener);
+    }
+
+    /**
+     * Report an installation found while {@link #getToolInstallations(Class)} is still running, so that it can be
+     * shown before slower probes complete. Modules which probe installations one at a time should call this for
+     * each of them; results of other modules are reported once their discovery completes.
+     *
+     * @param installation installation found
+     */
+    protected void publish(ToolInstallation installation) {
+        for (InstallationListener listener : installationListeners) {
+            listener.found(this, installation);
+        }
+    }
 }
@@ -0,0 +1,224 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.tools.ToolInstallation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Time-bounded cache of discovered tool installations, keyed by tool type.
+ * <p/>
+ * The first lookup of a tool type runs discovery in the calling thread. Once an entry is older than
+ * the configured time-to-live, lookups keep returning the previous result while a single refresh
+ * runs on the supplied executor (stale-while-revalidate).
+ */
+class ToolInventoryCache {
+    private static final Logger LOGGER = Logger.getLogger(ToolInventoryCache.class.getName());
+
+    /**
+     * Performs the actual discovery for a tool type.
+     */
+    interface Loader {
+        List<ToolInstallation> load(Class<? extends ToolInstallation> toolType);
+    }
+
+    private final ConcurrentMap<Class<? extends ToolInstallation>, Entry> entries =
+            new ConcurrentHashMap<Class<? extends ToolInstallation>, Entry>();
+    private final Loader loader;
+    private final Executor refreshExecutor;
+    private volatile long ttlNanos;
+
+    /**
+     * Construct an empty cache.
+     *
+     * @param loader          discovery function used to fill the cache
+     * @param ttl             time-to-live of each entry
+     * @param unit            unit of ttl
+     * @param refreshExecutor executor running background refreshes of stale entries
+     */
+    ToolInventoryCache(Loader loader, long ttl, TimeUnit unit, Executor refreshExecutor) {
+        this.loader = loader;
+        this.refreshExecutor = refreshExecutor;
+        setTtl(ttl, unit);
+    }
+
+    /**
+     * Change the time-to-live of cache entries. Applies to existing entries as well.
+     *
+     * @param ttl  time-to-live of each entry; 0 makes every lookup trigger a refresh
+     * @param unit unit of ttl
+     */
+    void setTtl(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the time-to-live of cache entries in given unit.
+     */
+    long getTtl(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the cached installations of given type, running discovery if nothing is cached yet.
+     * A stale entry is returned as-is and refreshed in the background.
+     *
+     * @param toolType class type of ToolInstallation
+     * @return List of installations; never null
+     */
+    List<ToolInstallation> get(Class<? extends ToolInstallation> toolType) {
+        return getEntry(toolType).get();
+    }
+
+    /**
+     * Stores installations of given type which were discovered by the caller, such as in a batch across nodes.
+     * The stored result is fresh for the time-to-live, like one loaded by this cache.
+     *
+     * @param toolType      class type of ToolInstallation
+     * @param installations discovered installations
+     */
+    void put(Class<? extends ToolInstallation> toolType, List<ToolInstallation> installations) {
+        getEntry(toolType).set(installations);
+    }
+
+    /**
+     * Returns the cached installations of given type without running discovery.
+     *
+     * @param toolType class type of ToolInstallation
+     * @return cached List of installations, possibly stale, or null if nothing has been loaded yet
+     */
+    List<ToolInstallation> getIfPresent(Class<? extends ToolInstallation> toolType) {
+        Entry entry = entries.get(toolType);
+        return (entry == null) ? null : entry.value;
+    }
+
+    private Entry getEntry(Class<? extends ToolInstallation> toolType) {
+        Entry entry = entries.get(toolType);
+        if (entry == null) {
+            Entry created = new Entry(toolType);
+            entry = entries.putIfAbsent(toolType, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drops every cached entry. The next lookup runs discovery again.
+     */
+    void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * Drops the cached entry of given tool type. The next lookup runs discovery again.
+     *
+     * @param toolType class type of ToolInstallation
+     */
+    void invalidate(Class<? extends ToolInstallation> toolType) {
+        entries.remove(toolType);
+    }
+
+    /**
+     * Cache slot for a single tool type.
+     */
+    private final class Entry {
+        private final Class<? extends ToolInstallation> toolType;
+        private volatile List<ToolInstallation> value;
+        private volatile long loadedAt;
+        // guarded by this
+        private FutureTask<List<ToolInstallation>> pending;
+
+        Entry(Class<? extends ToolInstallation> toolType) {
+            this.toolType = toolType;
+        }
+
+        List<ToolInstallation> get() {
+            List<ToolInstallation> current = value;
+            if (current == null) {
+                return await(startLoad(false));
+            }
+            if (System.nanoTime() - loadedAt >= ttlNanos) {
+                startLoad(true);
+            }
+            return current;
+        }
+
+        private FutureTask<List<ToolInstallation>> startLoad(boolean background) {
+            FutureTask<List<ToolInstallation>> task;
+            boolean owner = false;
+            synchronized (this) {
+                if (pending == null) {
+                    pending = new FutureTask<List<ToolInstallation>>(new Callable<List<ToolInstallation>>() {
+                        public List<ToolInstallation> call() {
+                            try {
+                                List<ToolInstallation> loaded = loader.load(toolType);
+                                set(loaded);
+                                return loaded;
+                            } catch (RuntimeException e) {
+                                // nothing is stored, so an interrupted discovery is run again on the next lookup
+                                LOGGER.log(Thread.currentThread().isInterrupted() ? Level.FINE : Level.WARNING,
+                                        "Tool discovery failed for " + toolType.getName(), e);
+                                throw e;
+                            } finally {
+                                clearPending();
+                            }
+                        }
+                    });
+                    owner = true;
+                }
+                task = pending;
+            }
+            if (owner) {
+                if (background) {
+                    try {
+                        refreshExecutor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        // keep serving the stale value; the next lookup retries
+                        clearPending();
+                    }
+                } else {
+                    // the first caller loads in its own thread; concurrent callers wait on the same task
+                    task.run();
+                }
+            }
+            return task;
+        }
+
+        void set(List<ToolInstallation> loaded) {
+            loadedAt = System.nanoTime();
+            value = loaded;
+        }
+
+        private synchronized void clearPending() {
+            pending = null;
+        }
+
+        private List<ToolInstallation> await(FutureTask<List<ToolInstallation>> task) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tool discovery", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Tool discovery failed for " + toolType.getName(), e.getCause());
+            }
+        }
+    }
+}
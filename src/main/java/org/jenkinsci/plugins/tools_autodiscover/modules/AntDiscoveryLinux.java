@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.tasks.Ant.AntInstallation;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.AntMetadata;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallHomeScanner;
+import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+/**
+ * Ant discovery module for Linux systems
+ * <p/>
+ * Looks for Ant homes where distribution packages and SDKMAN! put them, and under /opt. The version is read from
+ * the ant.jar of each home; no process is started.
+ */
+public class AntDiscoveryLinux extends LinuxHomeDiscovery {
+    private static final Pattern OPT_DIR_PATTERN = Pattern.compile("(apache-)?ant.*");
+
+    /**
+     * Constructs AntDiscoveryLinux module using system Environment bridge object.
+     */
+    public AntDiscoveryLinux() {
+        this(new Environment());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     */
+    AntDiscoveryLinux(Environment environment) {
+        this(environment, new File("/"), environment.getSdkmanDir());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     * @param rootDir     directory the well-known absolute paths are resolved against
+     * @param sdkmanDir   SDKMAN! directory
+     */
+    AntDiscoveryLinux(Environment environment, File rootDir, File sdkmanDir) {
+        super(environment, AntInstallation.class, "ant", rootDir, sdkmanDir);
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.singletonList(AntMetadata.getJar(new File(candidate)).getPath());
+    }
+
+    @Override
+    protected void addHomes(InstallHomeScanner scanner, File rootDir, File sdkmanDir) {
+        scanner.addHome(new File(rootDir, StringConstants.Linux.ANT_HOME_PATH));
+        scanner.addChildren(new File(rootDir, StringConstants.Linux.OPT_DIR_PATH), OPT_DIR_PATTERN);
+        scanner.addChildren(new File(sdkmanDir, StringConstants.Linux.SDKMAN_CANDIDATES_DIR + "/ant"), null);
+    }
+
+    @Override
+    protected ToolInstallation createInstallation(File home) {
+        String version = AntMetadata.readVersion(home);
+        return version == null ? null : new AntInstallation("Apache Ant " + version, home.getPath(), null);
+    }
+}
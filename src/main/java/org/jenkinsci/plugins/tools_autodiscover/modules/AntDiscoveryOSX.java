@@ -1,27 +1,35 @@
 package org.jenkinsci.plugins.tools_autodiscover.modules;
 
-
 import hudson.tasks.Ant.AntInstallation;
-import hudson.tools.ToolInstallation;
-import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.AntMetadata;
 import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallRootWatcher;
 import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
 import org.jenkinsci.plugins.tools_autodiscover.util.StringUtils;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-
 /**
  * Apache Ant discovery module for Mac OS X compatible systems
+ * <p/>
+ * Looks for apache-ant folders installed by MacPorts. The version line is read from the ant.jar of each
+ * installation, and ant -version is only run when that metadata is missing.
  */
-public class AntDiscoveryOSX extends ToolAutoDiscoveryModule {
-    private File installationDir;
+public class AntDiscoveryOSX extends MacPortsDiscovery<AntInstallation> {
+    // Key of results in ProbeCache, which map an ant executable to its installation name, such as "Apache Ant 1.10.14"
+    private static final String PROBE_KIND = "ant-osx";
+
+    private static final Pattern ANT_DIR_PATTERN = Pattern.compile("apache-ant\\d*");
+
+    // pattern is digits.digits, optionally followed by more .digits
+    private static final Pattern VERSION_PATTERN = Pattern.compile("\\b\\d+(?:\\.\\d+)+\\b");
 
     /**
      * Constructs AntDiscoveryOSX module using system Environment bridge object.
@@ -46,97 +54,72 @@ public class AntDiscoveryOSX extends ToolAutoDiscoveryModule {
      * @param installationDir File object used to list installation directory. Must support listFiles() method.
      */
     AntDiscoveryOSX(Environment environment, File installationDir) {
-        super(environment);
-        this.installationDir = installationDir;
-    }
-    
-    /**
-     * Returns whether or not the given ToolInstallation is an Ant installation.
-     * 
-     * @param   toolType    The ToolInstallation in question. 
-     * @return  Boolean indicating whether or not the tool is Ant.
-     */
-    @Override
-    public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
-        return ((toolType == AntInstallation.class) && env.isMacOSX());
+        this(environment, installationDir, StringConstants.MacOSX.ANT_DIR_PATH, InstallRootWatcher.ENABLED);
     }
 
     /**
-     *  Returns a List of detected Ant installations. Each item includes the version number and path on system.
-     *  Takes in a ToolInstallation to check that the correct field in the Jenkins configue page will be populated.
-     *  If it is the correct ToolInstallation, getToolInstallations will make a call to a helper method to do the work.  
+     * Constructor for dependency injection.
      *
-     *  @param  toolType    The ToolInstallation in question.
-     *  @return List of detected AntInstallation objects that contain pertinent information.
+     * @param environment     Environment to be used
+     * @param installationDir directory holding Ant installations
+     * @param pathPrefix      prefix of reported paths, the path of installationDir with a trailing separator
+     * @param watch           true to watch installationDir for changes instead of listing it on every discovery
      */
-    @Override
-    public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
-        if (!isApplicable(toolType)) {
-            return Collections.emptyList();
-        }
-        List<AntInstallation> instances = getLocalAntInstances();
-        return Collections.<ToolInstallation>unmodifiableList(instances);
+    AntDiscoveryOSX(Environment environment, File installationDir, String pathPrefix, boolean watch) {
+        super(environment, AntInstallation.class, "ant", ANT_DIR_PATTERN, PROBE_KIND, installationDir, pathPrefix,
+                watch);
     }
 
-    /**
-     * Returns the list of locally available Ant instances. Must be running under Mac OS X.
-     * Starts by going to a known directory where Ant instances can be found (/opt/local/share/java/) and collects
-     * all paths to Ant folders using a regex. This list is passed to a helper method that will run "apache -version" on each
-     * found path.
-     *
-     * @return List of AntInstallation objects that contain information describing each found instance.
-     */
-    private List<AntInstallation> getLocalAntInstances() {
-        ArrayList<String> foundAntPaths = new ArrayList<String>();
-
-        Pattern antPattern = Pattern.compile("apache-ant\\d*");
-        File[] dirList = installationDir.listFiles();
-        if (dirList == null) {
-            return Collections.emptyList();
-        }
-        for (File dir : dirList) {
-            Matcher m = antPattern.matcher(dir.getName());
-            if (m.matches()) {
-                foundAntPaths.add(StringConstants.MacOSX.ANT_DIR_PATH + dir.getName() + "/bin/ant");
-            }
-        }
-
-        // No Ant instances found.
-        if (foundAntPaths.size() == 0) {
-            return Collections.emptyList();
-        }
-
-        return parseLocalAntInfos(foundAntPaths);
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.singletonList(AntMetadata.getJar(getHome(candidate)).getPath());
+    }
 
+    @Override
+    protected AntInstallation createInstallation(String name, String path) {
+        return new AntInstallation(name, path, null);
     }
 
     /**
-     * Extracts the version information from the output of ant -version.
+     * Extracts the version information from the output of ant -version, such as
+     * "Apache Ant(TM) version 1.10.14 compiled on August 16 2023".
      *
-     * @return string containing version information
+     * @return string containing version information, such as "Apache Ant 1.10.14"; null if there is none
      */
     String extractAntVersionInfo(String output) {
-        // Characters 0 to 10 and 23 to 28 happens to be about where the version is located in the output of ant -version
-        return output.substring(0, 10) + " " + output.substring(23, 28);
+        int start = output.toLowerCase().indexOf("ant(tm)");
+        if (start < 0) {
+            return null;
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(output);
+        if (!matcher.find(start)) {
+            return null;
+        }
+        return "Apache Ant " + matcher.group();
     }
 
     /**
-     * Returns a list of AntInstallation objects compiled from running ant -version on each found Ant path.
-     * Given a list of paths to Ant executables, this function runs ant -version to find out version information on each
-     * instance. Output from -version is buffered into a string and parsed.
+     * Returns the installation name of the given ant executable, parsed from the output of ant -version. The
+     * output is built from ant.jar metadata when available.
      *
-     * @return List of AntInstallation objects.
+     * @param cmd  CommandRunner used when the metadata is missing
+     * @param path path to ant executable, in &lt;ANT_HOME&gt;/bin
+     * @return future of the name, completed with null if ant could not be run
      */
-    private ArrayList<AntInstallation> parseLocalAntInfos(List<String> pathList) {
-        ArrayList<AntInstallation> antObjects = new ArrayList<AntInstallation>();
-        CommandRunner cmd = new CommandRunner(env);
-        for (String path : pathList) {
-            List<String> listOutput = cmd.run(path + " -version", null);
-            String output = StringUtils.listToString(listOutput);
-            if (output != null) {
-                antObjects.add(new AntInstallation(extractAntVersionInfo(output), path, null));
-            }
+    @Override
+    protected CompletableFuture<String> getVersionName(CommandRunner cmd, String path) {
+        CompletableFuture<List<String>> output;
+        String versionLine = AntMetadata.readVersionLine(getHome(path));
+        if (versionLine != null) {
+            output = CompletableFuture.completedFuture(Collections.singletonList(versionLine));
+        } else {
+            output = cmd.runAsync(Arrays.asList(path, "-version")).thenApply(result -> result.getOutput());
         }
-        return antObjects;
+        return output.thenApply(listOutput -> {
+            if (listOutput.isEmpty()) {
+                return null;
+            }
+            return extractAntVersionInfo(StringUtils.listToString(listOutput));
+        });
     }
 }
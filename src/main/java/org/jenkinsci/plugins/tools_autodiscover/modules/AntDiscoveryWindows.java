@@ -3,14 +3,21 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.tasks.Ant;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.AntMetadata;
 import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.ParallelProbe;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIndex;
 import org.jenkinsci.plugins.tools_autodiscover.util.PathUtils;
+import org.jenkinsci.plugins.tools_autodiscover.util.ProbeCache;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,6 +25,9 @@ import java.util.regex.Pattern;
  * Apache Ant discovery module for Microsoft Windows systems.
  */
 public class AntDiscoveryWindows extends ToolAutoDiscoveryModule {
+    // Key of results in ProbeCache
+    private static final String PROBE_KIND = "ant-windows";
+
     // pattern is digits.digits.digits
     private static final Pattern versionPattern = Pattern.compile("\\b\\d+\\.\\d+\\.\\d+\\b");
 
@@ -39,19 +49,6 @@ public class AntDiscoveryWindows extends ToolAutoDiscoveryModule {
         super(environment);
     }
 
-    List<String> parsePath(String pathVar) {
-        if (pathVar == null) {
-            throw new IllegalArgumentException("pathVar is null");
-        }
-        // we hard-code Windows file separator for consistent behavior
-        StringTokenizer tokenizer = new StringTokenizer(pathVar, ";");
-        List<String> pathList = new ArrayList<String>();
-        while (tokenizer.hasMoreTokens()) {
-            pathList.add(tokenizer.nextToken());
-        }
-        return pathList;
-    }
-
     String parseVersion(String s) {
         if (s == null) {
             return null;
@@ -67,10 +64,6 @@ public class AntDiscoveryWindows extends ToolAutoDiscoveryModule {
         return null;
     }
 
-    private List<String> getPathEntries() {
-        return parsePath(env.getPath());
-    }
-
     @Override
     public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
         return (toolType == Ant.AntInstallation.class) && env.isWindows();
@@ -82,31 +75,105 @@ public class AntDiscoveryWindows extends ToolAutoDiscoveryModule {
             return Collections.emptyList();
         }
 
-        List<ToolInstallation> antList = new ArrayList<ToolInstallation>();
-        // check every entry in PATH
-        for (String path : getPathEntries()) {
-            if (!path.toLowerCase().endsWith("\\bin")) {
-                // ant executable files reside in %ANT_HOME%/bin
-                continue;
-            }
+        // check every bin directory in PATH, several at a time, and report each installation as soon as it is probed
+        List<ToolInstallation> antList = ParallelProbe.probeAllAsync(getBinDirectories(),
+                new ParallelProbe.AsyncProbe<String, ToolInstallation>() {
+                    public CompletableFuture<ToolInstallation> probe(String path) {
+                        return probeAntInstallation(path).thenApply(installation -> {
+                            if (installation != null) {
+                                publish(installation);
+                            }
+                            return installation;
+                        });
+                    }
+                }, ParallelProbe.DEFAULT_PARALLELISM).join();
 
-            String executable = "\"" + path.replace("\"", "\\\"") + "\\ant\"";
-            List<String> output = new CommandRunner(env).run(executable + " -version", null);
-            if (output == null) {
-                continue;
-            }
+        return Collections.unmodifiableList(antList);
+    }
 
+    /**
+     * Reads the ant -version line from ant.jar metadata for the given directory, or else runs ant -version in it.
+     * Results are remembered in ProbeCache until the ant script or ant.jar changes.
+     *
+     * @param path bin directory which may hold ant executable
+     * @return future of AntInstallation for the directory, completed with null if it does not hold a working ant
+     */
+    private CompletableFuture<ToolInstallation> probeAntInstallation(final String path) {
+        return ProbeCache.get().lookup(PROBE_KIND, getLauncher(path), getVersionFiles(path), () -> getVersion(path))
+                .<ToolInstallation>thenApply(version -> version == null ? null
+                        : new Ant.AntInstallation("Ant " + version, PathUtils.Windows.getParentDir(path), null));
+    }
+
+    /**
+     * Returns the ant version in the given bin directory, parsed from the output of ant -version.
+     */
+    private CompletableFuture<String> getVersion(String path) {
+        return getVersionOutput(path).thenApply(output -> {
             // Parse the output to see whether it contains valid ant version
             for (String line : output) {
                 String version = parseVersion(line);
                 if (version != null) {
-                    antList.add(new Ant.AntInstallation("Ant " + version, PathUtils.Windows.getParentDir(path), null));
-                    break;
+                    return version;
                 }
             }
+            return null;
+        });
+    }
+
+    /**
+     * Returns the ant script in the given bin directory, which identifies the installation in ProbeCache.
+     */
+    private File getLauncher(String path) {
+        String launcher = PathIndex.get(env).getLauncher(path, PathIndex.Executable.ANT);
+        return new File(launcher != null ? launcher : path + "\\ant.bat");
+    }
+
+    /**
+     * Returns the output of ant -version in the given bin directory, built from ant.jar metadata when available.
+     */
+    private CompletableFuture<List<String>> getVersionOutput(String path) {
+        String versionLine = AntMetadata.readVersionLine(new File(PathUtils.Windows.getParentDir(path)));
+        if (versionLine != null) {
+            return CompletableFuture.completedFuture(Collections.singletonList(versionLine));
         }
+        return new CommandRunner(env).runAsync(Arrays.asList(getLauncher(path).getPath(), "-version"))
+                .thenApply(result -> result.getOutput());
+    }
 
-        return Collections.unmodifiableList(antList);
+    /**
+     * Returns PATH entries which hold an ant script. Entries naming the same directory, such as ones differing only
+     * in case or a trailing backslash, are returned once.
+     *
+     * @return List of bin directories in PATH, without trailing backslash
+     */
+    private List<String> getBinDirectories() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        List<String> binDirs = new ArrayList<String>();
+        for (String path : PathIndex.get(env).getDirectories(PathIndex.Executable.ANT)) {
+            // ant executable files reside in %ANT_HOME%/bin
+            if (path.toLowerCase().endsWith("\\bin")) {
+                binDirs.add(path);
+            }
+        }
+        event.finish(this, binDirs.size());
+        return binDirs;
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return getBinDirectories();
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        return PathIndex.get(env).getLauncher(candidate, PathIndex.Executable.ANT) != null;
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        File home = new File(PathUtils.Windows.getParentDir(candidate));
+        return Collections.singletonList(AntMetadata.getJar(home).getPath());
     }
 
 }
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.model.JDK;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallHomeScanner;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkRelease;
+import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDK discovery module for Linux systems
+ * <p/>
+ * Looks for Java homes where distribution packages, vendor packages, SDKMAN! and update-alternatives put them,
+ * and reads the release file of each. No process is started.
+ */
+public class JDKDiscoveryLinux extends ToolAutoDiscoveryModule {
+    private final File rootDir;
+    private final File sdkmanDir;
+    private final JdkHomeInspector inspector;
+
+    /**
+     * Constructs JDKDiscoveryLinux module using system Environment bridge object.
+     */
+    public JDKDiscoveryLinux() {
+        this(new Environment());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     */
+    JDKDiscoveryLinux(Environment environment) {
+        this(environment, new File("/"), environment.getSdkmanDir(), JdkHomeInspector.get());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     * @param rootDir     directory the well-known absolute paths are resolved against
+     * @param sdkmanDir   SDKMAN! directory
+     * @param inspector   JdkHomeInspector reading the release file of each home
+     */
+    JDKDiscoveryLinux(Environment environment, File rootDir, File sdkmanDir, JdkHomeInspector inspector) {
+        super(environment);
+        this.rootDir = rootDir;
+        this.sdkmanDir = sdkmanDir;
+        this.inspector = inspector;
+    }
+
+    @Override
+    public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+        return (toolType == JDK.class) && env.isLinux();
+    }
+
+    @Override
+    public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+        if (!isApplicable(toolType)) {
+            return Collections.emptyList();
+        }
+
+        List<ToolInstallation> instances = new ArrayList<ToolInstallation>();
+        for (String home : findHomes()) {
+            // Java 8 JREs nested in a JDK have no release file of their own, and are skipped here
+            JdkRelease release = inspector.inspect(new File(home));
+            if (release != null && release.isJDK()) {
+                instances.add(new JDK(release.getDisplayName(), home));
+            }
+        }
+        return Collections.unmodifiableList(instances);
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return findHomes();
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        return env.canExecute(candidate + "/bin/javac");
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.singletonList(JdkHomeInspector.getReleaseFile(new File(candidate)).getPath());
+    }
+
+    /**
+     * Lists directories which may be Java homes.
+     *
+     * @return List of real paths of candidate homes
+     */
+    private List<String> findHomes() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        InstallHomeScanner scanner = new InstallHomeScanner();
+        for (String vmDirPath : StringConstants.Linux.JVM_DIR_PATHS) {
+            scanner.addChildren(new File(rootDir, vmDirPath), null);
+        }
+        scanner.addChildren(new File(rootDir, StringConstants.Linux.OPT_DIR_PATH), null);
+        scanner.addChildren(new File(sdkmanDir, StringConstants.Linux.SDKMAN_CANDIDATES_DIR + "/java"), null);
+        // <home>/bin/javac, or <home>/jre/bin/java for Java 8 where javac is not managed
+        scanner.addLinkTarget(new File(rootDir, StringConstants.Linux.ALTERNATIVES_DIR_PATH + "/javac"), 2);
+        scanner.addLinkTarget(new File(rootDir, StringConstants.Linux.ALTERNATIVES_DIR_PATH + "/java"), 2);
+
+        List<String> homes = new ArrayList<String>();
+        for (File home : scanner.scan()) {
+            homes.add(home.getPath());
+        }
+        event.finish(this, homes.size());
+        return homes;
+    }
+}
@@ -4,26 +4,53 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.model.JDK;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.CommandResult;
+import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkRelease;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
 
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
-import java.io.IOException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * JDK discovery module for Mac OS X compatible systems
  */
 public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
+    private final String[] vmDirPaths;
+    private final JdkHomeInspector inspector;
+
     public JDKDiscoveryOSX() {
-        super(new Environment());
+        this(new Environment(), StringConstants.MacOSX.JVM_DIR_PATHS, JdkHomeInspector.get());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     * @param vmDirPaths  directories holding JVM bundles
+     * @param inspector   JdkHomeInspector reading the release file of each bundle
+     */
+    JDKDiscoveryOSX(Environment environment, String[] vmDirPaths, JdkHomeInspector inspector) {
+        super(environment);
+        this.vmDirPaths = vmDirPaths;
+        this.inspector = inspector;
     }
 
     @Override
@@ -37,39 +64,92 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
             return Collections.emptyList();
         }
 
-        List<JVMInfo> jvmList = getLocalJVMs();
         List<ToolInstallation> instances = new ArrayList<ToolInstallation>();
-        for (JVMInfo jvm : jvmList) {
-            if (jvm.isJDK()) {
-                instances.add(new JDK(jvm.getBundleId(), jvm.getHomePath()));
+        // bundles may be linked from several places, such as by Homebrew; inspect each one once
+        Set<PathIdentity> seen = new HashSet<PathIdentity>();
+        Set<PathIdentity> inspected = new HashSet<PathIdentity>();
+        boolean incomplete = false;
+        for (String home : getCandidates(toolType)) {
+            PathIdentity identity = PathIdentity.of(home);
+            if (!seen.add(identity)) {
+                continue;
+            }
+            JdkRelease release = inspector.inspect(new File(home));
+            if (release == null) {
+                // no release file, such as Apple Java 6
+                incomplete = true;
+                continue;
+            }
+            inspected.add(identity);
+            if (release.isJDK()) {
+                instances.add(new JDK(release.getDisplayName(), home));
+            }
+        }
+
+        // java_home also knows bundles outside of the scanned directories, and those without release file
+        if (incomplete || inspected.isEmpty()) {
+            for (JVMInfo jvm : getLocalJVMs()) {
+                if (jvm.isJDK() && !inspected.contains(PathIdentity.of(jvm.getHomePath()))) {
+                    instances.add(new JDK(jvm.getBundleId(), jvm.getHomePath()));
+                }
             }
         }
         return Collections.unmodifiableList(instances);
     }
 
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        List<String> homes = new ArrayList<String>();
+        for (String vmDirPath : vmDirPaths) {
+            File[] bundles = new File(vmDirPath).listFiles();
+            if (bundles == null) {
+                continue;
+            }
+            for (File bundle : bundles) {
+                homes.add(new File(bundle, "Contents/Home").getPath());
+            }
+        }
+        event.finish(this, homes.size());
+        return homes;
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        // JREs are listed by java_home as well, but only JDKs ship javac
+        return env.canExecute(candidate + "/bin/javac");
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.singletonList(JdkHomeInspector.getReleaseFile(new File(candidate)).getPath());
+    }
+
     /**
-     * Returns the list of locally available JVMs. Must be running under Mac OS X.
+     * Returns the list of locally available JVMs, as listed by /usr/libexec/java_home. Must be running under
+     * Mac OS X.
      *
      * @return List of JVMInfo objects containing information of each JVM.
      */
     protected List<JVMInfo> getLocalJVMs() {
-        Process process = null;
-        try {
-            process = Runtime.getRuntime().exec("/usr/libexec/java_home -X");
-        } catch (IOException ignored) {
-        } catch (SecurityException ignored) {
-        }
-
-        if (process == null) {
+        CommandResult result = new CommandRunner(env).run(Arrays.asList("/usr/libexec/java_home", "-X"));
+        if (result.getOutput().isEmpty()) {
             return Collections.emptyList();
         }
 
-        // Process is running. Parse the output and return the list.
+        // Parse the output and return the list.
         try {
-            JavaHomeParser parser = new JavaHomeParser(process.getInputStream());
+            StringBuilder plist = new StringBuilder();
+            for (String line : result.getOutput()) {
+                plist.append(line).append('\n');
+            }
+            JavaHomeParser parser = new JavaHomeParser(new ByteArrayInputStream(plist.toString().getBytes("UTF-8")));
             return parser.getJVMInfoList();
         } catch (XMLStreamException ignored) {
             return Collections.emptyList();
+        } catch (UnsupportedEncodingException ignored) {
+            return Collections.emptyList();
         }
     }
 
@@ -292,13 +372,15 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
 
             /**
              * Update JVMInfo builder field with String value.
+             * <p/>
+             * Keys added by later versions of java_home are ignored.
              *
              * @param key   Key in the property list referring to the field
              * @param value String value to be updated
-             * @throws IllegalArgumentException the key is unknown, or the type of associated value is incompatible with
-             *                                  String.
+             * @return true if the field was updated; false if the key is unknown, or the type of associated value is
+             * incompatible with String
              */
-            public void update(String key, String value) {
+            public boolean update(String key, String value) {
                 if (JVM_ARCH.equals(key)) {
                     setArchitecture(value);
                 } else if (JVM_BUNDLE_ID.equals(key)) {
@@ -314,19 +396,22 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
                 } else if (JVM_VERSION.equals(key)) {
                     setVersion(value);
                 } else {
-                    throw new IllegalArgumentException("Unknown key, or key not applicable to String value");
+                    return false;
                 }
+                return true;
             }
 
             /**
              * Update JVMInfo builder field with boolean value.
+             * <p/>
+             * Keys added by later versions of java_home are ignored.
              *
              * @param key   Key in the property list referring to the field
              * @param value boolean value to be updated
-             * @throws IllegalArgumentException the key is unknown, or the type of associated value is incompatible with
-             *                                  boolean.
+             * @return true if the field was updated; false if the key is unknown, or the type of associated value is
+             * incompatible with boolean
              */
-            public void update(String key, boolean value) {
+            public boolean update(String key, boolean value) {
                 if (JVM_ENABLED.equals(key)) {
                     setEnabled(value);
                 } else if (JVM_BLACKLISTED.equals(key)) {
@@ -334,8 +419,9 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
                 } else if (JVM_IS_BUILTIN.equals(key)) {
                     setBuiltIn(value);
                 } else {
-                    throw new IllegalArgumentException("Unknown key, or key not applicable to boolean value");
+                    return false;
                 }
+                return true;
             }
 
             /**
@@ -457,6 +543,10 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
 
     /**
      * Parser for Mac OS X /usr/libexec/java_home utility.
+     * <p/>
+     * Reads the property list with a StAX cursor, from a factory shared by every parser. Text is coalesced, so
+     * values split by entities or CDATA sections are read whole. Keys this parser does not know are skipped along
+     * with their values, whatever their type.
      */
     public static class JavaHomeParser {
         public static final String PLIST_FALSE = "false";
@@ -465,6 +555,18 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
         public static final String PLIST_KEY = "key";
         public static final String PLIST_DICT = "dict";
 
+        // Looking up the StAX implementation is costly; configured once, then only used to create readers.
+        private static final XMLInputFactory FACTORY = createFactory();
+
+        private static XMLInputFactory createFactory() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            // java_home output refers to Apple's DTD; never fetch it
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+
         private List<JVMInfo> jvmList = new ArrayList<JVMInfo>();
 
         /**
@@ -477,11 +579,44 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
          *                            reasons.
          */
         public JavaHomeParser(InputStream inputStream) throws XMLStreamException {
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            XMLEventReader reader = factory.createXMLEventReader(inputStream);
+            parse(inputStream, new Consumer<JVMInfo>() {
+                public void accept(JVMInfo jvm) {
+                    jvmList.add(jvm);
+                }
+            });
+        }
+
+        /**
+         * Parse an java.io.InputStream, passing each JVM entry to the consumer as soon as it has been read.
+         *
+         * @param inputStream java.io.InputStream to be parsed, in the format used by /usr/libexec/java_home
+         * @param consumer    receives JVM entries in document order
+         * @throws XMLStreamException inputStream is not in valid XML PLIST format, or parser has failed for other
+         *                            reasons. Entries read before the failure have been passed to the consumer.
+         */
+        public static void parse(InputStream inputStream, Consumer<JVMInfo> consumer) throws XMLStreamException {
+            DiscoveryEvents.Parse event = new DiscoveryEvents.Parse();
+            event.begin();
+            int entries = 0;
+            boolean succeeded = false;
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(inputStream);
+            try {
+                entries = parse(reader, consumer);
+                succeeded = true;
+            } finally {
+                reader.close();
+                event.finish(JavaHomeParser.class, entries, succeeded);
+            }
+        }
 
+        /**
+         * Parse the document, returning the number of JVM entries passed to the consumer.
+         */
+        private static int parse(XMLStreamReader reader, Consumer<JVMInfo> consumer) throws XMLStreamException {
             JVMInfo.Builder jiBuilder = new JVMInfo.Builder();
             String key = null;
+            boolean inEntry = false;
+            int entries = 0;
 
             // Apple plist xml format has following structure:
             // <?xml ...>
@@ -502,33 +637,51 @@ public class JDKDiscoveryOSX extends ToolAutoDiscoveryModule {
             // </plist>
             // Each <dict> element represents a JVM entry.
             while (reader.hasNext()) {
-                XMLEvent event = reader.nextEvent();
-                if (event.isStartElement()) {
-                    StartElement element = event.asStartElement();
-                    String elementName = element.getName().getLocalPart();
-                    if (PLIST_DICT.equals(elementName)) {
-                        // Start of a single JVM entry
-                        jiBuilder.clear();
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String elementName = reader.getLocalName();
+                    if (!inEntry) {
+                        if (PLIST_DICT.equals(elementName)) {
+                            // Start of a single JVM entry
+                            jiBuilder.clear();
+                            key = null;
+                            inEntry = true;
+                        }
                     } else if (PLIST_KEY.equals(elementName)) {
                         // Remember the key, so it can be used when value is read
-                        event = reader.nextEvent();
-                        key = event.asCharacters().getData();
+                        key = reader.getElementText();
                     } else if (PLIST_STRING.equals(elementName)) {
-                        event = reader.nextEvent();
-                        String value = event.asCharacters().getData();
-                        jiBuilder.update(key, value);
+                        jiBuilder.update(key, reader.getElementText());
                     } else if (PLIST_TRUE.equals(elementName)) {
                         jiBuilder.update(key, true);
                     } else if (PLIST_FALSE.equals(elementName)) {
                         jiBuilder.update(key, false);
+                    } else {
+                        // a value of another type, possibly nested; no known key uses one
+                        skipElement(reader);
                     }
-                } else if (event.isEndElement()) {
-                    EndElement element = event.asEndElement();
-                    String elementName = element.getName().getLocalPart();
-                    if (PLIST_DICT.equals(elementName)) {
-                        // End of single entry.
-                        jvmList.add(jiBuilder.build());
-                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inEntry
+                        && PLIST_DICT.equals(reader.getLocalName())) {
+                    // End of single entry.
+                    consumer.accept(jiBuilder.build());
+                    entries++;
+                    inEntry = false;
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Move the reader past the end of the element it is positioned on.
+         */
+        private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
                 }
             }
         }
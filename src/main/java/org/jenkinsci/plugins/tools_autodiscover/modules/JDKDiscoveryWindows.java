@@ -4,17 +4,48 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.model.JDK;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.CommandResult;
 import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkRelease;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+import org.jenkinsci.plugins.tools_autodiscover.util.RegQueryParser;
 import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * JDK discovery module for Windows compatible systems
  */
 public class JDKDiscoveryWindows extends ToolAutoDiscoveryModule {
+    private static final Logger LOGGER = Logger.getLogger(JDKDiscoveryWindows.class.getName());
+
+    /**
+     * Maximum number of lines read from each REG QUERY run. Output is parsed as it is read, so this only guards
+     * against a runaway command; the JavaSoft key of a host with many JDKs and JREs, with their MSI and plugin
+     * subkeys, lists more than {@link CommandRunner#DEFAULT_MAX_OUTPUT_LINES}. Can be overridden with the system
+     * property
+     * {@code org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryWindows.regQueryMaxLines}.
+     */
+    static final int REG_QUERY_MAX_LINES =
+            Integer.getInteger(JDKDiscoveryWindows.class.getName() + ".regQueryMaxLines", 50000);
+
+    /**
+     * Maximum number of bytes read from each REG QUERY run. Can be overridden with the system property
+     * {@code org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryWindows.regQueryMaxBytes}.
+     */
+    static final int REG_QUERY_MAX_BYTES =
+            Integer.getInteger(JDKDiscoveryWindows.class.getName() + ".regQueryMaxBytes", 4 * 1024 * 1024);
+
+    private final JdkHomeInspector inspector;
+
     /**
      * Public no parameter constructor for JDKDiscoveryWindows
      */
@@ -28,7 +59,18 @@ public class JDKDiscoveryWindows extends ToolAutoDiscoveryModule {
      * @param environment environment to use, mostly important for performing mocks for cross OS testing
      */
     JDKDiscoveryWindows(Environment environment) {
+        this(environment, JdkHomeInspector.get());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment environment to use
+     * @param inspector   JdkHomeInspector reading the release file of each JDK
+     */
+    JDKDiscoveryWindows(Environment environment, JdkHomeInspector inspector) {
         super(environment);
+        this.inspector = inspector;
     }
 
     @Override
@@ -46,22 +88,26 @@ public class JDKDiscoveryWindows extends ToolAutoDiscoveryModule {
     }
 
     /**
-     * Filter JDK paths to remove duplicates and non-existing paths.
+     * Filter JDK paths to remove duplicates and non-existing paths. Paths are compared by {@link PathIdentity}, so
+     * ones differing only in case or separators are duplicates; the first one is kept.
      *
      * @param jdkList List of JDK to be filtered
-     * @return filtered List of JDK paths
+     * @return filtered List of JDK paths, in the given order
      */
     List<JDK> filterJDKList(List<JDK> jdkList) {
-        Map<String, JDK> noDups = new HashMap<String, JDK>();
+        Map<PathIdentity, JDK> noDups = new LinkedHashMap<PathIdentity, JDK>();
         List<JDK> returner = new ArrayList<JDK>();
 
         for (JDK loc : jdkList) {
-            noDups.put(loc.getHome(), loc);
+            PathIdentity identity = PathIdentity.of(loc.getHome(), true);
+            if (!noDups.containsKey(identity)) {
+                noDups.put(identity, loc);
+            }
         }
 
-        for (String path : noDups.keySet()) {
-            if (new File(path).exists()) {
-                returner.add(noDups.get(path));
+        for (JDK loc : noDups.values()) {
+            if (new File(loc.getHome()).exists()) {
+                returner.add(loc);
             }
         }
 
@@ -71,38 +117,134 @@ public class JDKDiscoveryWindows extends ToolAutoDiscoveryModule {
     /**
      * Returns JDK's found on the system.
      * <p/>
-     * Parses the return value of reqQueryParse() to find the registry key of each JDK, which is
-     * then used to find its path.
+     * The registry key and home directory of every JDK are read from recursive REG QUERY runs on the JavaSoft key,
+     * one in each view of the registry, so the number of processes does not grow with the number of JDKs. The name
+     * comes from the release file of the JDK, or from the registry key if the JDK has none.
      *
      * @return List of JDK found in registry
      */
     List<JDK> findJava() {
-
-        List<String> regLoc = regQueryParse(StringConstants.Windows.WIN_JDK_REG_KEY);
         List<JDK> returner = new ArrayList<JDK>();
-        regLoc.remove(1);
-
-        for (String loc : regLoc) {
-            if (loc.contains(StringConstants.Windows.WIN_JDK_REG_KEY_PREFIX)) {
-                String version = getJDKVersion(loc);
-                loc = (regQueryParse("\"" + loc + "\"").get(2));
-                loc = loc.substring(loc.indexOf(":\\") - 1);
-                JDK what = new JDK(version, loc);
-                returner.add(what);
+        // several keys, such as 1.8 and 1.8.0_202, usually point to the same JDK; inspect it once
+        Set<PathIdentity> seen = new HashSet<PathIdentity>();
+
+        for (RegQueryParser.Key key : getJDKRegistryKeys()) {
+            String loc = key.getValue(StringConstants.Windows.WIN_JAVA_HOME_REG_VALUE);
+            if (!seen.add(PathIdentity.of(loc, true))) {
+                continue;
             }
+            JdkRelease release = inspector.inspect(new File(loc));
+            JDK what = new JDK(release != null ? release.getDisplayName() : getJDKVersion(key.getPath()), loc);
+            returner.add(what);
         }
 
         return returner;
     }
 
     /**
-     * Runs REG QUERY command and returns the results to be parsed.
+     * Returns registry keys of every JDK registered on the system, with their values.
+     * <p/>
+     * Both views of the registry are queried at the same time, and their output is parsed as it is read. Keys of
+     * the 64-bit view come first, each view in the order REG QUERY lists them.
+     *
+     * @return List of registry keys with a JavaHome value, one for each JDK version
+     */
+    private List<RegQueryParser.Key> getJDKRegistryKeys() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        CommandRunner cmd = new CommandRunner(env);
+        cmd.setMaxOutputLines(REG_QUERY_MAX_LINES);
+        cmd.setMaxOutputBytes(REG_QUERY_MAX_BYTES);
+        List<CompletableFuture<CommandResult>> queries = new ArrayList<CompletableFuture<CommandResult>>();
+        List<RegQueryParser> parsers = new ArrayList<RegQueryParser>();
+        final List<List<RegQueryParser.Key>> viewKeys = new ArrayList<List<RegQueryParser.Key>>();
+        for (int i = 0; i < StringConstants.Windows.WIN_JAVASOFT_REG_KEYS.length; i++) {
+            final List<RegQueryParser.Key> found = new ArrayList<RegQueryParser.Key>();
+            final RegQueryParser parser = new RegQueryParser(new Consumer<RegQueryParser.Key>() {
+                public void accept(RegQueryParser.Key key) {
+                    if (isJDKKey(key)) {
+                        found.add(key);
+                    }
+                }
+            });
+            parsers.add(parser);
+            viewKeys.add(found);
+            List<String> command = regQueryCommand(StringConstants.Windows.WIN_JAVASOFT_REG_KEYS[i],
+                    StringConstants.Windows.WIN_JAVASOFT_REG_VIEWS[i]);
+            queries.add(cmd.runAsync(command, null, null, new Consumer<String>() {
+                public void accept(String line) {
+                    parser.line(line);
+                }
+            }).exceptionally(failure -> CommandResult.notStarted()));
+        }
+
+        final List<RegQueryParser.Key> keys = new ArrayList<RegQueryParser.Key>();
+        for (int i = 0; i < queries.size(); i++) {
+            CommandResult result = queries.get(i).join();
+            if (result.getStatus() == CommandResult.Status.TRUNCATED
+                    || result.getStatus() == CommandResult.Status.TIMEOUT) {
+                // the keys read so far are still used; JDKs listed after them are missed
+                LOGGER.log(Level.WARNING, "REG QUERY of {0} was cut short ({1}); JDKs registered under it may be "
+                        + "missing. Output is limited to {2} lines and {3} bytes.", new Object[]{
+                        StringConstants.Windows.WIN_JAVASOFT_REG_KEYS[i], result.getStatus(),
+                        REG_QUERY_MAX_LINES, REG_QUERY_MAX_BYTES});
+            }
+            // every line has been fed once the query completed
+            parsers.get(i).end();
+            keys.addAll(viewKeys.get(i));
+        }
+        event.finish(this, keys.size());
+        return keys;
+    }
+
+    /**
+     * Returns the command listing every key and value under the given key, in the given view of the registry.
+     * <p/>
+     * The view is always explicit: without it, a 32-bit JVM would have both queries redirected to the 32-bit view.
      *
-     * @param key key to run REG QUERY on
-     * @return output of REG QUERY in List<String> form
+     * @param key  registry key to query
+     * @param view {@code /reg:64} or {@code /reg:32}
+     * @return REG QUERY command
      */
-    private List<String> regQueryParse(String key) {
-        return CommandRunner.run("REG QUERY " + key);
+    static List<String> regQueryCommand(String key, String view) {
+        return Arrays.asList("REG", "QUERY", key, "/s", view);
+    }
+
+    /**
+     * Tests whether the key is the key of a JDK version, such as
+     * {@code HKEY_LOCAL_MACHINE\SOFTWARE\JavaSoft\JDK\17.0.9}, with a home directory.
+     */
+    static boolean isJDKKey(RegQueryParser.Key key) {
+        String[] path = key.getPath().split("\\\\");
+        if (path.length < 3 || !"JavaSoft".equalsIgnoreCase(path[path.length - 3])) {
+            return false;
+        }
+        String home = key.getValue(StringConstants.Windows.WIN_JAVA_HOME_REG_VALUE);
+        if (home == null || home.isEmpty()) {
+            return false;
+        }
+        for (String name : StringConstants.Windows.WIN_JDK_REG_KEY_NAMES) {
+            if (name.equalsIgnoreCase(path[path.length - 2])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        // the same queries as discovery; only the release files of the homes are not read. The registry has no
+        // modification time to stat, so fingerprinting a Windows agent costs these REG QUERY processes as well
+        List<String> homes = new ArrayList<String>();
+        for (RegQueryParser.Key key : getJDKRegistryKeys()) {
+            homes.add(key.getValue(StringConstants.Windows.WIN_JAVA_HOME_REG_VALUE));
+        }
+        return homes;
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return Collections.singletonList(JdkHomeInspector.getReleaseFile(new File(candidate)).getPath());
     }
 
     /**
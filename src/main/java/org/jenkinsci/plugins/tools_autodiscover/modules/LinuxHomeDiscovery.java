@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallHomeScanner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base of the Linux modules finding tool homes with an {@link InstallHomeScanner}.
+ * <p/>
+ * Subclasses name where homes may be, such as distribution package paths, /opt and SDKMAN! candidates, and read
+ * the version of each home from its install tree. A home is only reported if it holds the launcher of the tool in
+ * its bin directory. No process is started.
+ */
+public abstract class LinuxHomeDiscovery extends ToolAutoDiscoveryModule {
+    private final Class<? extends ToolInstallation> toolType;
+    private final String launcher;
+    private final File rootDir;
+    private final File sdkmanDir;
+
+    /**
+     * Constructor for subclasses.
+     *
+     * @param environment Environment to be used
+     * @param toolType    type of the installations found
+     * @param launcher    name of the executable in the bin directory of each home, such as "mvn"
+     * @param rootDir     directory the well-known absolute paths are resolved against
+     * @param sdkmanDir   SDKMAN! directory
+     */
+    LinuxHomeDiscovery(Environment environment, Class<? extends ToolInstallation> toolType, String launcher,
+                       File rootDir, File sdkmanDir) {
+        super(environment);
+        this.toolType = toolType;
+        this.launcher = launcher;
+        this.rootDir = rootDir;
+        this.sdkmanDir = sdkmanDir;
+    }
+
+    @Override
+    public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+        return (toolType == this.toolType) && env.isLinux();
+    }
+
+    @Override
+    public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+        if (!isApplicable(toolType)) {
+            return Collections.emptyList();
+        }
+
+        List<ToolInstallation> instances = new ArrayList<ToolInstallation>();
+        for (String home : findHomes()) {
+            if (!isCandidate(home)) {
+                continue;
+            }
+            ToolInstallation installation = createInstallation(new File(home));
+            if (installation != null) {
+                instances.add(installation);
+            }
+        }
+        return Collections.unmodifiableList(instances);
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return findHomes();
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        return env.isFile(candidate + "/bin/" + launcher);
+    }
+
+    /**
+     * Add the places where homes may be, in order of preference.
+     *
+     * @param scanner   scanner to add them to
+     * @param rootDir   directory the well-known absolute paths are resolved against
+     * @param sdkmanDir SDKMAN! directory
+     */
+    protected abstract void addHomes(InstallHomeScanner scanner, File rootDir, File sdkmanDir);
+
+    /**
+     * Returns the installation in the given home, named after the version read from its install tree.
+     *
+     * @param home candidate home, holding the launcher
+     * @return installation, or null if the version cannot be read
+     */
+    protected abstract ToolInstallation createInstallation(File home);
+
+    /**
+     * Lists directories which may be homes.
+     *
+     * @return List of real paths of candidate homes
+     */
+    private List<String> findHomes() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        InstallHomeScanner scanner = new InstallHomeScanner();
+        addHomes(scanner, rootDir, sdkmanDir);
+
+        List<String> homes = new ArrayList<String>();
+        for (File home : scanner.scan()) {
+            homes.add(home.getPath());
+        }
+        event.finish(this, homes.size());
+        return homes;
+    }
+}
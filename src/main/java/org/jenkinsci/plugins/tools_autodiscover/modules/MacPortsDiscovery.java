@@ -0,0 +1,274 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
+import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallRootWatcher;
+import org.jenkinsci.plugins.tools_autodiscover.util.ParallelProbe;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIdentity;
+import org.jenkinsci.plugins.tools_autodiscover.util.ProbeCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Base of the Mac OS X modules finding tools installed by MacPorts, one folder per installation in a shared
+ * directory, such as /opt/local/share/java/maven3.
+ * <p/>
+ * Candidates are the launchers in the bin folder of every matching folder. Each is probed by the subclass, reading
+ * install tree metadata or running the launcher, and results are remembered in ProbeCache until the launcher or its
+ * version files change. When watching is enabled, the installation directory is watched by
+ * {@link InstallRootWatcher} and only folders added since the last discovery are probed; if the directory is
+ * deleted, it is listed on every discovery until it exists again, and then watched again.
+ *
+ * @param <T> type of the installations found
+ */
+public abstract class MacPortsDiscovery<T extends ToolInstallation> extends ToolAutoDiscoveryModule {
+    private final Class<T> toolType;
+    private final String launcher;
+    private final Pattern dirPattern;
+    private final String probeKind;
+    private final File installationDir;
+    private final String pathPrefix;
+    private final boolean watch;
+    // Set once watching has started; null when listing the installation directory on every discovery
+    private volatile InstallRootWatcher watcher;
+    // Installations probed so far, by executable path; only used when watching
+    private final Map<String, T> probed = new ConcurrentHashMap<String, T>();
+
+    /**
+     * Constructor for subclasses.
+     *
+     * @param environment     Environment to be used
+     * @param toolType        type of the installations found
+     * @param launcher        name of the executable in the bin folder of each installation, such as "mvn"
+     * @param dirPattern      pattern the names of installation folders match
+     * @param probeKind       kind of the results in ProbeCache, which map a launcher to its installation name
+     * @param installationDir directory holding the installations
+     * @param pathPrefix      prefix of reported paths, the path of installationDir with a trailing separator
+     * @param watch           true to watch installationDir for changes instead of listing it on every discovery
+     */
+    MacPortsDiscovery(Environment environment, Class<T> toolType, String launcher, Pattern dirPattern,
+                      String probeKind, File installationDir, String pathPrefix, boolean watch) {
+        super(environment);
+        this.toolType = toolType;
+        this.launcher = launcher;
+        this.dirPattern = dirPattern;
+        this.probeKind = probeKind;
+        this.installationDir = installationDir;
+        this.pathPrefix = pathPrefix;
+        this.watch = watch;
+    }
+
+    /**
+     * Returns whether or not the given ToolInstallation is the type found by this module.
+     *
+     * @param toolType The ToolInstallation in question.
+     * @return Boolean indicating whether or not the tool is found by this module on this system.
+     */
+    @Override
+    public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+        return (toolType == this.toolType) && env.isMacOSX();
+    }
+
+    /**
+     * Returns a List of detected installations. Each item includes the version number and path on system.
+     *
+     * @param toolType The ToolInstallation in question.
+     * @return List of detected installations, in folder name order.
+     */
+    @Override
+    public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+        if (!isApplicable(toolType)) {
+            return Collections.emptyList();
+        }
+        List<T> instances = getLocalInstances();
+        return Collections.<ToolInstallation>unmodifiableList(instances);
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return findPaths();
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        return env.canExecute(candidate);
+    }
+
+    /**
+     * Returns the installation name of the given launcher.
+     *
+     * @param cmd  CommandRunner used when the launcher has to be run
+     * @param path path to the launcher, in the bin folder of an installation
+     * @return future of the name, completed with null if the launcher is not a working installation
+     */
+    protected abstract CompletableFuture<String> getVersionName(CommandRunner cmd, String path);
+
+    /**
+     * Returns the installation of the given launcher.
+     *
+     * @param name installation name, as returned by {@link #getVersionName(CommandRunner, String)}
+     * @param path path to the launcher
+     * @return installation
+     */
+    protected abstract T createInstallation(String name, String path);
+
+    /**
+     * Returns the home of the installation holding the given launcher, &lt;home&gt;/bin/launcher.
+     */
+    protected static File getHome(String path) {
+        return new File(path).getParentFile().getParentFile();
+    }
+
+    /**
+     * Returns the installations in the installation directory, probing only the new ones when it is watched.
+     */
+    private List<T> getLocalInstances() {
+        if (startWatching()) {
+            return getWatchedInstances();
+        }
+        List<String> foundPaths = findPaths();
+
+        // No instances found.
+        if (foundPaths.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        return probe(foundPaths);
+    }
+
+    /**
+     * Lists paths to the launcher of every matching folder in the installation directory.
+     *
+     * @return List of paths to launchers; does not check whether they exist
+     */
+    private List<String> findPaths() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        List<String> foundPaths = new ArrayList<String>();
+
+        InstallRootWatcher current = watcher;
+        if (current != null && current.isWatching()) {
+            for (String name : current.getNames()) {
+                foundPaths.add(toExecutablePath(name));
+            }
+        } else {
+            File[] dirList = installationDir.listFiles();
+            for (File dir : dirList == null ? new File[0] : dirList) {
+                if (dirPattern.matcher(dir.getName()).matches()) {
+                    foundPaths.add(toExecutablePath(dir.getName()));
+                }
+            }
+        }
+        event.finish(this, foundPaths.size());
+        return foundPaths;
+    }
+
+    private String toExecutablePath(String dirName) {
+        return pathPrefix + dirName + "/bin/" + launcher;
+    }
+
+    /**
+     * Start watching the installation directory, if enabled and not done yet.
+     *
+     * @return true if the directory is being watched; false if it is listed on every discovery
+     */
+    private synchronized boolean startWatching() {
+        if (watcher != null) {
+            if (watcher.isWatching()) {
+                return true;
+            }
+            // the directory was deleted; watch it again once it is recreated, and list it until then
+            watcher = null;
+            probed.clear();
+        }
+        if (!watch) {
+            return false;
+        }
+        InstallRootWatcher newWatcher = new InstallRootWatcher(installationDir, dirPattern);
+        newWatcher.addListener(new InstallRootWatcher.Listener() {
+            public void added(String name) {
+                probed.remove(toExecutablePath(name));
+                fireChanged(toolType);
+            }
+
+            public void removed(String name) {
+                probed.remove(toExecutablePath(name));
+                fireChanged(toolType);
+            }
+        });
+        if (!newWatcher.start()) {
+            return false;
+        }
+        watcher = newWatcher;
+        return true;
+    }
+
+    /**
+     * Returns installations under the watched directory. Only installations added since the last call are probed.
+     *
+     * @return List of installations, in folder name order
+     */
+    private List<T> getWatchedInstances() {
+        List<String> paths = findPaths();
+        List<String> toProbe = new ArrayList<String>();
+        for (String path : paths) {
+            if (!probed.containsKey(path)) {
+                toProbe.add(path);
+            }
+        }
+        if (!toProbe.isEmpty()) {
+            for (T installation : probe(toProbe)) {
+                probed.put(installation.getHome(), installation);
+            }
+        }
+        probed.keySet().retainAll(paths);
+
+        List<T> instances = new ArrayList<T>();
+        for (String path : paths) {
+            T installation = probed.get(path);
+            if (installation != null) {
+                instances.add(installation);
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Returns the installations of the given launchers. Results are remembered in ProbeCache until the launcher or
+     * its version files change. Paths are probed concurrently without holding a thread per probe, and each
+     * installation is published as soon as it is probed; the result keeps the order of the given paths. A path
+     * leading to the same executable as an earlier one, such as through a symbolic link to another installation
+     * folder, is not probed.
+     *
+     * @param paths paths to launchers
+     * @return List of installations, without the launchers which are not working installations
+     */
+    private List<T> probe(List<String> paths) {
+        final CommandRunner cmd = new CommandRunner(env);
+        return ParallelProbe.probeAllAsync(PathIdentity.distinct(paths),
+                new ParallelProbe.AsyncProbe<String, T>() {
+                    public CompletableFuture<T> probe(final String path) {
+                        return ProbeCache.get().lookup(probeKind, new File(path), getVersionFiles(path),
+                                () -> getVersionName(cmd, path))
+                                .thenApply(name -> {
+                                    if (name == null) {
+                                        return null;
+                                    }
+                                    T installation = createInstallation(name, path);
+                                    publish(installation);
+                                    return installation;
+                                });
+                    }
+                }, ParallelProbe.DEFAULT_PARALLELISM).join();
+    }
+}
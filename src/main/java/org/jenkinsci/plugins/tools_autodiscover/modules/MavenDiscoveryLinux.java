@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.tasks.Maven.MavenInstallation;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallHomeScanner;
+import org.jenkinsci.plugins.tools_autodiscover.util.MavenMetadata;
+import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+/**
+ * Maven discovery module for Linux systems
+ * <p/>
+ * Looks for Maven homes where distribution packages, SDKMAN! and update-alternatives put them, and under /opt.
+ * The version is read from the maven-core jar of each home; no process is started.
+ */
+public class MavenDiscoveryLinux extends LinuxHomeDiscovery {
+    private static final Pattern OPT_DIR_PATTERN = Pattern.compile("(apache-)?maven.*");
+
+    /**
+     * Constructs MavenDiscoveryLinux module using system Environment bridge object.
+     */
+    public MavenDiscoveryLinux() {
+        this(new Environment());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     */
+    MavenDiscoveryLinux(Environment environment) {
+        this(environment, new File("/"), environment.getSdkmanDir());
+    }
+
+    /**
+     * Constructor for dependency injection.
+     *
+     * @param environment Environment to be used
+     * @param rootDir     directory the well-known absolute paths are resolved against
+     * @param sdkmanDir   SDKMAN! directory
+     */
+    MavenDiscoveryLinux(Environment environment, File rootDir, File sdkmanDir) {
+        super(environment, MavenInstallation.class, "mvn", rootDir, sdkmanDir);
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return toPaths(MavenMetadata.getCoreJars(new File(candidate)));
+    }
+
+    @Override
+    protected void addHomes(InstallHomeScanner scanner, File rootDir, File sdkmanDir) {
+        scanner.addHome(new File(rootDir, StringConstants.Linux.MAVEN_HOME_PATH));
+        scanner.addChildren(new File(rootDir, StringConstants.Linux.OPT_DIR_PATH), OPT_DIR_PATTERN);
+        scanner.addChildren(new File(sdkmanDir, StringConstants.Linux.SDKMAN_CANDIDATES_DIR + "/maven"), null);
+        // <home>/bin/mvn
+        scanner.addLinkTarget(new File(rootDir, StringConstants.Linux.ALTERNATIVES_DIR_PATH + "/mvn"), 2);
+    }
+
+    @Override
+    protected ToolInstallation createInstallation(File home) {
+        String version = MavenMetadata.readVersion(home);
+        return version == null ? null : new MavenInstallation("Apache Maven " + version, home.getPath(), null);
+    }
+}
@@ -1,34 +1,41 @@
 package org.jenkinsci.plugins.tools_autodiscover.modules;
 
-
 import hudson.tasks.Maven.MavenInstallation;
-import hudson.tools.ToolInstallation;
-import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
 import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.InstallRootWatcher;
+import org.jenkinsci.plugins.tools_autodiscover.util.MavenMetadata;
 import org.jenkinsci.plugins.tools_autodiscover.util.StringConstants;
 import org.jenkinsci.plugins.tools_autodiscover.util.StringUtils;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Maven discovery module for Mac OS X compatible systems
+ * <p/>
+ * Looks for maven folders installed by MacPorts. The version is read from the maven-core jar of each installation,
+ * and mvn -v is only run when that metadata is missing.
  */
-public class MavenDiscoveryOSX extends ToolAutoDiscoveryModule {
-    private File installationDir;
-    
+public class MavenDiscoveryOSX extends MacPortsDiscovery<MavenInstallation> {
+    // Key of results in ProbeCache, which map an mvn executable to its installation name, such as "Apache Maven 3.9.10"
+    private static final String PROBE_KIND = "maven-osx";
+
+    private static final Pattern MAVEN_DIR_PATTERN = Pattern.compile("maven\\d*");
+    // Version in the first line of mvn -v, such as "3.9.10" or "4.0.0-rc-2"
+    private static final Pattern VERSION_PATTERN = Pattern.compile("Apache Maven\\s+(\\d+(?:[.-][0-9A-Za-z]+)*)");
+
     /**
      * Constructs MavenDiscoveryOSX module using system Environment bridge object.
      */
     public MavenDiscoveryOSX() {
         this(new Environment());
     }
-    
+
     /**
      * Constructor for dependency injection.
      *
@@ -38,7 +45,6 @@ public class MavenDiscoveryOSX extends ToolAutoDiscoveryModule {
         this(environment, new File(StringConstants.MacOSX.MAVEN_DIR_PATH));
     }
 
-    
     /**
      * Constructor for dependency injection.
      *
@@ -46,96 +52,65 @@ public class MavenDiscoveryOSX extends ToolAutoDiscoveryModule {
      * @param installationDir File object used to list installation directory. Must support listFiles() method.
      */
     MavenDiscoveryOSX(Environment environment, File installationDir) {
-        super(environment);
-        this.installationDir = installationDir;
+        this(environment, installationDir, StringConstants.MacOSX.MAVEN_DIR_PATH, InstallRootWatcher.ENABLED);
     }
 
     /**
-     * Returns whether or not the given ToolInstallation is an Maven installation.
-     * 
-     * @param   toolType    The ToolInstallation in question. 
-     * @return  Boolean indicating whether or not the tool is Maven.
-     */
-    @Override
-    public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
-        return ((toolType == MavenInstallation.class) && env.isMacOSX());
-    }
-    /**
-     *  Returns a List of detected Maven installations. Each item includes the version number and path on system.
-     *  Takes in a ToolInstallation to check that the correct field in the Jenkins configue page will be populated.
-     *  If it is the correct ToolInstallation, getToolInstallations will make a call to a helper method to do the work.  
+     * Constructor for dependency injection.
      *
-     *  @param  toolType    The ToolInstallation in question.
-     *  @return List of detected MavenInstallation objects that contain pertinent information.
+     * @param environment     Environment to be used
+     * @param installationDir directory holding Maven installations
+     * @param pathPrefix      prefix of reported paths, the path of installationDir with a trailing separator
+     * @param watch           true to watch installationDir for changes instead of listing it on every discovery
      */
-    @Override
-    public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
-        if (!isApplicable(toolType)) {
-            return Collections.emptyList();
-        }
-        List<MavenInstallation> instances = getLocalMavenInstances();
-        return Collections.<ToolInstallation>unmodifiableList(instances);
+    MavenDiscoveryOSX(Environment environment, File installationDir, String pathPrefix, boolean watch) {
+        super(environment, MavenInstallation.class, "mvn", MAVEN_DIR_PATTERN, PROBE_KIND, installationDir,
+                pathPrefix, watch);
     }
 
-    /**
-     * Returns the list of locally available Maven instances. Must be running under Mac OS X.
-     * Starts by going to a known directory where maven instances can be found (/opt/local/share/java/) and collects
-     * all paths to maven folders using a regex. This list is passed to a helper method that will run "mvn -v" on each
-     * found path.
-     *
-     * @return List of MavenInstallation objects that contain information describing each found instance.
-     */
-    protected List<MavenInstallation> getLocalMavenInstances() {
-
-        ArrayList<String> foundMavenPaths = new ArrayList<String>();
-
-        Pattern mavenPattern = Pattern.compile("maven\\d*");
-        File[] dirList = installationDir.listFiles();
-        if (dirList == null) {
-            return Collections.emptyList();
-        }
-        for (File file : dirList) {
-            Matcher m = mavenPattern.matcher(file.getName());
-            if (m.matches()) {
-                foundMavenPaths.add(StringConstants.MacOSX.MAVEN_DIR_PATH + file.getName() + "/bin/mvn");
-            }
-        }
-
-        // No maven instances found.
-        if (foundMavenPaths.size() == 0) {
-            return Collections.emptyList();
-        }
-
-        return parseLocalMavenInfos(foundMavenPaths);
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return toPaths(MavenMetadata.getCoreJars(getHome(candidate)));
+    }
 
+    @Override
+    protected MavenInstallation createInstallation(String name, String path) {
+        return new MavenInstallation(name, path, null);
     }
 
     /**
-     * Extracts the version information from the output of mvn%d -v.
+     * Extracts the version information from the output of mvn%d -v, such as
+     * "Apache Maven 3.9.10 (5f519b97e944483d878815739f519b2eade0a91d)".
      *
-     * @return string containing version information
+     * @return string containing version information, such as "Apache Maven 3.9.10"; null if there is none
      */
     String extractMavenVersionInfo(String output) {
-        return output.substring(0, 18);
+        Matcher matcher = VERSION_PATTERN.matcher(output);
+        if (!matcher.find()) {
+            return null;
+        }
+        return "Apache Maven " + matcher.group(1);
     }
 
     /**
-     * Returns a list of MavenInstallation objects compiled from running mvn# -v on each found maven path.
-     * Given a list of paths to Maven executables, this function runs mvn -v to find out version information on each
-     * instance. Output from -v is buffered into a string and parsed.
+     * Returns the installation name of the given mvn executable, read from maven-core metadata when available.
      *
-     * @return List of MavenInstallation objects.
+     * @param cmd       CommandRunner used when the metadata is missing
+     * @param mavenPath path to mvn executable, in &lt;MAVEN_HOME&gt;/bin
+     * @return future of the name, completed with null if mvn could not be run
      */
-    private List<MavenInstallation> parseLocalMavenInfos(List<String> paths) {
-        List<MavenInstallation> mavenObjects = new ArrayList<MavenInstallation>();
-        CommandRunner cmd = new CommandRunner(env);
-        for (String mavenPath : paths) {
-            List<String> listOutput = cmd.run(mavenPath + " -v", null);
-            String output = StringUtils.listToString(listOutput);
-            if (output != null)
-                mavenObjects.add(new MavenInstallation(extractMavenVersionInfo(output), mavenPath, null));
+    @Override
+    protected CompletableFuture<String> getVersionName(CommandRunner cmd, String mavenPath) {
+        String version = MavenMetadata.readVersion(getHome(mavenPath));
+        if (version != null) {
+            return CompletableFuture.completedFuture("Apache Maven " + version);
         }
-
-        return mavenObjects;
+        return cmd.runAsync(Arrays.asList(mavenPath, "-v")).thenApply(result -> {
+            List<String> listOutput = result.getOutput();
+            if (listOutput.isEmpty()) {
+                return null;
+            }
+            return extractMavenVersionInfo(StringUtils.listToString(listOutput));
+        });
     }
 }
@@ -5,17 +5,28 @@ import hudson.tasks.Maven.MavenInstallation;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
 import org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryEvents;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.MavenMetadata;
+import org.jenkinsci.plugins.tools_autodiscover.util.ParallelProbe;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIndex;
 import org.jenkinsci.plugins.tools_autodiscover.util.PathUtils;
+import org.jenkinsci.plugins.tools_autodiscover.util.ProbeCache;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Maven discovery module for Windows compatible systems
  */
 public class MavenDiscoveryWindows extends ToolAutoDiscoveryModule {
+    // Key of results in ProbeCache
+    private static final String PROBE_KIND = "maven-windows";
+
 
     /**
      * public no parameter constructor for MavenDiscoveryWindows
@@ -51,21 +62,63 @@ public class MavenDiscoveryWindows extends ToolAutoDiscoveryModule {
      * Find paths of all installed MVN's
      */
     public List<MavenInstallation> findPath() {
-        List<MavenInstallation> path_list = new ArrayList<MavenInstallation>();
-        String path = env.getPath();
-        String[] paths = path.split("[;]+");
+        // read maven-core metadata, or run mvn -version, for several entries at a time,
+        // and publish each installation as soon as it is probed
+        return ParallelProbe.probeAllAsync(getMavenPathEntries(),
+                new ParallelProbe.AsyncProbe<String, MavenInstallation>() {
+                    public CompletableFuture<MavenInstallation> probe(final String words) {
+                        return ProbeCache.get().lookup(PROBE_KIND, getLauncher(words), getVersionFiles(words),
+                                () -> getMVNVersionAsync(words)).thenApply(mvnVersion -> {
+                            if (mvnVersion == null) {
+                                return null;
+                            }
+                            MavenInstallation installation =
+                                    new MavenInstallation(mvnVersion, PathUtils.Windows.getParentDir(words), null);
+                            publish(installation);
+                            return installation;
+                        });
+                    }
+                }, ParallelProbe.DEFAULT_PARALLELISM).join();
+    }
 
-        for (String words : paths) {
+    /**
+     * Returns PATH entries which look like maven bin directories and hold an mvn script. Entries naming the same
+     * directory, such as ones differing only in case or a trailing backslash, are returned once.
+     */
+    private List<String> getMavenPathEntries() {
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        List<String> entries = new ArrayList<String>();
+        for (String words : PathIndex.get(env).getDirectories(PathIndex.Executable.MAVEN)) {
             if (words.contains("maven")) {
-                String mvnVersion = getMVNVersion(words);
-                if (mvnVersion != null) {
-                    MavenInstallation mvn =
-                            new MavenInstallation(mvnVersion, PathUtils.Windows.getParentDir(words), null);
-                    path_list.add(mvn);
-                }
+                entries.add(words);
             }
         }
-        return path_list;
+        event.finish(this, entries.size());
+        return entries;
+    }
+
+    @Override
+    protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+        return getMavenPathEntries();
+    }
+
+    @Override
+    protected boolean isCandidate(String candidate) {
+        return PathIndex.get(env).getLauncher(candidate, PathIndex.Executable.MAVEN) != null;
+    }
+
+    @Override
+    protected Iterable<String> getVersionFiles(String candidate) {
+        return toPaths(MavenMetadata.getCoreJars(new File(PathUtils.Windows.getParentDir(candidate))));
+    }
+
+    /**
+     * Returns the mvn script in the given bin directory, which identifies the installation in ProbeCache.
+     */
+    private File getLauncher(String pathToMaven) {
+        String launcher = PathIndex.get(env).getLauncher(pathToMaven, PathIndex.Executable.MAVEN);
+        return new File(launcher != null ? launcher : pathToMaven + "\\mvn.cmd");
     }
 
     /**
@@ -74,11 +127,31 @@ public class MavenDiscoveryWindows extends ToolAutoDiscoveryModule {
      * @param pathToMaven path to bin holding maven file
      */
     String getMVNVersion(String pathToMaven) {
-        String command = "\"" + pathToMaven + "\\mvn\" -version";
-        List<String> toParse = new CommandRunner(env).run(command, null);
-        if (toParse.size() <= 0) return null;
+        return getMVNVersionAsync(pathToMaven).join();
+    }
+
+    /**
+     * Reads the version from the maven-core jar in the given Path, or else starts mvn -version without waiting for
+     * it.
+     *
+     * @param pathToMaven path to bin holding maven file
+     * @return future of the version, completed with null if maven could not be run
+     */
+    private CompletableFuture<String> getMVNVersionAsync(String pathToMaven) {
+        String version = MavenMetadata.readVersion(new File(PathUtils.Windows.getParentDir(pathToMaven)));
+        if (version != null) {
+            // same form as parsed from "Apache Maven x.y.z (...)" below
+            return CompletableFuture.completedFuture("ApacheMaven" + version);
+        }
+
+        List<String> command = Arrays.asList(getLauncher(pathToMaven).getPath(), "-version");
+        return new CommandRunner(env).runAsync(command).thenApply(result -> {
+            List<String> toParse = result.getOutput();
+            if (toParse.size() <= 0) return null;
 
-        String[] toReturn = toParse.get(0).split("[ ]+");
-        return (toReturn[0] + toReturn[1] + toReturn[2]);
+            String[] toReturn = toParse.get(0).split("[ ]+");
+            if (toReturn.length < 3) return null;
+            return (toReturn[0] + toReturn[1] + toReturn[2]);
+        });
     }
 }
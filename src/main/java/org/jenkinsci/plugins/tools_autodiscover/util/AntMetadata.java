@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Reads the version of an Ant installation from its install tree, without running ant.
+ * <p/>
+ * {@code lib/ant.jar} holds {@code org/apache/tools/ant/version.txt}, the file from which {@code ant -version}
+ * builds its answer; only that entry of the jar is read.
+ */
+public class AntMetadata {
+    static final String VERSION_TXT = "org/apache/tools/ant/version.txt";
+
+    private AntMetadata() {
+    }
+
+    /**
+     * Reads the version of an Ant installation.
+     *
+     * @param antHome root of the Ant installation, holding bin and lib
+     * @return version such as "1.10.5", or null if the metadata is missing or unreadable
+     */
+    public static String readVersion(File antHome) {
+        return JarProperties.getNonBlank(readVersionTxt(antHome), "VERSION");
+    }
+
+    /**
+     * Reads the version of an Ant installation as the line {@code ant -version} would print, such as
+     * "Apache Ant(TM) version 1.10.5 compiled on July 10 2018", so it can be parsed the same way.
+     *
+     * @param antHome root of the Ant installation, holding bin and lib
+     * @return version line, or null if the metadata is missing or unreadable
+     */
+    public static String readVersionLine(File antHome) {
+        Properties properties = readVersionTxt(antHome);
+        String version = JarProperties.getNonBlank(properties, "VERSION");
+        if (version == null) {
+            return null;
+        }
+        String date = JarProperties.getNonBlank(properties, "DATE");
+        // same format as org.apache.tools.ant.Main#getAntVersion
+        return "Apache Ant(TM) version " + version + (date == null ? "" : " compiled on " + date);
+    }
+
+    /**
+     * Returns the jar the version of an Ant installation is read from.
+     *
+     * @param antHome root of the Ant installation, holding bin and lib
+     * @return lib/ant.jar of the installation, which may not exist
+     */
+    public static File getJar(File antHome) {
+        return new File(new File(antHome, "lib"), "ant.jar");
+    }
+
+    private static Properties readVersionTxt(File antHome) {
+        return JarProperties.read(getJar(antHome), VERSION_TXT);
+    }
+}
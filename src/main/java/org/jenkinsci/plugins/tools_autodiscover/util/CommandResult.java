@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a command executed by {@link CommandRunner}.
+ */
+public class CommandResult {
+    /**
+     * Exit code reported when the process did not exit normally or was never started.
+     */
+    public static final int NO_EXIT_CODE = -1;
+
+    /**
+     * How the command ended.
+     */
+    public enum Status {
+        /**
+         * The process exited with code 0 and its whole output was read.
+         */
+        SUCCESS,
+        /**
+         * The process did not finish before the deadline and was destroyed.
+         */
+        TIMEOUT,
+        /**
+         * The process produced more output than allowed. Output is cut at the limit and the process was destroyed.
+         */
+        TRUNCATED,
+        /**
+         * The process could not be started, its output could not be read, or it exited with a non-zero code.
+         */
+        FAILURE
+    }
+
+    private final Status status;
+    private final List<String> output;
+    private final List<String> errorOutput;
+    private final int exitCode;
+
+    /**
+     * Construct a result.
+     *
+     * @param status   how the command ended
+     * @param output   lines read from stdout, in order; may be partial unless status is SUCCESS
+     * @param exitCode exit code of the process, or {@link #NO_EXIT_CODE}
+     */
+    public CommandResult(Status status, List<String> output, int exitCode) {
+        this(status, output, Collections.<String>emptyList(), exitCode);
+    }
+
+    /**
+     * Construct a result.
+     *
+     * @param status      how the command ended
+     * @param output      lines read from stdout, in order; may be partial unless status is SUCCESS
+     * @param errorOutput lines read from stderr, in order; may be partial unless status is SUCCESS
+     * @param exitCode    exit code of the process, or {@link #NO_EXIT_CODE}
+     */
+    public CommandResult(Status status, List<String> output, List<String> errorOutput, int exitCode) {
+        this.status = status;
+        this.output = Collections.unmodifiableList(new ArrayList<String>(output));
+        this.errorOutput = Collections.unmodifiableList(new ArrayList<String>(errorOutput));
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * Build a result for a command which could not be started.
+     *
+     * @return FAILURE result without output
+     */
+    public static CommandResult notStarted() {
+        return new CommandResult(Status.FAILURE, Collections.<String>emptyList(), NO_EXIT_CODE);
+    }
+
+    /**
+     * Build a result for a command which was started, but whose end could not be awaited or whose output could
+     * not be read.
+     *
+     * @return FAILURE result without output
+     */
+    public static CommandResult failed() {
+        return new CommandResult(Status.FAILURE, Collections.<String>emptyList(), NO_EXIT_CODE);
+    }
+
+    /**
+     * Returns how the command ended.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Tests whether the command ran to completion with exit code 0.
+     *
+     * @return true if status is SUCCESS; false otherwise
+     */
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * Returns lines read from stdout, trimmed. Never null; empty if the command could not be started.
+     * <p/>
+     * Output of unsuccessful commands is kept, as a probe may still find what it needs in it.
+     *
+     * @return unmodifiable List of output lines in order
+     */
+    public List<String> getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns lines read from stderr, trimmed. Never null.
+     * <p/>
+     * Some tools, such as {@code java -version}, print their answer here.
+     *
+     * @return unmodifiable List of error output lines in order
+     */
+    public List<String> getErrorOutput() {
+        return errorOutput;
+    }
+
+    /**
+     * Returns the exit code of the process.
+     *
+     * @return exit code, or {@link #NO_EXIT_CODE} if the process was not started or did not exit normally
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandResult{status=" + status + ", exitCode=" + exitCode + ", lines=" + output.size() + '}';
+    }
+}
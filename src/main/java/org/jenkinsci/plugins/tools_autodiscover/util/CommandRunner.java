@@ -1,18 +1,53 @@
 package org.jenkinsci.plugins.tools_autodiscover.util;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
  * Helper class to simplify command execution and output parsing.
+ * <p/>
+ * Every command runs under a deadline and an output limit. When the deadline passes, the process and all of its
+ * descendants are destroyed. Streams are always closed and the process is always reaped before returning.
+ * Commands can be started with {@link #runAsync(List, Map, File)} and composed as {@link CompletableFuture}s.
+ * The number of processes running at the same time is limited plugin-wide by {@link SpawnGovernor}. Processes
+ * started, their duration, how they ended and their output size are counted in {@link DiscoveryMetrics}, and each
+ * command is recorded as a {@link DiscoveryEvents.Command} event.
  */
 public class CommandRunner {
+    private static final Logger LOGGER = Logger.getLogger(CommandRunner.class.getName());
+
+    /**
+     * Default deadline of a command, in milliseconds. Can be overridden with the system property
+     * {@code org.jenkinsci.plugins.tools_autodiscover.util.CommandRunner.timeout}.
+     */
+    public static final long DEFAULT_TIMEOUT = Long.getLong(CommandRunner.class.getName() + ".timeout", 30000);
+
+    /**
+     * Default maximum number of bytes kept from each stream of a command.
+     */
+    public static final int DEFAULT_MAX_OUTPUT_BYTES = 64 * 1024;
+
+    /**
+     * Default maximum number of lines kept from each stream of a command.
+     */
+    public static final int DEFAULT_MAX_OUTPUT_LINES = 1000;
+
     private Environment env;
+    private final SpawnGovernor governor;
+    private long timeoutMillis = DEFAULT_TIMEOUT;
+    private int maxOutputBytes = DEFAULT_MAX_OUTPUT_BYTES;
+    private int maxOutputLines = DEFAULT_MAX_OUTPUT_LINES;
 
     /**
      * Build CommandRunner which uses specified environment.
@@ -20,48 +55,293 @@ public class CommandRunner {
      * @param environment Environment to be used.
      */
     public CommandRunner(Environment environment) {
+        this(environment, SpawnGovernor.get());
+    }
+
+    /**
+     * Build CommandRunner which uses specified environment and limits processes with the given governor.
+     *
+     * @param environment Environment to be used.
+     * @param governor    SpawnGovernor every command goes through
+     */
+    public CommandRunner(Environment environment, SpawnGovernor governor) {
         env = environment;
+        this.governor = governor;
+    }
+
+    /**
+     * Set the deadline of each command run by this object.
+     *
+     * @param timeout time the command may run for
+     * @param unit    unit of timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Set the maximum number of bytes kept from each stream of a command.
+     *
+     * @param maxOutputBytes maximum number of bytes
+     */
+    public void setMaxOutputBytes(int maxOutputBytes) {
+        if (maxOutputBytes <= 0) {
+            throw new IllegalArgumentException("maxOutputBytes must be positive");
+        }
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * Set the maximum number of lines kept from each stream of a command.
+     *
+     * @param maxOutputLines maximum number of lines
+     */
+    public void setMaxOutputLines(int maxOutputLines) {
+        if (maxOutputLines <= 0) {
+            throw new IllegalArgumentException("maxOutputLines must be positive");
+        }
+        this.maxOutputLines = maxOutputLines;
+    }
+
+    /**
+     * Run specified command, inheriting environment variables and working directory.
+     *
+     * @param command program and its arguments
+     * @return CommandResult containing every line from stdout and stderr in order; never null
+     * @see #run(List, Map, File)
+     */
+    public CommandResult run(List<String> command) {
+        return run(command, null, null);
     }
 
     /**
      * Run specified command with environment variables.
+     * <p/>
+     * Blocks until {@link #runAsync(List, Map, File)} completes.
      *
-     * @param toRun command to run
-     * @param envp  array of "VAR=VALUE" entries for environment variables, or null to inherit environment variables
-     * @return List containing every line from stdout in order
+     * @param command     program and its arguments, passed to the program without a shell
+     * @param environment variables set on top of the inherited ones, or null to inherit environment variables
+     * @param dir         working directory, or null for the one of Jenkins
+     * @return CommandResult containing every line from stdout and stderr in order; never null
      */
-    public List<String> run(String toRun, String[] envp) {
-        ArrayList<String> results = new ArrayList<String>();
+    public CommandResult run(List<String> command, Map<String, String> environment, File dir) {
+        CompletableFuture<CommandResult> future = runAsync(command, environment, dir);
         try {
-            Process proc = env.exec(toRun, envp, null);
-            InputStream is = proc.getInputStream();
-            InputStreamReader isr = new InputStreamReader(is);
-            BufferedReader br = new BufferedReader(isr);
-            String line;
-
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                results.add(line);
+            return future.get();
+        } catch (InterruptedException ex) {
+            // cancelling destroys the process
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return CommandResult.failed();
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.FINE, "Failed to read output of " + toCommandLine(command), ex.getCause());
+            return CommandResult.failed();
+        }
+    }
+
+    /**
+     * Start specified command, inheriting environment variables and working directory, without waiting for it.
+     *
+     * @param command program and its arguments
+     * @return future of the CommandResult
+     * @see #runAsync(List, Map, File)
+     */
+    public CompletableFuture<CommandResult> runAsync(List<String> command) {
+        return runAsync(command, null, null);
+    }
+
+    /**
+     * Start specified command with environment variables, without waiting for it.
+     * <p/>
+     * The program is started directly by {@link Environment#exec(List, Map, File)}, without a shell. Stdout and
+     * stderr are drained concurrently by readers of a shared pool, so a process filling either pipe never blocks, and
+     * the calling thread is not held while it runs. Deadline and output limits apply as for
+     * {@link #run(List, Map, File)}; output past the limits on either stream ends the command. The process is
+     * started once a permit of the {@link SpawnGovernor} is available, by the thread giving it back if none is free
+     * yet; the calling thread never waits for it.
+     *
+     * @param command     program and its arguments, passed to the program without a shell
+     * @param environment variables set on top of the inherited ones, or null to inherit environment variables
+     * @param dir         working directory, or null for the one of Jenkins
+     * @return future of the CommandResult; never completes exceptionally unless output could not be pumped.
+     * Cancelling it destroys the process, or gives up waiting for a permit. Completed with a FAILURE result if no
+     * process permit became available.
+     */
+    public CompletableFuture<CommandResult> runAsync(List<String> command, Map<String, String> environment, File dir) {
+        return runAsync(command, environment, dir, null);
+    }
+
+    /**
+     * Start specified command with environment variables, handing each line of its stdout to the given consumer as
+     * soon as it is read.
+     * <p/>
+     * Behaves as {@link #runAsync(List, Map, File)}, but stdout is not kept: the output of the result is empty, so
+     * long outputs can be processed without holding them in memory. The output limits still apply, and only guard
+     * against runaway commands; lines read before a command is cut short have been handed over.
+     *
+     * @param command     program and its arguments, passed to the program without a shell
+     * @param environment variables set on top of the inherited ones, or null to inherit environment variables
+     * @param dir         working directory, or null for the one of Jenkins
+     * @param outputLines receives each line of stdout, trimmed, on a reader thread; lines are handed over one at a
+     *                    time and all of them before the future completes. Null to keep them in the result.
+     * @return future of the CommandResult, completed exceptionally if the consumer throws
+     */
+    public CompletableFuture<CommandResult> runAsync(final List<String> command,
+                                                     final Map<String, String> environment, final File dir,
+                                                     final Consumer<String> outputLines) {
+        final String toRun = toCommandLine(command);
+        final DiscoveryMetrics metrics = DiscoveryMetrics.get();
+        final DiscoveryEvents.Command event = new DiscoveryEvents.Command();
+        event.begin();
+        final CompletableFuture<CommandResult> result = new CompletableFuture<CommandResult>();
+        final CompletableFuture<Boolean> permit = governor.acquireAsync();
+        permit.whenComplete((granted, failure) -> {
+            if (failure != null) {
+                // request given up, the result was cancelled
+                event.finish(toRun, null);
+            } else if (!granted) {
+                LOGGER.log(Level.FINE, "Not starting {0}: too many processes running ({1})",
+                        new Object[]{toRun, governor});
+                metrics.recordNotStarted();
+                notStarted(result, toRun, event);
+            } else if (result.isDone()) {
+                // cancelled while waiting
+                governor.release();
+                event.finish(toRun, null);
+            } else {
+                try {
+                    start(command, environment, dir, outputLines, result, toRun, metrics, event);
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            }
+        });
+        result.whenComplete((r, failure) -> {
+            if (result.isCancelled()) {
+                // gives up the request if still waiting for a permit
+                permit.cancel(false);
             }
+        });
+        return result;
+    }
 
-            return results;
+    /**
+     * Start the command once a permit was acquired, completing the result when the process ended.
+     */
+    private void start(List<String> command, Map<String, String> environment, File dir, Consumer<String> outputLines,
+                       final CompletableFuture<CommandResult> result, final String toRun,
+                       final DiscoveryMetrics metrics, final DiscoveryEvents.Command event) {
+        final long start = System.nanoTime();
+        final Process proc;
+        try {
+            proc = env.exec(command, environment, dir);
         } catch (IOException ex) {
-            // Report Problems
-            // ...
-            ex.printStackTrace();
+            governor.release();
+            LOGGER.log(Level.FINE, "Failed to start " + toRun, ex);
+            metrics.recordNotStarted();
+            notStarted(result, toRun, event);
+            return;
+        } catch (SecurityException ex) {
+            governor.release();
+            LOGGER.log(Level.FINE, "Not allowed to start " + toRun, ex);
+            metrics.recordNotStarted();
+            notStarted(result, toRun, event);
+            return;
+        } catch (RuntimeException ex) {
+            governor.release();
+            metrics.recordNotStarted();
+            event.finish(toRun, null);
+            throw ex;
+        }
+        if (proc == null) {
+            governor.release();
+            metrics.recordNotStarted();
+            notStarted(result, toRun, event);
+            return;
+        }
+        metrics.recordStarted();
+
+        final CompletableFuture<CommandResult> pumped =
+                ProcessPump.get().submit(proc, timeoutMillis, maxOutputBytes, maxOutputLines, outputLines);
+        // the permit is given back before callers see the result, so a continuation may start the next command
+        pumped.whenComplete((r, failure) -> {
+            governor.release();
+            metrics.recordCommand(toRun, System.nanoTime() - start,
+                    r != null ? r.getStatus() : CommandResult.Status.FAILURE);
+            event.finish(toRun, r);
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(r);
+            }
+        });
+        result.whenComplete((r, failure) -> {
+            if (result.isCancelled()) {
+                pumped.cancel(true);
+            }
+        });
+    }
+
+    private static void notStarted(CompletableFuture<CommandResult> future, String toRun,
+                                   DiscoveryEvents.Command event) {
+        CommandResult result = CommandResult.notStarted();
+        event.finish(toRun, result);
+        future.complete(result);
+    }
+
+    /**
+     * Forcibly destroy the process and every process it started.
+     */
+    static void destroy(Process proc) {
+        List<ProcessHandle> descendants = new ArrayList<ProcessHandle>();
+        try {
+            ProcessHandle handle = proc.toHandle();
+            if (handle != null) {
+                // collect before killing the parent, as orphans get re-parented
+                handle.descendants().forEach(descendants::add);
+            }
+        } catch (UnsupportedOperationException ignored) {
+        }
+        proc.destroyForcibly();
+        for (ProcessHandle descendant : descendants) {
+            descendant.destroyForcibly();
+        }
+    }
+
+    /**
+     * Returns the command as it would be typed, for logs: arguments separated by spaces, and quoted if they
+     * contain one.
+     *
+     * @param command program and its arguments
+     * @return command line
+     */
+    static String toCommandLine(List<String> command) {
+        StringBuilder sb = new StringBuilder();
+        for (String arg : command) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (arg.isEmpty() || arg.indexOf(' ') >= 0) {
+                sb.append('"').append(arg).append('"');
+            } else {
+                sb.append(arg);
+            }
         }
-        return null;
+        return sb.toString();
     }
 
     /**
      * Run specified command.
      * <p/>
-     * This is a shortcut for instance method {@link #run(String, String[])}.
+     * This is a shortcut for instance method {@link #run(List)}.
      *
-     * @param toRun command to run
-     * @return List containing every line from stdout in order
+     * @param command program and its arguments
+     * @return CommandResult containing every line from stdout in order; never null
      */
-    public static List<String> run(String toRun) {
-        return new CommandRunner(new Environment()).run(toRun, null);
+    public static CommandResult run(String... command) {
+        return new CommandRunner(new Environment()).run(Arrays.asList(command));
     }
 }
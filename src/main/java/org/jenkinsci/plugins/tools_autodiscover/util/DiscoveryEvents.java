@@ -0,0 +1,222 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of discovery, so that a recording shows which phase a slow discovery spent its time
+ * in: {@link Module} runs, {@link Candidates} enumeration, {@link Command}s such as version probes, {@link Parse}
+ * of tool output and {@link Dedup} of homes.
+ * <p/>
+ * Events are used as {@code event.begin(); ...; event.finish(...)}. Their fields are only filled in when the event
+ * is to be recorded, so they cost next to nothing while no recording is running. Events are enabled by default
+ * and can be switched off in a recording setting like any JDK event.
+ */
+public final class DiscoveryEvents {
+    private static final String CATEGORY_JENKINS = "Jenkins";
+    private static final String CATEGORY_DISCOVERY = "Tool Auto-Discovery";
+
+    private DiscoveryEvents() {
+    }
+
+    /**
+     * Returns the name of the class an event is attributed to, without its package.
+     */
+    static String sourceName(Object source) {
+        Class<?> c = source instanceof Class ? (Class<?>) source : source.getClass();
+        String name = c.getSimpleName();
+        // generated subclasses, such as proxies
+        int generated = name.indexOf("$$");
+        return generated > 0 ? name.substring(0, generated) : name;
+    }
+
+    /**
+     * A discovery module looking for installations of a tool type.
+     */
+    @Name("org.jenkinsci.plugins.tools_autodiscover.Module")
+    @Label("Discovery Module")
+    @Description("A discovery module looking for installations of a tool type")
+    @Category({CATEGORY_JENKINS, CATEGORY_DISCOVERY})
+    @StackTrace(false)
+    public static final class Module extends Event {
+        @Label("Module")
+        String module;
+
+        @Label("Tool Type")
+        String toolType;
+
+        @Label("Installations")
+        @Description("Number of installations found, before duplicates across modules are dropped")
+        int installations;
+
+        /**
+         * End and commit the event.
+         *
+         * @param module        module which ran
+         * @param toolType      tool type looked for
+         * @param installations number of installations found
+         */
+        public void finish(Object module, Class<?> toolType, int installations) {
+            end();
+            if (shouldCommit()) {
+                this.module = sourceName(module);
+                this.toolType = toolType.getSimpleName();
+                this.installations = installations;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Listing the locations which may hold an installation, before any of them is probed.
+     */
+    @Name("org.jenkinsci.plugins.tools_autodiscover.Candidates")
+    @Label("Candidate Enumeration")
+    @Description("Listing locations which may hold an installation")
+    @Category({CATEGORY_JENKINS, CATEGORY_DISCOVERY})
+    @StackTrace(false)
+    public static final class Candidates extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Candidates")
+        int candidates;
+
+        /**
+         * End and commit the event.
+         *
+         * @param source     module or class which listed the candidates
+         * @param candidates number of candidates listed
+         */
+        public void finish(Object source, int candidates) {
+            end();
+            if (shouldCommit()) {
+                this.source = sourceName(source);
+                this.candidates = candidates;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A process run by {@link CommandRunner}, such as a version probe, from start to end.
+     */
+    @Name("org.jenkinsci.plugins.tools_autodiscover.Command")
+    @Label("Discovery Command")
+    @Description("A process run during discovery, such as a version probe")
+    @Category({CATEGORY_JENKINS, CATEGORY_DISCOVERY})
+    @StackTrace(false)
+    public static final class Command extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Status")
+        String status;
+
+        @Label("Exit Code")
+        int exitCode;
+
+        @Label("Output Lines")
+        int outputLines;
+
+        /**
+         * End and commit the event.
+         *
+         * @param command command line
+         * @param result  result of the command, or null if its output could not be read
+         */
+        public void finish(String command, CommandResult result) {
+            end();
+            if (shouldCommit()) {
+                this.command = command;
+                if (result != null) {
+                    this.status = result.getStatus().name();
+                    this.exitCode = result.getExitCode();
+                    this.outputLines = result.getOutput().size();
+                } else {
+                    this.status = CommandResult.Status.FAILURE.name();
+                    this.exitCode = CommandResult.NO_EXIT_CODE;
+                }
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Parsing the output of a tool, such as the plist printed by {@code java_home -X}.
+     */
+    @Name("org.jenkinsci.plugins.tools_autodiscover.Parse")
+    @Label("Discovery Parse")
+    @Description("Parsing the output of a tool")
+    @Category({CATEGORY_JENKINS, CATEGORY_DISCOVERY})
+    @StackTrace(false)
+    public static final class Parse extends Event {
+        @Label("Parser")
+        String parser;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        /**
+         * End and commit the event.
+         *
+         * @param parser    parser which ran
+         * @param entries   number of entries read
+         * @param succeeded false if parsing stopped on an error
+         */
+        public void finish(Object parser, int entries, boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.parser = sourceName(parser);
+                this.entries = entries;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Dropping locations or installations which lead to a home already known.
+     */
+    @Name("org.jenkinsci.plugins.tools_autodiscover.Dedup")
+    @Label("Discovery De-duplication")
+    @Description("Dropping locations or installations leading to a home already known")
+    @Category({CATEGORY_JENKINS, CATEGORY_DISCOVERY})
+    @StackTrace(false)
+    public static final class Dedup extends Event {
+        @Label("Stage")
+        @Description("\"paths\" before probing, \"merge\" of the results of a module with those of earlier "
+                + "modules, or \"nested runtime\" for dropping the JRE inside another home")
+        String stage;
+
+        @Label("Input")
+        int input;
+
+        @Label("Output")
+        int output;
+
+        /**
+         * End and commit the event.
+         *
+         * @param stage  what was de-duplicated
+         * @param input  number of items before
+         * @param output number of items kept
+         */
+        public void finish(String stage, int input, int output) {
+            end();
+            if (shouldCommit()) {
+                this.stage = stage;
+                this.input = input;
+                this.output = output;
+                commit();
+            }
+        }
+    }
+}
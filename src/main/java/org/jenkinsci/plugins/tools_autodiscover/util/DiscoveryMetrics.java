@@ -0,0 +1,625 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters and latency histograms of discovery, for telling which module or command makes discovery slow.
+ * <p/>
+ * Latency is recorded for requests for installations of each tool type, for each discovery module, and for each
+ * command by executable name. Counters cover processes started, timed out and truncated, bytes of output read,
+ * candidates probed and accepted, and hits of the discovery cache and of {@link ProbeCache}. Recording only
+ * updates atomic counters.
+ * <p/>
+ * The metrics are exposed through JMX as {@value #OBJECT_NAME}, and in the Prometheus text format by
+ * {@link #toText()}. Metrics are kept per JVM: discovery running on an agent is counted on that agent, which sends a
+ * {@link #snapshot()} of them along with each answer. The controller keeps the latest snapshot of each agent with
+ * {@link #recordNode(String, Snapshot)}, and {@link #toText()} shows them next to its own with a "node" label.
+ */
+public class DiscoveryMetrics implements DiscoveryMetricsMBean {
+    private static final Logger LOGGER = Logger.getLogger(DiscoveryMetrics.class.getName());
+
+    /**
+     * Name of the MBean.
+     */
+    public static final String OBJECT_NAME = "org.jenkinsci.plugins.tools_autodiscover:type=DiscoveryMetrics";
+
+    private static final String PREFIX = "tools_autodiscover_";
+
+    private static final String INSTALLATIONS = "installations_seconds";
+    private static final String MODULES = "module_seconds";
+    private static final String COMMANDS = "command_seconds";
+    private static final String MODULE_INSTALLATIONS = "module_installations_total";
+    private static final String PROBED = "candidates_probed_total";
+    private static final String ACCEPTED = "candidates_accepted_total";
+    private static final String PROCESSES_STARTED = "processes_started_total";
+    private static final String PROCESSES_NOT_STARTED = "processes_not_started_total";
+    private static final String PROCESS_TIMEOUTS = "process_timeouts_total";
+    private static final String PROCESSES_TRUNCATED = "processes_truncated_total";
+    private static final String BYTES_READ = "process_output_bytes_total";
+    private static final String INVENTORY_CACHE_HITS = "inventory_cache_hits_total";
+    private static final String INVENTORY_CACHE_MISSES = "inventory_cache_misses_total";
+    private static final String PROBE_CACHE_HITS = "probe_cache_hits_total";
+    private static final String PROBE_CACHE_MISSES = "probe_cache_misses_total";
+
+    // in the order they are rendered
+    private static final Family[] HISTOGRAMS = {
+            new Family(INSTALLATIONS, "Time taken to answer requests for installations.", "tool"),
+            new Family(MODULES, "Time taken by discovery modules.", "module"),
+            new Family(COMMANDS, "Time from start to end of processes.", "executable")};
+    private static final Family[] LABELLED_COUNTERS = {
+            new Family(MODULE_INSTALLATIONS, "Installations found by discovery modules.", "module"),
+            new Family(PROBED, "Candidates handed to version probes.", "source"),
+            new Family(ACCEPTED, "Probed candidates found to be installations.", "source")};
+    private static final Family[] COUNTERS = {
+            new Family(PROCESSES_STARTED, "Processes started.", null),
+            new Family(PROCESSES_NOT_STARTED, "Commands which could not be started.", null),
+            new Family(PROCESS_TIMEOUTS, "Processes destroyed for not finishing in time.", null),
+            new Family(PROCESSES_TRUNCATED, "Processes destroyed for producing too much output.", null),
+            new Family(BYTES_READ, "Bytes read from stdout and stderr of processes.", null),
+            new Family(INVENTORY_CACHE_HITS, "Requests answered from the discovery cache.", null),
+            new Family(INVENTORY_CACHE_MISSES, "Requests which waited for discovery.", null),
+            new Family(PROBE_CACHE_HITS, "Version probes answered by the probe cache.", null),
+            new Family(PROBE_CACHE_MISSES, "Version probes the probe cache could not answer.", null)};
+
+    private static final DiscoveryMetrics INSTANCE = new DiscoveryMetrics();
+    private static volatile boolean registered;
+
+    private final ConcurrentMap<String, Histogram> installations = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> modules = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> commands = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, LongAdder> moduleInstallations = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, LongAdder> probed = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, LongAdder> accepted = new ConcurrentHashMap<String, LongAdder>();
+    private final LongAdder processesStarted = new LongAdder();
+    private final LongAdder processesNotStarted = new LongAdder();
+    private final LongAdder processTimeouts = new LongAdder();
+    private final LongAdder processesTruncated = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder inventoryCacheHits = new LongAdder();
+    private final LongAdder inventoryCacheMisses = new LongAdder();
+    private final LongAdder probeCacheHits = new LongAdder();
+    private final LongAdder probeCacheMisses = new LongAdder();
+    // latest snapshot sent by each agent
+    private final ConcurrentMap<String, Snapshot> nodes = new ConcurrentHashMap<String, Snapshot>();
+
+    DiscoveryMetrics() {
+    }
+
+    /**
+     * Returns the metrics of this JVM, registering the MBean on first use.
+     */
+    public static DiscoveryMetrics get() {
+        if (!registered) {
+            register();
+        }
+        return INSTANCE;
+    }
+
+    private static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                // left by a previous class loader of the plugin
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "Failed to register " + OBJECT_NAME, e);
+        } catch (SecurityException e) {
+            LOGGER.log(Level.FINE, "Not allowed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Record a request for installations of a tool type.
+     *
+     * @param toolType name of the tool type
+     * @param nanos    time taken to answer, in nanoseconds
+     * @param cached   true if the answer came from the discovery cache
+     */
+    public void recordInstallations(String toolType, long nanos, boolean cached) {
+        histogram(installations, toolType).record(nanos);
+        (cached ? inventoryCacheHits : inventoryCacheMisses).increment();
+    }
+
+    /**
+     * Record a run of a discovery module.
+     *
+     * @param module name of the module
+     * @param nanos  time taken by the module, in nanoseconds
+     * @param found  number of installations found
+     */
+    public void recordModule(String module, long nanos, int found) {
+        histogram(modules, module).record(nanos);
+        counter(moduleInstallations, module).add(found);
+    }
+
+    /**
+     * Record a command which could not be started.
+     */
+    public void recordNotStarted() {
+        processesNotStarted.increment();
+    }
+
+    /**
+     * Record a process having been started.
+     */
+    public void recordStarted() {
+        processesStarted.increment();
+    }
+
+    /**
+     * Record the end of a process.
+     *
+     * @param command command line, of which only the executable name is kept
+     * @param nanos   time from start to end, in nanoseconds
+     * @param status  how the process ended
+     */
+    public void recordCommand(String command, long nanos, CommandResult.Status status) {
+        histogram(commands, executableName(command)).record(nanos);
+        if (status == CommandResult.Status.TIMEOUT) {
+            processTimeouts.increment();
+        } else if (status == CommandResult.Status.TRUNCATED) {
+            processesTruncated.increment();
+        }
+    }
+
+    /**
+     * Record output read from a process.
+     *
+     * @param bytes number of bytes read
+     */
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Record the outcome of probing candidates.
+     *
+     * @param source   name of the module or class which probed them
+     * @param probed   number of candidates probed
+     * @param accepted number of candidates found to be installations
+     */
+    public void recordProbes(String source, int probed, int accepted) {
+        counter(this.probed, source).add(probed);
+        counter(this.accepted, source).add(accepted);
+    }
+
+    /**
+     * Record a lookup in {@link ProbeCache}.
+     *
+     * @param hit true if a remembered result was used
+     */
+    public void recordProbeCache(boolean hit) {
+        (hit ? probeCacheHits : probeCacheMisses).increment();
+    }
+
+    /**
+     * Keep the metrics an agent sent, replacing those it sent before. Agents send their totals since they started,
+     * so the latest snapshot is all there is to keep.
+     *
+     * @param nodeName name of the agent
+     * @param snapshot metrics of the agent
+     */
+    public void recordNode(String nodeName, Snapshot snapshot) {
+        nodes.put(nodeName, snapshot);
+    }
+
+    /**
+     * Drop the metrics of an agent, such as one which was deleted.
+     *
+     * @param nodeName name of the agent
+     */
+    public void forgetNode(String nodeName) {
+        nodes.remove(nodeName);
+    }
+
+    /**
+     * Returns a copy of the metrics of this JVM, which can be sent to another one. Metrics of agents kept by
+     * {@link #recordNode(String, Snapshot)} are not included.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.histograms.put(INSTALLATIONS, copyHistograms(installations));
+        snapshot.histograms.put(MODULES, copyHistograms(modules));
+        snapshot.histograms.put(COMMANDS, copyHistograms(commands));
+        snapshot.labelledCounters.put(MODULE_INSTALLATIONS, copyCounters(moduleInstallations));
+        snapshot.labelledCounters.put(PROBED, copyCounters(probed));
+        snapshot.labelledCounters.put(ACCEPTED, copyCounters(accepted));
+        snapshot.counters.put(PROCESSES_STARTED, processesStarted.sum());
+        snapshot.counters.put(PROCESSES_NOT_STARTED, processesNotStarted.sum());
+        snapshot.counters.put(PROCESS_TIMEOUTS, processTimeouts.sum());
+        snapshot.counters.put(PROCESSES_TRUNCATED, processesTruncated.sum());
+        snapshot.counters.put(BYTES_READ, bytesRead.sum());
+        snapshot.counters.put(INVENTORY_CACHE_HITS, inventoryCacheHits.sum());
+        snapshot.counters.put(INVENTORY_CACHE_MISSES, inventoryCacheMisses.sum());
+        snapshot.counters.put(PROBE_CACHE_HITS, probeCacheHits.sum());
+        snapshot.counters.put(PROBE_CACHE_MISSES, probeCacheMisses.sum());
+        return snapshot;
+    }
+
+    public long getProcessesStarted() {
+        return processesStarted.sum();
+    }
+
+    public long getProcessesNotStarted() {
+        return processesNotStarted.sum();
+    }
+
+    public long getProcessTimeouts() {
+        return processTimeouts.sum();
+    }
+
+    public long getProcessesTruncated() {
+        return processesTruncated.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getCandidatesProbed() {
+        return sum(probed);
+    }
+
+    public long getCandidatesAccepted() {
+        return sum(accepted);
+    }
+
+    public long getInventoryCacheHits() {
+        return inventoryCacheHits.sum();
+    }
+
+    public long getInventoryCacheMisses() {
+        return inventoryCacheMisses.sum();
+    }
+
+    public long getProbeCacheHits() {
+        return probeCacheHits.sum();
+    }
+
+    public long getProbeCacheMisses() {
+        return probeCacheMisses.sum();
+    }
+
+    /**
+     * Returns the latency histogram of a module.
+     *
+     * @param module name of the module
+     * @return histogram, or null if the module has not run
+     */
+    Histogram getModuleHistogram(String module) {
+        return modules.get(module);
+    }
+
+    /**
+     * Returns the latency histogram of commands with the given executable name.
+     *
+     * @param executable executable name, such as "mvn"
+     * @return histogram, or null if no such command has run
+     */
+    Histogram getCommandHistogram(String executable) {
+        return commands.get(executable);
+    }
+
+    public String getText() {
+        return toText();
+    }
+
+    /**
+     * Returns every metric in the Prometheus text exposition format: those of this JVM, and those of each agent
+     * with a "node" label.
+     */
+    public String toText() {
+        Map<String, Snapshot> byNode = new TreeMap<String, Snapshot>(nodes);
+        // no "node" label for this JVM
+        byNode.put("", snapshot());
+        return toText(byNode);
+    }
+
+    /**
+     * Renders snapshots in the Prometheus text exposition format, each sample labelled with the node it comes from.
+     *
+     * @param byNode snapshots by node name; samples of the empty name get no "node" label
+     * @return text of every metric
+     */
+    static String toText(Map<String, Snapshot> byNode) {
+        StringBuilder sb = new StringBuilder();
+        for (Family family : HISTOGRAMS) {
+            appendHeader(sb, family.name, family.help, "histogram");
+            for (Map.Entry<String, Snapshot> node : byNode.entrySet()) {
+                Map<String, HistogramCounts> histograms = node.getValue().histograms.get(family.name);
+                if (histograms != null) {
+                    appendHistograms(sb, family, nodeLabel(node.getKey()), histograms);
+                }
+            }
+        }
+        for (Family family : LABELLED_COUNTERS) {
+            appendHeader(sb, family.name, family.help, "counter");
+            for (Map.Entry<String, Snapshot> node : byNode.entrySet()) {
+                Map<String, Long> counters = node.getValue().labelledCounters.get(family.name);
+                if (counters != null) {
+                    appendCounters(sb, family, nodeLabel(node.getKey()), counters);
+                }
+            }
+        }
+        for (Family family : COUNTERS) {
+            appendHeader(sb, family.name, family.help, "counter");
+            for (Map.Entry<String, Snapshot> node : byNode.entrySet()) {
+                Long counter = node.getValue().counters.get(family.name);
+                if (counter != null) {
+                    String label = nodeLabel(node.getKey());
+                    sb.append(PREFIX).append(family.name);
+                    if (label != null) {
+                        sb.append('{').append(label).append('}');
+                    }
+                    sb.append(' ').append(counter).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        installations.clear();
+        modules.clear();
+        commands.clear();
+        moduleInstallations.clear();
+        probed.clear();
+        accepted.clear();
+        for (LongAdder counter : new LongAdder[]{processesStarted, processesNotStarted, processTimeouts,
+                processesTruncated, bytesRead, inventoryCacheHits, inventoryCacheMisses, probeCacheHits,
+                probeCacheMisses}) {
+            counter.reset();
+        }
+        nodes.clear();
+    }
+
+    /**
+     * Returns the name of the executable of a command line, without directory and extension.
+     */
+    static String executableName(String command) {
+        String executable = command.trim();
+        if (executable.startsWith("\"")) {
+            int end = executable.indexOf('"', 1);
+            executable = end < 0 ? executable.substring(1) : executable.substring(1, end);
+        } else {
+            int space = executable.indexOf(' ');
+            if (space >= 0) {
+                executable = executable.substring(0, space);
+            }
+        }
+        executable = executable.substring(Math.max(executable.lastIndexOf('/'), executable.lastIndexOf('\\')) + 1);
+        int dot = executable.lastIndexOf('.');
+        return dot > 0 ? executable.substring(0, dot) : executable;
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> map, String name) {
+        Histogram histogram = map.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = map.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static LongAdder counter(ConcurrentMap<String, LongAdder> map, String name) {
+        LongAdder counter = map.get(name);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = map.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private static long sum(Map<String, LongAdder> counters) {
+        long sum = 0;
+        for (LongAdder counter : counters.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    private static TreeMap<String, HistogramCounts> copyHistograms(Map<String, Histogram> histograms) {
+        TreeMap<String, HistogramCounts> copy = new TreeMap<String, HistogramCounts>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().counts());
+        }
+        return copy;
+    }
+
+    private static TreeMap<String, Long> copyCounters(Map<String, LongAdder> counters) {
+        TreeMap<String, Long> copy = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().sum());
+        }
+        return copy;
+    }
+
+    private static String nodeLabel(String nodeName) {
+        return nodeName.isEmpty() ? null : "node=\"" + escape(nodeName) + "\"";
+    }
+
+    private static void appendHistograms(StringBuilder sb, Family family, String nodeLabel,
+                                         Map<String, HistogramCounts> histograms) {
+        String name = family.name;
+        for (Map.Entry<String, HistogramCounts> entry : new TreeMap<String, HistogramCounts>(histograms).entrySet()) {
+            String labelValue = (nodeLabel == null ? "" : nodeLabel + ",")
+                    + family.label + "=\"" + escape(entry.getKey()) + "\"";
+            HistogramCounts histogram = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < Histogram.BOUNDS_NANOS.length; i++) {
+                cumulative += histogram.buckets[i];
+                sb.append(PREFIX).append(name).append("_bucket{").append(labelValue).append(",le=\"")
+                        .append(seconds(Histogram.BOUNDS_NANOS[i])).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(PREFIX).append(name).append("_bucket{").append(labelValue).append(",le=\"+Inf\"} ")
+                    .append(histogram.getCount()).append('\n');
+            sb.append(PREFIX).append(name).append("_sum{").append(labelValue).append("} ")
+                    .append(seconds(histogram.sumNanos)).append('\n');
+            sb.append(PREFIX).append(name).append("_count{").append(labelValue).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+    }
+
+    private static void appendCounters(StringBuilder sb, Family family, String nodeLabel,
+                                       Map<String, Long> counters) {
+        for (Map.Entry<String, Long> entry : new TreeMap<String, Long>(counters).entrySet()) {
+            sb.append(PREFIX).append(family.name).append('{');
+            if (nodeLabel != null) {
+                sb.append(nodeLabel).append(',');
+            }
+            sb.append(family.label).append("=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static void appendHeader(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Latency histogram with fixed buckets from 1 millisecond to 1 minute.
+     */
+    static final class Histogram {
+        static final long[] BOUNDS_NANOS = {
+                TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(5),
+                TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(50),
+                TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(500),
+                TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(10),
+                TimeUnit.SECONDS.toNanos(30), TimeUnit.SECONDS.toNanos(60)};
+
+        // count of values in each bucket, not cumulative; the last one is for values above every bound
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            int i = 0;
+            while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.add(nanos);
+        }
+
+        long getCount() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        HistogramCounts counts() {
+            long[] copy = new long[buckets.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = buckets.get(i);
+            }
+            return new HistogramCounts(copy, sumNanos.sum());
+        }
+    }
+
+    /**
+     * Counts of a {@link Histogram} at one point in time.
+     */
+    static final class HistogramCounts implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // not cumulative, as in Histogram
+        final long[] buckets;
+        final long sumNanos;
+
+        HistogramCounts(long[] buckets, long sumNanos) {
+            this.buckets = buckets;
+            this.sumNanos = sumNanos;
+        }
+
+        long getCount() {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Copy of the metrics of a JVM, sent by agents to the controller.
+     */
+    public static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // by metric name, then by label value
+        final TreeMap<String, TreeMap<String, HistogramCounts>> histograms =
+                new TreeMap<String, TreeMap<String, HistogramCounts>>();
+        final TreeMap<String, TreeMap<String, Long>> labelledCounters = new TreeMap<String, TreeMap<String, Long>>();
+        // by metric name
+        final TreeMap<String, Long> counters = new TreeMap<String, Long>();
+
+        Snapshot() {
+        }
+
+        /**
+         * Returns the value of a counter without label, such as "processes_started_total".
+         *
+         * @param name name of the metric, without the common prefix
+         * @return value, or 0 if the snapshot does not have the counter
+         */
+        public long getCounter(String name) {
+            Long value = counters.get(name);
+            return value == null ? 0 : value;
+        }
+    }
+
+    /**
+     * Name, help text and label of a metric.
+     */
+    private static final class Family {
+        final String name;
+        final String help;
+        final String label;
+
+        Family(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+/**
+ * JMX view of {@link DiscoveryMetrics}, registered as
+ * {@value DiscoveryMetrics#OBJECT_NAME}.
+ */
+public interface DiscoveryMetricsMBean {
+    /**
+     * Returns the number of processes started by CommandRunner.
+     */
+    long getProcessesStarted();
+
+    /**
+     * Returns the number of commands which could not be started, including those refused for lack of a process
+     * permit.
+     */
+    long getProcessesNotStarted();
+
+    /**
+     * Returns the number of processes destroyed because they did not finish in time.
+     */
+    long getProcessTimeouts();
+
+    /**
+     * Returns the number of processes destroyed because they produced too much output.
+     */
+    long getProcessesTruncated();
+
+    /**
+     * Returns the number of bytes read from stdout and stderr of processes.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of candidates handed to version probes.
+     */
+    long getCandidatesProbed();
+
+    /**
+     * Returns the number of probed candidates which turned out to be installations.
+     */
+    long getCandidatesAccepted();
+
+    /**
+     * Returns the number of requests for installations served from the discovery cache.
+     */
+    long getInventoryCacheHits();
+
+    /**
+     * Returns the number of requests for installations which had to wait for discovery.
+     */
+    long getInventoryCacheMisses();
+
+    /**
+     * Returns the number of version probes answered by ProbeCache.
+     */
+    long getProbeCacheHits();
+
+    /**
+     * Returns the number of version probes ProbeCache could not answer.
+     */
+    long getProbeCacheMisses();
+
+    /**
+     * Returns every metric, including latency histograms and those last sent by agents, in the Prometheus text
+     * format.
+     */
+    String getText();
+
+    /**
+     * Reset every metric to zero, and drop those sent by agents.
+     */
+    void reset();
+}
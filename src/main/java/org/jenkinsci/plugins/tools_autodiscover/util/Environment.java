@@ -2,11 +2,17 @@ package org.jenkinsci.plugins.tools_autodiscover.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class providing information on environment.
  */
 public class Environment {
+    // Extensions tried for a Windows program named without one, in the order cmd.exe would try them
+    private static final String[] WINDOWS_EXTENSIONS = {".exe", ".cmd", ".bat"};
+
     /**
      * Tests whether current environment is Microsoft Windows.
      *
@@ -25,6 +31,28 @@ public class Environment {
         return System.getProperty("os.name").contains("OS X");
     }
 
+    /**
+     * Tests whether current environment is Linux.
+     *
+     * @return true if running on Linux; false otherwise
+     */
+    public boolean isLinux() {
+        return System.getProperty("os.name").contains("Linux");
+    }
+
+    /**
+     * Returns the directory where SDKMAN! installs its candidates: $SDKMAN_DIR, or ~/.sdkman when unset.
+     *
+     * @return SDKMAN! directory; may not exist
+     */
+    public File getSdkmanDir() {
+        String dir = System.getenv(StringConstants.Linux.SDKMAN_DIR_VARIABLE);
+        if (dir != null && dir.length() > 0) {
+            return new File(dir);
+        }
+        return new File(System.getProperty("user.home"), StringConstants.Linux.SDKMAN_DEFAULT_DIR);
+    }
+
     /**
      * Returns the PATH environment variable
      *
@@ -35,16 +63,83 @@ public class Environment {
     }
 
     /**
-     * Executes the given command under specified environment and working directory.
+     * Tests whether the given path denotes an existing regular file.
+     *
+     * @param path path to test
+     * @return true if the file exists; false otherwise
+     */
+    public boolean isFile(String path) {
+        return new File(path).isFile();
+    }
+
+    /**
+     * Tests whether the given path denotes a file which can be executed.
+     *
+     * @param path path to test
+     * @return true if the file exists and is executable; false otherwise
+     */
+    public boolean canExecute(String path) {
+        File file = new File(path);
+        return file.isFile() && file.canExecute();
+    }
+
+    /**
+     * Starts the given program directly, without a shell.
      * <p/>
-     * This is a wrapper over {@link java.lang.Runtime#exec(String, String[], java.io.File)}.
-     * See {@link java.lang.Runtime#exec(String, String[], java.io.File)} for details.
+     * Arguments are passed to the program as they are, so paths with spaces need no quoting. On Windows, a program
+     * named without extension is resolved to an .exe, .cmd or .bat file, looked up in its directory or else in
+     * PATH, since only .exe files would be found otherwise. Batch files are still run by cmd.exe, but nothing else
+     * goes through a shell.
+     *
+     * @param command     program and its arguments
+     * @param environment variables set for the process on top of the inherited ones, or null to only inherit
+     * @param dir         working directory, or null for the one of Jenkins
+     * @return started process
+     * @throws IOException the program could not be started
      */
-    public Process exec(String command, String[] env, File dir)
+    public Process exec(List<String> command, Map<String, String> environment, File dir)
             throws IOException {
-        if (isWindows()) {
-            command = System.getenv("COMSPEC") + " /C " + command;
+        ProcessBuilder builder = new ProcessBuilder(isWindows() ? resolveWindowsProgram(command) : command);
+        if (environment != null) {
+            builder.environment().putAll(environment);
+        }
+        return builder.directory(dir).start();
+    }
+
+    /**
+     * Returns the command with its program resolved to an existing .exe, .cmd or .bat file, if it is named
+     * without extension.
+     *
+     * @param command program and its arguments
+     * @return command to start; the given one if the program has an extension or cannot be found
+     */
+    List<String> resolveWindowsProgram(List<String> command) {
+        String program = command.get(0);
+        String name = program.substring(Math.max(program.lastIndexOf('\\'), program.lastIndexOf('/')) + 1);
+        if (name.indexOf('.') >= 0) {
+            return command;
+        }
+        List<String> dirs = new ArrayList<String>();
+        if (name.length() < program.length()) {
+            dirs.add(program.substring(0, program.length() - name.length()));
+        } else {
+            String path = getPath();
+            for (String dir : path == null ? new String[0] : path.split(";")) {
+                if (!dir.isEmpty()) {
+                    dirs.add(dir.endsWith("\\") || dir.endsWith("/") ? dir : dir + "\\");
+                }
+            }
+        }
+        for (String dir : dirs) {
+            for (String extension : WINDOWS_EXTENSIONS) {
+                String candidate = dir + name + extension;
+                if (isFile(candidate)) {
+                    List<String> resolved = new ArrayList<String>(command);
+                    resolved.set(0, candidate);
+                    return resolved;
+                }
+            }
         }
-        return Runtime.getRuntime().exec(command, env, dir);
+        return command;
     }
 }
@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Collects directories which may be the home of a tool installation, using directory listings and symbolic
+ * links only.
+ * <p/>
+ * Sources are added in order of preference, then {@link #scan()} resolves every candidate to its real path so
+ * that one installation reached through several links, such as {@code /usr/lib/jvm/default-java} and
+ * {@code /etc/alternatives/java}, is reported once. Whether a candidate is an actual installation is left to the
+ * caller, which typically reads metadata from the install tree.
+ */
+public class InstallHomeScanner {
+    private final List<File> homes = new ArrayList<File>();
+    private final List<File> parents = new ArrayList<File>();
+    private final List<Pattern> parentPatterns = new ArrayList<Pattern>();
+    private final List<File> links = new ArrayList<File>();
+    private final List<Integer> linkDepths = new ArrayList<Integer>();
+
+    /**
+     * Add a directory which may itself be a home, such as {@code /usr/share/maven}.
+     *
+     * @param home candidate home
+     */
+    public void addHome(File home) {
+        homes.add(home);
+    }
+
+    /**
+     * Add the children of a directory as candidate homes, such as the entries of {@code /usr/lib/jvm}.
+     *
+     * @param parent      directory to list
+     * @param namePattern pattern the names of children must match, or null to accept every child
+     */
+    public void addChildren(File parent, Pattern namePattern) {
+        parents.add(parent);
+        parentPatterns.add(namePattern);
+    }
+
+    /**
+     * Add the home of the executable a symbolic link points to, such as {@code /etc/alternatives/mvn}.
+     *
+     * @param link  link to follow; every link in the chain is followed
+     * @param depth number of levels between the home and the executable, 2 for {@code <home>/bin/mvn}
+     */
+    public void addLinkTarget(File link, int depth) {
+        links.add(link);
+        linkDepths.add(depth);
+    }
+
+    /**
+     * Resolve the candidates.
+     *
+     * @return existing directories by real path, without duplicates, in the order their sources were added
+     */
+    public List<File> scan() {
+        Map<Path, File> found = new LinkedHashMap<Path, File>();
+        for (File home : homes) {
+            addIfDirectory(found, home.toPath());
+        }
+        for (int i = 0; i < parents.size(); i++) {
+            String[] names = parents.get(i).list();
+            if (names == null) {
+                continue;
+            }
+            Arrays.sort(names);
+            Pattern namePattern = parentPatterns.get(i);
+            for (String name : names) {
+                if (namePattern == null || namePattern.matcher(name).matches()) {
+                    addIfDirectory(found, new File(parents.get(i), name).toPath());
+                }
+            }
+        }
+        for (int i = 0; i < links.size(); i++) {
+            Path target = toRealPath(links.get(i).toPath());
+            for (int level = 0; target != null && level < linkDepths.get(i); level++) {
+                target = target.getParent();
+            }
+            if (target != null) {
+                addIfDirectory(found, target);
+            }
+        }
+        return new ArrayList<File>(found.values());
+    }
+
+    private static void addIfDirectory(Map<Path, File> found, Path path) {
+        Path real = toRealPath(path);
+        if (real != null && !found.containsKey(real) && real.toFile().isDirectory()) {
+            found.put(real, real.toFile());
+        }
+    }
+
+    private static Path toRealPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            // missing, or a dangling link
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+}
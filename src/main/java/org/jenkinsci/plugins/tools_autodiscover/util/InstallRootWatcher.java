@@ -0,0 +1,272 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps track of the installations found directly under an install root, such as {@code maven*} directories in
+ * {@code /opt/local/share/java/}, using a {@link WatchService} instead of listing the root on every discovery.
+ * <p/>
+ * The root is listed once when watching starts. Afterwards, only created and deleted entries are reported to the
+ * listeners, one name at a time. When the file system drops events, the root is listed again and the difference
+ * is reported. When the root itself is deleted, its entries are reported as removed and watching stops; see
+ * {@link #isWatching()}.
+ */
+public class InstallRootWatcher implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(InstallRootWatcher.class.getName());
+
+    /**
+     * Whether discovery modules watch their install roots instead of listing them each time. Can be enabled with
+     * the system property {@code org.jenkinsci.plugins.tools_autodiscover.util.InstallRootWatcher.enabled}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(InstallRootWatcher.class.getName() + ".enabled");
+
+    /**
+     * Receives changes of the watched install root.
+     */
+    public interface Listener {
+        /**
+         * Called when a matching entry appears under the root.
+         *
+         * @param name name of the entry, relative to the root
+         */
+        void added(String name);
+
+        /**
+         * Called when a matching entry disappears from the root.
+         *
+         * @param name name of the entry, relative to the root
+         */
+        void removed(String name);
+    }
+
+    private final File root;
+    private final Pattern namePattern;
+    private final Set<String> names = new TreeSet<String>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private WatchService watchService;
+    private Thread thread;
+    // set once watching has ended, whether closed or because the root is gone
+    private volatile boolean stopped;
+
+    /**
+     * Build a watcher. Call {@link #start()} to begin watching.
+     *
+     * @param root        install root to watch
+     * @param namePattern pattern the names of installation entries must match
+     */
+    public InstallRootWatcher(File root, Pattern namePattern) {
+        this.root = root;
+        this.namePattern = namePattern;
+    }
+
+    /**
+     * Register a listener for changes. Listeners are called from the watcher thread.
+     *
+     * @param listener listener to be added
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * List the root and start watching it.
+     *
+     * @return true if the root is being watched; false if it cannot be watched, such as when it does not exist
+     */
+    public synchronized boolean start() {
+        if (stopped) {
+            return false;
+        }
+        if (thread != null) {
+            return true;
+        }
+        Path path;
+        try {
+            path = root.toPath();
+            watchService = FileSystems.getDefault().newWatchService();
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.OVERFLOW);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Cannot watch " + root, e);
+            closeWatchService();
+            return false;
+        } catch (RuntimeException e) {
+            // InvalidPathException, UnsupportedOperationException
+            LOGGER.log(Level.FINE, "Cannot watch " + root, e);
+            closeWatchService();
+            return false;
+        }
+
+        // list after registering, so that nothing created in between is missed
+        names.addAll(list());
+        // close() clears the field; the thread keeps its own reference and ends once the service is closed
+        final WatchService service = watchService;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                watch(service);
+            }
+        }, "ToolAutoDiscovery watcher " + root);
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Returns the names of matching entries currently under the root.
+     *
+     * @return sorted snapshot of entry names
+     */
+    public synchronized List<String> getNames() {
+        return new ArrayList<String>(names);
+    }
+
+    /**
+     * Returns the watched install root.
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Tests whether the root is still being watched. Watching ends when the watcher is closed or the root is
+     * deleted; a new watcher has to be started to see the root again once it is recreated.
+     *
+     * @return true if started and the names are kept up to date
+     */
+    public synchronized boolean isWatching() {
+        return !stopped && thread != null;
+    }
+
+    /**
+     * Stop watching.
+     */
+    public synchronized void close() {
+        stopped = true;
+        closeWatchService();
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void watch(WatchService service) {
+        while (!stopped) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else if (event.context() instanceof Path) {
+                    String name = event.context().toString();
+                    if (!namePattern.matcher(name).matches()) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        add(name);
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        remove(name);
+                    }
+                }
+            }
+            if (overflow) {
+                resync();
+            }
+            if (!key.reset()) {
+                // the root itself is gone; stop before reporting, so that listeners see the watcher as stopped
+                LOGGER.log(Level.FINE, "Install root {0} is no longer accessible", root);
+                synchronized (this) {
+                    stopped = true;
+                    closeWatchService();
+                }
+                resync();
+                return;
+            }
+        }
+    }
+
+    private void add(String name) {
+        synchronized (this) {
+            if (!names.add(name)) {
+                return;
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.added(name);
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            if (!names.remove(name)) {
+                return;
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.removed(name);
+        }
+    }
+
+    /**
+     * List the root again and report the difference.
+     */
+    private void resync() {
+        Set<String> current = new TreeSet<String>(list());
+        for (String name : getNames()) {
+            if (!current.contains(name)) {
+                remove(name);
+            }
+        }
+        for (String name : current) {
+            add(name);
+        }
+    }
+
+    private List<String> list() {
+        List<String> found = new ArrayList<String>();
+        String[] entries = root.list();
+        if (entries == null) {
+            return found;
+        }
+        for (String name : entries) {
+            if (namePattern.matcher(name).matches()) {
+                found.add(name);
+            }
+        }
+        return found;
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads a properties file stored in a jar.
+ * <p/>
+ * Opening the jar with {@link ZipFile} only reads its central directory; then the single entry is looked up and
+ * inflated. The rest of the jar is never read.
+ */
+final class JarProperties {
+    private static final Logger LOGGER = Logger.getLogger(JarProperties.class.getName());
+
+    private JarProperties() {
+    }
+
+    /**
+     * Load the properties stored in the given entry.
+     *
+     * @param jar       jar file
+     * @param entryName name of the entry holding the properties
+     * @return loaded Properties, or null if the jar or the entry is missing or unreadable
+     */
+    static Properties read(File jar, String entryName) {
+        if (!jar.isFile()) {
+            return null;
+        }
+        ZipFile zip = null;
+        try {
+            zip = new ZipFile(jar);
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                return null;
+            }
+            Properties properties = new Properties();
+            InputStream is = zip.getInputStream(entry);
+            try {
+                properties.load(is);
+            } finally {
+                is.close();
+            }
+            return properties;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + entryName + " from " + jar, e);
+            return null;
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the trimmed value of a property, or null if it is missing or blank.
+     */
+    static String getNonBlank(Properties properties, String key) {
+        if (properties == null) {
+            return null;
+        }
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads JDK metadata from the {@code release} file found in every Java home since Java 7, without starting a
+ * process.
+ * <p/>
+ * Results are memoized per home and reused as long as the modification time and size of the release file are
+ * unchanged, so repeated scans of the same homes only cost a stat each.
+ */
+public class JdkHomeInspector {
+    private static final Logger LOGGER = Logger.getLogger(JdkHomeInspector.class.getName());
+
+    /**
+     * Maximum number of homes remembered; the memo is dropped as a whole when it grows past this.
+     */
+    static final int MAX_ENTRIES = 256;
+
+    private static final JdkHomeInspector INSTANCE = new JdkHomeInspector();
+
+    private final ConcurrentHashMap<String, Entry> memo = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the inspector shared by all JDK modules.
+     */
+    public static JdkHomeInspector get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the file JDK metadata of a Java home is read from.
+     *
+     * @param home Java home
+     * @return release file of the home, which may not exist
+     */
+    public static File getReleaseFile(File home) {
+        return new File(home, "release");
+    }
+
+    /**
+     * Inspect a Java home.
+     *
+     * @param home Java home, holding bin and release
+     * @return metadata of the home, or null if it has no readable release file
+     */
+    public JdkRelease inspect(File home) {
+        File release = getReleaseFile(home);
+        long lastModified = release.lastModified();
+        if (lastModified == 0L) {
+            // missing, or unreadable
+            memo.remove(home.getPath());
+            return null;
+        }
+        long length = release.length();
+
+        Entry entry = memo.get(home.getPath());
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry.release;
+        }
+
+        JdkRelease parsed = read(home, release);
+        if (memo.size() >= MAX_ENTRIES) {
+            memo.clear();
+        }
+        memo.put(home.getPath(), new Entry(lastModified, length, parsed));
+        return parsed;
+    }
+
+    /**
+     * Forget every memoized home.
+     */
+    public void clear() {
+        memo.clear();
+    }
+
+    /**
+     * Returns the number of memoized homes.
+     */
+    int size() {
+        return memo.size();
+    }
+
+    private static JdkRelease read(File home, File release) {
+        Properties properties = new Properties();
+        try {
+            InputStream is = new FileInputStream(release);
+            try {
+                properties.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + release, e);
+            return null;
+        }
+        return new JdkRelease(home.getPath(),
+                unquote(properties.getProperty("JAVA_VERSION")),
+                unquote(properties.getProperty("JAVA_RUNTIME_VERSION")),
+                unquote(properties.getProperty("IMPLEMENTOR")),
+                unquote(properties.getProperty("OS_ARCH")),
+                new File(home, "bin/javac").isFile() || new File(home, "bin/javac.exe").isFile());
+    }
+
+    /**
+     * Values in release files are written as KEY="value".
+     */
+    static String unquote(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static final class Entry {
+        final long lastModified;
+        final long length;
+        final JdkRelease release;
+
+        Entry(long lastModified, long length, JdkRelease release) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.release = release;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+/**
+ * Metadata of a Java home, as read from its {@code release} file by {@link JdkHomeInspector}.
+ */
+public class JdkRelease {
+    private final String home;
+    private final String javaVersion;
+    private final String runtimeVersion;
+    private final String implementor;
+    private final String arch;
+    private final boolean jdk;
+
+    /**
+     * Construct the metadata of a Java home.
+     *
+     * @param home           path of the Java home
+     * @param javaVersion    JAVA_VERSION, such as "11.0.2"; may be null
+     * @param runtimeVersion JAVA_RUNTIME_VERSION, such as "11.0.2+9"; may be null
+     * @param implementor    IMPLEMENTOR, such as "Oracle Corporation"; may be null
+     * @param arch           OS_ARCH, such as "x86_64"; may be null
+     * @param jdk            true if the home holds a compiler
+     */
+    public JdkRelease(String home, String javaVersion, String runtimeVersion, String implementor, String arch,
+                      boolean jdk) {
+        this.home = home;
+        this.javaVersion = javaVersion;
+        this.runtimeVersion = runtimeVersion;
+        this.implementor = implementor;
+        this.arch = arch;
+        this.jdk = jdk;
+    }
+
+    /**
+     * Returns the path of the Java home.
+     */
+    public String getHome() {
+        return home;
+    }
+
+    /**
+     * Returns the Java version, such as "1.8.0_202" or "11.0.2".
+     *
+     * @return JAVA_VERSION, or null if not recorded
+     */
+    public String getJavaVersion() {
+        return javaVersion;
+    }
+
+    /**
+     * Returns the full runtime version, such as "11.0.2+9".
+     *
+     * @return JAVA_RUNTIME_VERSION, or null if not recorded; older releases do not record it
+     */
+    public String getRuntimeVersion() {
+        return runtimeVersion;
+    }
+
+    /**
+     * Returns the vendor of the Java home, such as "Oracle Corporation".
+     *
+     * @return IMPLEMENTOR, or null if not recorded
+     */
+    public String getImplementor() {
+        return implementor;
+    }
+
+    /**
+     * Returns the architecture the Java home was built for, such as "x86_64" or "aarch64".
+     *
+     * @return OS_ARCH, or null if not recorded
+     */
+    public String getArchitecture() {
+        return arch;
+    }
+
+    /**
+     * Tests whether the Java home is a JDK rather than a JRE.
+     *
+     * @return true if bin/javac exists; false otherwise
+     */
+    public boolean isJDK() {
+        return jdk;
+    }
+
+    /**
+     * Returns a human-readable name for the Java home, such as "JDK 11.0.2 (Oracle Corporation, x86_64)".
+     *
+     * @return name built from the recorded metadata
+     */
+    public String getDisplayName() {
+        StringBuilder sb = new StringBuilder(jdk ? "JDK" : "JRE");
+        if (javaVersion != null) {
+            sb.append(' ').append(javaVersion);
+        }
+        if (implementor != null || arch != null) {
+            sb.append(" (");
+            if (implementor != null) {
+                sb.append(implementor);
+            }
+            if (implementor != null && arch != null) {
+                sb.append(", ");
+            }
+            if (arch != null) {
+                sb.append(arch);
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "JdkRelease{home='" + home + "', version='" + javaVersion + "', runtimeVersion='" + runtimeVersion
+                + "', implementor='" + implementor + "', arch='" + arch + "', jdk=" + jdk + '}';
+    }
+}
@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the version of a Maven installation from its install tree, without running mvn.
+ * <p/>
+ * Every Maven distribution ships {@code lib/maven-core-<version>.jar}, which holds the Maven build metadata in
+ * {@code META-INF/maven/org.apache.maven/maven-core/pom.properties}; only that entry of the jar is read. Linux
+ * packages, such as those of Debian, Ubuntu and Fedora in /usr/share/maven, name the jar {@code lib/maven-core.jar}
+ * without version, so both names are accepted.
+ */
+public class MavenMetadata {
+    static final String POM_PROPERTIES = "META-INF/maven/org.apache.maven/maven-core/pom.properties";
+
+    private MavenMetadata() {
+    }
+
+    /**
+     * Reads the Maven version of an installation.
+     *
+     * @param mavenHome root of the Maven installation, holding bin and lib
+     * @return version such as "3.6.3", or null if the metadata is missing or unreadable
+     */
+    public static String readVersion(File mavenHome) {
+        for (File jar : getCoreJars(mavenHome)) {
+            String version = readVersionFromJar(jar);
+            if (version != null) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the maven-core jars the version of a Maven installation is read from.
+     *
+     * @param mavenHome root of the Maven installation, holding bin and lib
+     * @return jars in name order; a single one is expected, and none if lib is missing
+     */
+    public static List<File> getCoreJars(File mavenHome) {
+        File[] jars = new File(mavenHome, "lib").listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.equals("maven-core.jar") || (name.startsWith("maven-core-") && name.endsWith(".jar"));
+            }
+        });
+        if (jars == null) {
+            return Collections.emptyList();
+        }
+        // be deterministic if there are several
+        Arrays.sort(jars);
+        return Arrays.asList(jars);
+    }
+
+    /**
+     * Reads the version property of maven-core pom.properties in the given jar.
+     *
+     * @param jar maven-core jar
+     * @return version, or null if the entry is missing or unreadable
+     */
+    static String readVersionFromJar(File jar) {
+        return JarProperties.getNonBlank(JarProperties.read(jar, POM_PROPERTIES), "version");
+    }
+}
@@ -0,0 +1,238 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Helper class to probe a list of candidates concurrently, such as running "-version" on each found executable.
+ */
+public class ParallelProbe {
+    private static final Logger LOGGER = Logger.getLogger(ParallelProbe.class.getName());
+
+    /**
+     * Default maximum number of candidates probed at the same time by a single call. Can be overridden with the
+     * system property {@code org.jenkinsci.plugins.tools_autodiscover.util.ParallelProbe.parallelism}.
+     */
+    public static final int DEFAULT_PARALLELISM =
+            Math.max(1, Integer.getInteger(ParallelProbe.class.getName() + ".parallelism", 4));
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "ToolAutoDiscovery probe"));
+
+    /**
+     * Inspects a single candidate.
+     *
+     * @param <C> candidate type
+     * @param <R> result type
+     */
+    public interface Probe<C, R> {
+        /**
+         * Probe the candidate.
+         *
+         * @param candidate candidate to be probed
+         * @return result for the candidate, or null if the candidate is not valid
+         * @throws Exception probing has failed; the candidate is skipped
+         */
+        R probe(C candidate) throws Exception;
+    }
+
+    /**
+     * Starts inspecting a single candidate without blocking, such as {@link CommandRunner#runAsync}.
+     *
+     * @param <C> candidate type
+     * @param <R> result type
+     */
+    public interface AsyncProbe<C, R> {
+        /**
+         * Start probing the candidate.
+         *
+         * @param candidate candidate to be probed
+         * @return future of the result for the candidate; a null result or a failed future skips the candidate
+         */
+        CompletableFuture<R> probe(C candidate);
+    }
+
+    /**
+     * Probe every candidate using {@link #DEFAULT_PARALLELISM}.
+     *
+     * @see #probeAll(List, Probe, int)
+     */
+    public static <C, R> List<R> probeAll(List<C> candidates, Probe<C, R> probe) {
+        return probeAll(candidates, probe, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Probe every candidate, running at most {@code parallelism} probes at the same time.
+     * <p/>
+     * Candidates are handed out one at a time, so a slow candidate only occupies one slot while the others keep
+     * going. The calling thread takes part in probing.
+     *
+     * @param candidates  candidates to be probed
+     * @param probe       probe applied to each candidate
+     * @param parallelism maximum number of probes running at the same time
+     * @return non-null results in the same order as candidates
+     */
+    public static <C, R> List<R> probeAll(List<C> candidates, Probe<C, R> probe, int parallelism) {
+        return probeAll(candidates, probe, parallelism, executor);
+    }
+
+    static <C, R> List<R> probeAll(final List<C> candidates, final Probe<C, R> probe, int parallelism,
+                                   Executor executor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReferenceArray<R> results = new AtomicReferenceArray<R>(candidates.size());
+        Runnable worker = new Runnable() {
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < candidates.size()) {
+                    C candidate = candidates.get(index);
+                    try {
+                        results.set(index, probe.probe(candidate));
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Failed to probe " + candidate, e);
+                    }
+                }
+            }
+        };
+
+        int helpers = Math.min(parallelism, candidates.size()) - 1;
+        List<Future<?>> running = new ArrayList<Future<?>>();
+        for (int i = 0; i < helpers; i++) {
+            FutureTask<Void> task = new FutureTask<Void>(worker, null);
+            executor.execute(task);
+            running.add(task);
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        for (Future<?> task : running) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // worker catches probe failures itself
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return collect(results, probe);
+    }
+
+    /**
+     * Probe every candidate without blocking, keeping at most {@code parallelism} probes in flight.
+     * <p/>
+     * A new probe is started whenever one completes, so no thread waits on a running probe.
+     *
+     * @param candidates  candidates to be probed
+     * @param probe       probe applied to each candidate
+     * @param parallelism maximum number of probes in flight at the same time
+     * @return future of the non-null results in the same order as candidates; never completes exceptionally
+     */
+    public static <C, R> CompletableFuture<List<R>> probeAllAsync(final List<C> candidates,
+                                                                 final AsyncProbe<C, R> probe, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(candidates.size());
+        final AtomicReferenceArray<R> results = new AtomicReferenceArray<R>(candidates.size());
+        final CompletableFuture<List<R>> done = new CompletableFuture<List<R>>();
+        if (candidates.isEmpty()) {
+            done.complete(new ArrayList<R>());
+            return done;
+        }
+
+        Runnable starter = new Runnable() {
+            public void run() {
+                final int index = next.getAndIncrement();
+                if (index >= candidates.size()) {
+                    return;
+                }
+                final C candidate = candidates.get(index);
+                final Runnable self = this;
+                CompletableFuture<R> future;
+                try {
+                    future = probe.probe(candidate);
+                } catch (RuntimeException e) {
+                    future = new CompletableFuture<R>();
+                    future.completeExceptionally(e);
+                }
+                if (future == null) {
+                    future = CompletableFuture.completedFuture(null);
+                }
+                // continue off the completing thread, which may be the process pump
+                future.whenCompleteAsync((result, failure) -> {
+                    if (failure != null) {
+                        LOGGER.log(Level.FINE, "Failed to probe " + candidate, failure);
+                    } else {
+                        results.set(index, result);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        done.complete(collect(results, probe));
+                    } else {
+                        self.run();
+                    }
+                }, executor);
+            }
+        };
+        for (int i = 0; i < Math.min(parallelism, candidates.size()); i++) {
+            starter.run();
+        }
+        return done;
+    }
+
+    private static <R> List<R> collect(AtomicReferenceArray<R> results, Object probe) {
+        List<R> found = new ArrayList<R>();
+        for (int i = 0; i < results.length(); i++) {
+            R result = results.get(i);
+            if (result != null) {
+                found.add(result);
+            }
+        }
+        DiscoveryMetrics.get().recordProbes(sourceOf(probe), results.length(), found.size());
+        return found;
+    }
+
+    /**
+     * Returns the name probes are counted under: the class declaring an anonymous or nested probe, such as
+     * "MavenDiscoveryOSX".
+     */
+    static String sourceOf(Object probe) {
+        Class<?> c = probe.getClass();
+        while (c.getEnclosingClass() != null) {
+            c = c.getEnclosingClass();
+        }
+        String name = c.getName();
+        // lambdas are hidden classes named after the declaring class
+        int lambda = name.indexOf("$$Lambda");
+        if (lambda >= 0) {
+            name = name.substring(0, lambda);
+        }
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
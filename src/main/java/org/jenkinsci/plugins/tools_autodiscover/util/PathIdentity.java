@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Identity of a file system location, for telling whether two paths lead to the same installation before probing
+ * either of them.
+ * <p/>
+ * An existing path is identified by its real path, with every symbolic link resolved, and by its file key (device
+ * and inode) where the file system has one, so that hard links and bind mounts match as well. A path which cannot
+ * be resolved is identified by its normalized spelling: repeated and trailing separators are dropped, and on
+ * Windows both separators are equivalent and case is ignored. For example, {@code /test}, {@code //test} and
+ * {@code /test/} are the same, and so are {@code C:\Maven\bin} and {@code c:/maven/bin\}.
+ */
+public final class PathIdentity {
+    private static final boolean WINDOWS = File.separatorChar == '\\';
+
+    // compared to tell identities apart
+    private final String key;
+    // normalized real path, or normalized spelling; separated by '/'
+    private final String path;
+    private final boolean windows;
+
+    private PathIdentity(String key, String path, boolean windows) {
+        this.key = key;
+        this.path = path;
+        this.windows = windows;
+    }
+
+    /**
+     * Returns the identity of a path, using the conventions of the platform Jenkins runs on.
+     *
+     * @param path path to identify
+     * @return identity; never null
+     */
+    public static PathIdentity of(String path) {
+        return of(path, WINDOWS);
+    }
+
+    /**
+     * Returns the identity of a path.
+     *
+     * @param path    path to identify
+     * @param windows true to follow Windows conventions: both separators, and case-insensitive names
+     * @return identity; never null
+     */
+    public static PathIdentity of(String path, boolean windows) {
+        try {
+            Path real = Paths.get(path).toRealPath();
+            String normalized = normalize(real.toString(), windows);
+            Object fileKey = Files.readAttributes(real, BasicFileAttributes.class).fileKey();
+            return new PathIdentity(fileKey != null ? "key:" + fileKey : "path:" + normalized, normalized, windows);
+        } catch (IOException e) {
+            // missing, or a dangling link
+        } catch (RuntimeException e) {
+            // InvalidPathException, such as a Windows path on another platform; SecurityException
+        }
+        String normalized = normalize(path, windows);
+        return new PathIdentity("path:" + normalized, normalized, windows);
+    }
+
+    /**
+     * Returns the given paths without those leading to a location listed earlier, using the conventions of the
+     * platform Jenkins runs on.
+     *
+     * @param paths paths to filter
+     * @return first path to each location, in the given order
+     */
+    public static List<String> distinct(Iterable<String> paths) {
+        DiscoveryEvents.Dedup event = new DiscoveryEvents.Dedup();
+        event.begin();
+        List<String> distinctPaths = new ArrayList<String>();
+        Set<PathIdentity> seen = new HashSet<PathIdentity>();
+        int count = 0;
+        for (String path : paths) {
+            count++;
+            if (seen.add(of(path))) {
+                distinctPaths.add(path);
+            }
+        }
+        event.finish("paths", count, distinctPaths.size());
+        return distinctPaths;
+    }
+
+    /**
+     * Normalize the spelling of a path.
+     */
+    static String normalize(String path, boolean windows) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            boolean separator = c == '/' || (windows && c == '\\');
+            if (!separator) {
+                sb.append(c);
+            } else if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '/'
+                    || (windows && i == 1)) {
+                // keep the leading pair of a Windows UNC path
+                sb.append('/');
+            }
+        }
+        while (sb.length() > 1 && sb.charAt(sb.length() - 1) == '/' && !(windows && isDriveRoot(sb))) {
+            sb.setLength(sb.length() - 1);
+        }
+        return windows ? sb.toString().toLowerCase(Locale.ROOT) : sb.toString();
+    }
+
+    private static boolean isDriveRoot(CharSequence path) {
+        return path.length() == 3 && path.charAt(1) == ':';
+    }
+
+    /**
+     * Returns the name of the last element of the path, such as "jre" for {@code /opt/jdk1.8.0/jre}.
+     *
+     * @return last element, lower case on Windows; empty for a root
+     */
+    public String getName() {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? path : path.substring(slash + 1);
+    }
+
+    /**
+     * Returns the identity of the directory holding this path.
+     *
+     * @return identity of the parent, or null for a root
+     */
+    public PathIdentity getParent() {
+        int slash = path.lastIndexOf('/');
+        if (slash < 0 || slash == path.length() - 1) {
+            return null;
+        }
+        return of(slash == 0 ? "/" : path.substring(0, slash), windows);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof PathIdentity && key.equals(((PathIdentity) o).key));
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
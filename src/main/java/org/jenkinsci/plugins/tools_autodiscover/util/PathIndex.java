@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * Immutable snapshot of the directories in a Windows PATH, and of the tool launchers each of them holds.
+ * <p/>
+ * Every directory is looked at once when the snapshot is built: each known launcher name is tested, and entries
+ * naming the same directory, such as ones differing only in case or a trailing backslash, are kept once. Modules
+ * scanning PATH then pick the directories holding their launcher from the snapshot, so that no process is started
+ * in a directory which cannot run the tool.
+ * <p/>
+ * The latest snapshot is shared by all modules, keyed by the PATH string, and reused for {@link #MAX_AGE}
+ * milliseconds so that a discovery run builds it once while a later run sees launchers installed since.
+ */
+public final class PathIndex {
+    /**
+     * Milliseconds a snapshot is reused for the same PATH.
+     */
+    public static final long MAX_AGE = Long.getLong(PathIndex.class.getName() + ".maxAge", 10000);
+
+    private static volatile PathIndex latest;
+
+    /**
+     * Tools whose launchers are looked for in each directory.
+     */
+    public enum Executable {
+        // mvn.bat up to Maven 3.2, mvn.cmd from Maven 3.3
+        MAVEN("mvn.cmd", "mvn.bat"),
+        ANT("ant.bat", "ant.cmd");
+
+        private final String[] fileNames;
+
+        Executable(String... fileNames) {
+            this.fileNames = fileNames;
+        }
+    }
+
+    private final String path;
+    private final long created;
+    // launchers by directory, in PATH order
+    private final Map<String, Map<Executable, String>> launchers;
+
+    private PathIndex(String path, long created, Map<String, Map<Executable, String>> launchers) {
+        this.path = path;
+        this.created = created;
+        this.launchers = launchers;
+    }
+
+    /**
+     * Returns the snapshot of the PATH of the given environment, building it unless a recent one exists for the
+     * same PATH string.
+     *
+     * @param env environment whose PATH and files are indexed
+     * @return snapshot; empty if PATH is not set
+     */
+    public static PathIndex get(Environment env) {
+        String path = env.getPath();
+        if (path == null) {
+            path = "";
+        }
+        long now = System.currentTimeMillis();
+        PathIndex index = latest;
+        if (index != null && index.path.equals(path) && now - index.created < MAX_AGE) {
+            return index;
+        }
+        index = build(env, path, now);
+        latest = index;
+        return index;
+    }
+
+    /**
+     * Forget the shared snapshot, so that the next {@link #get(Environment)} looks at every directory again.
+     */
+    public static void clear() {
+        latest = null;
+    }
+
+    /**
+     * Split a Windows PATH into its entries, skipping empty ones.
+     *
+     * @param path value of PATH
+     * @return entries in order, as written
+     */
+    public static List<String> split(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("path is null");
+        }
+        // we hard-code Windows path separator for consistent behavior
+        StringTokenizer tokenizer = new StringTokenizer(path, ";");
+        List<String> entries = new ArrayList<String>();
+        while (tokenizer.hasMoreTokens()) {
+            entries.add(tokenizer.nextToken());
+        }
+        return entries;
+    }
+
+    private static PathIndex build(Environment env, String path, long created) {
+        Map<String, Map<Executable, String>> launchers = new LinkedHashMap<String, Map<Executable, String>>();
+        Set<PathIdentity> seen = new HashSet<PathIdentity>();
+        for (String dir : split(path)) {
+            while (dir.endsWith("\\")) {
+                dir = dir.substring(0, dir.length() - 1);
+            }
+            if (dir.trim().isEmpty() || !seen.add(PathIdentity.of(dir, true))) {
+                continue;
+            }
+            Map<Executable, String> found = new EnumMap<Executable, String>(Executable.class);
+            for (Executable executable : Executable.values()) {
+                for (String fileName : executable.fileNames) {
+                    String launcher = dir + "\\" + fileName;
+                    if (env.isFile(launcher)) {
+                        found.put(executable, launcher);
+                        break;
+                    }
+                }
+            }
+            launchers.put(dir, found);
+        }
+        return new PathIndex(path, created, launchers);
+    }
+
+    /**
+     * Returns the PATH string the snapshot was built from.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the directories holding a launcher of the given tool.
+     *
+     * @param executable tool looked for
+     * @return directories in PATH order, without trailing backslash
+     */
+    public List<String> getDirectories(Executable executable) {
+        List<String> dirs = new ArrayList<String>();
+        for (Map.Entry<String, Map<Executable, String>> entry : launchers.entrySet()) {
+            if (entry.getValue().containsKey(executable)) {
+                dirs.add(entry.getKey());
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * Returns the launcher of a tool in a directory, such as {@code C:\maven\bin\mvn.cmd}.
+     *
+     * @param dir        directory, as returned by {@link #getDirectories(Executable)}
+     * @param executable tool looked for
+     * @return path of the launcher, or null if the directory holds none or is not in the snapshot
+     */
+    public String getLauncher(String dir, Executable executable) {
+        Map<Executable, String> found = launchers.get(dir);
+        return found == null ? null : found.get(executable);
+    }
+}
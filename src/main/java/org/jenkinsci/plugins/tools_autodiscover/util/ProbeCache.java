@@ -0,0 +1,470 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import jenkins.model.Jenkins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers probe results across restarts, keyed by the fingerprint of the probed executable.
+ * <p/>
+ * A result is reused only while the executable keeps the same path, size, modification time and file key (inode
+ * where available), and while the files the version is read from, such as lib/ant.jar, keep theirs. Results are stored in a single append-only file under JENKINS_HOME, one line per result with
+ * a CRC32 of its own. The file is read lazily on first use; the last line for a key wins, and corrupt lines are
+ * skipped. The file is compacted on load when most of its lines are outdated.
+ */
+public class ProbeCache {
+    private static final Logger LOGGER = Logger.getLogger(ProbeCache.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final String FILE_NAME = "tools-autodiscover-probes.log";
+
+    // Lines kept beyond live entries before the file is compacted
+    private static final int COMPACTION_SLACK = 100;
+
+    private static volatile ProbeCache instance;
+    private static final ProbeCache MEMORY_ONLY = new ProbeCache(null);
+
+    private final File store;
+    private Map<String, Entry> entries;
+    private int storedLines;
+
+    /**
+     * Build a cache persisted to the given file.
+     *
+     * @param store file holding the results, or null to keep them in memory only
+     */
+    public ProbeCache(File store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the cache shared by all discovery modules, persisted under JENKINS_HOME.
+     * <p/>
+     * Until Jenkins is running, results are kept in memory only.
+     */
+    public static ProbeCache get() {
+        ProbeCache cache = instance;
+        if (cache == null) {
+            synchronized (ProbeCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    Jenkins jenkins = Jenkins.getInstanceOrNull();
+                    File root = jenkins == null ? null : jenkins.getRootDir();
+                    if (root == null) {
+                        return MEMORY_ONLY;
+                    }
+                    cache = new ProbeCache(new File(root, FILE_NAME));
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached result of probing the given file, or else probes it and remembers the result.
+     *
+     * @param kind  kind of probe, such as "maven-version"; the same file may be probed in several ways
+     * @param file  executable whose fingerprint identifies the result
+     * @param probe probe to run when nothing valid is cached; a null result is not remembered
+     * @return future of the result
+     */
+    public CompletableFuture<String> lookup(String kind, File file, Supplier<CompletableFuture<String>> probe) {
+        return lookup(kind, file, Collections.<String>emptyList(), probe);
+    }
+
+    /**
+     * Returns the cached result of probing the given file, or else probes it and remembers the result.
+     * <p/>
+     * The result is also dropped once any of the version files changes, appears or disappears, so that an
+     * installation upgraded in place around the same executable is probed again.
+     *
+     * @param kind         kind of probe, such as "maven-version"; the same file may be probed in several ways
+     * @param file         executable whose fingerprint identifies the result
+     * @param versionFiles files the result is read from, such as lib/maven-core*.jar
+     * @param probe        probe to run when nothing valid is cached; a null result is not remembered
+     * @return future of the result
+     */
+    public CompletableFuture<String> lookup(final String kind, final File file, Iterable<String> versionFiles,
+                                           Supplier<CompletableFuture<String>> probe) {
+        final Fingerprint fingerprint = Fingerprint.of(file, versionFiles);
+        if (fingerprint == null) {
+            // not a readable file, nothing to key on
+            DiscoveryMetrics.get().recordProbeCache(false);
+            return probe.get();
+        }
+        String cached = get(kind, fingerprint);
+        DiscoveryMetrics.get().recordProbeCache(cached != null);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return probe.get().thenApply(result -> {
+            if (result != null) {
+                put(kind, fingerprint, result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns the remembered result for the given file, if its fingerprint still matches.
+     *
+     * @param kind kind of probe
+     * @param file probed executable
+     * @return result, or null if none is remembered or the file has changed
+     */
+    public String get(String kind, File file) {
+        Fingerprint fingerprint = Fingerprint.of(file, Collections.<String>emptyList());
+        return fingerprint == null ? null : get(kind, fingerprint);
+    }
+
+    /**
+     * Remember the result of probing the given file.
+     *
+     * @param kind   kind of probe
+     * @param file   probed executable
+     * @param result result to remember
+     */
+    public void put(String kind, File file, String result) {
+        Fingerprint fingerprint = Fingerprint.of(file, Collections.<String>emptyList());
+        if (fingerprint != null) {
+            put(kind, fingerprint, result);
+        }
+    }
+
+    /**
+     * Forget every result, including the persisted ones.
+     */
+    public synchronized void clear() {
+        entries = new HashMap<String, Entry>();
+        storedLines = 0;
+        if (store != null && store.exists() && !store.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete {0}", store);
+        }
+    }
+
+    /**
+     * Returns the number of results remembered.
+     */
+    synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    private synchronized String get(String kind, Fingerprint fingerprint) {
+        load();
+        Entry entry = entries.get(kind + ':' + fingerprint.path);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        return entry.result;
+    }
+
+    private synchronized void put(String kind, Fingerprint fingerprint, String result) {
+        load();
+        String key = kind + ':' + fingerprint.path;
+        Entry previous = entries.get(key);
+        if (previous != null && previous.fingerprint.equals(fingerprint) && previous.result.equals(result)) {
+            return;
+        }
+        Entry entry = new Entry(kind, fingerprint, result);
+        entries.put(key, entry);
+        if (store == null) {
+            return;
+        }
+        try {
+            OutputStream os = new FileOutputStream(store, true);
+            try {
+                os.write(entry.toLine().getBytes(UTF8));
+            } finally {
+                os.close();
+            }
+            storedLines++;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to append to " + store, e);
+        }
+        if (storedLines > 2 * entries.size() + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<String, Entry>();
+        if (store == null || !store.isFile()) {
+            return;
+        }
+        int lines = 0;
+        int corrupt = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(store), UTF8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    Entry entry = Entry.parse(line);
+                    if (entry == null) {
+                        corrupt++;
+                        continue;
+                    }
+                    entries.put(entry.kind + ':' + entry.fingerprint.path, entry);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + store, e);
+        }
+        if (corrupt > 0) {
+            LOGGER.log(Level.FINE, "Skipped {0} corrupt line(s) of {1}", new Object[]{corrupt, store});
+        }
+        storedLines = lines;
+        if (corrupt > 0 || lines > entries.size() + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the store with live entries only.
+     */
+    private void compact() {
+        File tmp = new File(store.getPath() + ".tmp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF8);
+            try {
+                for (Entry entry : entries.values()) {
+                    writer.write(entry.toLine());
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            storedLines = entries.size();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to compact " + store, e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Identity of an executable: its path, size, modification time and file key, and a digest of the same
+     * attributes of its version files.
+     */
+    static final class Fingerprint {
+        final String path;
+        final long size;
+        final long lastModified;
+        final String fileKey;
+        final String versionFiles;
+
+        Fingerprint(String path, long size, long lastModified, String fileKey, String versionFiles) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.versionFiles = versionFiles;
+        }
+
+        /**
+         * Reads the fingerprint of a file and of its version files, following symbolic links.
+         *
+         * @return fingerprint, or null if the file cannot be read
+         */
+        static Fingerprint of(File file, Iterable<String> versionFiles) {
+            BasicFileAttributes attributes = readAttributes(file);
+            if (attributes == null || !attributes.isRegularFile()) {
+                return null;
+            }
+            String digest = digest(versionFiles);
+            if (digest == null) {
+                return null;
+            }
+            return new Fingerprint(file.getAbsolutePath(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), getFileKey(attributes), digest);
+        }
+
+        /**
+         * Digests the path, size, modification time and file key of each file, or "-" if there are none.
+         *
+         * @return hex digest, or null if it cannot be computed
+         */
+        private static String digest(Iterable<String> files) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+            boolean empty = true;
+            for (String file : files) {
+                empty = false;
+                BasicFileAttributes attributes = readAttributes(new File(file));
+                // a missing file still counts, so that its appearance is noticed
+                String line = attributes == null ? file + "\t-\n" : file + '\t' + attributes.size() + '\t'
+                        + attributes.lastModifiedTime().toMillis() + '\t' + getFileKey(attributes) + '\n';
+                digest.update(line.getBytes(UTF8));
+            }
+            if (empty) {
+                return "-";
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+
+        private static BasicFileAttributes readAttributes(File file) {
+            try {
+                return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                return null;
+            } catch (RuntimeException e) {
+                // InvalidPathException, SecurityException
+                return null;
+            }
+        }
+
+        private static String getFileKey(BasicFileAttributes attributes) {
+            Object key = attributes.fileKey();
+            return key == null ? "-" : key.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Fingerprint)) return false;
+            Fingerprint that = (Fingerprint) o;
+            return size == that.size && lastModified == that.lastModified && path.equals(that.path)
+                    && fileKey.equals(that.fileKey) && versionFiles.equals(that.versionFiles);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + fileKey.hashCode();
+            return 31 * result + versionFiles.hashCode();
+        }
+    }
+
+    /**
+     * A remembered result, stored as one tab-separated line: crc, kind, path, size, mtime, file key, version files
+     * digest, result. Lines from earlier releases lack the digest and are dropped as corrupt.
+     */
+    static final class Entry {
+        final String kind;
+        final Fingerprint fingerprint;
+        final String result;
+
+        Entry(String kind, Fingerprint fingerprint, String result) {
+            this.kind = kind;
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+
+        String toLine() {
+            String body = escape(kind) + '\t' + escape(fingerprint.path) + '\t' + fingerprint.size + '\t'
+                    + fingerprint.lastModified + '\t' + escape(fingerprint.fileKey) + '\t' + escape(fingerprint.versionFiles)
+                    + '\t' + escape(result);
+            return Long.toHexString(crc(body)) + '\t' + body + '\n';
+        }
+
+        /**
+         * Parse a stored line.
+         *
+         * @return entry, or null if the line is corrupt
+         */
+        static Entry parse(String line) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                return null;
+            }
+            String body = line.substring(tab + 1);
+            try {
+                if (Long.parseLong(line.substring(0, tab), 16) != crc(body)) {
+                    return null;
+                }
+                String[] fields = body.split("\t", -1);
+                if (fields.length != 7) {
+                    return null;
+                }
+                Fingerprint fingerprint = new Fingerprint(unescape(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), unescape(fields[4]), unescape(fields[5]));
+                return new Entry(unescape(fields[0]), fingerprint, unescape(fields[6]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static long crc(String body) {
+            CRC32 crc = new CRC32();
+            crc.update(body.getBytes(UTF8));
+            return crc.getValue();
+        }
+
+        static String escape(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        static String unescape(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '\\' && i + 1 < s.length()) {
+                    char next = s.charAt(++i);
+                    sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
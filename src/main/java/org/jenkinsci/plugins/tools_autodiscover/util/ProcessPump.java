@@ -0,0 +1,361 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drains stdout and stderr of every process started by {@link CommandRunner}.
+ * <p/>
+ * Each stream is read by a blocking reader on a shared, bounded pool, so an idle process costs no CPU. The pool
+ * has two threads per permit of the {@link SpawnGovernor}, so that every running process normally has both of its
+ * streams read; threads are dropped when idle. Deadlines are enforced by a single scheduler thread, which destroys
+ * the process, so that its pipes are closed and its readers return. Output limits are enforced by the readers.
+ * Stdout may be handed line by line to a consumer as it is read, instead of being kept.
+ */
+final class ProcessPump {
+    private static final Logger LOGGER = Logger.getLogger(ProcessPump.class.getName());
+
+    // Two streams for every process the shared governor lets run
+    private static final int READER_THREADS = 2 * SpawnGovernor.get().getPermits();
+
+    private static final ProcessPump INSTANCE = new ProcessPump();
+
+    private final ThreadPoolExecutor readers;
+    private final ScheduledThreadPoolExecutor deadlines;
+
+    private ProcessPump() {
+        readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "CommandRunner output reader"));
+        readers.allowCoreThreadTimeOut(true);
+        deadlines = new ScheduledThreadPoolExecutor(1,
+                new NamingThreadFactory(new DaemonThreadFactory(), "CommandRunner deadline"));
+        deadlines.setRemoveOnCancelPolicy(true);
+        deadlines.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        deadlines.allowCoreThreadTimeOut(true);
+    }
+
+    static ProcessPump get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start draining a process.
+     *
+     * @param proc           started process
+     * @param timeoutMillis  time the process may run for
+     * @param maxOutputBytes maximum number of bytes kept from each stream
+     * @param maxOutputLines maximum number of lines kept from each stream
+     * @return future completed when the process has ended and its output has been read. Cancelling the future
+     * destroys the process.
+     */
+    CompletableFuture<CommandResult> submit(Process proc, long timeoutMillis, int maxOutputBytes,
+                                            int maxOutputLines) {
+        return submit(proc, timeoutMillis, maxOutputBytes, maxOutputLines, null);
+    }
+
+    /**
+     * Start draining a process, handing each line of its stdout to the given consumer.
+     *
+     * @param proc           started process
+     * @param timeoutMillis  time the process may run for
+     * @param maxOutputBytes maximum number of bytes read from each stream
+     * @param maxOutputLines maximum number of lines read from each stream
+     * @param outputLines    receives each line of stdout as soon as it is read, one at a time and never after the
+     *                       future is completed; those lines are not part of the result. Null to keep them instead.
+     * @return future completed when the process has ended and its output has been read. Cancelling the future
+     * destroys the process.
+     */
+    CompletableFuture<CommandResult> submit(Process proc, long timeoutMillis, int maxOutputBytes,
+                                            int maxOutputLines, Consumer<String> outputLines) {
+        final Job job = new Job(proc, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
+                maxOutputBytes, maxOutputLines, outputLines);
+        job.timeout = deadlines.schedule(new Runnable() {
+            public void run() {
+                job.finish(CommandResult.Status.TIMEOUT);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        job.future.whenComplete((r, failure) -> {
+            if (job.future.isCancelled()) {
+                job.finish(null);
+            }
+        });
+        readers.execute(job.reader(false));
+        readers.execute(job.reader(true));
+        return job.future;
+    }
+
+    /**
+     * A process being drained.
+     */
+    private static final class Job {
+        private final Process proc;
+        private final long deadline;
+        private final LineCollector stdout;
+        private final LineCollector stderr;
+        private final CompletableFuture<CommandResult> future = new CompletableFuture<CommandResult>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        // readers still running
+        private final AtomicInteger open = new AtomicInteger(2);
+        private final AtomicLong bytesRead = new AtomicLong();
+        private volatile ScheduledFuture<?> timeout;
+
+        Job(Process proc, long deadline, int maxOutputBytes, int maxOutputLines, Consumer<String> outputLines) {
+            this.proc = proc;
+            this.deadline = deadline;
+            this.stdout = new LineCollector(maxOutputBytes, maxOutputLines, outputLines);
+            this.stderr = new LineCollector(maxOutputBytes, maxOutputLines);
+            // nothing is written to the process; let it see EOF on stdin
+            closeQuietly(proc.getOutputStream());
+        }
+
+        /**
+         * Returns a task reading stdout or stderr until it ends or goes past the output limits.
+         */
+        Runnable reader(final boolean errorStream) {
+            return new Runnable() {
+                public void run() {
+                    try {
+                        InputStream is = errorStream ? proc.getErrorStream() : proc.getInputStream();
+                        if (read(is, errorStream ? stderr : stdout)) {
+                            readerDone();
+                        }
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to pump process output", e);
+                        fail(e);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Read a stream to its end.
+         *
+         * @return true if the stream ended; false if the job was finished while reading it
+         */
+        private boolean read(InputStream is, LineCollector collector) {
+            if (is == null) {
+                return true;
+            }
+            byte[] buffer = new byte[8192];
+            try {
+                int read;
+                while (!finished.get() && (read = is.read(buffer)) >= 0) {
+                    bytesRead.addAndGet(read);
+                    collector.feed(buffer, read);
+                    if (collector.isTruncated()) {
+                        finish(CommandResult.Status.TRUNCATED);
+                        return false;
+                    }
+                }
+            } catch (IOException e) {
+                // the stream is closed when the job is finished while the reader is blocked
+                if (!finished.get()) {
+                    finish(CommandResult.Status.FAILURE);
+                }
+                return false;
+            }
+            return !finished.get();
+        }
+
+        /**
+         * Called by each reader reaching the end of its stream; the last one waits for the process to exit.
+         */
+        private void readerDone() {
+            if (open.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (isAlive(proc) && !proc.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+                    // the deadline finishes the job
+                    return;
+                }
+            } catch (InterruptedException e) {
+                finish(CommandResult.Status.FAILURE);
+                return;
+            }
+            int exitCode = exitValue(proc);
+            finish(exitCode == 0 ? CommandResult.Status.SUCCESS : CommandResult.Status.FAILURE);
+        }
+
+        void fail(Throwable t) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            cleanUp(true);
+            stdout.discard();
+            stderr.discard();
+            DiscoveryMetrics.get().recordBytesRead(bytesRead.get());
+            future.completeExceptionally(t);
+        }
+
+        /**
+         * Finish the job once, destroying the process unless it ended by itself.
+         *
+         * @param status how the process ended, or null if the job was cancelled
+         */
+        void finish(CommandResult.Status status) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            // a truncated, timed out or abandoned process is killed even if it looks gone
+            cleanUp(status != CommandResult.Status.SUCCESS && status != CommandResult.Status.FAILURE);
+            DiscoveryMetrics.get().recordBytesRead(bytesRead.get());
+            if (status == null) {
+                return;
+            }
+            int exitCode = (status == CommandResult.Status.SUCCESS || status == CommandResult.Status.FAILURE)
+                    ? exitValue(proc) : CommandResult.NO_EXIT_CODE;
+            try {
+                future.complete(new CommandResult(status, stdout.getLines(), stderr.getLines(), exitCode));
+            } catch (RuntimeException e) {
+                // thrown by the consumer of the last line
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void cleanUp(boolean kill) {
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            try {
+                if (kill || isAlive(proc)) {
+                    CommandRunner.destroy(proc);
+                }
+                closeQuietly(proc.getInputStream());
+                closeQuietly(proc.getErrorStream());
+            } catch (RuntimeException e) {
+                // the future must still be completed
+                LOGGER.log(Level.FINE, "Failed to clean up process", e);
+            }
+        }
+
+        private static boolean isAlive(Process proc) {
+            try {
+                return proc.isAlive();
+            } catch (UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        private static int exitValue(Process proc) {
+            try {
+                return proc.exitValue();
+            } catch (IllegalThreadStateException e) {
+                return CommandResult.NO_EXIT_CODE;
+            }
+        }
+    }
+
+    /**
+     * Splits a byte stream into trimmed lines, up to a byte and a line limit. Lines are kept, or handed to a consumer
+     * as soon as they end. Once the lines have been collected, any further input is ignored.
+     */
+    static final class LineCollector {
+        private final int maxBytes;
+        private final int maxLines;
+        private final Consumer<String> consumer;
+        private final Charset charset = Charset.defaultCharset();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final List<String> lines = new ArrayList<String>();
+        private int total;
+        private int lineCount;
+        private boolean truncated;
+        private boolean collected;
+
+        LineCollector(int maxBytes, int maxLines) {
+            this(maxBytes, maxLines, null);
+        }
+
+        LineCollector(int maxBytes, int maxLines, Consumer<String> consumer) {
+            this.maxBytes = maxBytes;
+            this.maxLines = maxLines;
+            this.consumer = consumer;
+        }
+
+        synchronized void feed(byte[] buffer, int length) {
+            for (int i = 0; i < length && !truncated && !collected; i++) {
+                if (total >= maxBytes || lineCount >= maxLines) {
+                    // a byte beyond the limits; output of exactly the limit is complete
+                    truncated = true;
+                    return;
+                }
+                total++;
+                byte b = buffer[i];
+                if (b == '\n') {
+                    flush();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+
+        synchronized boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * Returns the lines kept, after handing over the last unterminated line; input fed afterwards, such as by a
+         * reader still running after a timeout, is ignored.
+         */
+        synchronized List<String> getLines() {
+            if (!collected) {
+                collected = true;
+                if (line.size() > 0 && lineCount < maxLines) {
+                    flush();
+                }
+            }
+            return new ArrayList<String>(lines);
+        }
+
+        /**
+         * Ignore any further input, without handing over the last unterminated line.
+         */
+        synchronized void discard() {
+            collected = true;
+        }
+
+        private void flush() {
+            String s = new String(line.toByteArray(), charset).trim();
+            line.reset();
+            lineCount++;
+            if (consumer != null) {
+                consumer.accept(s);
+            } else {
+                lines.add(s);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming parser for the output of the Windows {@code REG QUERY} command, including recursive {@code /s} queries.
+ * <p/>
+ * The output is a sequence of blocks, each made of a key path followed by one line per value:
+ * <pre>
+ * HKEY_LOCAL_MACHINE\SOFTWARE\JavaSoft\JDK\17.0.9
+ *     JavaHome    REG_SZ    C:\Program Files\Java\jdk-17.0.9
+ *     RuntimeLib    REG_SZ    C:\Program Files\Java\jdk-17.0.9\bin\server\jvm.dll
+ * </pre>
+ * Lines are fed one at a time, and each key is passed to the consumer with its values as soon as the next key
+ * starts, so the output need not be held in memory. Indentation and line endings are ignored, and so are blank
+ * lines, error messages and the summary printed by {@code /f}.
+ */
+public class RegQueryParser {
+    // Name, type and data are separated by four spaces; the data may be missing
+    private static final Pattern VALUE_PATTERN = Pattern.compile("(.*?)\\s{2,}(REG_[A-Z0-9_]+)(?:\\s{2,}(.*))?");
+
+    private static final String KEY_PREFIX = "HKEY_";
+
+    private final Consumer<Key> consumer;
+    private String path;
+    private Map<String, String> values;
+
+    /**
+     * Build the parser.
+     *
+     * @param consumer receives each key with its values, in the order of the output
+     */
+    public RegQueryParser(Consumer<Key> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parse every line of a REG QUERY output.
+     *
+     * @param lines lines of the output
+     * @return keys in the order of the output
+     */
+    public static List<Key> parse(Iterable<String> lines) {
+        final List<Key> keys = new ArrayList<Key>();
+        RegQueryParser parser = new RegQueryParser(new Consumer<Key>() {
+            public void accept(Key key) {
+                keys.add(key);
+            }
+        });
+        for (String line : lines) {
+            parser.line(line);
+        }
+        parser.end();
+        return keys;
+    }
+
+    /**
+     * Feed the next line of output.
+     *
+     * @param line line, with or without indentation and line terminator
+     */
+    public void line(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        Matcher m = VALUE_PATTERN.matcher(trimmed);
+        if (m.matches()) {
+            if (path != null) {
+                String data = m.group(3);
+                values.put(m.group(1), data == null ? "" : data);
+            }
+        } else if (trimmed.startsWith(KEY_PREFIX)) {
+            end();
+            path = trimmed;
+            values = new LinkedHashMap<String, String>();
+        }
+        // anything else is an error message or a summary
+    }
+
+    /**
+     * Signal the end of output, passing the last key to the consumer.
+     */
+    public void end() {
+        if (path != null) {
+            consumer.accept(new Key(path, values));
+            path = null;
+            values = null;
+        }
+    }
+
+    /**
+     * A registry key and its values.
+     */
+    public static final class Key {
+        private final String path;
+        private final Map<String, String> values;
+
+        Key(String path, Map<String, String> values) {
+            this.path = path;
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        /**
+         * Returns the full path of the key, such as {@code HKEY_LOCAL_MACHINE\SOFTWARE\JavaSoft\JDK\17.0.9}.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the last element of the path, such as {@code 17.0.9}.
+         */
+        public String getName() {
+            return path.substring(path.lastIndexOf('\\') + 1);
+        }
+
+        /**
+         * Returns the name of the parent key, such as {@code JDK}.
+         *
+         * @return name of the parent, or null for a root key
+         */
+        public String getParentName() {
+            int end = path.lastIndexOf('\\');
+            if (end < 0) {
+                return null;
+            }
+            return path.substring(path.lastIndexOf('\\', end - 1) + 1, end);
+        }
+
+        /**
+         * Returns the data of a value, as printed by REG QUERY.
+         *
+         * @param name name of the value, such as "JavaHome"
+         * @return data, empty if the value has none; null if the key has no such value
+         */
+        public String getValue(String name) {
+            return values.get(name);
+        }
+
+        /**
+         * Returns every value of the key, by name, in the order of the output.
+         */
+        public Map<String, String> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return path + values;
+        }
+    }
+}
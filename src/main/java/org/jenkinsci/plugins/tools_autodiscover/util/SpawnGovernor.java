@@ -0,0 +1,368 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits how many child processes discovery runs at the same time, plugin-wide.
+ * <p/>
+ * Every command started by {@link CommandRunner} holds a permit until it has ended. The number of permits is
+ * derived from the available CPUs and the CPU quota of the container, if any, so that discovery never competes with
+ * builds for more than half of the controller. A command which cannot get a permit in time is not started at all;
+ * discovery then reports fewer installations instead of piling up processes.
+ * <p/>
+ * Permits are handed out in request order through {@link #acquireAsync()}, without holding a thread while waiting:
+ * a waiting command is queued, and started by the thread giving back a permit.
+ */
+public class SpawnGovernor {
+    private static final Logger LOGGER = Logger.getLogger(SpawnGovernor.class.getName());
+
+    /**
+     * Maximum time a command waits for a permit, in milliseconds. Can be overridden with the system property
+     * {@code org.jenkinsci.plugins.tools_autodiscover.util.SpawnGovernor.maxWait}.
+     */
+    public static final long DEFAULT_MAX_WAIT = Long.getLong(SpawnGovernor.class.getName() + ".maxWait", 60000);
+
+    private static final SpawnGovernor INSTANCE = new SpawnGovernor(
+            Integer.getInteger(SpawnGovernor.class.getName() + ".permits",
+                    defaultPermits(Runtime.getRuntime().availableProcessors(), new File("/sys/fs/cgroup"))),
+            DEFAULT_MAX_WAIT, TimeUnit.MILLISECONDS);
+
+    // Expires requests which waited too long; shared by all governors
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = createTimeouts();
+
+    private final int permits;
+    private final long maxWaitNanos;
+    // guarded by this
+    private int available;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitSeenNanos = new AtomicLong();
+
+    /**
+     * Build a governor.
+     *
+     * @param permits maximum number of processes running at the same time
+     * @param maxWait maximum time a command waits for a permit
+     * @param unit    unit of maxWait
+     */
+    public SpawnGovernor(int permits, long maxWait, TimeUnit unit) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.permits = permits;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.available = permits;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimeouts() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new NamingThreadFactory(new DaemonThreadFactory(), "SpawnGovernor timeout"));
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the governor shared by all discovery modules.
+     */
+    public static SpawnGovernor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Request a permit to start a process, without waiting for it.
+     * <p/>
+     * The future is completed by the thread giving back a permit, or by a timer thread, so continuations must not
+     * block. Cancelling the future before it completes gives up the request.
+     *
+     * @return future completed with true once a permit was acquired, which must then be given back with
+     * {@link #release()}; completed with false if none became available in time
+     */
+    public CompletableFuture<Boolean> acquireAsync() {
+        final Waiter waiter;
+        synchronized (this) {
+            if (available > 0 && waiters.isEmpty()) {
+                available--;
+                granted(0);
+                return CompletableFuture.completedFuture(Boolean.TRUE);
+            }
+            waiter = new Waiter();
+            waiters.add(waiter);
+        }
+        ScheduledFuture<?> timeout = TIMEOUTS.schedule(new Runnable() {
+            public void run() {
+                expire(waiter);
+            }
+        }, maxWaitNanos, TimeUnit.NANOSECONDS);
+        waiter.timeout = timeout;
+        waiter.future.whenComplete((granted, failure) -> {
+            if (failure != null || !granted) {
+                // cancelled by the caller, or expired
+                giveUp(waiter);
+            }
+        });
+        if (waiter.future.isDone()) {
+            // granted before the timeout was set
+            timeout.cancel(false);
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Wait for a permit to start a process.
+     *
+     * @return true if a permit was acquired and must be given back with {@link #release()}; false if none became
+     * available in time or the thread was interrupted
+     * @see #acquireAsync()
+     */
+    public boolean acquire() {
+        CompletableFuture<Boolean> future = acquireAsync();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!future.complete(Boolean.FALSE) && future.join()) {
+                // granted meanwhile
+                release();
+            }
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Give back a permit obtained from {@link #acquire()} or {@link #acquireAsync()}, handing it to the oldest
+     * waiting request if any.
+     */
+    public void release() {
+        Waiter next;
+        synchronized (this) {
+            do {
+                next = waiters.poll();
+            } while (next != null && next.future.isDone());
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        next.cancelTimeout();
+        if (next.future.complete(Boolean.TRUE)) {
+            granted(System.nanoTime() - next.start);
+        } else {
+            // given up or expired between poll and completion
+            release();
+        }
+    }
+
+    private void giveUp(Waiter waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        waiter.cancelTimeout();
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                // granted or given up meanwhile
+                return;
+            }
+        }
+        // counted before completing, so that callers seeing the rejection also see it in the statistics
+        long waited = System.nanoTime() - waiter.start;
+        recordWait(waited);
+        rejected.incrementAndGet();
+        LOGGER.log(Level.FINE, "No process permit after {0}ms; {1} waiting",
+                new Object[]{TimeUnit.NANOSECONDS.toMillis(waited), getQueueDepth()});
+        waiter.future.complete(Boolean.FALSE);
+    }
+
+    private void granted(long waited) {
+        recordWait(waited);
+        acquired.incrementAndGet();
+    }
+
+    private void recordWait(long waited) {
+        totalWaitNanos.addAndGet(waited);
+        long max;
+        while (waited > (max = maxWaitSeenNanos.get()) && !maxWaitSeenNanos.compareAndSet(max, waited)) {
+            // retry
+        }
+    }
+
+    /**
+     * Returns the maximum number of processes running at the same time.
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * Returns the number of processes currently running.
+     */
+    public synchronized int getRunning() {
+        return permits - available;
+    }
+
+    /**
+     * Returns the number of requests waiting for a permit.
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Waiter waiter : waiters) {
+            if (!waiter.future.isDone()) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of permits handed out so far.
+     */
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    /**
+     * Returns the number of commands not started because no permit became available in time.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the time spent waiting for permits by all commands so far.
+     *
+     * @param unit unit of the returned value
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(totalWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a single command has waited for a permit.
+     *
+     * @param unit unit of the returned value
+     */
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWaitSeenNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "SpawnGovernor{permits=" + permits + ", running=" + getRunning() + ", queued=" + getQueueDepth()
+                + ", acquired=" + getAcquiredCount() + ", rejected=" + getRejectedCount() + '}';
+    }
+
+    /**
+     * A request waiting for a permit.
+     */
+    private static final class Waiter {
+        private final long start = System.nanoTime();
+        private final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+        private volatile ScheduledFuture<?> timeout;
+
+        void cancelTimeout() {
+            ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Computes the default number of permits: half of the usable CPUs, at least one.
+     *
+     * @param cpus       number of CPUs reported by the JVM
+     * @param cgroupRoot mount point of the cgroup file system
+     * @return number of permits
+     */
+    static int defaultPermits(int cpus, File cgroupRoot) {
+        int usable = cpus;
+        double quota = readCpuQuota(cgroupRoot);
+        if (quota > 0) {
+            usable = Math.min(usable, (int) Math.ceil(quota));
+        }
+        return Math.max(1, usable / 2);
+    }
+
+    /**
+     * Reads the CPU quota of the current cgroup, as a number of CPUs.
+     * <p/>
+     * Both cgroup v2 ({@code cpu.max}) and cgroup v1 ({@code cpu/cpu.cfs_quota_us} and
+     * {@code cpu/cpu.cfs_period_us}) are understood.
+     *
+     * @param cgroupRoot mount point of the cgroup file system
+     * @return number of CPUs allowed, or -1 if there is no quota or it cannot be read
+     */
+    static double readCpuQuota(File cgroupRoot) {
+        String max = readFirstLine(new File(cgroupRoot, "cpu.max"));
+        if (max != null) {
+            String[] fields = max.trim().split("\\s+");
+            if (fields.length == 2 && !fields[0].equals("max")) {
+                return ratio(fields[0], fields[1]);
+            }
+            return -1;
+        }
+        String quota = readFirstLine(new File(cgroupRoot, "cpu/cpu.cfs_quota_us"));
+        String period = readFirstLine(new File(cgroupRoot, "cpu/cpu.cfs_period_us"));
+        if (quota != null && period != null) {
+            return ratio(quota.trim(), period.trim());
+        }
+        return -1;
+    }
+
+    private static double ratio(String quota, String period) {
+        try {
+            long q = Long.parseLong(quota);
+            long p = Long.parseLong(period);
+            if (q <= 0 || p <= 0) {
+                // -1 means unlimited in cgroup v1
+                return -1;
+            }
+            return (double) q / p;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readFirstLine(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), Charset.forName("US-ASCII")));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
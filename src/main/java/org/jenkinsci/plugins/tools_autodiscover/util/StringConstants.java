@@ -10,14 +10,33 @@ public class StringConstants {
      */
     public static class Windows {
         /**
-         * Registry key path where list of keys for each JDK are stored
+         * Registry keys holding Java installations, in the 64-bit view and in the 32-bit view of the registry.
          */
-        public final static String WIN_JDK_REG_KEY = "\"HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\Java Development Kit\"";
+        public final static String[] WIN_JAVASOFT_REG_KEYS = {
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\WOW6432Node\\JavaSoft"
+        };
 
         /**
-         * Registry path prefix for valid JDK entries.
+         * REG QUERY options selecting the registry view of each of {@link #WIN_JAVASOFT_REG_KEYS}.
          */
-        public final static String WIN_JDK_REG_KEY_PREFIX = "HKEY_LOCAL_MACHINE\\SOFTWARE";
+        public final static String[] WIN_JAVASOFT_REG_VIEWS = {
+                "/reg:64",
+                "/reg:32"
+        };
+
+        /**
+         * Names of the keys under JavaSoft holding one key per JDK version: up to Java 8, and from Java 9 on.
+         */
+        public final static String[] WIN_JDK_REG_KEY_NAMES = {
+                "Java Development Kit",
+                "JDK"
+        };
+
+        /**
+         * Name of the registry value holding the home directory of a JDK.
+         */
+        public final static String WIN_JAVA_HOME_REG_VALUE = "JavaHome";
     }
 
     /**
@@ -33,5 +52,61 @@ public class StringConstants {
          * Absolute path where the Ant instances should be located under MacPorts.
          */
         public final static String ANT_DIR_PATH = "/opt/local/share/java/";
+
+        /**
+         * Absolute paths where JVM bundles are installed by Apple and Oracle installers.
+         */
+        public final static String[] JVM_DIR_PATHS = {
+                "/Library/Java/JavaVirtualMachines",
+                "/System/Library/Java/JavaVirtualMachines"
+        };
+    }
+
+    /**
+     * For Linux systems
+     */
+    public static class Linux {
+        /**
+         * Absolute paths where JDKs are installed by distribution packages and vendor packages.
+         */
+        public final static String[] JVM_DIR_PATHS = {
+                "/usr/lib/jvm",
+                "/usr/java"
+        };
+
+        /**
+         * Absolute path of the Maven home installed by distribution packages.
+         */
+        public final static String MAVEN_HOME_PATH = "/usr/share/maven";
+
+        /**
+         * Absolute path of the Ant home installed by distribution packages.
+         */
+        public final static String ANT_HOME_PATH = "/usr/share/ant";
+
+        /**
+         * Absolute path where tools are unpacked by hand.
+         */
+        public final static String OPT_DIR_PATH = "/opt";
+
+        /**
+         * Absolute path holding the links managed by update-alternatives.
+         */
+        public final static String ALTERNATIVES_DIR_PATH = "/etc/alternatives";
+
+        /**
+         * Environment variable pointing to the SDKMAN! directory.
+         */
+        public final static String SDKMAN_DIR_VARIABLE = "SDKMAN_DIR";
+
+        /**
+         * SDKMAN! directory relative to the user home, when SDKMAN_DIR is not set.
+         */
+        public final static String SDKMAN_DEFAULT_DIR = ".sdkman";
+
+        /**
+         * Directory relative to the SDKMAN! directory holding one directory per candidate, such as java or maven.
+         */
+        public final static String SDKMAN_CANDIDATES_DIR = "candidates";
     }
 }
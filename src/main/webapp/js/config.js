@@ -16,25 +16,149 @@ Behaviour.specify(
         var textBox = findElementsBySelector(valueNode, 'INPUT').first();
         textBox.value = newValue;
       }
-      // end helper functions
 
-      // Hook on onchange event to update property table accordingly on update
-      e.onchange = function () {
-          var toolPath = this.value;
-          var detailsTable = $(this).next();
-          // Find table to update
-          while (detailsTable.tagName != 'TABLE'
-              || !Element.hasClassName(detailsTable, 'tool-property-table')) {
-            detailsTable = $(detailsTable).next();
+      function findNextSibling(select, tagName, className) {
+        var node = $(select).next();
+        while (node != null
+            && (node.tagName != tagName || !Element.hasClassName(node, className))) {
+          node = $(node).next();
+        }
+        return node;
+      }
+
+      // Update property table according to the selected tool
+      function updateProperties(select) {
+        var detailsTable = findNextSibling(select, 'TABLE', 'tool-property-table');
+        var rows = findElementsBySelector(detailsTable, 'TR.tool-property-entry');
+        for (var idx = 0; idx < rows.length; ++idx) {
+          var propertyId = getToolPropertyId(rows[idx]);
+          if (propertyId == "path") {
+            setToolPropertyValue(rows[idx], select.value)
           }
+        }
+      }
+
+      function setStatus(select, text) {
+        var status = findNextSibling(select, 'SPAN', 'tools-autodiscover-status');
+        if (status != null) {
+          status.innerHTML = text.escapeHTML();
+          status.style.display = text ? '' : 'none';
+        }
+      }
 
-          var rows = findElementsBySelector(detailsTable, 'TR.tool-property-entry');
-          for (var idx = 0; idx < rows.length; ++idx) {
-            var propertyId = getToolPropertyId(rows[idx]);
-            if (propertyId == "path") {
-              setToolPropertyValue(rows[idx], toolPath)
+      // Append discovered tools as they arrive, keeping the selection stable
+      function appendOptions(select, installations, state) {
+        var current = select.getAttribute('data-current');
+        for (var idx = 0; idx < installations.length; ++idx) {
+          var tool = installations[idx];
+          if (current && tool.home == current) {
+            // already rendered as the current selection; show its name
+            for (var opt = 0; opt < select.options.length; ++opt) {
+              if (select.options[opt].value == current) {
+                select.options[opt].text = tool.name;
+              }
             }
+            state.found = true;
+            continue;
           }
+          if (!current && !state.filled) {
+            // drop the placeholder, and select the first tool found
+            select.options.length = 0;
+          }
+          var selected = !current && !state.filled;
+          state.filled = true;
+          select.options[select.options.length] = new Option(tool.name, tool.home, selected, selected);
+        }
+      }
+
+      // Drop the tools shown so far, keeping the selected one until it is found again
+      function clearOptions(select, state) {
+        var current = select.getAttribute('data-current');
+        select.options.length = 0;
+        if (current) {
+          select.options[0] = new Option(current, current, true, true);
+        } else {
+          select.options[0] = new Option('Discovering installations...', '', true, true);
+          select.options[0].disabled = true;
+        }
+        state.found = false;
+        state.filled = false;
+      }
+
+      // Poll the descriptor until discovery is done, appending tools as modules find them
+      function poll(select, url, cycle, since, state) {
+        new Ajax.Request(url, {
+          method: 'get',
+          parameters: {cycle: cycle, since: since},
+          onSuccess: function (rsp) {
+            if (select.toolsAutodiscoverState !== state) {
+              // superseded by a rescan
+              return;
+            }
+            var json = rsp.responseText.evalJSON();
+            if (json.done || json.cycle != cycle) {
+              // the final result replaces what modules reported; another discovery starts over
+              clearOptions(select, state);
+            }
+            appendOptions(select, json.installations, state);
+            updateProperties(select);
+            if (!json.done) {
+              poll(select, url, json.cycle, json.next, state);
+              return;
+            }
+            var current = select.getAttribute('data-current');
+            if (current && !state.found) {
+              // no longer discovered; keep it rather than silently switching to another tool
+              for (var opt = 0; opt < select.options.length; ++opt) {
+                if (select.options[opt].value == current) {
+                  select.options[opt].text = current + ' (not found)';
+                }
+              }
+            }
+            setStatus(select, json.installations.length == 0 ? 'No installations found.' : '');
+          },
+          onFailure: function () {
+            setStatus(select, 'Discovery failed. Use Rescan to try again.');
+          }
+        });
+      }
+
+      // Start over after a rescan, keeping the selected tool until it is found again
+      function refresh(select, url) {
+        select.setAttribute('data-current', select.value);
+        select.toolsAutodiscoverState = {found: false, filled: false};
+        clearOptions(select, select.toolsAutodiscoverState);
+        setStatus(select, 'Discovering installations...');
+        poll(select, url, 0, 0, select.toolsAutodiscoverState);
+      }
+      // end helper functions
+
+      // Hook on onchange event to update property table accordingly on update
+      e.onchange = function () {
+          // a tool picked while discovery runs stays selected when the final result arrives
+          this.setAttribute('data-current', this.value);
+          updateProperties(this);
       };
+
+      var url = e.getAttribute('data-url');
+      if (url) {
+        e.toolsAutodiscoverRefresh = function () {
+          refresh(e, url);
+        };
+        e.toolsAutodiscoverState = {found: false, filled: false};
+        poll(e, url, 0, 0, e.toolsAutodiscoverState);
+      }
+  }
+);
+
+// Shown by the Rescan button once discovery was started again in the background
+Behaviour.specify(
+  'SPAN.tools-autodiscover-rescan',
+  'tools-autodiscover.rescan', 0, function (e) {
+      var cell = $(e).up('TD');
+      var select = cell == null ? null : cell.down('SELECT.tools-autodiscover-dropdown');
+      if (select != null && select.toolsAutodiscoverRefresh) {
+        select.toolsAutodiscoverRefresh();
+      }
   }
-);
\ No newline at end of file
+);
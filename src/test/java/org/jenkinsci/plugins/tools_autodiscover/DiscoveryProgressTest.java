@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.JDK;
+import hudson.tools.ToolInstallation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DiscoveryProgressTest {
+    @Test
+    public void testAwaitTimesOut() throws Exception {
+        DiscoveryProgress progress = new DiscoveryProgress();
+
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 0, 50, TimeUnit.MILLISECONDS);
+        assertTrue(update.installations.isEmpty());
+        assertEquals(0, update.next);
+        assertFalse(update.done);
+    }
+
+    @Test
+    public void testAwaitWakesUpOnAdd() throws Exception {
+        final DiscoveryProgress progress = new DiscoveryProgress();
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                progress.add(new JDK("JDK 11", "/opt/jdk-11"));
+            }
+        }).start();
+
+        long start = System.nanoTime();
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 0, 10, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, update.installations.size());
+        assertEquals(1, update.next);
+        assertFalse(update.done);
+    }
+
+    @Test
+    public void testAwaitReturnsOnlyNewInstallations() throws Exception {
+        DiscoveryProgress progress = new DiscoveryProgress();
+        progress.add(new JDK("JDK 11", "/opt/jdk-11"));
+        progress.add(new JDK("JDK 11 again", "/opt/jdk-11"));
+        progress.add(new JDK("JDK 17", "/opt/jdk-17"));
+
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 1, 0, TimeUnit.SECONDS);
+        assertEquals(1, update.installations.size());
+        assertEquals("JDK 17", update.installations.get(0).getName());
+        assertEquals(2, update.next);
+    }
+
+    @Test
+    public void testFinishReplacesReportedInstallations() throws Exception {
+        DiscoveryProgress progress = new DiscoveryProgress();
+        progress.add(new JDK("JDK 17", "/opt/jdk-17"));
+        progress.add(new JDK("JRE 11", "/opt/jdk-11/jre"));
+        progress.finish(Arrays.<ToolInstallation>asList(new JDK("JDK 11", "/opt/jdk-11"),
+                new JDK("JDK 17", "/opt/jdk-17")));
+        progress.add(new JDK("JDK 21", "/opt/jdk-21"));
+
+        // the whole final result in merge order, whatever the caller already has
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 2, 10, TimeUnit.SECONDS);
+        assertTrue(update.done);
+        assertEquals(2, update.next);
+        assertEquals(2, update.installations.size());
+        assertEquals("JDK 11", update.installations.get(0).getName());
+        assertEquals("JDK 17", update.installations.get(1).getName());
+    }
+
+    @Test
+    public void testStaleCycleStartsOver() throws Exception {
+        DiscoveryProgress earlier = new DiscoveryProgress();
+        DiscoveryProgress progress = new DiscoveryProgress();
+        assertFalse(earlier.getCycle() == progress.getCycle());
+        progress.add(new JDK("JDK 11", "/opt/jdk-11"));
+        progress.add(new JDK("JDK 17", "/opt/jdk-17"));
+
+        // a position from the earlier discovery is not a position in this one
+        DiscoveryProgress.Update update = progress.await(earlier.getCycle(), 1, 0, TimeUnit.SECONDS);
+        assertEquals(progress.getCycle(), update.cycle);
+        assertEquals(2, update.installations.size());
+        assertEquals(2, update.next);
+    }
+
+    @Test
+    public void testFinishWithoutResultKeepsReported() throws Exception {
+        DiscoveryProgress progress = new DiscoveryProgress();
+        progress.add(new JDK("JDK 11", "/opt/jdk-11"));
+        progress.finish(null);
+
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 1, 0, TimeUnit.SECONDS);
+        assertTrue(update.done);
+        assertEquals(1, update.installations.size());
+    }
+
+    @Test
+    public void testFinishWithoutResult() throws Exception {
+        DiscoveryProgress progress = new DiscoveryProgress();
+        progress.finish(null);
+
+        assertTrue(progress.isDone());
+        assertTrue(progress.await(progress.getCycle(), 0, 10, TimeUnit.SECONDS).done);
+    }
+}
@@ -0,0 +1,253 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.JDK;
+import hudson.model.Node;
+import hudson.remoting.Callable;
+import hudson.remoting.Future;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NodeDiscoverySchedulerTest {
+    private static final int AGENTS = 300;
+    private static final int MAX_CONCURRENT = 4;
+
+    private final ExecutorService agentThreads = Executors.newCachedThreadPool();
+    private NodeDiscoveryScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        agentThreads.shutdownNow();
+    }
+
+    @Test
+    public void testReconnectStormIsCapped() throws Exception {
+        NodeDiscoveryCallable.clearLastResults();
+        scheduler = new NodeDiscoveryScheduler(MAX_CONCURRENT, 200, new Random(42));
+        final NodeToolInventory inventory = new NodeToolInventory(JDK.class,
+                Collections.<Class<? extends ToolAutoDiscoveryModule>>singletonList(FakeModule.class),
+                300, TimeUnit.SECONDS, agentThreads, scheduler);
+        final AgentChannels channels = new AgentChannels();
+        final CountDownLatch done = new CountDownLatch(AGENTS);
+
+        List<Node> agents = new ArrayList<Node>();
+        for (int i = 0; i < AGENTS; i++) {
+            agents.add(newNode("agent" + i, channels));
+        }
+        for (final Node agent : agents) {
+            assertTrue(scheduler.schedule(agent.getNodeName(), new Runnable() {
+                public void run() {
+                    try {
+                        inventory.discover(Collections.singletonList(agent), 10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }));
+        }
+        // reconnecting before the first discovery has started does not schedule another one
+        assertFalse(scheduler.schedule("agent0", new Runnable() {
+            public void run() {
+                fail("coalesced with the waiting discovery");
+            }
+        }));
+
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(AGENTS, channels.requests.get());
+        assertTrue("at most " + MAX_CONCURRENT + " agents at once, saw " + channels.maxInFlight.get(),
+                channels.maxInFlight.get() <= MAX_CONCURRENT);
+        assertTrue("discoveries should overlap", channels.maxInFlight.get() > 1);
+        assertEquals(0, scheduler.getWaitingCount());
+        for (Node agent : agents) {
+            assertEquals(1, inventory.getIfPresent(agent).size());
+        }
+
+        // every agent reconnects: fingerprints match, so no module runs again
+        int runs = FakeModule.runs.get();
+        final CountDownLatch again = new CountDownLatch(AGENTS);
+        for (final Node agent : agents) {
+            scheduler.schedule(agent.getNodeName(), new Runnable() {
+                public void run() {
+                    try {
+                        inventory.discover(Collections.singletonList(agent), 10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        again.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(again.await(60, TimeUnit.SECONDS));
+        assertEquals(runs, FakeModule.runs.get());
+        assertEquals(AGENTS, channels.unchanged.get());
+        assertTrue(channels.maxInFlight.get() <= MAX_CONCURRENT);
+    }
+
+    @Test
+    public void testRescanAndBuildsShareTheCap() throws Exception {
+        NodeDiscoveryCallable.clearLastResults();
+        scheduler = new NodeDiscoveryScheduler(MAX_CONCURRENT, 200, new Random(42));
+        final NodeToolInventory inventory = new NodeToolInventory(JDK.class,
+                Collections.<Class<? extends ToolAutoDiscoveryModule>>singletonList(FakeModule.class),
+                300, TimeUnit.SECONDS, agentThreads, scheduler);
+        AgentChannels channels = new AgentChannels();
+        List<Node> agents = new ArrayList<Node>();
+        for (int i = 0; i < AGENTS; i++) {
+            agents.add(newNode("agent" + i, channels));
+        }
+        // builds asking other agents while the rescan is fanning out
+        final List<Node> building = new ArrayList<Node>();
+        for (int i = 0; i < 20; i++) {
+            building.add(newNode("building" + i, channels));
+        }
+        final CountDownLatch built = new CountDownLatch(building.size());
+        for (final Node agent : building) {
+            agentThreads.execute(new Runnable() {
+                public void run() {
+                    try {
+                        inventory.get(agent);
+                    } finally {
+                        built.countDown();
+                    }
+                }
+            });
+        }
+
+        assertEquals(AGENTS, inventory.discover(agents, 60, TimeUnit.SECONDS));
+        assertTrue(built.await(60, TimeUnit.SECONDS));
+        assertEquals(AGENTS + building.size(), channels.requests.get());
+        assertTrue("at most " + MAX_CONCURRENT + " agents at once, saw " + channels.maxInFlight.get(),
+                channels.maxInFlight.get() <= MAX_CONCURRENT);
+        for (Node agent : building) {
+            assertEquals(1, inventory.getIfPresent(agent).size());
+        }
+    }
+
+    public static class FakeModule extends ToolAutoDiscoveryModule {
+        static final AtomicInteger runs = new AtomicInteger();
+
+        public FakeModule() {
+            super(new Environment());
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+            return toolType == JDK.class;
+        }
+
+        @Override
+        public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+            runs.incrementAndGet();
+            return Collections.<ToolInstallation>singletonList(new JDK("JDK 17", "/opt/jdk-17"));
+        }
+
+        @Override
+        protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+            return Collections.singletonList("/opt/jdk-17");
+        }
+    }
+
+    private static Node newNode(String name, VirtualChannel channel) {
+        Node node = mock(Node.class);
+        when(node.getNodeName()).thenReturn(name);
+        when(node.getChannel()).thenReturn(channel);
+        return node;
+    }
+
+    /**
+     * Runs each request on its own thread like a remote agent would, taking a few milliseconds, and records how
+     * many requests are in flight at once.
+     */
+    private class AgentChannels implements VirtualChannel {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        public <V, T extends Throwable> V call(Callable<V, T> callable) throws T {
+            started();
+            try {
+                Thread.sleep(5);
+                return callable.call();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private void started() {
+            requests.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            for (int max = maxInFlight.get(); now > max && !maxInFlight.compareAndSet(max, now);
+                 max = maxInFlight.get()) {
+            }
+        }
+
+        public <V, T extends Throwable> Future<V> callAsync(final Callable<V, T> callable) {
+            started();
+            final java.util.concurrent.Future<V> result = agentThreads.submit(new java.util.concurrent.Callable<V>() {
+                public V call() throws Exception {
+                    try {
+                        Thread.sleep(5);
+                        V answer = callable.call();
+                        if (answer instanceof NodeDiscoveryResult && ((NodeDiscoveryResult) answer).isUnchanged()) {
+                            unchanged.incrementAndGet();
+                        }
+                        return answer;
+                    } catch (Throwable t) {
+                        throw new ExecutionException(t);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            });
+            return new Future<V>() {
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    return result.cancel(mayInterruptIfRunning);
+                }
+
+                public boolean isCancelled() {
+                    return result.isCancelled();
+                }
+
+                public boolean isDone() {
+                    return result.isDone();
+                }
+
+                public V get() throws InterruptedException, ExecutionException {
+                    return result.get();
+                }
+
+                public V get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, TimeoutException {
+                    return result.get(timeout, unit);
+                }
+            };
+        }
+    }
+}
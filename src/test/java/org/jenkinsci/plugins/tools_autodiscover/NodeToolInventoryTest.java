@@ -0,0 +1,339 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.JDK;
+import hudson.model.Node;
+import hudson.remoting.Callable;
+import hudson.remoting.Future;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.DescriptorBase;
+import org.jenkinsci.plugins.tools_autodiscover.util.DiscoveryMetrics;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NodeToolInventoryTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testGetCachesPerNode() {
+        FakeChannel channel1 = new FakeChannel(new JDK("JDK 11", "/opt/jdk-11"));
+        FakeChannel channel2 = new FakeChannel(new JDK("JDK 11", "/usr/lib/jvm/java-11"));
+        Node agent1 = newNode("agent1", channel1);
+        Node agent2 = newNode("agent2", channel2);
+        NodeToolInventory inventory = newInventory();
+
+        assertNull(inventory.getIfPresent(agent1));
+        assertEquals("/opt/jdk-11", inventory.get(agent1).get(0).getHome());
+        assertEquals("/opt/jdk-11", inventory.get(agent1).get(0).getHome());
+        assertEquals("/usr/lib/jvm/java-11", inventory.get(agent2).get(0).getHome());
+        assertEquals(1, channel1.calls.get());
+        assertEquals(1, channel2.calls.get());
+        assertNotNull(inventory.getIfPresent(agent1));
+
+        inventory.invalidate("agent1");
+        inventory.get(agent1);
+        assertEquals(2, channel1.calls.get());
+    }
+
+    @Test
+    public void testAgentMetricsKeptPerNode() {
+        FakeChannel channel = new FakeChannel(new JDK("JDK 11", "/opt/jdk-11"));
+        channel.metrics = DiscoveryMetrics.get().snapshot();
+        NodeToolInventory inventory = newInventory();
+        try {
+            inventory.get(newNode("metrics-agent", channel));
+            assertTrue(DiscoveryMetrics.get().toText().contains("{node=\"metrics-agent\"}"));
+        } finally {
+            DiscoveryMetrics.get().forgetNode("metrics-agent");
+        }
+    }
+
+    @Test
+    public void testGetOffline() {
+        NodeToolInventory inventory = newInventory();
+        try {
+            inventory.get(newNode("offline", null));
+            fail("offline node must not be cached as empty");
+        } catch (IllegalStateException expected) {
+        }
+        assertNull(inventory.getIfPresent(newNode("offline", null)));
+    }
+
+    @Test
+    public void testDiscoverFansOut() throws Exception {
+        // Neither agent answers before both requests have been sent.
+        final CountDownLatch sent = new CountDownLatch(2);
+        FakeChannel channel1 = new FakeChannel(sent, new JDK("JDK 8", "/opt/jdk8"));
+        FakeChannel channel2 = new FakeChannel(sent, new JDK("JDK 17", "/opt/jdk17"));
+        Node agent1 = newNode("agent1", channel1);
+        Node agent2 = newNode("agent2", channel2);
+        NodeToolInventory inventory = newInventory();
+
+        int done = inventory.discover(Arrays.asList(agent1, newNode("offline", null), agent2), 10, TimeUnit.SECONDS);
+        assertEquals(2, done);
+        assertEquals("/opt/jdk8", inventory.getIfPresent(agent1).get(0).getHome());
+        assertEquals("/opt/jdk17", inventory.getIfPresent(agent2).get(0).getHome());
+
+        // served from the cache afterwards
+        inventory.get(agent1);
+        assertEquals(1, channel1.calls.get());
+    }
+
+    @Test
+    public void testDiscoverTimeout() throws Exception {
+        FakeChannel silent = new FakeChannel(new CountDownLatch(2));
+        NodeToolInventory inventory = newInventory();
+
+        assertEquals(0, inventory.discover(Collections.singletonList(newNode("silent", silent)),
+                100, TimeUnit.MILLISECONDS));
+        assertNull(inventory.getIfPresent(newNode("silent", silent)));
+    }
+
+    @Test
+    public void testResolveHome() {
+        ToolAutoDiscoveryModule module = mock(ToolAutoDiscoveryModule.class);
+        when(module.isApplicable(JDK.class)).thenReturn(true);
+        when(module.getToolInstallations(JDK.class)).thenReturn(Arrays.<ToolInstallation>asList(
+                new JDK("JDK 11", "/Library/Java/jdk-11"), new JDK("JDK 17", "/opt/jdk-17")));
+        DescriptorBase descriptor = new DescriptorBase(JDK.class, module);
+        Node agent = newNode("agent", new FakeChannel(new JDK("JDK 17", "/opt/jdk-17"),
+                new JDK("JDK 11", "/usr/lib/jvm/java-11")));
+
+        // same home
+        assertEquals("/opt/jdk-17", descriptor.resolveHome("/opt/jdk-17", agent));
+        // same name
+        assertEquals("/usr/lib/jvm/java-11", descriptor.resolveHome("/Library/Java/jdk-11", agent));
+        // unknown on the controller
+        assertNull(descriptor.resolveHome("/opt/jdk-21", agent));
+        // offline
+        assertNull(descriptor.resolveHome("/opt/jdk-17", newNode("offline", null)));
+    }
+
+    @Test
+    public void testGetUnchangedFingerprint() {
+        FakeChannel channel = new FakeChannel(new JDK("JDK 11", "/opt/jdk-11"));
+        channel.fingerprint = "f1";
+        Node agent = newNode("agent", channel);
+        NodeToolInventory inventory = newInventory();
+        inventory.setTtl(0, TimeUnit.SECONDS);
+
+        inventory.get(agent);
+        assertNull(channel.lastKnownFingerprint);
+        // stale: refreshed with the fingerprint of the cached inventory, which the agent confirms
+        assertEquals("/opt/jdk-11", inventory.get(agent).get(0).getHome());
+        assertEquals("f1", channel.lastKnownFingerprint);
+        assertEquals(1, channel.sent.get());
+        assertEquals("/opt/jdk-11", inventory.get(agent).get(0).getHome());
+    }
+
+    @Test
+    public void testCallableSkipsUnchangedCandidates() {
+        NodeDiscoveryCallable.clearLastResults();
+        CountingModule.candidates = Collections.singletonList("/counting/jdk-11");
+        CountingModule.runs.set(0);
+        List<Class<? extends ToolAutoDiscoveryModule>> modules =
+                Collections.<Class<? extends ToolAutoDiscoveryModule>>singletonList(CountingModule.class);
+
+        NodeDiscoveryResult first = new NodeDiscoveryCallable(JDK.class, modules, null).call();
+        assertFalse(first.isUnchanged());
+        assertNotNull(first.getMetrics());
+        assertEquals("/counting/jdk-11", first.getInstallations().get(0).getHome());
+        assertNotNull(first.getFingerprint());
+        assertEquals(1, CountingModule.runs.get());
+
+        // the controller knows this fingerprint: nothing to run, nothing to send
+        NodeDiscoveryResult known = new NodeDiscoveryCallable(JDK.class, modules, first.getFingerprint()).call();
+        assertTrue(known.isUnchanged());
+        // the controller restarted: the last installations are sent without running the module
+        NodeDiscoveryResult restarted = new NodeDiscoveryCallable(JDK.class, modules, null).call();
+        assertEquals(first.getInstallations(), restarted.getInstallations());
+        assertEquals(1, CountingModule.runs.get());
+
+        CountingModule.candidates = Arrays.asList("/counting/jdk-11", "/counting/jdk-17");
+        NodeDiscoveryResult changed = new NodeDiscoveryCallable(JDK.class, modules, first.getFingerprint()).call();
+        assertFalse(changed.isUnchanged());
+        assertFalse(first.getFingerprint().equals(changed.getFingerprint()));
+        assertEquals(2, CountingModule.runs.get());
+    }
+
+    @Test
+    public void testCallableSeesVersionFileChange() throws Exception {
+        NodeDiscoveryCallable.clearLastResults();
+        File release = tmp.newFile("release");
+        assertTrue(release.setLastModified(1000000000000L));
+        CountingModule.candidates = Collections.singletonList(tmp.getRoot().getPath());
+        CountingModule.versionFile = release.getPath();
+        CountingModule.runs.set(0);
+        List<Class<? extends ToolAutoDiscoveryModule>> modules =
+                Collections.<Class<? extends ToolAutoDiscoveryModule>>singletonList(CountingModule.class);
+        try {
+            NodeDiscoveryResult first = new NodeDiscoveryCallable(JDK.class, modules, null).call();
+            assertEquals(1, CountingModule.runs.get());
+
+            // upgraded in place: same home, new release file
+            assertTrue(release.setLastModified(1100000000000L));
+            NodeDiscoveryResult upgraded = new NodeDiscoveryCallable(JDK.class, modules, first.getFingerprint()).call();
+            assertFalse(upgraded.isUnchanged());
+            assertEquals(2, CountingModule.runs.get());
+        } finally {
+            CountingModule.versionFile = null;
+        }
+    }
+
+    public static class CountingModule extends ToolAutoDiscoveryModule {
+        static volatile List<String> candidates = Collections.emptyList();
+        static final AtomicInteger runs = new AtomicInteger();
+        static volatile String versionFile;
+
+        public CountingModule() {
+            super(new Environment());
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+            return toolType == JDK.class;
+        }
+
+        @Override
+        public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+            runs.incrementAndGet();
+            List<ToolInstallation> found = new ArrayList<ToolInstallation>();
+            for (String candidate : candidates) {
+                found.add(new JDK(candidate, candidate));
+            }
+            return found;
+        }
+
+        @Override
+        protected Iterable<String> getCandidates(Class<? extends ToolInstallation> toolType) {
+            return candidates;
+        }
+
+        @Override
+        protected Iterable<String> getVersionFiles(String candidate) {
+            return versionFile == null ? Collections.<String>emptyList() : Collections.singletonList(versionFile);
+        }
+    }
+
+    private static NodeToolInventory newInventory() {
+        return new NodeToolInventory(JDK.class, Collections.<Class<? extends ToolAutoDiscoveryModule>>emptyList(),
+                300, TimeUnit.SECONDS, new java.util.concurrent.Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new NodeDiscoveryScheduler(4, 0, new Random()));
+    }
+
+    private static Node newNode(String name, VirtualChannel channel) {
+        Node node = mock(Node.class);
+        when(node.getNodeName()).thenReturn(name);
+        when(node.getChannel()).thenReturn(channel);
+        return node;
+    }
+
+    /**
+     * Channel answering every discovery with fixed installations. When given a latch, answers are held until it
+     * is released, and each asynchronous call counts it down. When given a fingerprint, requests carrying it are
+     * answered as unchanged.
+     */
+    private static class FakeChannel implements VirtualChannel {
+        final AtomicInteger calls = new AtomicInteger();
+        // requests answered with installations
+        final AtomicInteger sent = new AtomicInteger();
+        volatile String fingerprint;
+        volatile String lastKnownFingerprint;
+        volatile DiscoveryMetrics.Snapshot metrics;
+        private final CountDownLatch latch;
+        private final List<ToolInstallation> installations;
+
+        FakeChannel(ToolInstallation... installations) {
+            this(null, installations);
+        }
+
+        FakeChannel(CountDownLatch latch, ToolInstallation... installations) {
+            this.latch = latch;
+            this.installations = Arrays.asList(installations);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <V, T extends Throwable> V call(Callable<V, T> callable) {
+            calls.incrementAndGet();
+            return (V) answer(callable);
+        }
+
+        private NodeDiscoveryResult answer(Callable<?, ?> callable) {
+            assertTrue(callable instanceof NodeDiscoveryCallable);
+            lastKnownFingerprint = ((NodeDiscoveryCallable) callable).getKnownFingerprint();
+            if (fingerprint != null && fingerprint.equals(lastKnownFingerprint)) {
+                return new NodeDiscoveryResult(fingerprint, null);
+            }
+            sent.incrementAndGet();
+            NodeDiscoveryResult result = new NodeDiscoveryResult(fingerprint,
+                    new ArrayList<ToolInstallation>(installations));
+            return metrics == null ? result : result.withMetrics(metrics);
+        }
+
+        public <V, T extends Throwable> Future<V> callAsync(final Callable<V, T> callable) throws IOException {
+            calls.incrementAndGet();
+            if (latch != null) {
+                latch.countDown();
+            }
+            final CompletableFuture<V> result = CompletableFuture.supplyAsync(new java.util.function.Supplier<V>() {
+                @SuppressWarnings("unchecked")
+                public V get() {
+                    try {
+                        if (latch != null && !latch.await(10, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("not every request was sent");
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return (V) answer(callable);
+                }
+            });
+            return new Future<V>() {
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    return result.cancel(mayInterruptIfRunning);
+                }
+
+                public boolean isCancelled() {
+                    return result.isCancelled();
+                }
+
+                public boolean isDone() {
+                    return result.isDone();
+                }
+
+                public V get() throws InterruptedException, ExecutionException {
+                    return result.get();
+                }
+
+                public V get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, TimeoutException {
+                    return result.get(timeout, unit);
+                }
+            };
+        }
+    }
+}
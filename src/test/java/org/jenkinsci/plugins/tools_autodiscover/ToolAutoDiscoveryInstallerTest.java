@@ -2,14 +2,27 @@ package org.jenkinsci.plugins.tools_autodiscover;
 
 import hudson.model.JDK;
 import hudson.tools.ToolInstallation;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryInstaller.DescriptorBase;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ToolAutoDiscoveryInstallerTest {
@@ -41,6 +54,86 @@ public class ToolAutoDiscoveryInstallerTest {
         assertEquals("/", list.get(0).getHome());
     }
 
+    @Test
+    public void testGetToolInstallationsSamePathSpelledDifferently() {
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class,
+                getSlowJDKDiscoveryMock(0, new JDK("JDK 11", "/nonexistent/jdk-11")),
+                getSlowJDKDiscoveryMock(0, new JDK("JDK 11 again", "//nonexistent/jdk-11/"),
+                        new JDK("JDK 17", "/nonexistent/jdk-17")));
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(2, list.size());
+        assertEquals("JDK 11", list.get(0).getName());
+        assertEquals("JDK 17", list.get(1).getName());
+    }
+
+    @Test
+    public void testGetToolInstallationsNestedRuntime() {
+        String home = new File(System.getProperty("java.io.tmpdir"), "nonexistent-jdk1.8.0").getPath();
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class,
+                getSlowJDKDiscoveryMock(0, new JDK("JRE 8", home + File.separator + "jre")),
+                getSlowJDKDiscoveryMock(0, new JDK("JDK 8", home),
+                        new JDK("JRE 9", home + "-jre9" + File.separator + "jre")));
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(2, list.size());
+        assertEquals("JDK 8", list.get(0).getName());
+        assertEquals("JRE 9", list.get(1).getName());
+    }
+
+    @Test
+    public void testGetToolInstallationsCached() {
+        ToolAutoDiscoveryModule mockModule = getJDKDiscoveryMock();
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, mockModule);
+
+        installerDescriptor.getToolInstallations();
+        installerDescriptor.getToolInstallations();
+        verify(mockModule, times(1)).getToolInstallations(JDK.class);
+
+        installerDescriptor.invalidateToolInstallations();
+        assertEquals(1, installerDescriptor.getToolInstallations().size());
+        verify(mockModule, times(2)).getToolInstallations(JDK.class);
+    }
+
+    @Test
+    public void testInterruptedDiscoveryNotCached() {
+        final AtomicBoolean first = new AtomicBoolean(true);
+        ToolAutoDiscoveryModule interrupting = mock(ToolAutoDiscoveryModule.class);
+        when(interrupting.isApplicable(JDK.class)).thenReturn(true);
+        when(interrupting.getToolInstallations(JDK.class)).thenAnswer(new Answer<List<ToolInstallation>>() {
+            public List<ToolInstallation> answer(InvocationOnMock invocation) {
+                if (first.get()) {
+                    // as if the request thread was interrupted while the modules run
+                    Thread.currentThread().interrupt();
+                }
+                return Arrays.<ToolInstallation>asList(new JDK("FastJDK", "/fast"));
+            }
+        });
+        ToolAutoDiscoveryModule slow = mock(ToolAutoDiscoveryModule.class);
+        when(slow.isApplicable(JDK.class)).thenReturn(true);
+        when(slow.getToolInstallations(JDK.class)).thenAnswer(new Answer<List<ToolInstallation>>() {
+            public List<ToolInstallation> answer(InvocationOnMock invocation) throws Throwable {
+                if (first.get()) {
+                    Thread.sleep(10000);
+                }
+                return Arrays.<ToolInstallation>asList(new JDK("SlowJDK", "/slow"));
+            }
+        });
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, interrupting, slow);
+
+        try {
+            installerDescriptor.getToolInstallations();
+            fail("partial result returned");
+        } catch (IllegalStateException expected) {
+            assertTrue(Thread.interrupted());
+        }
+        first.set(false);
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(2, list.size());
+        verify(interrupting, times(2)).getToolInstallations(JDK.class);
+    }
+
     @Test
     public void testIsApplicableNoModule() {
         DescriptorBase installerDescriptor = new DescriptorBase(ToolInstallation.class);
@@ -58,9 +151,222 @@ public class ToolAutoDiscoveryInstallerTest {
         assertTrue(installerDescriptor.isApplicable(JDK.class));
     }
 
+    @Test
+    public void testIsApplicableDoesNotRunDiscovery() {
+        ToolAutoDiscoveryModule mockModule = getJDKDiscoveryMock();
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, mockModule);
+
+        assertTrue(installerDescriptor.isApplicable(JDK.class));
+        verify(mockModule, never()).getToolInstallations(JDK.class);
+    }
+
+    @Test
+    public void testIsApplicableUsesCache() {
+        ToolAutoDiscoveryModule mockModule = getJDKDiscoveryMock();
+        when(mockModule.hasToolInstallations(JDK.class)).thenReturn(false);
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, mockModule);
+
+        installerDescriptor.getToolInstallations();
+        assertTrue(installerDescriptor.isApplicable(JDK.class));
+        verify(mockModule, never()).hasToolInstallations(JDK.class);
+    }
+
+    @Test
+    public void testGetToolInstallationsConcurrent() {
+        // every module waits for all of them to have started, which only happens if they overlap
+        CyclicBarrier allStarted = new CyclicBarrier(4);
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class,
+                getBarrierJDKDiscoveryMock(allStarted, new JDK("JDK1", "/jdk1")),
+                getBarrierJDKDiscoveryMock(allStarted, new JDK("JDK2", "/jdk2")),
+                getBarrierJDKDiscoveryMock(allStarted, new JDK("JDK3", "/jdk3")),
+                getBarrierJDKDiscoveryMock(allStarted, new JDK("JDK4", "/jdk4")));
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(4, list.size());
+        assertFalse(allStarted.isBroken());
+    }
+
+    @Test
+    public void testGetToolInstallationsConcurrentOrder() {
+        // Later modules finish first; merge order and duplicate resolution must follow module order.
+        CountDownLatch secondDone = new CountDownLatch(1);
+        CountDownLatch thirdDone = new CountDownLatch(1);
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class,
+                getOrderedJDKDiscoveryMock(secondDone, null, new JDK("First", "/shared"), new JDK("JDK1", "/jdk1")),
+                getOrderedJDKDiscoveryMock(thirdDone, secondDone, new JDK("JDK2", "/jdk2")),
+                getOrderedJDKDiscoveryMock(null, thirdDone, new JDK("Third", "/shared"), new JDK("JDK3", "/jdk3")));
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(4, list.size());
+        assertEquals("First", list.get(0).getName());
+        assertEquals("JDK1", list.get(1).getName());
+        assertEquals("JDK2", list.get(2).getName());
+        assertEquals("JDK3", list.get(3).getName());
+    }
+
+    @Test
+    public void testInstallationsJSON() {
+        JSONObject json = DescriptorBase.toJSON(Arrays.<ToolInstallation>asList(
+                new JDK("JDK 11", "/opt/jdk-11"), new JDK("JDK \"17\"", "C:\\Java\\jdk-17")));
+
+        JSONArray installations = json.getJSONArray("installations");
+        assertEquals(2, installations.size());
+        assertEquals("JDK 11", installations.getJSONObject(0).getString("name"));
+        assertEquals("/opt/jdk-11", installations.getJSONObject(0).getString("home"));
+        assertEquals("C:\\Java\\jdk-17", installations.getJSONObject(1).getString("home"));
+        assertEquals("{\"installations\":[]}",
+                DescriptorBase.toJSON(Collections.<ToolInstallation>emptyList()).toString());
+    }
+
+    @Test
+    public void testGetToolInstallationsFailingModule() {
+        ToolAutoDiscoveryModule failingModule = mock(ToolAutoDiscoveryModule.class);
+        when(failingModule.isApplicable(JDK.class)).thenReturn(true);
+        when(failingModule.getToolInstallations(JDK.class)).thenThrow(new IllegalStateException("broken"));
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, failingModule, getJDKDiscoveryMock());
+
+        List<ToolInstallation> list = installerDescriptor.getToolInstallations();
+        assertEquals(1, list.size());
+        assertEquals("TestJDK", list.get(0).getName());
+    }
+
+    @Test
+    public void testProgressShowsFastModuleFirst() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        final DescriptorBase installerDescriptor = new DescriptorBase(JDK.class,
+                getOrderedJDKDiscoveryMock(release, null, new JDK("SlowJDK", "/slow")),
+                getSlowJDKDiscoveryMock(0, new JDK("FastJDK", "/fast")));
+        Thread discovery = startDiscovery(installerDescriptor);
+
+        DiscoveryProgress progress = awaitProgress(installerDescriptor);
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 0, 5, TimeUnit.SECONDS);
+        assertEquals(1, update.installations.size());
+        assertEquals("FastJDK", update.installations.get(0).getName());
+        assertFalse(update.done);
+
+        release.countDown();
+        discovery.join();
+        update = progress.await(update.cycle, update.next, 0, TimeUnit.SECONDS);
+        assertTrue(update.done);
+        // the final result follows module order, and replaces what was shown
+        assertEquals(2, update.installations.size());
+        assertEquals("SlowJDK", update.installations.get(0).getName());
+        assertEquals("FastJDK", update.installations.get(1).getName());
+    }
+
+    @Test
+    public void testProgressShowsPublishedInstallations() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final JDK published = new JDK("PublishedJDK", "/published");
+        ToolAutoDiscoveryModule module = new ToolAutoDiscoveryModule(null) {
+            @Override
+            public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+                return toolType == JDK.class;
+            }
+
+            @Override
+            public List<ToolInstallation> getToolInstallations(Class<? extends ToolInstallation> toolType) {
+                publish(published);
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Arrays.<ToolInstallation>asList(published, new JDK("LateJDK", "/late"));
+            }
+        };
+        DescriptorBase installerDescriptor = new DescriptorBase(JDK.class, module);
+        Thread discovery = startDiscovery(installerDescriptor);
+
+        DiscoveryProgress progress = awaitProgress(installerDescriptor);
+        DiscoveryProgress.Update update = progress.await(progress.getCycle(), 0, 5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(published), update.installations);
+        assertFalse(update.done);
+
+        release.countDown();
+        discovery.join();
+        update = progress.await(update.cycle, update.next, 0, TimeUnit.SECONDS);
+        assertTrue(update.done);
+        assertEquals(2, update.installations.size());
+        assertEquals("LateJDK", update.installations.get(1).getName());
+    }
+
+    private Thread startDiscovery(final DescriptorBase installerDescriptor) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                installerDescriptor.getToolInstallations();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private DiscoveryProgress awaitProgress(DescriptorBase installerDescriptor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (installerDescriptor.getProgress() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(installerDescriptor.getProgress());
+        return installerDescriptor.getProgress();
+    }
+
+    private ToolAutoDiscoveryModule getSlowJDKDiscoveryMock(final long delay, ToolInstallation... tools) {
+        final List<ToolInstallation> result = Arrays.asList(tools);
+        ToolAutoDiscoveryModule mockModule = mock(ToolAutoDiscoveryModule.class);
+        when(mockModule.isApplicable(JDK.class)).thenReturn(true);
+        when(mockModule.getToolInstallations(JDK.class)).thenAnswer(new Answer<List<ToolInstallation>>() {
+            public List<ToolInstallation> answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(delay);
+                return result;
+            }
+        });
+        return mockModule;
+    }
+
+    /**
+     * Returns a module which reports its installations once every party of the barrier has started.
+     */
+    private ToolAutoDiscoveryModule getBarrierJDKDiscoveryMock(final CyclicBarrier barrier,
+                                                               ToolInstallation... tools) {
+        final List<ToolInstallation> result = Arrays.asList(tools);
+        ToolAutoDiscoveryModule mockModule = mock(ToolAutoDiscoveryModule.class);
+        when(mockModule.isApplicable(JDK.class)).thenReturn(true);
+        when(mockModule.getToolInstallations(JDK.class)).thenAnswer(new Answer<List<ToolInstallation>>() {
+            public List<ToolInstallation> answer(InvocationOnMock invocation) throws Throwable {
+                // bounded only so that a regression fails instead of hanging
+                barrier.await(30, TimeUnit.SECONDS);
+                return result;
+            }
+        });
+        return mockModule;
+    }
+
+    /**
+     * Returns a module which reports its installations once the given latch is released, then releases its own.
+     */
+    private ToolAutoDiscoveryModule getOrderedJDKDiscoveryMock(final CountDownLatch after,
+                                                               final CountDownLatch done, ToolInstallation... tools) {
+        final List<ToolInstallation> result = Arrays.asList(tools);
+        ToolAutoDiscoveryModule mockModule = mock(ToolAutoDiscoveryModule.class);
+        when(mockModule.isApplicable(JDK.class)).thenReturn(true);
+        when(mockModule.getToolInstallations(JDK.class)).thenAnswer(new Answer<List<ToolInstallation>>() {
+            public List<ToolInstallation> answer(InvocationOnMock invocation) throws Throwable {
+                if (after != null) {
+                    assertTrue(after.await(30, TimeUnit.SECONDS));
+                }
+                if (done != null) {
+                    done.countDown();
+                }
+                return result;
+            }
+        });
+        return mockModule;
+    }
+
     private ToolAutoDiscoveryModule getJDKDiscoveryMock() {
         ToolAutoDiscoveryModule mockModule = mock(ToolAutoDiscoveryModule.class);
         when(mockModule.isApplicable(JDK.class)).thenReturn(true);
+        when(mockModule.hasToolInstallations(JDK.class)).thenReturn(true);
         when(mockModule.getToolInstallations(JDK.class))
                 .thenReturn(Arrays.asList((ToolInstallation) new JDK("TestJDK", "/")));
         return mockModule;
@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.tools_autodiscover;
+
+import hudson.model.JDK;
+import hudson.tools.ToolInstallation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ToolInventoryCacheTest {
+
+    private CountingLoader loader;
+    private List<Runnable> scheduledRefreshes;
+    private Executor queueingExecutor;
+
+    @Before
+    public void setUp() {
+        loader = new CountingLoader();
+        scheduledRefreshes = new ArrayList<Runnable>();
+        // Collects refresh tasks so the test decides when they run
+        queueingExecutor = new Executor() {
+            public void execute(Runnable command) {
+                scheduledRefreshes.add(command);
+            }
+        };
+    }
+
+    @Test
+    public void testFreshEntryIsServedFromMemory() {
+        ToolInventoryCache cache = new ToolInventoryCache(loader, 1, TimeUnit.HOURS, queueingExecutor);
+
+        assertEquals("JDK 1", cache.get(JDK.class).get(0).getName());
+        assertEquals("JDK 1", cache.get(JDK.class).get(0).getName());
+        assertEquals(1, loader.count);
+        assertTrue(scheduledRefreshes.isEmpty());
+    }
+
+    @Test
+    public void testStaleEntryIsServedWhileRevalidating() {
+        ToolInventoryCache cache = new ToolInventoryCache(loader, 0, TimeUnit.SECONDS, queueingExecutor);
+
+        assertEquals("JDK 1", cache.get(JDK.class).get(0).getName());
+        // stale: old value comes back immediately, a single refresh is queued
+        assertEquals("JDK 1", cache.get(JDK.class).get(0).getName());
+        assertEquals("JDK 1", cache.get(JDK.class).get(0).getName());
+        assertEquals(1, scheduledRefreshes.size());
+        assertEquals(1, loader.count);
+
+        scheduledRefreshes.remove(0).run();
+        assertEquals(2, loader.count);
+        assertEquals("JDK 2", cache.get(JDK.class).get(0).getName());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ToolInventoryCache cache = new ToolInventoryCache(loader, 1, TimeUnit.HOURS, queueingExecutor);
+
+        cache.get(JDK.class);
+        cache.invalidate();
+        assertNull(cache.getIfPresent(JDK.class));
+        assertEquals("JDK 2", cache.get(JDK.class).get(0).getName());
+        assertEquals(2, loader.count);
+    }
+
+    @Test
+    public void testGetIfPresentDoesNotLoad() {
+        ToolInventoryCache cache = new ToolInventoryCache(loader, 1, TimeUnit.HOURS, queueingExecutor);
+
+        assertNull(cache.getIfPresent(JDK.class));
+        assertEquals(0, loader.count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTtl() {
+        new ToolInventoryCache(loader, -1, TimeUnit.SECONDS, queueingExecutor);
+    }
+
+    private static class CountingLoader implements ToolInventoryCache.Loader {
+        int count;
+
+        public List<ToolInstallation> load(Class<? extends ToolInstallation> toolType) {
+            count++;
+            return Collections.<ToolInstallation>singletonList(new JDK("JDK " + count, "/jdk" + count));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.model.JDK;
+import hudson.tasks.Ant;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AntDiscoveryLinuxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Environment environment;
+    private File root;
+    private File sdkman;
+    private AntDiscoveryLinux module;
+
+    @Before
+    public void setUp() throws Exception {
+        environment = spy(new Environment());
+        doReturn(true).when(environment).isLinux();
+        root = tmp.newFolder("root").getCanonicalFile();
+        sdkman = tmp.newFolder("sdkman").getCanonicalFile();
+        module = new AntDiscoveryLinux(environment, root, sdkman);
+    }
+
+    @Test
+    public void testIsApplicable() {
+        assertTrue(module.isApplicable(Ant.AntInstallation.class));
+        assertFalse(module.isApplicable(JDK.class));
+        doReturn(false).when(environment).isLinux();
+        assertFalse(module.isApplicable(Ant.AntInstallation.class));
+    }
+
+    @Test
+    public void testGetToolInstallations() throws Exception {
+        File packaged = newHome(new File(root, "usr/share/ant"), "1.10.13");
+        File opt = newHome(new File(root, "opt/apache-ant-1.9.16"), "1.9.16");
+        // not an Ant directory name
+        newHome(new File(root, "opt/tools"), "1.8.0");
+        File sdk = newHome(new File(sdkman, "candidates/ant/1.10.14"), "1.10.14");
+
+        List<ToolInstallation> installations = module.getToolInstallations(Ant.AntInstallation.class);
+        assertEquals(3, installations.size());
+        assertEquals("Apache Ant 1.10.13", installations.get(0).getName());
+        assertEquals(packaged.getPath(), installations.get(0).getHome());
+        assertEquals("Apache Ant 1.9.16", installations.get(1).getName());
+        assertEquals(opt.getPath(), installations.get(1).getHome());
+        assertEquals("Apache Ant 1.10.14", installations.get(2).getName());
+        assertEquals(sdk.getPath(), installations.get(2).getHome());
+
+        verify(environment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallationsWithoutLauncher() throws Exception {
+        File home = newHome(new File(root, "opt/ant"), "1.10.13");
+        assertTrue(module.hasToolInstallations(Ant.AntInstallation.class));
+
+        assertTrue(new File(home, "bin/ant").delete());
+        assertFalse(module.hasToolInstallations(Ant.AntInstallation.class));
+        assertTrue(module.getToolInstallations(Ant.AntInstallation.class).isEmpty());
+    }
+
+    private static File newHome(File home, String version) throws IOException {
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdirs());
+        assertTrue(new File(home, "bin").mkdir());
+        assertTrue(new File(home, "bin/ant").createNewFile());
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(lib, "ant.jar")));
+        try {
+            zip.putNextEntry(new ZipEntry("org/apache/tools/ant/version.txt"));
+            zip.write(("VERSION=" + version + "\n").getBytes("ISO-8859-1"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return home;
+    }
+}
@@ -10,6 +10,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -57,6 +58,28 @@ public class AntDiscoveryOSXTest {
         assertTrue(computedOutput.equals(EXPECTED_OUTPUT));
     }
 
+    @Test
+    public void testExtractAntVersionInfoTwoDigitMinor() {
+        assertEquals("Apache Ant 1.10.14",
+                module.extractAntVersionInfo("Apache Ant(TM) version 1.10.14 compiled on August 16 2023"));
+    }
+
+    @Test
+    public void testExtractAntVersionInfoTwoDigitPatch() {
+        assertEquals("Apache Ant 1.9.16",
+                module.extractAntVersionInfo("Apache Ant(TM) version 1.9.16 compiled on July 10 2021"));
+    }
+
+    @Test
+    public void testExtractAntVersionInfoWithoutDate() {
+        assertEquals("Apache Ant 1.10", module.extractAntVersionInfo("Apache Ant(TM) version 1.10"));
+    }
+
+    @Test
+    public void testExtractAntVersionInfoNoVersion() {
+        assertNull(module.extractAntVersionInfo("Error: JAVA_HOME is not defined correctly."));
+    }
+
     @Test
     public void testIsApplicableNull() {
         assertFalse(module.isApplicable(null));
@@ -90,7 +113,8 @@ public class AntDiscoveryOSXTest {
 
         InputStream expectedVersionOutput = getStringInputStream(ANT_VERSION_MESSAGE, "UTF-8");
         when(mockProcess.getInputStream()).thenReturn(expectedVersionOutput);
-        when(mockEnvironment.exec(any(String.class), any(String[].class), any(File.class))).thenReturn(mockProcess);
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
         List<ToolInstallation> installationList = module.getToolInstallations(Ant.AntInstallation.class);
         assertEquals(EXPECTED_NUM_ELEMENTS, installationList.size());
         assertEquals(EXPECTED_OUTPUT, installationList.get(0).getName());
@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.tasks.Ant;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIndex;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -12,7 +13,6 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -33,18 +33,7 @@ public class AntDiscoveryWindowsTest {
         when(mockEnvironment.isMacOSX()).thenReturn(false);
         when(mockEnvironment.isWindows()).thenReturn(true);
         module = new AntDiscoveryWindows(mockEnvironment);
-    }
-
-    @Test
-    public void testParsePath() {
-        List<String> pathEntries = module.parsePath(";who;is;this;");
-        List<String> expectedEntries = Arrays.asList("who", "is", "this");
-        assertEquals(expectedEntries, pathEntries);
-    }
-
-    @Test(expected = IllegalArgumentException.class)
-    public void testParsePathNull() {
-        module.parsePath(null);
+        PathIndex.clear();
     }
 
     @Test
@@ -72,11 +61,13 @@ public class AntDiscoveryWindowsTest {
         when(mockProcessIncorrect.getInputStream()).thenReturn(incorrectOutput);
 
         when(mockEnvironment.getPath()).thenReturn("\\?\\TestDir\\bin;\\?\\foo;\\?\\TestDir2\\bin");
-        when(mockEnvironment.exec(any(String.class), any(String[].class), any(File.class)))
+        when(mockEnvironment.isFile("\\?\\TestDir\\bin\\ant.bat")).thenReturn(true);
+        when(mockEnvironment.isFile("\\?\\TestDir2\\bin\\ant.cmd")).thenReturn(true);
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
                 .thenAnswer(new Answer<Process>() {
                     public Process answer(InvocationOnMock invocation) throws Throwable {
                         Object[] args = invocation.getArguments();
-                        String cmd = (String) args[0];
+                        String cmd = args[0] == null ? null : args[0].toString();
 
                         if (cmd == null) {
                             return null;
@@ -101,6 +92,34 @@ public class AntDiscoveryWindowsTest {
 
     }
 
+    @Test
+    public void testNoProcessWithoutLauncher() throws Exception {
+        when(mockEnvironment.getPath()).thenReturn("\\?\\foo\\bin;\\?\\TestDir\\bin\\");
+
+        assertTrue(module.getToolInstallations(Ant.AntInstallation.class).isEmpty());
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallations() throws Exception {
+        when(mockEnvironment.getPath()).thenReturn("\\?\\foo;\\?\\TestDir\\bin;\\?\\TestDir2\\bin");
+        when(mockEnvironment.isFile("\\?\\TestDir2\\bin\\ant.bat")).thenReturn(true);
+
+        assertTrue(module.hasToolInstallations(Ant.AntInstallation.class));
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallationsNone() throws Exception {
+        when(mockEnvironment.getPath()).thenReturn("\\?\\foo;\\?\\TestDir\\bin");
+
+        assertFalse(module.hasToolInstallations(Ant.AntInstallation.class));
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
     private InputStream getStringInputStream(String str, String charsetName) throws UnsupportedEncodingException {
         return new ByteArrayInputStream(str.getBytes(charsetName));
     }
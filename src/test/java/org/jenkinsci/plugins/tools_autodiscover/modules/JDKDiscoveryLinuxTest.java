@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.model.JDK;
+import hudson.tasks.Maven;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class JDKDiscoveryLinuxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Environment environment;
+    private File root;
+    private File sdkman;
+    private JDKDiscoveryLinux module;
+
+    @Before
+    public void setUp() throws Exception {
+        environment = spy(new Environment());
+        doReturn(true).when(environment).isLinux();
+        root = tmp.newFolder("root").getCanonicalFile();
+        sdkman = tmp.newFolder("sdkman").getCanonicalFile();
+        module = new JDKDiscoveryLinux(environment, root, sdkman, new JdkHomeInspector());
+    }
+
+    @Test
+    public void testIsApplicable() {
+        assertTrue(module.isApplicable(JDK.class));
+        assertFalse(module.isApplicable(Maven.MavenInstallation.class));
+        doReturn(false).when(environment).isLinux();
+        assertFalse(module.isApplicable(JDK.class));
+    }
+
+    @Test
+    public void testGetToolInstallations() throws Exception {
+        File jdk11 = newHome(new File(root, "usr/lib/jvm/java-11-openjdk-amd64"),
+                "JAVA_VERSION=\"11.0.20\"\nIMPLEMENTOR=\"Debian\"\nOS_ARCH=\"x86_64\"\n", true);
+        Files.createSymbolicLink(new File(root, "usr/lib/jvm/default-java").toPath(), jdk11.toPath());
+        // a JRE only
+        newHome(new File(root, "usr/lib/jvm/java-17-openjdk-amd64"), "JAVA_VERSION=\"17.0.8\"\n", false);
+        File temurin = newHome(new File(root, "opt/jdk-21"),
+                "JAVA_VERSION=\"21\"\nIMPLEMENTOR=\"Eclipse Adoptium\"\n", true);
+        File sdk = newHome(new File(sdkman, "candidates/java/17.0.8-tem"), "JAVA_VERSION=\"17.0.8\"\n", true);
+        Files.createSymbolicLink(new File(sdkman, "candidates/java/current").toPath(), sdk.toPath());
+        File alternatives = new File(root, "etc/alternatives");
+        assertTrue(alternatives.mkdirs());
+        Files.createSymbolicLink(new File(alternatives, "javac").toPath(), new File(jdk11, "bin/javac").toPath());
+
+        List<ToolInstallation> installations = module.getToolInstallations(JDK.class);
+        assertEquals(3, installations.size());
+        assertEquals("JDK 11.0.20 (Debian, x86_64)", installations.get(0).getName());
+        assertEquals(jdk11.getPath(), installations.get(0).getHome());
+        assertEquals("JDK 21 (Eclipse Adoptium)", installations.get(1).getName());
+        assertEquals(temurin.getPath(), installations.get(1).getHome());
+        assertEquals("JDK 17.0.8", installations.get(2).getName());
+        assertEquals(sdk.getPath(), installations.get(2).getHome());
+
+        verify(environment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallations() throws Exception {
+        assertFalse(module.hasToolInstallations(JDK.class));
+        newHome(new File(root, "usr/java/jdk1.8.0_202"), "JAVA_VERSION=\"1.8.0_202\"\n", true);
+        assertTrue(module.hasToolInstallations(JDK.class));
+    }
+
+    private static File newHome(File home, String release, boolean jdk) throws IOException {
+        File bin = new File(home, "bin");
+        assertTrue(bin.mkdirs());
+        assertTrue(new File(bin, "java").createNewFile());
+        if (jdk) {
+            File javac = new File(bin, "javac");
+            assertTrue(javac.createNewFile());
+            assertTrue(javac.setExecutable(true));
+        }
+        FileWriter writer = new FileWriter(new File(home, "release"));
+        try {
+            writer.write(release);
+        } finally {
+            writer.close();
+        }
+        return home;
+    }
+}
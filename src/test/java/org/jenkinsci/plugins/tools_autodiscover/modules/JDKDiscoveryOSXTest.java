@@ -1,21 +1,35 @@
 package org.jenkinsci.plugins.tools_autodiscover.modules;
 
+import hudson.model.JDK;
+import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
 import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.jenkinsci.plugins.tools_autodiscover.modules.JDKDiscoveryOSX.JavaHomeParser;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class JDKDiscoveryOSXTest {
 
     public static final String TEST_OUTPUT = "/org/jenkinsci/plugins/tools_autodiscover/modules/JDKDiscoveryOSXTest/java_home.out";
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     private List<JDKDiscoveryOSX.JVMInfo> getExpectedJVMList() {
         List<JDKDiscoveryOSX.JVMInfo> expectedList = new ArrayList<JDKDiscoveryOSX.JVMInfo>();
 
@@ -74,6 +88,76 @@ public class JDKDiscoveryOSXTest {
         assertTrue(jvmList.isEmpty());
     }
 
+    @Test
+    public void testJavaHomeParserSkipsUnknownKeys() throws Exception {
+        String plist = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" "
+                + "\"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n"
+                + "<plist version=\"1.0\"><array><dict>"
+                + "<key>JVMArch</key><string>arm64</string>"
+                + "<key>JVMRuntimeName</key><string>unknown</string>"
+                + "<key>JVMFlags</key><integer>2</integer>"
+                + "<key>JVMCapabilities</key><array><string>JNI</string><dict><key>JVMName</key>"
+                + "<string>nested</string></dict></array>"
+                + "<key>JVMBundleID</key><string>com.example.jdk</string>"
+                + "<key>JVMHomePath</key><string>/Library/Java/JavaVirtualMachines/a&amp;b.jdk/Contents/"
+                + "<![CDATA[Home]]></string>"
+                + "<key>JVMName</key><string></string>"
+                + "</dict></array></plist>";
+
+        List<JDKDiscoveryOSX.JVMInfo> jvmList = new JavaHomeParser(
+                new ByteArrayInputStream(plist.getBytes("UTF-8"))).getJVMInfoList();
+
+        assertEquals(1, jvmList.size());
+        JDKDiscoveryOSX.JVMInfo jvm = jvmList.get(0);
+        assertEquals("arm64", jvm.getArchitecture());
+        assertEquals("com.example.jdk", jvm.getBundleId());
+        assertEquals("/Library/Java/JavaVirtualMachines/a&b.jdk/Contents/Home", jvm.getHomePath());
+        assertEquals("", jvm.getName());
+    }
+
+    @Test
+    public void testJavaHomeParserStreaming() throws Exception {
+        final List<JDKDiscoveryOSX.JVMInfo> received = new ArrayList<JDKDiscoveryOSX.JVMInfo>();
+        JavaHomeParser.parse(getClass().getResourceAsStream(TEST_OUTPUT), new Consumer<JDKDiscoveryOSX.JVMInfo>() {
+            public void accept(JDKDiscoveryOSX.JVMInfo jvm) {
+                received.add(jvm);
+            }
+        });
+        assertEquals(getExpectedJVMList(), received);
+
+        // entries read before a failure are still delivered
+        received.clear();
+        String truncated = "<plist><array><dict><key>JVMHomePath</key><string>/a</string></dict><dict><key>";
+        try {
+            JavaHomeParser.parse(new ByteArrayInputStream(truncated.getBytes("UTF-8")),
+                    new Consumer<JDKDiscoveryOSX.JVMInfo>() {
+                        public void accept(JDKDiscoveryOSX.JVMInfo jvm) {
+                            received.add(jvm);
+                        }
+                    });
+            fail("truncated plist must not parse");
+        } catch (XMLStreamException expected) {
+        }
+        assertEquals(1, received.size());
+        assertEquals("/a", received.get(0).getHomePath());
+    }
+
+    @Test
+    public void testJVMInfoBuilderUpdate() {
+        JDKDiscoveryOSX.JVMInfo.Builder builder = new JDKDiscoveryOSX.JVMInfo.Builder();
+        assertTrue(builder.update(JDKDiscoveryOSX.JVMInfo.JVM_NAME, "Java SE 17"));
+        assertTrue(builder.update(JDKDiscoveryOSX.JVMInfo.JVM_ENABLED, true));
+        assertFalse(builder.update("JVMRuntimeName", "unknown"));
+        assertFalse(builder.update(JDKDiscoveryOSX.JVMInfo.JVM_NAME, true));
+        assertFalse(builder.update(JDKDiscoveryOSX.JVMInfo.JVM_ENABLED, "true"));
+        assertFalse(builder.update(null, "value"));
+
+        JDKDiscoveryOSX.JVMInfo jvm = builder.build();
+        assertEquals("Java SE 17", jvm.getName());
+        assertTrue(jvm.isEnabled());
+    }
+
     @Test
     public void testJVMInfoIsJDK() {
         JDKDiscoveryOSX.JVMInfo.Builder builder = new JDKDiscoveryOSX.JVMInfo.Builder();
@@ -84,6 +168,29 @@ public class JDKDiscoveryOSXTest {
         assertTrue(builder.build().isJDK());
     }
 
+    @Test
+    public void testGetToolInstallationsFromReleaseFiles() throws Exception {
+        File vmDir = tmp.newFolder("JavaVirtualMachines");
+        newBundle(vmDir, "jdk-11.0.2.jdk", "IMPLEMENTOR=\"Oracle Corporation\"\nJAVA_VERSION=\"11.0.2\"\n"
+                + "OS_ARCH=\"x86_64\"\n", true);
+        newBundle(vmDir, "jre-1.8.jre", "JAVA_VERSION=\"1.8.0_202\"\n", false);
+
+        Environment mockEnvironment = mock(Environment.class);
+        when(mockEnvironment.isMacOSX()).thenReturn(true);
+        JDKDiscoveryOSX module = new JDKDiscoveryOSX(mockEnvironment, new String[]{vmDir.getPath()},
+                new JdkHomeInspector()) {
+            @Override
+            protected List<JVMInfo> getLocalJVMs() {
+                throw new AssertionError("java_home should not run when every bundle has a release file");
+            }
+        };
+
+        List<ToolInstallation> installations = module.getToolInstallations(JDK.class);
+        assertEquals(1, installations.size());
+        assertEquals("JDK 11.0.2 (Oracle Corporation, x86_64)", installations.get(0).getName());
+        assertEquals(new File(vmDir, "jdk-11.0.2.jdk/Contents/Home").getPath(), installations.get(0).getHome());
+    }
+
     @Test
     public void testGetLocalJVMs() {
         // Only enable this test under OS X environment
@@ -172,4 +279,18 @@ public class JDKDiscoveryOSXTest {
         assertEquals(expected_result, info.toString());
 
     }
+
+    private static void newBundle(File vmDir, String name, String release, boolean jdk) throws IOException {
+        File bin = new File(vmDir, name + "/Contents/Home/bin");
+        assertTrue(bin.mkdirs());
+        if (jdk) {
+            assertTrue(new File(bin, "javac").createNewFile());
+        }
+        FileWriter writer = new FileWriter(new File(bin.getParentFile(), "release"));
+        try {
+            writer.write(release);
+        } finally {
+            writer.close();
+        }
+    }
 }
@@ -3,19 +3,31 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.model.JDK;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.JdkHomeInspector;
+import org.jenkinsci.plugins.tools_autodiscover.util.RegQueryParser;
 import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class JDKDiscoveryWindowsTest {
 
+    public static final String TEST_OUTPUT_64 =
+            "/org/jenkinsci/plugins/tools_autodiscover/modules/JDKDiscoveryWindowsTest/javasoft64.out";
+    public static final String TEST_OUTPUT_32 =
+            "/org/jenkinsci/plugins/tools_autodiscover/modules/JDKDiscoveryWindowsTest/javasoft32.out";
+
     private Environment mockEnvironment;
     private JDKDiscoveryWindows jdkWin;
 
@@ -100,6 +112,121 @@ public class JDKDiscoveryWindowsTest {
         assertFalse(ls.isEmpty());
     }
 
+    @Test
+    public void testFindJavaFromRecordedRegistry() throws Exception {
+        JDKDiscoveryWindows module = new JDKDiscoveryWindows(mockEnvironment, new JdkHomeInspector());
+        Process view64 = getMockProcess(TEST_OUTPUT_64);
+        Process view32 = getMockProcess(TEST_OUTPUT_32);
+        when(mockEnvironment.exec(
+                eq(Arrays.asList("REG", "QUERY", "HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft", "/s", "/reg:64")),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(view64);
+        when(mockEnvironment.exec(eq(Arrays.asList("REG", "QUERY",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\WOW6432Node\\JavaSoft", "/s", "/reg:32")),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(view32);
+
+        List<JDK> found = module.findJava();
+
+        // JREs, keys without JavaHome and homes listed under several keys or in both views are skipped
+        assertEquals(4, found.size());
+        assertEquals("1.8", found.get(0).getName());
+        assertEquals("C:\\Program Files\\Java\\jdk1.8.0_202", found.get(0).getHome());
+        assertEquals("17", found.get(1).getName());
+        assertEquals("C:\\Program Files\\Java\\jdk-17", found.get(1).getHome());
+        assertEquals("21.0.1", found.get(2).getName());
+        assertEquals("1.8.0_181", found.get(3).getName());
+        assertEquals("C:\\Program Files (x86)\\Java\\jdk1.8.0_181", found.get(3).getHome());
+        // one process per view, whatever the number of JDKs
+        verify(mockEnvironment, times(2)).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testRegQueryCommandSelectsView() throws Exception {
+        JDKDiscoveryWindows module = new JDKDiscoveryWindows(mockEnvironment, new JdkHomeInspector());
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenAnswer(new Answer<Process>() {
+                    public Process answer(InvocationOnMock invocation) throws Throwable {
+                        return getMockProcess(null);
+                    }
+                });
+
+        module.findJava();
+
+        // even a 32-bit JVM must read the 64-bit view of the native key
+        verify(mockEnvironment).exec(eq(Arrays.asList("REG", "QUERY", "HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft",
+                "/s", "/reg:64")), anyMapOf(String.class, String.class), any(File.class));
+        verify(mockEnvironment).exec(eq(Arrays.asList("REG", "QUERY",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\WOW6432Node\\JavaSoft", "/s", "/reg:32")),
+                anyMapOf(String.class, String.class), any(File.class));
+        verify(mockEnvironment, times(2)).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testFindJavaWithoutRegistryKeys() throws Exception {
+        JDKDiscoveryWindows module = new JDKDiscoveryWindows(mockEnvironment, new JdkHomeInspector());
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenAnswer(new Answer<Process>() {
+                    public Process answer(InvocationOnMock invocation) throws Throwable {
+                        Process process = getMockProcess(null);
+                        when(process.exitValue()).thenReturn(1);
+                        return process;
+                    }
+                });
+
+        assertTrue(module.findJava().isEmpty());
+    }
+
+    @Test
+    public void testFindJavaBeyondDefaultOutputLimit() throws Exception {
+        JDKDiscoveryWindows module = new JDKDiscoveryWindows(mockEnvironment, new JdkHomeInspector());
+        // a JavaSoft key with many JRE entries before the JDK
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            output.append("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\Java Runtime Environment\\1.8.0_").append(i)
+                    .append("\r\n    JavaHome    REG_SZ    C:\\Program Files\\Java\\jre1.8.0_").append(i)
+                    .append("\r\n\r\n");
+        }
+        output.append("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\21\r\n"
+                + "    JavaHome    REG_SZ    C:\\Program Files\\Java\\jdk-21\r\n");
+        final byte[] bytes = output.toString().getBytes("UTF-8");
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenAnswer(new Answer<Process>() {
+                    public Process answer(InvocationOnMock invocation) throws Throwable {
+                        Process process = mock(Process.class);
+                        when(process.getInputStream()).thenReturn(new ByteArrayInputStream(bytes));
+                        return process;
+                    }
+                });
+
+        List<JDK> found = module.findJava();
+        assertEquals(1, found.size());
+        assertEquals("C:\\Program Files\\Java\\jdk-21", found.get(0).getHome());
+    }
+
+    @Test
+    public void testIsJDKKey() {
+        assertTrue(JDKDiscoveryWindows.isJDKKey(key("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\11", "C:\\jdk")));
+        assertTrue(JDKDiscoveryWindows.isJDKKey(
+                key("HKEY_LOCAL_MACHINE\\SOFTWARE\\WOW6432Node\\JavaSoft\\Java Development Kit\\1.8", "C:\\jdk")));
+        assertFalse(JDKDiscoveryWindows.isJDKKey(
+                key("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\Java Runtime Environment\\1.8", "C:\\jre")));
+        assertFalse(JDKDiscoveryWindows.isJDKKey(key("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\11\\MSI", "C:\\jdk")));
+        assertFalse(JDKDiscoveryWindows.isJDKKey(key("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\11", "")));
+    }
+
+    private static RegQueryParser.Key key(String path, String javaHome) {
+        return RegQueryParser.parse(Arrays.asList(path, "    JavaHome    REG_SZ    " + javaHome)).get(0);
+    }
+
+    private Process getMockProcess(String resource) throws Exception {
+        Process process = mock(Process.class);
+        InputStream output = resource == null ? new ByteArrayInputStream(new byte[0])
+                : getClass().getResourceAsStream(resource);
+        when(process.getInputStream()).thenReturn(output);
+        return process;
+    }
+
     @Test
     public void testIsApplicableNull() {
         assertFalse(jdkWin.isApplicable(null));
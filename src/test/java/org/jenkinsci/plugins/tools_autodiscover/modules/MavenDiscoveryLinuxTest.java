@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.tools_autodiscover.modules;
+
+import hudson.model.JDK;
+import hudson.tasks.Maven;
+import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MavenDiscoveryLinuxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Environment environment;
+    private File root;
+    private File sdkman;
+    private MavenDiscoveryLinux module;
+
+    @Before
+    public void setUp() throws Exception {
+        environment = spy(new Environment());
+        doReturn(true).when(environment).isLinux();
+        root = tmp.newFolder("root").getCanonicalFile();
+        sdkman = tmp.newFolder("sdkman").getCanonicalFile();
+        module = new MavenDiscoveryLinux(environment, root, sdkman);
+    }
+
+    @Test
+    public void testIsApplicable() {
+        assertTrue(module.isApplicable(Maven.MavenInstallation.class));
+        assertFalse(module.isApplicable(JDK.class));
+        doReturn(false).when(environment).isLinux();
+        assertFalse(module.isApplicable(Maven.MavenInstallation.class));
+    }
+
+    @Test
+    public void testGetToolInstallations() throws Exception {
+        // Debian, Ubuntu and Fedora packages ship maven-core.jar without version
+        File packaged = newHome(new File(root, "usr/share/maven"), "3.6.3", "maven-core.jar");
+        File opt = newHome(new File(root, "opt/apache-maven-3.9.4"), "3.9.4");
+        // no metadata
+        assertTrue(new File(root, "opt/maven-broken/bin").mkdirs());
+        assertTrue(new File(root, "opt/maven-broken/bin/mvn").createNewFile());
+        File sdk = newHome(new File(sdkman, "candidates/maven/3.8.8"), "3.8.8");
+        Files.createSymbolicLink(new File(sdkman, "candidates/maven/current").toPath(), sdk.toPath());
+        File alternatives = new File(root, "etc/alternatives");
+        assertTrue(alternatives.mkdirs());
+        Files.createSymbolicLink(new File(alternatives, "mvn").toPath(), new File(opt, "bin/mvn").toPath());
+
+        List<ToolInstallation> installations = module.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(3, installations.size());
+        assertEquals("Apache Maven 3.6.3", installations.get(0).getName());
+        assertEquals(packaged.getPath(), installations.get(0).getHome());
+        assertEquals("Apache Maven 3.9.4", installations.get(1).getName());
+        assertEquals(opt.getPath(), installations.get(1).getHome());
+        assertEquals("Apache Maven 3.8.8", installations.get(2).getName());
+        assertEquals(sdk.getPath(), installations.get(2).getHome());
+
+        verify(environment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallations() throws Exception {
+        assertFalse(module.hasToolInstallations(Maven.MavenInstallation.class));
+        newHome(new File(root, "opt/maven"), "3.9.4");
+        assertTrue(module.hasToolInstallations(Maven.MavenInstallation.class));
+    }
+
+    private static File newHome(File home, String version) throws IOException {
+        return newHome(home, version, "maven-core-" + version + ".jar");
+    }
+
+    private static File newHome(File home, String version, String jarName) throws IOException {
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdirs());
+        assertTrue(new File(home, "bin").mkdir());
+        assertTrue(new File(home, "bin/mvn").createNewFile());
+        File jar = new File(lib, jarName);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/maven/org.apache.maven/maven-core/pom.properties"));
+            zip.write(("version=" + version + "\n").getBytes("ISO-8859-1"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return home;
+    }
+}
@@ -2,15 +2,25 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 
 import hudson.tasks.Maven;
 import hudson.tools.ToolInstallation;
+import org.jenkinsci.plugins.tools_autodiscover.ToolAutoDiscoveryModule;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -22,6 +32,9 @@ public class MavenDiscoveryOSXTest {
     public static final String EXPECTED_PATH = "/opt/local/share/java/maven2/bin/mvn";
     public static final int EXPECTED_NUM_ELEMENTS = 1;
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     private Environment mockEnvironment;
     private MavenDiscoveryOSX module;
 
@@ -56,6 +69,24 @@ public class MavenDiscoveryOSXTest {
         assertTrue(computedOutput.equals(EXPECTED_OUTPUT));
     }
 
+    @Test
+    public void testExtractMavenVersionInfoTwoDigitPatch() {
+        assertEquals("Apache Maven 3.9.10", module.extractMavenVersionInfo(
+                "Apache Maven 3.9.10 (5f519b97e944483d878815739f519b2eade0a91d)\nMaven home: /opt/maven"));
+    }
+
+    @Test
+    public void testExtractMavenVersionInfoQualifier() {
+        assertEquals("Apache Maven 4.0.0-rc-2", module.extractMavenVersionInfo(
+                "\u001B[1mApache Maven 4.0.0-rc-2 (e8fba5ed1adc9c5e8a12e6a6f3e0c2e9d5d1f8a0)\u001B[m"));
+    }
+
+    @Test
+    public void testExtractMavenVersionInfoShortOutput() {
+        assertNull(module.extractMavenVersionInfo("mvn: not found"));
+        assertNull(module.extractMavenVersionInfo(""));
+    }
+
     @Test
     public void testIsApplicableNull() {
         assertFalse(module.isApplicable(null));
@@ -89,7 +120,8 @@ public class MavenDiscoveryOSXTest {
 
         InputStream expectedVersionOutput = getStringInputStream(MVN_VERSION_MESSAGE, "UTF-8");
         when(mockProcess.getInputStream()).thenReturn(expectedVersionOutput);
-        when(mockEnvironment.exec(any(String.class), any(String[].class), any(File.class))).thenReturn(mockProcess);
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
         List<ToolInstallation> installationList = module.getToolInstallations(Maven.MavenInstallation.class);
         assertEquals(EXPECTED_NUM_ELEMENTS, installationList.size());
         assertEquals(EXPECTED_OUTPUT, installationList.get(0).getName());
@@ -97,6 +129,146 @@ public class MavenDiscoveryOSXTest {
 
     }
 
+    @Test
+    public void testHasToolInstallations() throws Exception {
+        when(mockEnvironment.canExecute(EXPECTED_PATH)).thenReturn(true);
+
+        assertTrue(module.hasToolInstallations(Maven.MavenInstallation.class));
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testHasToolInstallationsNotExecutable() {
+        assertFalse(module.hasToolInstallations(Maven.MavenInstallation.class));
+    }
+
+    @Test
+    public void testLinkedInstallationProbedOnce() throws Exception {
+        File root = tmp.getRoot();
+        String prefix = root.getPath() + File.separator;
+        File bin = new File(root, "maven3.6/bin");
+        assertTrue(bin.mkdirs());
+        assertTrue(new File(bin, "mvn").createNewFile());
+        try {
+            Files.createSymbolicLink(new File(root, "maven3").toPath(), new File(root, "maven3.6").toPath());
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+
+        final Process mockProcess = mock(Process.class);
+        when(mockProcess.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                return getStringInputStream(MVN_VERSION_MESSAGE, "UTF-8");
+            }
+        });
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        MavenDiscoveryOSX linked = new MavenDiscoveryOSX(mockEnvironment, root, prefix, false);
+        List<ToolInstallation> installations = linked.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(1, installations.size());
+        // directories are listed in no particular order; either spelling may be probed
+        verify(mockEnvironment, times(1)).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
+
+    @Test
+    public void testWatchedRootRecreated() throws Exception {
+        File root = tmp.newFolder("java");
+        String prefix = root.getPath() + File.separator;
+        assertTrue(new File(root, "maven2").mkdir());
+        final Process mockProcess = mock(Process.class);
+        when(mockProcess.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                return getStringInputStream(MVN_VERSION_MESSAGE, "UTF-8");
+            }
+        });
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        MavenDiscoveryOSX watching = new MavenDiscoveryOSX(mockEnvironment, root, prefix, true);
+        final Semaphore changes = new Semaphore(0);
+        watching.addChangeListener(new ToolAutoDiscoveryModule.ChangeListener() {
+            public void changed(ToolAutoDiscoveryModule module, Class<? extends ToolInstallation> toolType) {
+                changes.release();
+            }
+        });
+        assertEquals(1, watching.getToolInstallations(Maven.MavenInstallation.class).size());
+
+        assertTrue(new File(root, "maven2").delete());
+        assertTrue(root.delete());
+        assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+        // the watcher thread ends once it notices that the root is gone
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("ToolAutoDiscovery watcher " + root)) {
+                thread.join(10000);
+            }
+        }
+        assertTrue(watching.getToolInstallations(Maven.MavenInstallation.class).isEmpty());
+
+        // recreated: seen again, and watched again
+        assertTrue(root.mkdir());
+        assertTrue(new File(root, "maven3").mkdir());
+        List<ToolInstallation> installations = watching.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(1, installations.size());
+        assertEquals(prefix + "maven3/bin/mvn", installations.get(0).getHome());
+        assertTrue(new File(root, "maven4").mkdir());
+        assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(2, watching.getToolInstallations(Maven.MavenInstallation.class).size());
+    }
+
+    @Test
+    public void testWatchedRootProbesOnlyChangedCandidates() throws Exception {
+        File root = tmp.getRoot();
+        String prefix = root.getPath() + File.separator;
+        assertTrue(new File(root, "maven2").mkdir());
+        assertTrue(new File(root, "apache-ant").mkdir());
+
+        final Process mockProcess = mock(Process.class);
+        when(mockProcess.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                return getStringInputStream(MVN_VERSION_MESSAGE, "UTF-8");
+            }
+        });
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        MavenDiscoveryOSX watching = new MavenDiscoveryOSX(mockEnvironment, root, prefix, true);
+        final Semaphore changes = new Semaphore(0);
+        watching.addChangeListener(new ToolAutoDiscoveryModule.ChangeListener() {
+            public void changed(ToolAutoDiscoveryModule module, Class<? extends ToolInstallation> toolType) {
+                changes.release();
+            }
+        });
+
+        List<ToolInstallation> installations = watching.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(1, installations.size());
+        assertEquals(prefix + "maven2/bin/mvn", installations.get(0).getHome());
+
+        assertTrue(new File(root, "maven3").mkdir());
+        assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+        installations = watching.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(2, installations.size());
+        assertEquals(prefix + "maven2/bin/mvn", installations.get(0).getHome());
+        assertEquals(prefix + "maven3/bin/mvn", installations.get(1).getHome());
+
+        assertTrue(new File(root, "maven2").delete());
+        assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+        installations = watching.getToolInstallations(Maven.MavenInstallation.class);
+        assertEquals(1, installations.size());
+        assertEquals(prefix + "maven3/bin/mvn", installations.get(0).getHome());
+
+        // each candidate was probed once, when it appeared
+        verify(mockEnvironment, times(1)).exec(eq(Arrays.asList(prefix + "maven2/bin/mvn", "-v")),
+                anyMapOf(String.class, String.class),
+                any(File.class));
+        verify(mockEnvironment, times(1)).exec(eq(Arrays.asList(prefix + "maven3/bin/mvn", "-v")),
+                anyMapOf(String.class, String.class),
+                any(File.class));
+        verify(mockEnvironment, times(2)).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+    }
 
     private InputStream getStringInputStream(String str, String charsetName) throws UnsupportedEncodingException {
         return new ByteArrayInputStream(str.getBytes(charsetName));
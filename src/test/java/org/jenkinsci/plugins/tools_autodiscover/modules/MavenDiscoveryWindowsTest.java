@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.tools_autodiscover.modules;
 import hudson.tasks.Maven.MavenInstallation;
 import hudson.tools.ToolInstallation;
 import org.jenkinsci.plugins.tools_autodiscover.util.Environment;
+import org.jenkinsci.plugins.tools_autodiscover.util.PathIndex;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -13,6 +14,8 @@ import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -43,6 +46,7 @@ public class MavenDiscoveryWindowsTest {
         when(mockEnvironment.isMacOSX()).thenReturn(false);
         when(mockEnvironment.isWindows()).thenReturn(true);
         mavenDisc = new MavenDiscoveryWindows(mockEnvironment);
+        PathIndex.clear();
 
         mockProcess = mock(Process.class);
         mockProcessIncorrect = mock(Process.class);
@@ -55,13 +59,15 @@ public class MavenDiscoveryWindowsTest {
         when(mockProcessIncorrect.getInputStream()).thenReturn(incorrectOutput);
 
         when(mockEnvironment.getPath()).thenReturn("\\?\\maven1\\bin;\\?\\foo;\\?\\maven2\\bin");
+        when(mockEnvironment.isFile("\\?\\maven1\\bin\\mvn.cmd")).thenReturn(true);
+        when(mockEnvironment.isFile("\\?\\maven2\\bin\\mvn.bat")).thenReturn(true);
 
         try {
-            when(mockEnvironment.exec(any(String.class), any(String[].class), any(File.class)))
+            when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
                     .thenAnswer(new Answer<Process>() {
                         public Process answer(InvocationOnMock invocation) throws Throwable {
                             Object[] args = invocation.getArguments();
-                            String cmd = (String) args[0];
+                            String cmd = args[0] == null ? null : args[0].toString();
                             if (cmd == null) {
                                 return null;
                             } else if (!cmd.toLowerCase().contains("maven") || !cmd.toLowerCase().contains("-version")) {
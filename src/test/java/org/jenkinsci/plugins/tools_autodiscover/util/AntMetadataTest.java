@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class AntMetadataTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testReadVersionLine() throws Exception {
+        File home = newAntHome("VERSION=1.10.5\nDATE=July 10 2018\n");
+
+        String line = AntMetadata.readVersionLine(home);
+        assertEquals("Apache Ant(TM) version 1.10.5 compiled on July 10 2018", line);
+    }
+
+    @Test
+    public void testReadVersionLineWithoutDate() throws Exception {
+        File home = newAntHome("VERSION=1.9.4\n");
+
+        assertEquals("Apache Ant(TM) version 1.9.4", AntMetadata.readVersionLine(home));
+    }
+
+    @Test
+    public void testReadVersionLineWithoutVersion() throws Exception {
+        File home = newAntHome("DATE=July 10 2018\n");
+
+        assertNull(AntMetadata.readVersionLine(home));
+    }
+
+    @Test
+    public void testReadVersion() throws Exception {
+        File home = newAntHome("VERSION=1.10.5\nDATE=July 10 2018\n");
+
+        assertEquals("1.10.5", AntMetadata.readVersion(home));
+    }
+
+    @Test
+    public void testReadVersionLineNoJar() {
+        assertNull(AntMetadata.readVersionLine(tmp.getRoot()));
+    }
+
+    private File newAntHome(String versionTxt) throws IOException {
+        File home = tmp.newFolder("apache-ant");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(lib, "ant.jar")));
+        try {
+            zip.putNextEntry(new ZipEntry("org/apache/tools/ant/Main.class"));
+            zip.write(new byte[16]);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(AntMetadata.VERSION_TXT));
+            zip.write(versionTxt.getBytes("ISO-8859-1"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return home;
+    }
+}
@@ -0,0 +1,415 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CommandRunnerTest {
+
+    private Environment mockEnvironment;
+    private CommandRunner runner;
+
+    @Before
+    public void setUp() {
+        mockEnvironment = mock(Environment.class);
+        runner = new CommandRunner(mockEnvironment);
+    }
+
+    @Test
+    public void testRunSuccess() throws Exception {
+        Process mockProcess = getMockProcess(" Apache Ant(TM) version 1.3.5 \r\nsecond line\n");
+        when(mockEnvironment.exec(eq(Arrays.asList("ant", "-version")),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        CommandResult result = runner.run(Arrays.asList("ant", "-version"));
+        assertEquals(CommandResult.Status.SUCCESS, result.getStatus());
+        assertEquals(Arrays.asList("Apache Ant(TM) version 1.3.5", "second line"), result.getOutput());
+        assertEquals(0, result.getExitCode());
+    }
+
+    @Test
+    public void testRunCountedInMetrics() throws Exception {
+        DiscoveryMetrics metrics = DiscoveryMetrics.get();
+        long started = metrics.getProcessesStarted();
+        long notStarted = metrics.getProcessesNotStarted();
+        long bytesRead = metrics.getBytesRead();
+        Process mockProcess = getMockProcess("ok\n");
+        when(mockEnvironment.exec(eq(Arrays.asList("ant", "-version")),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+        when(mockEnvironment.exec(eq(Arrays.asList("missing")), anyMapOf(String.class, String.class), any(File.class)))
+                .thenThrow(new IOException("no such file"));
+
+        runner.run(Arrays.asList("ant", "-version"));
+        runner.run(Arrays.asList("missing"));
+        assertEquals(started + 1, metrics.getProcessesStarted());
+        assertEquals(notStarted + 1, metrics.getProcessesNotStarted());
+        assertTrue(metrics.getBytesRead() >= bytesRead + 3);
+        assertTrue(metrics.getCommandHistogram("ant").getCount() > 0);
+    }
+
+    @Test
+    public void testRunNotStarted() throws Exception {
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenThrow(new IOException("no such file"));
+
+        CommandResult result = runner.run(Arrays.asList("missing"));
+        assertEquals(CommandResult.Status.FAILURE, result.getStatus());
+        assertTrue(result.getOutput().isEmpty());
+        assertEquals(CommandResult.NO_EXIT_CODE, result.getExitCode());
+    }
+
+    @Test
+    public void testRunInterrupted() throws Exception {
+        final Process mockProcess = mock(Process.class);
+        // a stream which ends only when the process is destroyed, as of a process still running
+        final PipedOutputStream pipe = new PipedOutputStream();
+        when(mockProcess.getInputStream()).thenReturn(new PipedInputStream(pipe));
+        when(mockProcess.isAlive()).thenReturn(true);
+        when(mockProcess.destroyForcibly()).thenAnswer(new Answer<Process>() {
+            public Process answer(InvocationOnMock invocation) throws Throwable {
+                pipe.close();
+                return mockProcess;
+            }
+        });
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        final CommandResult[] result = new CommandResult[1];
+        Thread caller = new Thread(new Runnable() {
+            public void run() {
+                result[0] = runner.run(Arrays.asList("slow"));
+            }
+        });
+        caller.start();
+        verify(mockEnvironment, timeout(5000)).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+        caller.interrupt();
+        caller.join(5000);
+
+        assertEquals(CommandResult.Status.FAILURE, result[0].getStatus());
+        verify(mockProcess, timeout(5000)).destroyForcibly();
+    }
+
+    @Test
+    public void testRunOutputUnreadable() throws Exception {
+        Process mockProcess = mock(Process.class);
+        when(mockProcess.getInputStream()).thenThrow(new IllegalStateException("broken"));
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        CommandResult result = runner.run(Arrays.asList("broken"));
+        assertEquals(CommandResult.Status.FAILURE, result.getStatus());
+        assertEquals(CommandResult.NO_EXIT_CODE, result.getExitCode());
+    }
+
+    @Test
+    public void testRunNonZeroExit() throws Exception {
+        Process mockProcess = getMockProcess("error\n");
+        when(mockProcess.exitValue()).thenReturn(2);
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        CommandResult result = runner.run(Arrays.asList("mvn", "-v"));
+        assertEquals(CommandResult.Status.FAILURE, result.getStatus());
+        assertEquals(Arrays.asList("error"), result.getOutput());
+        assertEquals(2, result.getExitCode());
+    }
+
+    @Test
+    public void testRunLineLimit() throws Exception {
+        Process mockProcess = getMockProcess("1\n2\n3\n4\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.setMaxOutputLines(2);
+        CommandResult result = runner.run(Arrays.asList("chatty"));
+        assertEquals(CommandResult.Status.TRUNCATED, result.getStatus());
+        assertEquals(Arrays.asList("1", "2"), result.getOutput());
+        verify(mockProcess).destroyForcibly();
+    }
+
+    @Test
+    public void testRunAsyncStreamsOutputLines() throws Exception {
+        Process mockProcess = getMockProcess(" first \r\nsecond\nlast");
+        when(mockProcess.getErrorStream()).thenReturn(new ByteArrayInputStream("warning\n".getBytes("UTF-8")));
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        final List<String> lines = new ArrayList<String>();
+        CommandResult result = runner.runAsync(Arrays.asList("chatty"), null, null, new Consumer<String>() {
+            public void accept(String line) {
+                lines.add(line);
+            }
+        }).get();
+        assertEquals(CommandResult.Status.SUCCESS, result.getStatus());
+        assertEquals(Arrays.asList("first", "second", "last"), lines);
+        // streamed lines are not kept
+        assertTrue(result.getOutput().isEmpty());
+        assertEquals(Arrays.asList("warning"), result.getErrorOutput());
+    }
+
+    @Test
+    public void testRunAsyncStreamedLineLimit() throws Exception {
+        Process mockProcess = getMockProcess("1\n2\n3\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        final List<String> lines = new ArrayList<String>();
+        runner.setMaxOutputLines(2);
+        CommandResult result = runner.runAsync(Arrays.asList("chatty"), null, null, new Consumer<String>() {
+            public void accept(String line) {
+                lines.add(line);
+            }
+        }).get();
+        assertEquals(CommandResult.Status.TRUNCATED, result.getStatus());
+        assertEquals(Arrays.asList("1", "2"), lines);
+        verify(mockProcess).destroyForcibly();
+    }
+
+    @Test
+    public void testRunAsyncFailingConsumer() throws Exception {
+        Process mockProcess = getMockProcess("1\n2\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        CompletableFuture<CommandResult> future = runner.runAsync(Arrays.asList("chatty"), null, null,
+                new Consumer<String>() {
+                    public void accept(String line) {
+                        throw new IllegalStateException(line);
+                    }
+                });
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testRunErrorLineLimit() throws Exception {
+        Process mockProcess = getMockProcess("");
+        when(mockProcess.getErrorStream()).thenReturn(
+                new ByteArrayInputStream("warning 1\nwarning 2\nwarning 3\n".getBytes("UTF-8")));
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.setMaxOutputLines(2);
+        CommandResult result = runner.run(Arrays.asList("chatty"));
+        assertEquals(CommandResult.Status.TRUNCATED, result.getStatus());
+        assertEquals(Arrays.asList("warning 1", "warning 2"), result.getErrorOutput());
+        verify(mockProcess).destroyForcibly();
+    }
+
+    @Test
+    public void testRunExactlyLineLimit() throws Exception {
+        Process mockProcess = getMockProcess("1\n2\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.setMaxOutputLines(2);
+        CommandResult result = runner.run(Arrays.asList("quiet"));
+        assertEquals(CommandResult.Status.SUCCESS, result.getStatus());
+        assertEquals(Arrays.asList("1", "2"), result.getOutput());
+        verify(mockProcess, never()).destroyForcibly();
+    }
+
+    @Test
+    public void testRunExactlyByteLimit() throws Exception {
+        Process mockProcess = getMockProcess("abcdef\ngh\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.setMaxOutputBytes(10);
+        CommandResult result = runner.run(Arrays.asList("quiet"));
+        assertEquals(CommandResult.Status.SUCCESS, result.getStatus());
+        assertEquals(Arrays.asList("abcdef", "gh"), result.getOutput());
+    }
+
+    @Test
+    public void testRunByteLimit() throws Exception {
+        Process mockProcess = getMockProcess("abcdef\nghijkl\n");
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.setMaxOutputBytes(10);
+        CommandResult result = runner.run(Arrays.asList("chatty"));
+        assertEquals(CommandResult.Status.TRUNCATED, result.getStatus());
+        assertEquals(Arrays.asList("abcdef", "ghi"), result.getOutput());
+    }
+
+    @Test
+    public void testRunTimeout() throws Exception {
+        Assume.assumeFalse(new Environment().isWindows());
+        runner = new CommandRunner(new Environment());
+        runner.setTimeout(200, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        CommandResult result = runner.run(Arrays.asList("sleep", "30"));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(CommandResult.Status.TIMEOUT, result.getStatus());
+        assertTrue("took " + elapsed + "ms", elapsed < 10000);
+    }
+
+    @Test
+    public void testRunRealProcess() {
+        Assume.assumeFalse(new Environment().isWindows());
+        CommandResult result = new CommandRunner(new Environment()).run(Arrays.asList("echo", "hello"));
+
+        assertTrue(result.isSuccess());
+        assertEquals(Arrays.asList("hello"), result.getOutput());
+    }
+
+    @Test
+    public void testRunReadsErrorOutput() throws Exception {
+        Process mockProcess = getMockProcess("");
+        when(mockProcess.getErrorStream()).thenReturn(
+                new ByteArrayInputStream("java version \"1.8.0_202\"\n".getBytes("UTF-8")));
+        when(mockEnvironment.exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        CommandResult result = runner.run(Arrays.asList("java", "-version"));
+        assertTrue(result.isSuccess());
+        assertTrue(result.getOutput().isEmpty());
+        assertEquals(Arrays.asList("java version \"1.8.0_202\""), result.getErrorOutput());
+    }
+
+    @Test
+    public void testRunAsyncNotStarted() throws Exception {
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenThrow(new IOException("no such file"));
+
+        CompletableFuture<CommandResult> future = runner.runAsync(Arrays.asList("missing"));
+        assertTrue(future.isDone());
+        assertEquals(CommandResult.Status.FAILURE, future.get().getStatus());
+    }
+
+    @Test
+    public void testRunAsyncDrainsChattyStderr() throws Exception {
+        Assume.assumeFalse(new Environment().isWindows());
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        // far more than a pipe buffer on stderr; would block forever if stderr was not drained
+        runner = new CommandRunner(new Environment());
+        runner.setTimeout(10, TimeUnit.SECONDS);
+        // within the limits, which end the command when stderr goes past them
+        runner.setMaxOutputBytes(256 * 1024);
+        runner.setMaxOutputLines(5000);
+
+        String line = "0123456789012345678901234567890123456789012345678901234567890123";
+        CommandResult result = runner.runAsync(Arrays.asList("/bin/sh", "-c", "i=0; while [ $i -lt 2000 ]; do echo "
+                + line + " >&2; i=$((i+1)); done; echo done")).get(20, TimeUnit.SECONDS);
+
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(Arrays.asList("done"), result.getOutput());
+        assertEquals(2000, result.getErrorOutput().size());
+    }
+
+    @Test
+    public void testRunAsyncComposes() throws Exception {
+        Assume.assumeFalse(new Environment().isWindows());
+        CommandRunner real = new CommandRunner(new Environment());
+
+        CompletableFuture<String> both = real.runAsync(Arrays.asList("echo", "first"))
+                .thenCombine(real.runAsync(Arrays.asList("echo", "second")),
+                        (a, b) -> a.getOutput().get(0) + " " + b.getOutput().get(0));
+        assertEquals("first second", both.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRunWithoutPermitIsNotStarted() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.MILLISECONDS);
+        assertTrue(governor.acquire());
+        runner = new CommandRunner(mockEnvironment, governor);
+
+        CommandResult result = runner.run(Arrays.asList("mvn", "-v"));
+        assertEquals(CommandResult.Status.FAILURE, result.getStatus());
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+        assertEquals(1, governor.getRejectedCount());
+    }
+
+    @Test
+    public void testRunAsyncQueuedUntilPermitReleased() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.SECONDS);
+        assertTrue(governor.acquire());
+        runner = new CommandRunner(mockEnvironment, governor);
+        Process mockProcess = getMockProcess("ok\n");
+        when(mockEnvironment.exec(anyListOf(String.class), anyMapOf(String.class, String.class), any(File.class)))
+                .thenReturn(mockProcess);
+
+        CompletableFuture<CommandResult> future = runner.runAsync(Arrays.asList("ok"));
+        assertFalse(future.isDone());
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+
+        governor.release();
+        assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(0, governor.getRunning());
+    }
+
+    @Test
+    public void testRunAsyncCancelledWhileQueued() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.SECONDS);
+        assertTrue(governor.acquire());
+        runner = new CommandRunner(mockEnvironment, governor);
+
+        CompletableFuture<CommandResult> future = runner.runAsync(Arrays.asList("mvn", "-v"));
+        assertTrue(future.cancel(true));
+        assertEquals(0, governor.getQueueDepth());
+
+        governor.release();
+        verify(mockEnvironment, never()).exec(anyListOf(String.class),
+                anyMapOf(String.class, String.class), any(File.class));
+        assertEquals(0, governor.getRunning());
+    }
+
+    @Test
+    public void testRunReleasesPermit() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.MILLISECONDS);
+        runner = new CommandRunner(mockEnvironment, governor);
+        when(mockEnvironment.exec(eq(Arrays.asList("missing")), anyMapOf(String.class, String.class), any(File.class)))
+                .thenThrow(new IOException("no such file"));
+        Process mockProcess = getMockProcess("ok\n");
+        when(mockEnvironment.exec(eq(Arrays.asList("ok")),
+                anyMapOf(String.class, String.class), any(File.class))).thenReturn(mockProcess);
+
+        runner.run(Arrays.asList("missing"));
+        assertTrue(runner.run(Arrays.asList("ok")).isSuccess());
+        assertTrue(runner.run(Arrays.asList("ok")).isSuccess());
+        assertEquals(0, governor.getRunning());
+        assertEquals(0, governor.getRejectedCount());
+    }
+
+    @Test
+    public void testCommandLineQuotesArgumentsWithSpaces() {
+        assertEquals("\"C:\\Program Files\\Maven\\bin\\mvn.cmd\" -version",
+                CommandRunner.toCommandLine(Arrays.asList("C:\\Program Files\\Maven\\bin\\mvn.cmd", "-version")));
+        assertEquals("REG QUERY HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft /s",
+                CommandRunner.toCommandLine(Arrays.asList("REG", "QUERY", "HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft", "/s")));
+    }
+
+    private Process getMockProcess(String output) throws Exception {
+        Process mockProcess = mock(Process.class);
+        when(mockProcess.getInputStream()).thenReturn(new ByteArrayInputStream(output.getBytes("UTF-8")));
+        return mockProcess;
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DiscoveryEventsTest {
+
+    @Test
+    public void testEventsRecorded() throws Exception {
+        Environment environment = mock(Environment.class);
+        Process process = mock(Process.class);
+        when(process.getInputStream()).thenReturn(new ByteArrayInputStream("Apache Maven 3.9.6\n".getBytes("UTF-8")));
+        when(environment.exec(eq(Arrays.asList("mvn", "-v")), anyMapOf(String.class, String.class), any(File.class)))
+                .thenReturn(process);
+
+        List<RecordedEvent> events;
+        Recording recording = new Recording();
+        try {
+            recording.enable(DiscoveryEvents.Command.class).withoutThreshold();
+            recording.enable(DiscoveryEvents.Dedup.class).withoutThreshold();
+            recording.start();
+            new CommandRunner(environment).run(Arrays.asList("mvn", "-v"));
+            PathIdentity.distinct(Arrays.asList("/opt/maven", "//opt/maven/", "/opt/ant"));
+            recording.stop();
+            events = readEvents(recording);
+        } finally {
+            recording.close();
+        }
+
+        RecordedEvent command = find(events, "org.jenkinsci.plugins.tools_autodiscover.Command");
+        assertEquals("mvn -v", command.getString("command"));
+        assertEquals("SUCCESS", command.getString("status"));
+        assertEquals(0, command.getInt("exitCode"));
+        assertEquals(1, command.getInt("outputLines"));
+
+        RecordedEvent dedup = find(events, "org.jenkinsci.plugins.tools_autodiscover.Dedup");
+        assertEquals("paths", dedup.getString("stage"));
+        assertEquals(3, dedup.getInt("input"));
+        assertEquals(2, dedup.getInt("output"));
+    }
+
+    @Test
+    public void testFinishWithoutRecording() {
+        // nothing is recorded, and nothing fails
+        DiscoveryEvents.Candidates event = new DiscoveryEvents.Candidates();
+        event.begin();
+        event.finish(this, 3);
+    }
+
+    @Test
+    public void testSourceName() {
+        assertEquals("DiscoveryEventsTest", DiscoveryEvents.sourceName(this));
+        assertEquals("PathIdentity", DiscoveryEvents.sourceName(PathIdentity.class));
+    }
+
+    private static List<RecordedEvent> readEvents(Recording recording) throws Exception {
+        Path file = Files.createTempFile("discovery", ".jfr");
+        try {
+            recording.dump(file);
+            return new ArrayList<RecordedEvent>(RecordingFile.readAllEvents(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        fail("No " + name + " event in " + events);
+        return null;
+    }
+}
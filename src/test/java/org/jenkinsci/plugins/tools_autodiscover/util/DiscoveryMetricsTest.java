@@ -0,0 +1,138 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DiscoveryMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        metrics.recordModule("MavenDiscoveryOSX", TimeUnit.MILLISECONDS.toNanos(3), 2);
+        metrics.recordModule("MavenDiscoveryOSX", TimeUnit.MILLISECONDS.toNanos(200), 1);
+        metrics.recordModule("MavenDiscoveryOSX", TimeUnit.MINUTES.toNanos(2), 0);
+
+        DiscoveryMetrics.Histogram histogram = metrics.getModuleHistogram("MavenDiscoveryOSX");
+        assertEquals(3, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(120203), histogram.getSumNanos());
+
+        String text = metrics.toText();
+        assertTrue(text, text.contains(
+                "tools_autodiscover_module_seconds_bucket{module=\"MavenDiscoveryOSX\",le=\"0.001\"} 0\n"));
+        assertTrue(text, text.contains(
+                "tools_autodiscover_module_seconds_bucket{module=\"MavenDiscoveryOSX\",le=\"0.005\"} 1\n"));
+        assertTrue(text, text.contains(
+                "tools_autodiscover_module_seconds_bucket{module=\"MavenDiscoveryOSX\",le=\"0.5\"} 2\n"));
+        assertTrue(text, text.contains(
+                "tools_autodiscover_module_seconds_bucket{module=\"MavenDiscoveryOSX\",le=\"60.0\"} 2\n"));
+        assertTrue(text, text.contains(
+                "tools_autodiscover_module_seconds_bucket{module=\"MavenDiscoveryOSX\",le=\"+Inf\"} 3\n"));
+        assertTrue(text, text.contains("tools_autodiscover_module_seconds_count{module=\"MavenDiscoveryOSX\"} 3\n"));
+        assertTrue(text, text.contains("tools_autodiscover_module_installations_total{module=\"MavenDiscoveryOSX\"} 3\n"));
+    }
+
+    @Test
+    public void testCounters() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        metrics.recordStarted();
+        metrics.recordStarted();
+        metrics.recordNotStarted();
+        metrics.recordCommand("/usr/bin/mvn -v", 1000, CommandResult.Status.TIMEOUT);
+        metrics.recordCommand("\"C:\\Program Files\\Ant\\bin\\ant.bat\" -version", 1000,
+                CommandResult.Status.TRUNCATED);
+        metrics.recordBytesRead(42);
+        metrics.recordProbes("AntDiscoveryOSX", 5, 2);
+        metrics.recordProbes("MavenDiscoveryOSX", 3, 3);
+        metrics.recordInstallations("JDK", 1000, true);
+        metrics.recordInstallations("JDK", 1000, false);
+        metrics.recordProbeCache(true);
+
+        assertEquals(2, metrics.getProcessesStarted());
+        assertEquals(1, metrics.getProcessesNotStarted());
+        assertEquals(1, metrics.getProcessTimeouts());
+        assertEquals(1, metrics.getProcessesTruncated());
+        assertEquals(42, metrics.getBytesRead());
+        assertEquals(8, metrics.getCandidatesProbed());
+        assertEquals(5, metrics.getCandidatesAccepted());
+        assertEquals(1, metrics.getInventoryCacheHits());
+        assertEquals(1, metrics.getInventoryCacheMisses());
+        assertEquals(1, metrics.getProbeCacheHits());
+        assertEquals(0, metrics.getProbeCacheMisses());
+        assertNotNull(metrics.getCommandHistogram("mvn"));
+        assertNotNull(metrics.getCommandHistogram("ant"));
+
+        String text = metrics.toText();
+        assertTrue(text, text.contains("# TYPE tools_autodiscover_processes_started_total counter\n"));
+        assertTrue(text, text.contains("tools_autodiscover_processes_started_total 2\n"));
+        assertTrue(text, text.contains("tools_autodiscover_candidates_probed_total{source=\"AntDiscoveryOSX\"} 5\n"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getProcessesStarted());
+        assertEquals(0, metrics.getCandidatesProbed());
+        assertNull(metrics.getCommandHistogram("mvn"));
+    }
+
+    @Test
+    public void testNodeSnapshots() throws Exception {
+        DiscoveryMetrics agent = new DiscoveryMetrics();
+        agent.recordStarted();
+        agent.recordModule("JDKDiscoveryLinux", TimeUnit.MILLISECONDS.toNanos(3), 2);
+        agent.recordProbes("JDKDiscoveryLinux", 4, 2);
+        // sent over the channel
+        DiscoveryMetrics.Snapshot sent = agent.snapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(sent);
+        out.close();
+        DiscoveryMetrics.Snapshot received = (DiscoveryMetrics.Snapshot) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(1, received.getCounter("processes_started_total"));
+
+        DiscoveryMetrics controller = new DiscoveryMetrics();
+        controller.recordStarted();
+        controller.recordStarted();
+        controller.recordNode("linux \"1\"", received);
+        String text = controller.toText();
+        assertTrue(text, text.contains("tools_autodiscover_processes_started_total 2\n"));
+        assertTrue(text, text.contains("tools_autodiscover_processes_started_total{node=\"linux \\\"1\\\"\"} 1\n"));
+        assertTrue(text, text.contains("tools_autodiscover_module_seconds_count{node=\"linux \\\"1\\\"\","
+                + "module=\"JDKDiscoveryLinux\"} 1\n"));
+        assertTrue(text, text.contains("tools_autodiscover_candidates_probed_total{node=\"linux \\\"1\\\"\","
+                + "source=\"JDKDiscoveryLinux\"} 4\n"));
+        // one header per metric, whatever the number of nodes
+        assertEquals(text.indexOf("# TYPE tools_autodiscover_processes_started_total"),
+                text.lastIndexOf("# TYPE tools_autodiscover_processes_started_total"));
+
+        controller.forgetNode("linux \"1\"");
+        assertFalse(controller.toText().contains("node="));
+    }
+
+    @Test
+    public void testExecutableName() {
+        assertEquals("mvn", DiscoveryMetrics.executableName("mvn -v"));
+        assertEquals("java", DiscoveryMetrics.executableName("/opt/jdk-17/bin/java -version"));
+        assertEquals("mvn", DiscoveryMetrics.executableName("C:\\Maven\\bin\\mvn.cmd -v"));
+        assertEquals("ant", DiscoveryMetrics.executableName("\"C:\\Program Files\\Ant\\bin\\ant.bat\" -version"));
+        assertEquals("java_home", DiscoveryMetrics.executableName("/usr/libexec/java_home"));
+    }
+
+    @Test
+    public void testRegisteredAsMBean() throws Exception {
+        DiscoveryMetrics metrics = DiscoveryMetrics.get();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DiscoveryMetrics.OBJECT_NAME);
+
+        assertTrue(server.isRegistered(name));
+        assertEquals(metrics.getProcessesStarted(), server.getAttribute(name, "ProcessesStarted"));
+    }
+}
@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for Environment class
+ */
+public class EnvironmentTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolveProgramInItsDirectory() {
+        Environment env = new WindowsEnvironment(null, "C:\\Program Files\\Maven\\bin\\mvn.cmd");
+
+        List<String> resolved = env.resolveWindowsProgram(Arrays.asList("C:\\Program Files\\Maven\\bin\\mvn", "-v"));
+        assertEquals(Arrays.asList("C:\\Program Files\\Maven\\bin\\mvn.cmd", "-v"), resolved);
+    }
+
+    @Test
+    public void testResolveProgramInPath() {
+        Environment env = new WindowsEnvironment("C:\\Windows\\system32;;C:\\ant\\bin\\", "C:\\ant\\bin\\ant.bat");
+
+        List<String> resolved = env.resolveWindowsProgram(Arrays.asList("ant", "-version"));
+        assertEquals(Arrays.asList("C:\\ant\\bin\\ant.bat", "-version"), resolved);
+    }
+
+    @Test
+    public void testResolvePrefersExe() {
+        Environment env = new WindowsEnvironment("C:\\Windows\\system32",
+                "C:\\Windows\\system32\\reg.exe", "C:\\Windows\\system32\\reg.cmd");
+
+        List<String> resolved = env.resolveWindowsProgram(Arrays.asList("REG", "QUERY"));
+        assertEquals(Arrays.asList("C:\\Windows\\system32\\REG.exe", "QUERY"), resolved);
+    }
+
+    @Test
+    public void testProgramWithExtensionIsKept() {
+        Environment env = new WindowsEnvironment(null, "C:\\ant\\bin\\ant.bat.cmd");
+        List<String> command = Arrays.asList("C:\\ant\\bin\\ant.bat", "-version");
+
+        assertSame(command, env.resolveWindowsProgram(command));
+    }
+
+    @Test
+    public void testUnknownProgramIsKept() {
+        Environment env = new WindowsEnvironment("C:\\Windows\\system32");
+        List<String> command = Arrays.asList("mvn", "-v");
+
+        assertSame(command, env.resolveWindowsProgram(command));
+    }
+
+    @Test
+    public void testExecPassesArgumentsEnvironmentAndDirectory() throws Exception {
+        Environment env = new Environment();
+        Assume.assumeFalse(env.isWindows());
+        File dir = folder.newFolder("with space");
+
+        Process proc = env.exec(Arrays.asList("/bin/sh", "-c", "echo \"$1\"; echo \"$PROBE\"; pwd", "sh", "a  b"),
+                Collections.singletonMap("PROBE", "value"), dir);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream(), "UTF-8"));
+        try {
+            assertEquals("a  b", reader.readLine());
+            assertEquals("value", reader.readLine());
+            assertEquals(dir.getCanonicalPath(), new File(reader.readLine()).getCanonicalPath());
+        } finally {
+            reader.close();
+        }
+        assertEquals(0, proc.waitFor());
+    }
+
+    /**
+     * Windows environment with a fixed PATH and set of files, compared case-insensitively like on NTFS.
+     */
+    private static class WindowsEnvironment extends Environment {
+        private final String path;
+        private final Set<String> files = new HashSet<String>();
+
+        WindowsEnvironment(String path, String... files) {
+            this.path = path;
+            for (String file : files) {
+                this.files.add(file.toLowerCase());
+            }
+        }
+
+        @Override
+        public boolean isWindows() {
+            return true;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean isFile(String path) {
+            return files.contains(path.toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class InstallHomeScannerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testScanDeduplicatesByRealPath() throws Exception {
+        File root = tmp.getRoot().getCanonicalFile();
+        File jvm = new File(root, "jvm");
+        File jdk11 = new File(jvm, "java-11-openjdk");
+        File jdk17 = new File(jvm, "java-17-openjdk");
+        assertTrue(new File(jdk11, "bin").mkdirs());
+        assertTrue(new File(jdk17, "bin").mkdirs());
+        assertTrue(new File(jdk17, "bin/java").createNewFile());
+        Files.createSymbolicLink(new File(jvm, "default-java").toPath(), jdk17.toPath());
+        // not a directory
+        assertTrue(new File(jvm, "README").createNewFile());
+        File alternatives = tmp.newFolder("alternatives");
+        Files.createSymbolicLink(new File(alternatives, "java").toPath(), new File(jdk17, "bin/java").toPath());
+
+        InstallHomeScanner scanner = new InstallHomeScanner();
+        scanner.addHome(new File(root, "missing"));
+        scanner.addChildren(jvm, null);
+        scanner.addLinkTarget(new File(alternatives, "java"), 2);
+
+        // default-java sorts first, and is reported by its target
+        assertEquals(Arrays.asList(jdk17, jdk11), scanner.scan());
+    }
+
+    @Test
+    public void testScanChildrenMatchingPattern() throws Exception {
+        File opt = tmp.newFolder("opt");
+        assertTrue(new File(opt, "apache-maven-3.6.3").mkdir());
+        assertTrue(new File(opt, "maven").mkdir());
+        assertTrue(new File(opt, "apache-ant-1.10.5").mkdir());
+
+        InstallHomeScanner scanner = new InstallHomeScanner();
+        scanner.addChildren(opt, Pattern.compile("(apache-)?maven.*"));
+
+        File real = opt.getCanonicalFile();
+        assertEquals(Arrays.asList(new File(real, "apache-maven-3.6.3"), new File(real, "maven")), scanner.scan());
+    }
+
+    @Test
+    public void testScanDanglingLink() throws Exception {
+        File link = new File(tmp.getRoot(), "mvn");
+        Files.createSymbolicLink(link.toPath(), new File(tmp.getRoot(), "gone/bin/mvn").toPath());
+
+        InstallHomeScanner scanner = new InstallHomeScanner();
+        scanner.addLinkTarget(link, 2);
+
+        assertEquals(Collections.<File>emptyList(), scanner.scan());
+    }
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class InstallRootWatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private InstallRootWatcher watcher;
+
+    @After
+    public void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testInitialListing() throws Exception {
+        assertTrue(new File(tmp.getRoot(), "maven3").mkdir());
+        assertTrue(new File(tmp.getRoot(), "maven").mkdir());
+        assertTrue(new File(tmp.getRoot(), "apache-ant").mkdir());
+
+        watcher = new InstallRootWatcher(tmp.getRoot(), Pattern.compile("maven\\d*"));
+        assertTrue(watcher.start());
+        assertEquals(Arrays.asList("maven", "maven3"), watcher.getNames());
+    }
+
+    @Test
+    public void testReportsAddedAndRemoved() throws Exception {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        watcher = new InstallRootWatcher(tmp.getRoot(), Pattern.compile("maven\\d*"));
+        watcher.addListener(new InstallRootWatcher.Listener() {
+            public void added(String name) {
+                events.add("+" + name);
+            }
+
+            public void removed(String name) {
+                events.add("-" + name);
+            }
+        });
+        assertTrue(watcher.start());
+        assertEquals(Collections.<String>emptyList(), watcher.getNames());
+
+        // not matching, must not be reported
+        assertTrue(new File(tmp.getRoot(), "apache-ant").mkdir());
+        assertTrue(new File(tmp.getRoot(), "maven3").mkdir());
+        assertEquals("+maven3", events.poll(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("maven3"), watcher.getNames());
+
+        assertTrue(new File(tmp.getRoot(), "maven3").delete());
+        assertEquals("-maven3", events.poll(10, TimeUnit.SECONDS));
+        assertEquals(Collections.<String>emptyList(), watcher.getNames());
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRootDeletedStopsWatching() throws Exception {
+        File root = tmp.newFolder("java");
+        assertTrue(new File(root, "maven3").mkdir());
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        watcher = new InstallRootWatcher(root, Pattern.compile("maven\\d*"));
+        watcher.addListener(new InstallRootWatcher.Listener() {
+            public void added(String name) {
+                events.add("+" + name);
+            }
+
+            public void removed(String name) {
+                events.add("-" + name);
+            }
+        });
+        assertTrue(watcher.start());
+        assertTrue(watcher.isWatching());
+
+        assertTrue(new File(root, "maven3").delete());
+        assertTrue(root.delete());
+        assertEquals("-maven3", events.poll(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (watcher.isWatching() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(watcher.isWatching());
+        assertEquals(Collections.<String>emptyList(), watcher.getNames());
+        assertFalse(watcher.start());
+    }
+
+    @Test
+    public void testCloseRightAfterStart() throws Exception {
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+                failures.add(e);
+            }
+        });
+        try {
+            for (int i = 0; i < 50; i++) {
+                InstallRootWatcher closed = new InstallRootWatcher(tmp.getRoot(), Pattern.compile("maven\\d*"));
+                assertTrue(closed.start());
+                closed.close();
+                assertFalse(closed.isWatching());
+            }
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("ToolAutoDiscovery watcher " + tmp.getRoot())) {
+                    thread.join(10000);
+                }
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+        assertEquals(Collections.<Throwable>emptyList(), failures);
+    }
+
+    @Test
+    public void testStartMissingRoot() {
+        watcher = new InstallRootWatcher(new File(tmp.getRoot(), "missing"), Pattern.compile("maven\\d*"));
+        assertFalse(watcher.start());
+        assertEquals(Collections.<String>emptyList(), watcher.getNames());
+    }
+}
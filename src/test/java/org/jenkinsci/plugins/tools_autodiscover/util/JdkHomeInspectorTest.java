@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class JdkHomeInspectorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final JdkHomeInspector inspector = new JdkHomeInspector();
+
+    @Test
+    public void testInspectJDK() throws Exception {
+        File home = newHome("jdk-11", "IMPLEMENTOR=\"Oracle Corporation\"\nJAVA_VERSION=\"11.0.2\"\n"
+                + "JAVA_VERSION_DATE=\"2019-01-15\"\nOS_ARCH=\"x86_64\"\nJAVA_RUNTIME_VERSION=\"11.0.2+9\"\n", true);
+
+        JdkRelease release = inspector.inspect(home);
+        assertNotNull(release);
+        assertEquals(home.getPath(), release.getHome());
+        assertEquals("11.0.2", release.getJavaVersion());
+        assertEquals("11.0.2+9", release.getRuntimeVersion());
+        assertEquals("Oracle Corporation", release.getImplementor());
+        assertEquals("x86_64", release.getArchitecture());
+        assertTrue(release.isJDK());
+        assertEquals("JDK 11.0.2 (Oracle Corporation, x86_64)", release.getDisplayName());
+    }
+
+    @Test
+    public void testInspectJRE() throws Exception {
+        File home = newHome("jre-8", "JAVA_VERSION=\"1.8.0_202\"\nOS_ARCH=\"amd64\"\n", false);
+
+        JdkRelease release = inspector.inspect(home);
+        assertFalse(release.isJDK());
+        assertNull(release.getImplementor());
+        assertEquals("JRE 1.8.0_202 (amd64)", release.getDisplayName());
+    }
+
+    @Test
+    public void testInspectWithoutRelease() throws Exception {
+        assertNull(inspector.inspect(tmp.newFolder("empty")));
+        assertEquals(0, inspector.size());
+    }
+
+    @Test
+    public void testMemoizedUntilReleaseChanges() throws Exception {
+        File home = newHome("jdk", "JAVA_VERSION=\"1.8.0_202\"\n", true);
+
+        JdkRelease first = inspector.inspect(home);
+        assertSame(first, inspector.inspect(home));
+        assertEquals(1, inspector.size());
+
+        File release = new File(home, "release");
+        write(release, "JAVA_VERSION=\"1.8.0_212\"\n");
+        assertTrue(release.setLastModified(release.lastModified() + 2000));
+
+        JdkRelease second = inspector.inspect(home);
+        assertNotSame(first, second);
+        assertEquals("1.8.0_212", second.getJavaVersion());
+    }
+
+    @Test
+    public void testUnquote() {
+        assertEquals("11", JdkHomeInspector.unquote(" \"11\" "));
+        assertEquals("11", JdkHomeInspector.unquote("11"));
+        assertNull(JdkHomeInspector.unquote("\"\""));
+        assertNull(JdkHomeInspector.unquote(null));
+    }
+
+    private File newHome(String name, String release, boolean jdk) throws IOException {
+        File home = tmp.newFolder(name);
+        File bin = new File(home, "bin");
+        assertTrue(bin.mkdir());
+        assertTrue(new File(bin, "java").createNewFile());
+        if (jdk) {
+            assertTrue(new File(bin, "javac").createNewFile());
+        }
+        write(new File(home, "release"), release);
+        return home;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
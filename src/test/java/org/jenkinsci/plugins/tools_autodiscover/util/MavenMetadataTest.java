@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class MavenMetadataTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testReadVersion() throws Exception {
+        File home = tmp.newFolder("apache-maven-3.6.3");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        writeJar(new File(lib, "maven-model-3.6.3.jar"), "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+        writeJar(new File(lib, "maven-core-3.6.3.jar"), MavenMetadata.POM_PROPERTIES,
+                "#Generated by Maven\nversion=3.6.3\ngroupId=org.apache.maven\nartifactId=maven-core\n");
+
+        assertEquals("3.6.3", MavenMetadata.readVersion(home));
+    }
+
+    @Test
+    public void testReadVersionPackaged() throws Exception {
+        File home = tmp.newFolder("maven");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        writeJar(new File(lib, "maven-core.jar"), MavenMetadata.POM_PROPERTIES,
+                "#Generated by Maven\nversion=3.6.3\ngroupId=org.apache.maven\nartifactId=maven-core\n");
+
+        assertEquals("3.6.3", MavenMetadata.readVersion(home));
+    }
+
+    @Test
+    public void testReadVersionWithoutMetadata() throws Exception {
+        File home = tmp.newFolder("maven");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        writeJar(new File(lib, "maven-core-2.0.jar"), "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+
+        assertNull(MavenMetadata.readVersion(home));
+    }
+
+    @Test
+    public void testReadVersionCorruptJar() throws Exception {
+        File home = tmp.newFolder("maven");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        FileOutputStream out = new FileOutputStream(new File(lib, "maven-core-3.0.jar"));
+        try {
+            out.write("not a zip".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        assertNull(MavenMetadata.readVersion(home));
+    }
+
+    @Test
+    public void testReadVersionNoLib() {
+        assertNull(MavenMetadata.readVersion(new File(tmp.getRoot(), "missing")));
+    }
+
+    @Test
+    public void testGetCoreJars() throws Exception {
+        File home = tmp.newFolder("maven");
+        File lib = new File(home, "lib");
+        assertTrue(lib.mkdir());
+        assertTrue(new File(lib, "maven-model-3.6.3.jar").createNewFile());
+        assertTrue(new File(lib, "maven-core-3.6.3.jar").createNewFile());
+        assertTrue(new File(lib, "maven-core.jar").createNewFile());
+
+        assertEquals(Arrays.asList(new File(lib, "maven-core-3.6.3.jar"), new File(lib, "maven-core.jar")),
+                MavenMetadata.getCoreJars(home));
+        assertEquals(Collections.<File>emptyList(), MavenMetadata.getCoreJars(new File(tmp.getRoot(), "missing")));
+    }
+
+    private static void writeJar(File jar, String entry, String content) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            zip.putNextEntry(new ZipEntry(entry));
+            zip.write(content.getBytes("ISO-8859-1"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelProbeTest {
+
+    @Test
+    public void testProbeAllKeepsOrder() {
+        List<Integer> candidates = Arrays.asList(5, 4, 3, 2, 1, 0);
+        List<String> results = ParallelProbe.probeAll(candidates, new ParallelProbe.Probe<Integer, String>() {
+            public String probe(Integer candidate) throws Exception {
+                // earlier candidates take longer
+                Thread.sleep(candidate * 20);
+                return "v" + candidate;
+            }
+        }, 3);
+
+        assertEquals(Arrays.asList("v5", "v4", "v3", "v2", "v1", "v0"), results);
+    }
+
+    @Test
+    public void testProbesCountedInMetrics() {
+        DiscoveryMetrics metrics = DiscoveryMetrics.get();
+        long probed = metrics.getCandidatesProbed();
+        long accepted = metrics.getCandidatesAccepted();
+        ParallelProbe.probeAll(Arrays.asList("good", "bad"), new ParallelProbe.Probe<String, String>() {
+            public String probe(String candidate) {
+                return candidate.equals("good") ? candidate : null;
+            }
+        }, 2);
+
+        assertEquals(probed + 2, metrics.getCandidatesProbed());
+        assertEquals(accepted + 1, metrics.getCandidatesAccepted());
+        assertEquals("ParallelProbeTest", ParallelProbe.sourceOf(new ParallelProbe.Probe<String, String>() {
+            public String probe(String candidate) {
+                return null;
+            }
+        }));
+    }
+
+    @Test
+    public void testProbeAllSkipsFailures() {
+        List<String> candidates = Arrays.asList("good", "null", "throws", "good2");
+        List<String> results = ParallelProbe.probeAll(candidates, new ParallelProbe.Probe<String, String>() {
+            public String probe(String candidate) throws Exception {
+                if (candidate.equals("null")) {
+                    return null;
+                } else if (candidate.equals("throws")) {
+                    throw new IllegalStateException(candidate);
+                }
+                return candidate;
+            }
+        }, 2);
+
+        assertEquals(Arrays.asList("good", "good2"), results);
+    }
+
+    @Test
+    public void testProbeAllParallelismCap() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            candidates.add(i);
+        }
+
+        List<Integer> results = ParallelProbe.probeAll(candidates, new ParallelProbe.Probe<Integer, Integer>() {
+            public Integer probe(Integer candidate) throws Exception {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(10);
+                running.decrementAndGet();
+                return candidate;
+            }
+        }, 3);
+
+        assertEquals(candidates, results);
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void testSlowCandidateDoesNotBlockOthers() throws Exception {
+        final CountDownLatch othersDone = new CountDownLatch(4);
+        List<Integer> candidates = Arrays.asList(0, 1, 2, 3, 4);
+        List<Integer> results = ParallelProbe.probeAll(candidates, new ParallelProbe.Probe<Integer, Integer>() {
+            public Integer probe(Integer candidate) throws Exception {
+                if (candidate == 0) {
+                    // only returns once every other candidate has been probed
+                    assertTrue(othersDone.await(5, TimeUnit.SECONDS));
+                } else {
+                    othersDone.countDown();
+                }
+                return candidate;
+            }
+        }, 2);
+
+        assertEquals(candidates, results);
+    }
+
+    @Test
+    public void testProbeAllEmpty() {
+        List<String> candidates = Collections.emptyList();
+        List<String> results = ParallelProbe.probeAll(candidates, new ParallelProbe.Probe<String, String>() {
+            public String probe(String candidate) {
+                return candidate;
+            }
+        });
+        assertTrue(results.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProbeAllInvalidParallelism() {
+        ParallelProbe.probeAll(Arrays.asList("a"), new ParallelProbe.Probe<String, String>() {
+            public String probe(String candidate) {
+                return candidate;
+            }
+        }, 0);
+    }
+
+    @Test
+    public void testProbeAllAsyncKeepsOrderAndSkipsFailures() throws Exception {
+        List<Integer> candidates = Arrays.asList(3, 2, 1, 0, -1);
+        List<String> results = ParallelProbe.probeAllAsync(candidates,
+                new ParallelProbe.AsyncProbe<Integer, String>() {
+                    public CompletableFuture<String> probe(final Integer candidate) {
+                        if (candidate < 0) {
+                            throw new IllegalStateException("bad candidate");
+                        }
+                        return CompletableFuture.supplyAsync(() -> {
+                            // earlier candidates complete later
+                            sleep(candidate * 20);
+                            if (candidate == 1) {
+                                throw new IllegalStateException("failed probe");
+                            }
+                            return candidate == 2 ? null : "v" + candidate;
+                        });
+                    }
+                }, 2).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("v3", "v0"), results);
+    }
+
+    @Test
+    public void testProbeAllAsyncInFlightCap() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            candidates.add(i);
+        }
+
+        List<Integer> results = ParallelProbe.probeAllAsync(candidates,
+                new ParallelProbe.AsyncProbe<Integer, Integer>() {
+                    public CompletableFuture<Integer> probe(final Integer candidate) {
+                        int now = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), now));
+                        }
+                        return CompletableFuture.supplyAsync(() -> {
+                            sleep(10);
+                            inFlight.decrementAndGet();
+                            return candidate;
+                        });
+                    }
+                }, 3).get(10, TimeUnit.SECONDS);
+
+        assertEquals(candidates, results);
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testProbeAllAsyncEmpty() throws Exception {
+        List<String> candidates = Collections.emptyList();
+        CompletableFuture<List<String>> results = ParallelProbe.probeAllAsync(candidates,
+                new ParallelProbe.AsyncProbe<String, String>() {
+                    public CompletableFuture<String> probe(String candidate) {
+                        return CompletableFuture.completedFuture(candidate);
+                    }
+                }, 2);
+        assertTrue(results.isDone());
+        assertTrue(results.get().isEmpty());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
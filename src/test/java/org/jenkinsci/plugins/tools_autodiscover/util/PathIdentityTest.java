@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PathIdentityTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSpelling() {
+        PathIdentity identity = PathIdentity.of("/nonexistent/test", false);
+        assertEquals(identity, PathIdentity.of("//nonexistent//test", false));
+        assertEquals(identity, PathIdentity.of("/nonexistent/test/", false));
+        assertNotEquals(identity, PathIdentity.of("/nonexistent/Test", false));
+        assertNotEquals(identity, PathIdentity.of("/nonexistent/test2", false));
+        assertEquals("/", PathIdentity.of("//", false).toString());
+    }
+
+    @Test
+    public void testWindowsSpelling() {
+        PathIdentity identity = PathIdentity.of("C:\\Maven\\bin", true);
+        assertEquals(identity, PathIdentity.of("c:/maven/BIN\\", true));
+        assertEquals(identity, PathIdentity.of("C:\\\\Maven\\bin\\\\", true));
+        assertEquals("c:/", PathIdentity.of("C:\\", true).toString());
+        assertEquals("//server/share", PathIdentity.of("\\\\server\\share\\", true).toString());
+        assertNotEquals(PathIdentity.of("\\\\server\\share", true), PathIdentity.of("\\server\\share", true));
+    }
+
+    @Test
+    public void testSymbolicLink() throws Exception {
+        File home = tmp.newFolder("jdk-11.0.2");
+        File link = new File(tmp.getRoot(), "default-java");
+        try {
+            Files.createSymbolicLink(link.toPath(), home.toPath());
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+
+        assertEquals(PathIdentity.of(home.getPath()), PathIdentity.of(link.getPath()));
+        assertEquals(PathIdentity.of(home.getPath()), PathIdentity.of(link.getPath() + File.separator));
+        assertNotEquals(PathIdentity.of(home.getPath()), PathIdentity.of(tmp.getRoot().getPath()));
+    }
+
+    @Test
+    public void testNameAndParent() throws Exception {
+        File home = tmp.newFolder("jdk1.8.0_202");
+        File jre = new File(home, "jre");
+        assertTrue(jre.mkdir());
+
+        PathIdentity identity = PathIdentity.of(jre.getPath());
+        assertEquals("jre", identity.getName());
+        assertEquals(PathIdentity.of(home.getPath()), identity.getParent());
+
+        assertEquals("jre", PathIdentity.of("C:\\Java\\jdk1.8.0\\JRE", true).getName());
+        assertEquals(PathIdentity.of("c:/java/jdk1.8.0", true),
+                PathIdentity.of("C:\\Java\\jdk1.8.0\\JRE", true).getParent());
+        assertNull(PathIdentity.of("/", false).getParent());
+    }
+
+    @Test
+    public void testDistinct() {
+        assertEquals(Arrays.asList("/nonexistent/a", "/nonexistent/b"), PathIdentity.distinct(Arrays.asList(
+                "/nonexistent/a", "/nonexistent//a", "/nonexistent/b", "/nonexistent/a/")));
+    }
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for PathIndex class
+ */
+public class PathIndexTest {
+    private Environment mockEnvironment;
+
+    @Before
+    public void setUp() {
+        mockEnvironment = mock(Environment.class);
+        PathIndex.clear();
+    }
+
+    @Test
+    public void testSplit() {
+        assertEquals(Arrays.asList("who", "is", "this"), PathIndex.split(";who;;is;this;"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSplitNull() {
+        PathIndex.split(null);
+    }
+
+    @Test
+    public void testLaunchersByDirectory() {
+        when(mockEnvironment.getPath()).thenReturn("C:\\maven\\bin;C:\\ant\\bin;C:\\Windows");
+        when(mockEnvironment.isFile("C:\\maven\\bin\\mvn.bat")).thenReturn(true);
+        when(mockEnvironment.isFile("C:\\ant\\bin\\ant.cmd")).thenReturn(true);
+
+        PathIndex index = PathIndex.get(mockEnvironment);
+        assertEquals(Collections.singletonList("C:\\maven\\bin"), index.getDirectories(PathIndex.Executable.MAVEN));
+        assertEquals(Collections.singletonList("C:\\ant\\bin"), index.getDirectories(PathIndex.Executable.ANT));
+        assertEquals("C:\\maven\\bin\\mvn.bat", index.getLauncher("C:\\maven\\bin", PathIndex.Executable.MAVEN));
+        assertEquals("C:\\ant\\bin\\ant.cmd", index.getLauncher("C:\\ant\\bin", PathIndex.Executable.ANT));
+        assertNull(index.getLauncher("C:\\Windows", PathIndex.Executable.ANT));
+        assertNull(index.getLauncher("C:\\missing", PathIndex.Executable.ANT));
+    }
+
+    @Test
+    public void testOnlyKnownLaunchersTested() {
+        when(mockEnvironment.getPath()).thenReturn("C:\\Windows");
+
+        PathIndex.get(mockEnvironment);
+        verify(mockEnvironment, times(4)).isFile(anyString());
+    }
+
+    @Test
+    public void testSameDirectoryIndexedOnce() {
+        when(mockEnvironment.getPath()).thenReturn("C:\\Maven\\bin\\;c:/maven/bin;C:\\MAVEN\\BIN");
+        when(mockEnvironment.isFile("C:\\Maven\\bin\\mvn.cmd")).thenReturn(true);
+
+        PathIndex index = PathIndex.get(mockEnvironment);
+        assertEquals(Collections.singletonList("C:\\Maven\\bin"), index.getDirectories(PathIndex.Executable.MAVEN));
+        verify(mockEnvironment, times(1)).isFile("C:\\Maven\\bin\\mvn.cmd");
+    }
+
+    @Test
+    public void testSnapshotSharedForSamePath() {
+        when(mockEnvironment.getPath()).thenReturn("C:\\maven\\bin");
+        PathIndex first = PathIndex.get(mockEnvironment);
+        assertSame(first, PathIndex.get(mockEnvironment));
+        verify(mockEnvironment, times(1)).isFile("C:\\maven\\bin\\mvn.cmd");
+
+        when(mockEnvironment.getPath()).thenReturn("C:\\maven\\bin;C:\\ant\\bin");
+        PathIndex second = PathIndex.get(mockEnvironment);
+        assertNotSame(first, second);
+        assertEquals("C:\\maven\\bin;C:\\ant\\bin", second.getPath());
+        verify(mockEnvironment, times(1)).isFile("C:\\ant\\bin\\ant.bat");
+    }
+
+    @Test
+    public void testNoPath() {
+        when(mockEnvironment.getPath()).thenReturn(null);
+
+        PathIndex index = PathIndex.get(mockEnvironment);
+        assertEquals(Collections.<String>emptyList(), index.getDirectories(PathIndex.Executable.MAVEN));
+        verify(mockEnvironment, times(0)).isFile(anyString());
+    }
+}
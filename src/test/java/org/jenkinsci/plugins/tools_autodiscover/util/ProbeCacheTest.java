@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class ProbeCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File store;
+    private File mvn;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new File(tmp.getRoot(), ProbeCache.FILE_NAME);
+        mvn = tmp.newFile("mvn");
+        write(mvn, "#!/bin/sh\n");
+    }
+
+    @Test
+    public void testSurvivesRestart() throws Exception {
+        new ProbeCache(store).put("maven", mvn, "Apache Maven 3.6.3");
+
+        ProbeCache restarted = new ProbeCache(store);
+        assertEquals("Apache Maven 3.6.3", restarted.get("maven", mvn));
+        assertNull(restarted.get("ant", mvn));
+    }
+
+    @Test
+    public void testChangedExecutableIsReprobed() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        cache.put("maven", mvn, "Apache Maven 3.6.3");
+
+        write(mvn, "#!/bin/sh\nexec java\n");
+        assertNull(cache.get("maven", mvn));
+        assertNull(new ProbeCache(store).get("maven", mvn));
+    }
+
+    @Test
+    public void testLookupProbesOnce() throws Exception {
+        final AtomicInteger probes = new AtomicInteger();
+        Supplier<CompletableFuture<String>> probe = () -> {
+            probes.incrementAndGet();
+            return CompletableFuture.completedFuture("Ant 1.10.5");
+        };
+
+        assertEquals("Ant 1.10.5", new ProbeCache(store).lookup("ant", mvn, probe).get());
+        assertEquals("Ant 1.10.5", new ProbeCache(store).lookup("ant", mvn, probe).get());
+        assertEquals(1, probes.get());
+    }
+
+    @Test
+    public void testChangedVersionFileIsReprobed() throws Exception {
+        File jar = tmp.newFile("maven-core-3.9.9.jar");
+        write(jar, "3.9.9");
+        List<String> versionFiles = Collections.singletonList(jar.getPath());
+        assertEquals("Apache Maven 3.9.9", new ProbeCache(store).lookup("maven", mvn, versionFiles,
+                () -> CompletableFuture.completedFuture("Apache Maven 3.9.9")).get());
+
+        // upgraded in place: same launcher, new core jar
+        write(jar, "3.9.10");
+        assertEquals("Apache Maven 3.9.10", new ProbeCache(store).lookup("maven", mvn, versionFiles,
+                () -> CompletableFuture.completedFuture("Apache Maven 3.9.10")).get());
+        assertEquals("Apache Maven 3.9.10", new ProbeCache(store).lookup("maven", mvn, versionFiles,
+                () -> CompletableFuture.<String>completedFuture(null)).get());
+    }
+
+    @Test
+    public void testAppearingVersionFileIsReprobed() throws Exception {
+        File jar = new File(tmp.getRoot(), "ant.jar");
+        List<String> versionFiles = Collections.singletonList(jar.getPath());
+        ProbeCache cache = new ProbeCache(store);
+        assertEquals("Ant 1.9", cache.lookup("ant", mvn, versionFiles,
+                () -> CompletableFuture.completedFuture("Ant 1.9")).get());
+
+        write(jar, "1.10");
+        assertEquals("Ant 1.10", cache.lookup("ant", mvn, versionFiles,
+                () -> CompletableFuture.completedFuture("Ant 1.10")).get());
+    }
+
+    @Test
+    public void testLinesWithoutVersionFilesAreDropped() throws Exception {
+        // a line as written before version files were part of the fingerprint
+        ProbeCache.Entry entry = new ProbeCache.Entry("maven", ProbeCache.Fingerprint.of(mvn,
+                Collections.<String>emptyList()), "Apache Maven 3.6.3");
+        String line = entry.toLine();
+        String body = line.substring(line.indexOf('\t') + 1, line.length() - 1).replace("\t-\t", "\t");
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes("UTF-8"));
+        write(store, Long.toHexString(crc.getValue()) + '\t' + body + '\n');
+
+        assertNull(new ProbeCache(store).get("maven", mvn));
+    }
+
+    @Test
+    public void testLookupDoesNotRememberNull() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        assertNull(cache.lookup("ant", mvn, () -> CompletableFuture.<String>completedFuture(null)).get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLookupMissingFileIsNotCached() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        File missing = new File(tmp.getRoot(), "missing");
+        assertEquals("x", cache.lookup("ant", missing, () -> CompletableFuture.completedFuture("x")).get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCorruptLinesAreSkipped() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        cache.put("maven", mvn, "Apache Maven\t3.6.3\n");
+        File other = tmp.newFile("ant");
+        cache.put("ant", other, "Ant 1.10.5");
+
+        // flip a character of the first line and append a torn line
+        String content = new String(Files.readAllBytes(store.toPath()), "UTF-8");
+        int firstTab = content.indexOf('\t');
+        String corrupted = content.substring(0, firstTab + 1) + "X" + content.substring(firstTab + 2);
+        FileOutputStream out = new FileOutputStream(store);
+        try {
+            out.write((corrupted + "1234\tmaven\t/partial").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        ProbeCache restarted = new ProbeCache(store);
+        assertNull(restarted.get("maven", mvn));
+        assertEquals("Ant 1.10.5", restarted.get("ant", other));
+        assertEquals(1, restarted.size());
+    }
+
+    @Test
+    public void testEscaping() {
+        String s = "a\tb\\c\nd\re";
+        assertEquals(s, ProbeCache.Entry.unescape(ProbeCache.Entry.escape(s)));
+        assertFalse(ProbeCache.Entry.escape(s).contains("\t"));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        for (int i = 0; i < 500; i++) {
+            cache.put("maven", mvn, "Apache Maven 3." + i);
+        }
+        assertTrue(countLines(store) < 200);
+        assertEquals("Apache Maven 3.499", new ProbeCache(store).get("maven", mvn));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        ProbeCache cache = new ProbeCache(store);
+        cache.put("maven", mvn, "Apache Maven 3.6.3");
+        cache.clear();
+
+        assertNull(cache.get("maven", mvn));
+        assertFalse(store.exists());
+    }
+
+    @Test
+    public void testMemoryOnly() throws Exception {
+        ProbeCache cache = new ProbeCache(null);
+        cache.put("maven", mvn, "Apache Maven 3.6.3");
+        assertEquals("Apache Maven 3.6.3", cache.get("maven", mvn));
+    }
+
+    private static int countLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath()).size();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class RegQueryParserTest {
+
+    public static final String TEST_OUTPUT =
+            "/org/jenkinsci/plugins/tools_autodiscover/util/RegQueryParserTest/javasoft.out";
+
+    @Test
+    public void testParseRecordedOutput() throws Exception {
+        final List<RegQueryParser.Key> keys = new ArrayList<RegQueryParser.Key>();
+        RegQueryParser parser = new RegQueryParser(new Consumer<RegQueryParser.Key>() {
+            public void accept(RegQueryParser.Key key) {
+                keys.add(key);
+            }
+        });
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(getClass().getResourceAsStream(TEST_OUTPUT), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parser.line(line);
+            }
+        } finally {
+            reader.close();
+        }
+        parser.end();
+
+        assertEquals(3, keys.size());
+        RegQueryParser.Key jdk = keys.get(0);
+        assertEquals("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK", jdk.getPath());
+        assertEquals("JDK", jdk.getName());
+        assertEquals("JavaSoft", jdk.getParentName());
+        assertEquals("17", jdk.getValue("CurrentVersion"));
+        assertEquals("", jdk.getValue("(Default)"));
+
+        RegQueryParser.Key version = keys.get(1);
+        assertEquals("17.0.9", version.getName());
+        assertEquals("JDK", version.getParentName());
+        assertEquals("C:\\Program Files\\Java\\jdk-17", version.getValue("JavaHome"));
+        assertEquals("0x11", version.getValue("Version Number"));
+        assertEquals("", version.getValue("Empty Expand"));
+        assertNull(version.getValue("RuntimeLib"));
+        assertEquals(Arrays.asList("JavaHome", "Version Number", "Empty Expand"),
+                new ArrayList<String>(version.getValues().keySet()));
+
+        assertEquals("C:\\Program Files\\Java\\jdk-17\\", keys.get(2).getValue("INSTALLDIR"));
+    }
+
+    @Test
+    public void testKeyPassedWhenNextKeyStarts() {
+        final List<String> received = new ArrayList<String>();
+        RegQueryParser parser = new RegQueryParser(new Consumer<RegQueryParser.Key>() {
+            public void accept(RegQueryParser.Key key) {
+                received.add(key.getName());
+            }
+        });
+
+        parser.line("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\11");
+        parser.line("    JavaHome    REG_SZ    C:\\jdk-11");
+        assertTrue(received.isEmpty());
+        parser.line("HKEY_LOCAL_MACHINE\\SOFTWARE\\JavaSoft\\JDK\\17");
+        assertEquals(Arrays.asList("11"), received);
+        parser.end();
+        assertEquals(Arrays.asList("11", "17"), received);
+        parser.end();
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testIgnoresErrorsAndValuesWithoutKey() {
+        List<RegQueryParser.Key> keys = RegQueryParser.parse(Arrays.asList(
+                "    Orphan    REG_SZ    value",
+                "ERROR: The system was unable to find the specified registry key or value.",
+                ""));
+        assertTrue(keys.isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.tools_autodiscover.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SpawnGovernorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCgroupV2Quota() throws Exception {
+        write(new File(tmp.getRoot(), "cpu.max"), "150000 100000\n");
+        assertEquals(1.5, SpawnGovernor.readCpuQuota(tmp.getRoot()), 0.001);
+        assertEquals(1, SpawnGovernor.defaultPermits(16, tmp.getRoot()));
+    }
+
+    @Test
+    public void testCgroupV2Unlimited() throws Exception {
+        write(new File(tmp.getRoot(), "cpu.max"), "max 100000\n");
+        assertEquals(-1, SpawnGovernor.readCpuQuota(tmp.getRoot()), 0.001);
+        assertEquals(8, SpawnGovernor.defaultPermits(16, tmp.getRoot()));
+    }
+
+    @Test
+    public void testCgroupV1Quota() throws Exception {
+        File cpu = tmp.newFolder("cpu");
+        write(new File(cpu, "cpu.cfs_quota_us"), "400000\n");
+        write(new File(cpu, "cpu.cfs_period_us"), "100000\n");
+        assertEquals(4.0, SpawnGovernor.readCpuQuota(tmp.getRoot()), 0.001);
+        assertEquals(2, SpawnGovernor.defaultPermits(16, tmp.getRoot()));
+    }
+
+    @Test
+    public void testNoCgroup() {
+        File missing = new File(tmp.getRoot(), "missing");
+        assertEquals(-1, SpawnGovernor.readCpuQuota(missing), 0.001);
+        assertEquals(1, SpawnGovernor.defaultPermits(1, missing));
+    }
+
+    @Test
+    public void testRejectsWhenNoPermitInTime() {
+        SpawnGovernor governor = new SpawnGovernor(1, 50, TimeUnit.MILLISECONDS);
+        assertTrue(governor.acquire());
+        assertEquals(1, governor.getRunning());
+
+        assertFalse(governor.acquire());
+        assertEquals(1, governor.getRejectedCount());
+        assertTrue(governor.getMaxWaitTime(TimeUnit.MILLISECONDS) >= 40);
+
+        governor.release();
+        assertTrue(governor.acquire());
+        assertEquals(2, governor.getAcquiredCount());
+    }
+
+    @Test
+    public void testQueueDepth() throws Exception {
+        final SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.SECONDS);
+        assertTrue(governor.acquire());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                acquired.set(governor.acquire());
+                done.countDown();
+            }
+        });
+        waiter.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (governor.getQueueDepth() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, governor.getQueueDepth());
+
+        governor.release();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+        assertEquals(0, governor.getQueueDepth());
+    }
+
+    @Test
+    public void testAcquireAsyncGrantedOnRelease() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.SECONDS);
+        assertTrue(governor.acquireAsync().get());
+
+        CompletableFuture<Boolean> first = governor.acquireAsync();
+        CompletableFuture<Boolean> second = governor.acquireAsync();
+        assertFalse(first.isDone());
+        assertEquals(2, governor.getQueueDepth());
+
+        governor.release();
+        assertTrue(first.getNow(Boolean.FALSE));
+        assertFalse(second.isDone());
+        assertEquals(1, governor.getRunning());
+
+        governor.release();
+        assertTrue(second.getNow(Boolean.FALSE));
+        governor.release();
+        assertEquals(0, governor.getRunning());
+        assertEquals(0, governor.getQueueDepth());
+    }
+
+    @Test
+    public void testAcquireAsyncCancelledSkipped() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 10, TimeUnit.SECONDS);
+        assertTrue(governor.acquire());
+
+        CompletableFuture<Boolean> cancelled = governor.acquireAsync();
+        CompletableFuture<Boolean> waiting = governor.acquireAsync();
+        assertTrue(cancelled.cancel(false));
+        assertEquals(1, governor.getQueueDepth());
+
+        governor.release();
+        assertTrue(waiting.getNow(Boolean.FALSE));
+        governor.release();
+        assertEquals(0, governor.getRunning());
+    }
+
+    @Test
+    public void testAcquireAsyncTimesOut() throws Exception {
+        SpawnGovernor governor = new SpawnGovernor(1, 20, TimeUnit.MILLISECONDS);
+        assertTrue(governor.acquire());
+
+        assertFalse(governor.acquireAsync().get(5, TimeUnit.SECONDS));
+        assertEquals(1, governor.getRejectedCount());
+        assertEquals(0, governor.getQueueDepth());
+
+        governor.release();
+        assertEquals(0, governor.getRunning());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}